@@ -1,6 +1,7 @@
 plugins {
     kotlin("jvm") version "2.2.0"
     id("org.openjfx.javafxplugin") version "0.1.0"
+    id("me.champeau.jmh") version "0.7.3"
     application
 }
 
@@ -105,6 +106,34 @@ sourceSets {
     }
 }
 
+// JMH benchmarks (src/jmh): ./gradlew jmh
+// Select benchmarks with -PjmhIncludes=ReportModel and size the synthetic
+// ledger with -PledgerDocuments=20000 (also ledgerAccounts, ledgerPeriods and
+// ledgerEntriesPerDocument; comma-separated values run each size).
+// Every run writes its own JSON file so results can be compared over time.
+val jmhTimestamp: String = java.time.LocalDateTime.now()
+    .format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results-$jmhTimestamp.json"))
+    jvmArgs.add("-Djava.awt.headless=true")
+
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+
+    mapOf(
+        "ledgerAccounts" to "accounts",
+        "ledgerPeriods" to "periods",
+        "ledgerDocuments" to "documents",
+        "ledgerEntriesPerDocument" to "entriesPerDocument"
+    ).forEach { (property, param) ->
+        providers.gradleProperty(property).orNull?.let { value ->
+            benchmarkParameters.put(param, objects.listProperty<String>().value(value.split(",")))
+        }
+    }
+}
+
 // Main application configuration - JavaFX version
 application {
     mainClass.set("kirjanpito.ui.javafx.JavaFXApp")
@@ -199,6 +228,15 @@ tasks.register<JavaExec>("fixDatabase") {
     classpath = sourceSets["main"].runtimeClasspath
 }
 
+// Task to generate a synthetic ledger and measure navigation, save and report latencies
+tasks.register<JavaExec>("loadTest") {
+    group = "application"
+    description = "Generate a large synthetic ledger and run the load test workload"
+    mainClass.set("kirjanpito.util.LedgerLoadTest")
+    classpath = sourceSets["main"].runtimeClasspath
+    jvmArgs = listOf("-Xmx1024m", "-Djava.awt.headless=true")
+}
+
 // Fat JAR task for distribution
 tasks.register<Jar>("fatJar") {
     group = "build"
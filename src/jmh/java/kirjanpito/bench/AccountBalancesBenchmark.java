@@ -0,0 +1,125 @@
+package kirjanpito.bench;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kirjanpito.db.Account;
+import kirjanpito.db.Entry;
+import kirjanpito.util.AccountBalances;
+
+/**
+ * Vertaa tilien saldojen laskentaa senttilaskurilla aiempaan
+ * <code>HashMap</code>- ja <code>BigDecimal</code>-toteutukseen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBalancesBenchmark {
+	@Param({"300"})
+	public int accountCount;
+
+	@Param({"100000", "1000000"})
+	public int entryCount;
+
+	private List<Account> accounts;
+	private Entry[] entries;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		accounts = new ArrayList<Account>();
+
+		for (int i = 1; i <= accountCount; i++) {
+			Account account = new Account();
+			account.setId(i);
+			account.setNumber(Integer.toString(1000 + i));
+			account.setType(i % 5);
+			accounts.add(account);
+		}
+
+		entries = new Entry[entryCount];
+
+		for (int i = 0; i < entryCount; i++) {
+			Entry entry = new Entry();
+			entry.setAccountId(1 + random.nextInt(accountCount));
+			entry.setDebit(random.nextBoolean());
+			entry.setAmount(BigDecimal.valueOf(random.nextInt(1000000), 2));
+			entries[i] = entry;
+		}
+	}
+
+	@Benchmark
+	public BigDecimal accountBalances() {
+		AccountBalances balances = new AccountBalances(accounts);
+
+		for (Entry entry : entries) {
+			balances.addEntry(entry);
+		}
+
+		return balances.getProfit();
+	}
+
+	/**
+	 * Aiempi toteutus: saldot HashMapissa, uusi BigDecimal jokaisesta
+	 * viennistä.
+	 */
+	@Benchmark
+	public BigDecimal hashMapBaseline() {
+		HashMap<Integer, Account> accountMap = new HashMap<Integer, Account>();
+		HashMap<Integer, BigDecimal> balances = new HashMap<Integer, BigDecimal>();
+		BigDecimal profit = BigDecimal.ZERO;
+
+		for (Account account : accounts) {
+			accountMap.put(account.getId(), account);
+		}
+
+		for (Entry entry : entries) {
+			Account account = accountMap.get(entry.getAccountId());
+			int type = account.getType();
+			boolean debit = entry.isDebit();
+			BigDecimal amount = entry.getAmount();
+
+			if ((type == Account.TYPE_ASSET && !debit) ||
+					(type == Account.TYPE_EXPENSE && !debit) ||
+					(type == Account.TYPE_LIABILITY && debit) ||
+					(type == Account.TYPE_EQUITY && debit) ||
+					(type == Account.TYPE_REVENUE && debit) ||
+					(type == Account.TYPE_PROFIT_PREV && debit) ||
+					(type == Account.TYPE_PROFIT && debit))
+			{
+				amount = amount.negate();
+			}
+
+			if (type == Account.TYPE_EXPENSE) {
+				profit = profit.subtract(amount);
+			}
+			else if (type == Account.TYPE_REVENUE) {
+				profit = profit.add(amount);
+			}
+
+			BigDecimal balance = balances.get(entry.getAccountId());
+			balances.put(entry.getAccountId(), (balance == null) ? amount : balance.add(amount));
+		}
+
+		return profit;
+	}
+}
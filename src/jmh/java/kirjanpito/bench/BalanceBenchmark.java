@@ -0,0 +1,96 @@
+package kirjanpito.bench;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.EntryDAO;
+import kirjanpito.db.Period;
+import kirjanpito.db.Session;
+import kirjanpito.util.AccountBalances;
+
+/**
+ * Mittaa tilikauden saldojen laskentaa tietokannasta: valmiiksi
+ * summatusta saldotaulusta, aikaväliltä sekä kaikista vienneistä.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceBenchmark {
+	@Benchmark
+	public BigDecimal balancesByPeriod(LedgerState state) throws DataAccessException {
+		DataSource dataSource = state.ledger.getDataSource();
+		AccountBalances balances = new AccountBalances(state.ledger.getRegistry().getAccounts());
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getBalanceDAO(sess).getByPeriodId(
+					state.ledger.getCurrentPeriod().getId(), balances::addTotal);
+		}
+		finally {
+			sess.close();
+		}
+
+		return balances.getProfit();
+	}
+
+	/**
+	 * Ensimmäisen vuosineljänneksen saldot.
+	 */
+	@Benchmark
+	public BigDecimal balancesByDateRange(LedgerState state) throws DataAccessException {
+		DataSource dataSource = state.ledger.getDataSource();
+		Period period = state.ledger.getCurrentPeriod();
+		AccountBalances balances = new AccountBalances(state.ledger.getRegistry().getAccounts());
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(period.getStartDate());
+		cal.add(Calendar.MONTH, 3);
+		cal.add(Calendar.DAY_OF_MONTH, -1);
+		Date endDate = cal.getTime();
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getBalanceDAO(sess).getByPeriodIdAndDate(period.getId(),
+					period.getStartDate(), endDate, balances::addTotal);
+		}
+		finally {
+			sess.close();
+		}
+
+		return balances.getProfit();
+	}
+
+	/**
+	 * Saldot laskettuna jokaisesta viennistä erikseen.
+	 */
+	@Benchmark
+	public BigDecimal balancesFromEntries(LedgerState state) throws DataAccessException {
+		DataSource dataSource = state.ledger.getDataSource();
+		AccountBalances balances = new AccountBalances(state.ledger.getRegistry().getAccounts());
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getEntryDAO(sess).getByPeriodId(
+					state.ledger.getCurrentPeriod().getId(),
+					EntryDAO.ORDER_BY_DOCUMENT_NUMBER, balances::addEntry);
+		}
+		finally {
+			sess.close();
+		}
+
+		return balances.getProfit();
+	}
+}
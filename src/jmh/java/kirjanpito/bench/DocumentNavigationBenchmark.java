@@ -0,0 +1,93 @@
+package kirjanpito.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.Document;
+import kirjanpito.db.Entry;
+import kirjanpito.db.Session;
+import kirjanpito.util.DocumentCursor;
+
+/**
+ * Mittaa tositteiden selaamista pääikkunan tapaan: siirtyminen
+ * seuraavaan tai haettuun tositteeseen ja sen vientien lataaminen.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentNavigationBenchmark {
+	private DocumentCursor cursor;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setup(LedgerState state) throws DataAccessException {
+		cursor = new DocumentCursor(state.ledger.getDataSource(),
+				state.ledger.getCurrentPeriod().getId(), 1, Integer.MAX_VALUE);
+		cursor.first();
+		random = new Random(42);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		cursor.close();
+	}
+
+	@Benchmark
+	public List<Entry> next(LedgerState state) throws DataAccessException {
+		Document document = cursor.next();
+
+		if (document == null) {
+			document = cursor.first();
+		}
+
+		return loadEntries(state, document);
+	}
+
+	@Benchmark
+	public List<Entry> seek(LedgerState state) throws DataAccessException {
+		Document document = cursor.seek(1 + random.nextInt(state.documents));
+		return loadEntries(state, document);
+	}
+
+	/**
+	 * Käyttää esihaettuja vientejä, jos ne ovat saatavilla.
+	 */
+	private List<Entry> loadEntries(LedgerState state, Document document)
+		throws DataAccessException {
+
+		List<Entry> entries = cursor.takeEntries(document.getId());
+
+		if (entries != null) {
+			return entries;
+		}
+
+		DataSource dataSource = state.ledger.getDataSource();
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getEntryDAO(sess).getByDocumentId(document.getId());
+		}
+		finally {
+			sess.close();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package kirjanpito.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.Document;
+import kirjanpito.db.Entry;
+import kirjanpito.db.EntryDAO;
+import kirjanpito.db.Period;
+import kirjanpito.db.Session;
+
+/**
+ * Mittaa vientien lukemista ja tallentamista SQLite-tietokannassa.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryDAOBenchmark {
+	private static final int WINDOW_SIZE = 100;
+
+	private List<Document> window;
+	private Random random;
+
+	@Setup
+	public void setup(LedgerState state) throws DataAccessException {
+		DataSource dataSource = state.ledger.getDataSource();
+		Period period = state.ledger.getCurrentPeriod();
+		Session sess = dataSource.openReadOnlySession();
+
+		/* Selausikkunan kokoinen joukko tositteita tilikauden keskeltä. */
+		try {
+			window = dataSource.getDocumentDAO(sess).getByPeriodIdAndNumber(
+					period.getId(), state.documents / 2, Integer.MAX_VALUE, 0, WINDOW_SIZE);
+		}
+		finally {
+			sess.close();
+		}
+
+		random = new Random(42);
+	}
+
+	/**
+	 * Tilikauden kaikki viennit tositenumeron mukaan, kuten päiväkirjassa.
+	 */
+	@Benchmark
+	public void readPeriodByDocumentNumber(LedgerState state, Blackhole bh)
+		throws DataAccessException {
+
+		DataSource dataSource = state.ledger.getDataSource();
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getEntryDAO(sess).getByPeriodId(
+					state.ledger.getCurrentPeriod().getId(),
+					EntryDAO.ORDER_BY_DOCUMENT_NUMBER, bh::consume);
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Tilikauden kaikki viennit tilinumeron mukaan, kuten pääkirjassa.
+	 */
+	@Benchmark
+	public void readPeriodByAccountNumber(LedgerState state, Blackhole bh)
+		throws DataAccessException {
+
+		DataSource dataSource = state.ledger.getDataSource();
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getEntryDAO(sess).getByPeriodId(
+					state.ledger.getCurrentPeriod().getId(),
+					EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER, bh::consume);
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Selausikkunan tositteiden viennit yhdellä kyselyllä.
+	 */
+	@Benchmark
+	public void readByDocuments(LedgerState state, Blackhole bh)
+		throws DataAccessException {
+
+		DataSource dataSource = state.ledger.getDataSource();
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getEntryDAO(sess).getByDocuments(window, bh::consume);
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Yhden tositteen viennit.
+	 */
+	@Benchmark
+	public List<Entry> readByDocumentId(LedgerState state) throws DataAccessException {
+		DataSource dataSource = state.ledger.getDataSource();
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			Document document = window.get(random.nextInt(window.size()));
+			return dataSource.getEntryDAO(sess).getByDocumentId(document.getId());
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Uuden tositteen ja sen vientien tallentaminen. Muutokset perutaan,
+	 * jotta tietokanta ei kasva mittauksen aikana.
+	 */
+	@Benchmark
+	public void saveDocument(LedgerState state) throws DataAccessException {
+		DataSource dataSource = state.ledger.getDataSource();
+		Session sess = dataSource.openSession();
+
+		try {
+			Document document = new Document();
+			document.setPeriodId(state.ledger.getCurrentPeriod().getId());
+			document.setNumber(state.documents + 1);
+			document.setDate(window.get(0).getDate());
+			dataSource.getDocumentDAO(sess).save(document);
+
+			ArrayList<Entry> entries = new ArrayList<Entry>();
+			state.ledger.getGenerator().addEntries(entries, document,
+					state.entriesPerDocument, random);
+			dataSource.getEntryDAO(sess).saveAll(entries);
+		}
+		finally {
+			sess.rollback();
+			sess.close();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package kirjanpito.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kirjanpito.db.DataAccessException;
+import kirjanpito.reports.GeneralJournalModel;
+import kirjanpito.reports.GeneralJournalPrint;
+import kirjanpito.reports.GeneralLedgerModel;
+import kirjanpito.reports.GeneralLedgerPrint;
+import kirjanpito.reports.PDFExporter;
+import kirjanpito.reports.Print;
+import kirjanpito.reports.PrintModel;
+import kirjanpito.util.CSVWriter;
+import kirjanpito.util.ODFSpreadsheet;
+import kirjanpito.util.ReportModels;
+
+/**
+ * Mittaa päiväkirjan ja pääkirjan vientiä CSV-, ODS- ja PDF-tiedostoksi.
+ * CSV ja ODS muodostetaan suoraan tietokannasta kuten sovelluksessa.
+ * PDF-viennissä malli haetaan etukäteen, joten mittaus kattaa sivujen
+ * asettelun, piirtämisen ja tallentamisen.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+	@Param({ReportModels.GENERAL_JOURNAL, ReportModels.GENERAL_LEDGER})
+	public String report;
+
+	private File file;
+	private Print print;
+
+	@Setup(Level.Trial)
+	public void setup(LedgerState state) throws IOException, DataAccessException {
+		file = File.createTempFile("tilitin-bench-", ".tmp");
+		PrintModel model = ReportModels.create(report,
+				state.ledger.getRegistry(), state.ledger.getActiveAccounts().get(0));
+		model.run();
+
+		if (model instanceof GeneralLedgerModel) {
+			print = new GeneralLedgerPrint((GeneralLedgerModel)model);
+		}
+		else {
+			print = new GeneralJournalPrint((GeneralJournalModel)model);
+		}
+
+		print.setSettings(state.ledger.getRegistry().getSettings());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void csv(LedgerState state) throws IOException, DataAccessException {
+		PrintModel model = ReportModels.create(report,
+				state.ledger.getRegistry(), state.ledger.getActiveAccounts().get(0));
+		model.streamCSV(new CSVWriter(Writer.nullWriter()));
+	}
+
+	@Benchmark
+	public void ods(LedgerState state) throws IOException, DataAccessException {
+		PrintModel model = ReportModels.create(report,
+				state.ledger.getRegistry(), state.ledger.getActiveAccounts().get(0));
+		ODFSpreadsheet spreadsheet = new ODFSpreadsheet();
+		spreadsheet.open(file);
+
+		try {
+			model.streamODS(spreadsheet);
+		}
+		finally {
+			spreadsheet.close();
+		}
+	}
+
+	@Benchmark
+	public void pdf() throws IOException {
+		new PDFExporter(print, PDRectangle.A4).export(file, null);
+	}
+}
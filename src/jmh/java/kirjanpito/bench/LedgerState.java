@@ -0,0 +1,40 @@
+package kirjanpito.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Synteettinen kirjanpito, jota tietokantaa käyttävät suorituskykytestit
+ * jakavat. Koon voi vaihtaa JMH-parametreilla, esim.
+ * <code>./gradlew jmh -PledgerDocuments=20000</code>.
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+	@Param({"150"})
+	public int accounts;
+
+	@Param({"1"})
+	public int periods;
+
+	@Param({"2000"})
+	public int documents;
+
+	@Param({"4"})
+	public int entriesPerDocument;
+
+	public SyntheticLedger ledger;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		ledger = SyntheticLedger.create(accounts, periods, documents, entriesPerDocument);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ledger.close();
+	}
+}
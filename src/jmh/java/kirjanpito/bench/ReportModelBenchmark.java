@@ -0,0 +1,49 @@
+package kirjanpito.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kirjanpito.db.DataAccessException;
+import kirjanpito.reports.PrintModel;
+import kirjanpito.util.ReportModels;
+
+/**
+ * Mittaa tulosteiden mallien <code>run</code>-metodia, joka hakee
+ * tulosteen tiedot tietokannasta ja muodostaa sen rivit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportModelBenchmark {
+	@Param({
+		ReportModels.GENERAL_JOURNAL,
+		ReportModels.GENERAL_LEDGER,
+		ReportModels.INCOME_STATEMENT,
+		ReportModels.BALANCE_SHEET,
+		ReportModels.VAT_REPORT,
+		ReportModels.ACCOUNT_SUMMARY,
+		ReportModels.ACCOUNT_STATEMENT
+	})
+	public String report;
+
+	@Benchmark
+	public PrintModel run(LedgerState state) throws DataAccessException {
+		PrintModel model = ReportModels.create(report,
+				state.ledger.getRegistry(), state.ledger.getActiveAccounts().get(0));
+		model.run();
+		return model;
+	}
+}
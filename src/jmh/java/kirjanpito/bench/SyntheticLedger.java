@@ -0,0 +1,108 @@
+package kirjanpito.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import kirjanpito.db.Account;
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.Period;
+import kirjanpito.db.sqlite.SQLiteDataSource;
+import kirjanpito.util.LedgerGenerator;
+import kirjanpito.util.Registry;
+
+/**
+ * Luo suorituskykytestejä varten SQLite-tietokannan, jossa on
+ * synteettinen kirjanpito. Kirjanpito luodaan
+ * <code>LedgerGenerator</code>-luokalla kiinteällä siemenluvulla,
+ * joten samoilla parametreilla syntyy aina sama kirjanpito.
+ */
+public class SyntheticLedger implements AutoCloseable {
+	public static final String DEFAULT_MODEL = LedgerGenerator.DEFAULT_MODEL;
+
+	private final File file;
+	private final DataSource dataSource;
+	private final LedgerGenerator generator;
+	private final List<Period> periods;
+
+	private SyntheticLedger(File file, DataSource dataSource,
+			LedgerGenerator generator, List<Period> periods) {
+
+		this.file = file;
+		this.dataSource = dataSource;
+		this.generator = generator;
+		this.periods = periods;
+	}
+
+	/**
+	 * Luo kirjanpidon väliaikaiseen tiedostoon.
+	 *
+	 * @param accountCount tilien määrä, joille vientejä tehdään
+	 * @param periodCount tilikausien määrä
+	 * @param documentCount tositteiden määrä tilikautta kohti
+	 * @param entriesPerDocument rivien määrä tositetta kohti ilman ALV-vientejä
+	 * @return kirjanpito
+	 */
+	public static SyntheticLedger create(int accountCount, int periodCount,
+			int documentCount, int entriesPerDocument) throws IOException, DataAccessException {
+
+		File file = File.createTempFile("tilitin-bench-", ".sqlite");
+		file.delete();
+
+		SQLiteDataSource dataSource = new SQLiteDataSource();
+		dataSource.open("jdbc:sqlite:" + file.getAbsolutePath(), "", "");
+
+		try {
+			LedgerGenerator generator = new LedgerGenerator(dataSource, new Random(42));
+			generator.setAccountCount(accountCount);
+			generator.initialize(DEFAULT_MODEL);
+			List<Period> periods = generator.createPeriods(periodCount);
+
+			for (Period period : periods) {
+				generator.createDocuments(period, documentCount, entriesPerDocument, null);
+			}
+
+			return new SyntheticLedger(file, dataSource, generator, periods);
+		}
+		catch (IOException | DataAccessException | RuntimeException e) {
+			dataSource.close();
+			file.delete();
+			throw e;
+		}
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public Registry getRegistry() {
+		return generator.getRegistry();
+	}
+
+	public LedgerGenerator getGenerator() {
+		return generator;
+	}
+
+	/**
+	 * Palauttaa tilikaudet alkamispäivän mukaan järjestettynä.
+	 * Viimeinen tilikausi on nykyinen.
+	 */
+	public List<Period> getPeriods() {
+		return periods;
+	}
+
+	public Period getCurrentPeriod() {
+		return periods.get(periods.size() - 1);
+	}
+
+	public List<Account> getActiveAccounts() {
+		return generator.getActiveAccounts();
+	}
+
+	public void close() {
+		dataSource.close();
+		file.delete();
+	}
+}
@@ -0,0 +1,99 @@
+package kirjanpito.db;
+
+import java.math.BigDecimal;
+
+/**
+ * Sisältää tilin debet- ja kreditvientien summat tietyltä
+ * aikaväliltä.
+ */
+public class AccountTotal {
+	private int accountId;
+	private BigDecimal debitTotal;
+	private BigDecimal creditTotal;
+	private int entryCount;
+
+	public AccountTotal() {
+		debitTotal = BigDecimal.ZERO;
+		creditTotal = BigDecimal.ZERO;
+	}
+
+	public AccountTotal(int accountId, BigDecimal debitTotal,
+			BigDecimal creditTotal, int entryCount) {
+		this.accountId = accountId;
+		this.debitTotal = debitTotal;
+		this.creditTotal = creditTotal;
+		this.entryCount = entryCount;
+	}
+
+	/**
+	 * Palauttaa tilin tunnisteen.
+	 *
+	 * @return tilin tunniste
+	 */
+	public int getAccountId() {
+		return accountId;
+	}
+
+	/**
+	 * Asettaa tilin tunnisteen.
+	 *
+	 * @param accountId tilin tunniste
+	 */
+	public void setAccountId(int accountId) {
+		this.accountId = accountId;
+	}
+
+	/**
+	 * Palauttaa debet-vientien summan.
+	 *
+	 * @return debet-vientien summa
+	 */
+	public BigDecimal getDebitTotal() {
+		return debitTotal;
+	}
+
+	/**
+	 * Asettaa debet-vientien summan.
+	 *
+	 * @param debitTotal debet-vientien summa
+	 */
+	public void setDebitTotal(BigDecimal debitTotal) {
+		this.debitTotal = debitTotal;
+	}
+
+	/**
+	 * Palauttaa kredit-vientien summan.
+	 *
+	 * @return kredit-vientien summa
+	 */
+	public BigDecimal getCreditTotal() {
+		return creditTotal;
+	}
+
+	/**
+	 * Asettaa kredit-vientien summan.
+	 *
+	 * @param creditTotal kredit-vientien summa
+	 */
+	public void setCreditTotal(BigDecimal creditTotal) {
+		this.creditTotal = creditTotal;
+	}
+
+	/**
+	 * Palauttaa summiin laskettujen vientien lukumäärän.
+	 *
+	 * @return vientien lukumäärä
+	 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Asettaa summiin laskettujen vientien lukumäärän.
+	 *
+	 * @param entryCount vientien lukumäärä
+	 */
+	public void setEntryCount(int entryCount) {
+		this.entryCount = entryCount;
+	}
+}
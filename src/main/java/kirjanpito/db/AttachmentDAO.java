@@ -1,5 +1,7 @@
 package kirjanpito.db;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import kirjanpito.models.Attachment;
 
@@ -27,6 +29,45 @@ public interface AttachmentDAO {
 	 */
 	List<Attachment> findByDocumentId(int documentId) throws DataAccessException;
 
+	/**
+	 * Hakee tositteen liitteiden tiedot ilman PDF-dataa. Liitelistan
+	 * näyttämiseen ei tarvitse lukea liitteitä muistiin; palautettujen
+	 * liitteiden <code>data</code> on tyhjä ja sisältö luetaan tarvittaessa
+	 * <code>writeContent</code>-metodilla.
+	 * 
+	 * @param documentId tositteen ID
+	 * @return liitteiden lista (tyhjä lista jos ei löydy)
+	 * @throws DataAccessException jos hakeminen epäonnistuu
+	 */
+	default List<Attachment> findMetadataByDocumentId(int documentId) throws DataAccessException {
+		return findByDocumentId(documentId);
+	}
+
+	/**
+	 * Kirjoittaa liitteen sisällön virtaan.
+	 * 
+	 * @param id liitteen ID
+	 * @param out kohdevirta
+	 * @return kirjoitettujen tavujen määrä tai -1 jos liitettä ei löytynyt
+	 * @throws DataAccessException jos lukeminen tai kirjoittaminen epäonnistuu
+	 */
+	default long writeContent(int id, OutputStream out) throws DataAccessException {
+		Attachment attachment = findById(id);
+
+		if (attachment == null) {
+			return -1;
+		}
+
+		try {
+			out.write(attachment.getData());
+		}
+		catch (IOException e) {
+			throw new DataAccessException("Liitteen kirjoittaminen epäonnistui", e);
+		}
+
+		return attachment.getData().length;
+	}
+
 	/**
 	 * Tallentaa liitteen tietokantaan.
 	 * 
@@ -36,6 +77,20 @@ public interface AttachmentDAO {
 	 */
 	int save(Attachment attachment) throws DataAccessException;
 
+	/**
+	 * Tallentaa useamman liitteen tietokantaan. Uudet liitteet lisätään
+	 * yhdellä eräajolla; niiden tunnisteita ei palauteta, koska
+	 * <code>Attachment</code>-oliot ovat muuttumattomia.
+	 * 
+	 * @param attachments tallennettavat liitteet
+	 * @throws DataAccessException jos tallennus epäonnistuu
+	 */
+	default void saveAll(List<Attachment> attachments) throws DataAccessException {
+		for (Attachment attachment : attachments) {
+			save(attachment);
+		}
+	}
+
 	/**
 	 * Poistaa liitteen tietokannasta.
 	 * 
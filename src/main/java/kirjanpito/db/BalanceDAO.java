@@ -0,0 +1,141 @@
+package kirjanpito.db;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <code>BalanceDAO</code>:n avulla haetaan tilien saldot
+ * <code>account_balance</code>-taulusta, johon on koottu vientien
+ * summat tileittäin ja päivittäin. <code>EntryDAO</code> ja
+ * <code>DocumentDAO</code> pitävät taulun ajan tasalla, joten
+ * raporttien ei tarvitse käydä läpi kaikkia vientejä.
+ */
+public interface BalanceDAO {
+	/**
+	 * Hakee tilien summat tietyn tilikauden ajalta.
+	 *
+	 * @param periodId tilikauden tunniste
+	 * @param callback callback, jolle annetaan jokaisen käytetyn tilin summat
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void getByPeriodId(int periodId, DTOCallback<AccountTotal> callback)
+		throws DataAccessException;
+
+	/**
+	 * Hakee tilien summat aikaväliltä <code>startDate</code>..<code>endDate</code>.
+	 * Jos <code>periodId</code> on pienempi kuin 1, summat lasketaan
+	 * kaikilta tilikausilta.
+	 *
+	 * @param periodId tilikauden tunniste tai -1
+	 * @param startDate alkamispäivämäärä
+	 * @param endDate päättymispäivämäärä
+	 * @param callback callback, jolle annetaan jokaisen käytetyn tilin summat
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void getByPeriodIdAndDate(int periodId, Date startDate, Date endDate,
+			DTOCallback<AccountTotal> callback) throws DataAccessException;
+
+	/**
+	 * Hakee tilien summat usealta aikaväliltä yhdellä kyselyllä.
+	 * Aikaväli <code>i</code> on <code>startDates[i]</code>..<code>endDates[i]</code>,
+	 * ja jos <code>periodIds[i]</code> on pienempi kuin 1, summat lasketaan
+	 * kaikilta tilikausilta. Vertailuraportit saavat näin kaikkien
+	 * sarakkeiden summat käymättä taulua läpi kerran saraketta kohden.
+	 *
+	 * @param periodIds tilikausien tunnisteet tai -1
+	 * @param startDates alkamispäivämäärät
+	 * @param endDates päättymispäivämäärät
+	 * @param callback callback, jolle annetaan jokaisen käytetyn tilin summat
+	 * aikaväleittäin; taulukon alkio on <code>null</code>, jos tilillä ei ole
+	 * vientejä kyseisellä aikavälillä
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void getByDateRanges(int[] periodIds, Date[] startDates, Date[] endDates,
+			DTOCallback<AccountTotal[]> callback) throws DataAccessException;
+
+	/**
+	 * Hakee yksittäisen tilin summat aikaväliltä
+	 * <code>startDate</code>..<code>endDate</code>.
+	 *
+	 * @param accountId tilin tunniste
+	 * @param startDate alkamispäivämäärä
+	 * @param endDate päättymispäivämäärä
+	 * @return summat tai <code>null</code>, jos tilille ei ole vientejä
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public AccountTotal getByAccountIdAndDate(int accountId, Date startDate, Date endDate)
+		throws DataAccessException;
+
+	/**
+	 * Lisää viennin summiin. Viennin tositteen on oltava
+	 * tallennettu tietokantaan.
+	 *
+	 * @param entry vienti
+	 * @throws DataAccessException jos päivittäminen epäonnistuu
+	 */
+	public void addEntry(Entry entry) throws DataAccessException;
+
+	/**
+	 * Vähentää tietokantaan tallennetun viennin summista.
+	 *
+	 * @param entryId viennin tunniste
+	 * @throws DataAccessException jos päivittäminen epäonnistuu
+	 */
+	public void removeEntry(int entryId) throws DataAccessException;
+
+	/**
+	 * Päivittää summat usean viennin muutoksilla. <code>removed</code>
+	 * sisältää vientien aiemmin tallennetut tiedot, jotka vähennetään
+	 * summista, ja <code>added</code> uudet tiedot, jotka lisätään.
+	 * Muutokset lasketaan ensin yhteen tositteittain ja tileittäin, joten
+	 * tietokantaan tehdään muutama eräajo vientien määrästä riippumatta.
+	 * Vientien tositteiden on oltava tallennettu tietokantaan.
+	 *
+	 * @param removed summista vähennettävät viennit
+	 * @param added summiin lisättävät viennit
+	 * @throws DataAccessException jos päivittäminen epäonnistuu
+	 */
+	public void updateEntries(List<Entry> removed, List<Entry> added)
+		throws DataAccessException;
+
+	/**
+	 * Lisää tositteen kaikki viennit summiin.
+	 *
+	 * @param documentId tositteen tunniste
+	 * @throws DataAccessException jos päivittäminen epäonnistuu
+	 */
+	public void addDocument(int documentId) throws DataAccessException;
+
+	/**
+	 * Vähentää tositteen kaikki viennit summista.
+	 *
+	 * @param documentId tositteen tunniste
+	 * @throws DataAccessException jos päivittäminen epäonnistuu
+	 */
+	public void removeDocument(int documentId) throws DataAccessException;
+
+	/**
+	 * Tarkistaa, onko tositteen päivämäärä tai tilikausi muuttunut
+	 * tietokantaan tallennetuista tiedoista.
+	 *
+	 * @param document tosite
+	 * @return <code>true</code>, jos summat on siirrettävä
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public boolean isMoved(Document document) throws DataAccessException;
+
+	/**
+	 * Poistaa tietyn tilikauden summat.
+	 *
+	 * @param periodId tilikauden tunniste
+	 * @throws DataAccessException jos poistaminen epäonnistuu
+	 */
+	public void deleteByPeriodId(int periodId) throws DataAccessException;
+
+	/**
+	 * Laskee kaikki summat uudelleen <code>entry</code>-taulusta.
+	 *
+	 * @throws DataAccessException jos päivittäminen epäonnistuu
+	 */
+	public void rebuild() throws DataAccessException;
+}
@@ -36,7 +36,31 @@ public interface DataSource {
 	 * @throws DataAccessException jos istunnon luominen epäonnistuu
 	 */
 	public Session openSession() throws DataAccessException;
-	
+
+	/**
+	 * Avaa tietokantaistunnon, jossa tietoja vain luetaan. Raportit
+	 * käyttävät tätä, jotta pitkä raportti ei estä tositteiden
+	 * käsittelyä. Istunto on päätettävä kutsumalla <code>close()</code>-metodia.
+	 *
+	 * @return tietokantaistunto
+	 * @throws DataAccessException jos istunnon luominen epäonnistuu
+	 */
+	public default Session openReadOnlySession() throws DataAccessException {
+		return openSession();
+	}
+
+	/**
+	 * Palauttaa <code>true</code>, jos <code>openReadOnlySession</code>
+	 * palauttaa istunnon omalla yhteydellä. Muuten lukuistunto käyttää
+	 * samaa yhteyttä kuin tallennus, eikä sitä saa käyttää taustasäikeessä
+	 * esihakuun.
+	 *
+	 * @return onko erillisiä lukijayhteyksiä
+	 */
+	public default boolean hasReaderConnections() {
+		return false;
+	}
+
 	/**
 	 * Palauttaa <code>AccountDAO</code>-olion, jonka avulla voidaan lisätä,
 	 * muokata ja poistaa tilitietoja sekä hakea olemassa olevien tilien
@@ -77,6 +101,15 @@ public interface DataSource {
 	 */
 	public EntryDAO getEntryDAO(Session session);
 	
+	/**
+	 * Palauttaa <code>BalanceDAO</code>-olion, jonka avulla voidaan hakea
+	 * tilien saldot ilman, että kaikkia vientejä käydään läpi.
+	 * 
+	 * @param session tietokantaistunto
+	 * @return <code>BalanceDAO</code>-olio
+	 */
+	public BalanceDAO getBalanceDAO(Session session);
+	
 	/**
 	 * Palauttaa <code>PeriodDAO</code>-olion, jonka avulla voidaan lisätä,
 	 * muokata ja poistaa tilikausia sekä hakea olemassa olevien
@@ -8,6 +8,7 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -21,6 +22,16 @@ import kirjanpito.models.DataSourceInitializationModel;
 import kirjanpito.ui.Kirjanpito;
 
 public class DatabaseUpgradeUtil {
+	/**
+	 * Indeksit, joita vientien ja tositteiden hakukyselyt käyttävät.
+	 * Jokainen rivi sisältää indeksin nimen, taulun ja sarakkeet.
+	 */
+	private static final String[][] INDEXES = {
+		{ "entry_document_idx", "entry", "document_id, row_number" },
+		{ "entry_account_idx", "entry", "account_id, document_id" },
+		{ "document_date_idx", "document", "period_id, date, number" }
+	};
+
 	public static void executeQueries(Connection conn, InputStream stream) throws IOException, SQLException {
 		BufferedReader reader = new BufferedReader(new InputStreamReader(stream,
 				Charset.forName("UTF-8")));
@@ -610,4 +621,102 @@ public class DatabaseUpgradeUtil {
     // public static void upgrade14to15(Connection conn, Statement stmt, boolean sqlite) throws SQLException {
     //     // POISTETTU - ei muuteta tietokantaskeemaa
     // }
+
+	public static void upgrade15to16(Connection conn, Statement stmt) throws SQLException {
+		stmt.executeUpdate("CREATE TABLE account_balance (\n" +
+			"\tperiod_id integer NOT NULL,\n" +
+			"\taccount_id integer NOT NULL,\n" +
+			"\tdate date NOT NULL,\n" +
+			"\tdebit_cents bigint NOT NULL,\n" +
+			"\tcredit_cents bigint NOT NULL,\n" +
+			"\tentry_count integer NOT NULL,\n" +
+			"\tPRIMARY KEY (account_id, date, period_id)\n)");
+		stmt.executeUpdate("CREATE INDEX account_balance_date_idx ON account_balance (date)");
+		stmt.executeUpdate("INSERT INTO account_balance (period_id, account_id, date, " +
+			"debit_cents, credit_cents, entry_count) " +
+			"SELECT d.period_id, e.account_id, d.date, " +
+			"SUM(CASE WHEN e.debit THEN ROUND(e.amount * 100) ELSE 0 END), " +
+			"SUM(CASE WHEN e.debit THEN 0 ELSE ROUND(e.amount * 100) END), " +
+			"COUNT(*) FROM entry e INNER JOIN document d ON d.id = e.document_id " +
+			"GROUP BY d.period_id, e.account_id, d.date");
+		stmt.executeUpdate("UPDATE settings SET version=16");
+		conn.commit();
+
+		Logger logger = Logger.getLogger("kirjanpito.db");
+		logger.info("Tietokannan päivittäminen versioon 16 onnistui");
+	}
+
+	public static void upgrade16to17(Connection conn, Statement stmt) throws SQLException {
+		for (String[] index : INDEXES) {
+			stmt.executeUpdate(createIndexQuery(index));
+		}
+
+		stmt.executeUpdate("UPDATE settings SET version=17");
+		conn.commit();
+
+		Logger logger = Logger.getLogger("kirjanpito.db");
+		logger.info("Tietokannan päivittäminen versioon 17 onnistui");
+	}
+
+	/**
+	 * Tarkistaa, että hakukyselyjen käyttämät indeksit ovat olemassa,
+	 * ja luo puuttuvat indeksit. Indeksit ovat voineet jäädä luomatta,
+	 * jos tietokanta on luotu tai palautettu vanhemmalla versiolla.
+	 *
+	 * @param conn tietokantayhteys
+	 * @throws SQLException jos indeksien luominen epäonnistuu
+	 */
+	public static void createMissingIndexes(Connection conn) throws SQLException {
+		DatabaseMetaData metaData = conn.getMetaData();
+		Logger logger = Logger.getLogger("kirjanpito.db");
+		boolean created = false;
+
+		for (String[] index : INDEXES) {
+			if (indexExists(metaData, conn.getCatalog(), index[1], index[0])) {
+				continue;
+			}
+
+			logger.warning("Indeksi " + index[0] + " puuttuu taulusta " +
+					index[1] + ". Luodaan indeksi.");
+			Statement stmt = conn.createStatement();
+
+			try {
+				stmt.executeUpdate(createIndexQuery(index));
+			}
+			finally {
+				stmt.close();
+			}
+
+			created = true;
+		}
+
+		if (created) {
+			conn.commit();
+		}
+	}
+
+	private static boolean indexExists(DatabaseMetaData metaData, String catalog,
+			String table, String name) throws SQLException {
+
+		ResultSet rs = metaData.getIndexInfo(catalog, null, table, false, true);
+
+		try {
+			while (rs.next()) {
+				String indexName = rs.getString("INDEX_NAME");
+
+				if (indexName != null && indexName.equalsIgnoreCase(name)) {
+					return true;
+				}
+			}
+		}
+		finally {
+			rs.close();
+		}
+
+		return false;
+	}
+
+	private static String createIndexQuery(String[] index) {
+		return "CREATE INDEX " + index[0] + " ON " + index[1] + " (" + index[2] + ")";
+	}
 }
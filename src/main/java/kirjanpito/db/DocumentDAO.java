@@ -32,6 +32,16 @@ public interface DocumentDAO {
 	 */
 	public void save(Document document) throws DataAccessException;
 	
+	/**
+	 * Tallentaa useamman tositteen tiedot tietokantaan. Uudet tositteet
+	 * lisätään yhdellä eräajolla, ja niiden tunnisteet asetetaan
+	 * <code>Document</code>-olioihin.
+	 * 
+	 * @param documents tallennettavat tositteet
+	 * @throws DataAccessException jos tallentaminen epäonnistuu
+	 */
+	public void saveAll(List<Document> documents) throws DataAccessException;
+	
 	/**
 	 * Poistaa tositteen tiedot tietokannasta.
 	 * 
@@ -139,6 +149,22 @@ public interface DocumentDAO {
 			int startNumber, int endNumber, int offset, int limit)
 			throws DataAccessException;
 	
+	/**
+	 * Hakee tietokannasta numerovälin <code>startNumber</code>..<code>endNumber</code>
+	 * viimeiset <code>limit</code> tositetta tietyltä tilikaudelta.
+	 * Tositteet palautetaan numerojärjestyksessä.
+	 * 
+	 * @param periodId tilikauden tunniste
+	 * @param startNumber tositenumerovälin alku
+	 * @param endNumber tositenumerovälin loppu
+	 * @param limit tositteiden enimmäismäärä
+	 * @return tositteet
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public List<Document> getLastByPeriodIdAndNumber(int periodId,
+			int startNumber, int endNumber, int limit)
+			throws DataAccessException;
+	
 	/**
 	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa
 	 * tulosten lukumäärän.
@@ -152,7 +178,7 @@ public interface DocumentDAO {
 	
 	/**
 	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa
-	 * löytyneet tositteet
+	 * löytyneet tositteet hakusanaa parhaiten vastaavat ensin.
 	 * 
 	 * @param periodId tilikauden tunniste
 	 * @param q hakusana
@@ -163,6 +189,24 @@ public interface DocumentDAO {
 	public List<Document> getByPeriodIdAndPhrase(int periodId, String q,
 			int offset, int limit) throws DataAccessException;
 	
+	/**
+	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa sekä
+	 * sivullisen tuloksia että tulosten kokonaismäärän yhdellä
+	 * kyselyllä. Tositteet annetaan callbackille hakusanaa parhaiten
+	 * vastaavat ensin.
+	 * 
+	 * @param periodId tilikauden tunniste
+	 * @param q hakusana
+	 * @param offset ensimmäisen palautettavan tuloksen järjestysnumero
+	 * @param limit palautettavien tulosten enimmäismäärä
+	 * @param callback callback, jolle tositteet annetaan
+	 * @return tulosten kokonaismäärä tai 0, jos sivulla ei ole tuloksia
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public int searchByPeriodIdAndPhrase(int periodId, String q,
+			int offset, int limit, DTOCallback<Document> callback)
+			throws DataAccessException;
+	
 	/**
 	 * Hakee tietokannasta tositteet tietyltä aikaväliltä.
 	 * 
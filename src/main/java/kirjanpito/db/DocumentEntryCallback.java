@@ -0,0 +1,8 @@
+package kirjanpito.db;
+
+/**
+ * Callback, jolle annetaan vienti ja tosite, johon vienti kuuluu.
+ */
+public interface DocumentEntryCallback {
+	public void process(Document document, Entry entry);
+}
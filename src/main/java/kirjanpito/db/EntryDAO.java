@@ -39,6 +39,17 @@ public interface EntryDAO {
 	 */
 	public void save(Entry entry) throws DataAccessException;
 
+	/**
+	 * Tallentaa useamman viennin tiedot tietokantaan. Uudet viennit
+	 * lisätään yhdellä eräajolla, ja niiden tunnisteet asetetaan
+	 * <code>Entry</code>-olioihin. Tositteiden hakutekstit päivitetään
+	 * kerran tositetta kohden.
+	 *
+	 * @param entries tallennettavat viennit
+	 * @throws DataAccessException jos tallentaminen epäonnistuu
+	 */
+	public void saveAll(List<Entry> entries) throws DataAccessException;
+
 	/**
 	 * Poistaa viennin tiedot tietokannasta.
 	 *
@@ -70,7 +81,7 @@ public interface EntryDAO {
 	 * Hakee tietokannasta tiettyihin tositteisiin kuuluvat
 	 * viennit.
 	 *
-	 * @param documentIds tositteiden tunnisteet
+	 * @param documents tositteet
 	 * @param callback callback
 	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
 	 */
@@ -89,6 +100,57 @@ public interface EntryDAO {
 	public void getByPeriodId(int periodId, int orderBy, DTOCallback<Entry> callback)
 		throws DataAccessException;
 
+	/**
+	 * Hakee tietokannasta kaikki tietyn tilikauden viennit samassa
+	 * järjestyksessä kuin <code>getByPeriodId</code>. Tositteen numero
+	 * ja päivämäärä haetaan samalla kyselyllä, joten tositteita ei
+	 * tarvitse ladata muistiin erikseen. Saman tositteen peräkkäisille
+	 * vienneille annetaan sama <code>Document</code>-olio.
+	 *
+	 * @param periodId tilikauden tunniste
+	 * @param orderBy <code>ORDER_BY_DOCUMENT_NUMBER</code>,
+	 * <code>ORDER_BY_DOCUMENT_DATE</code>,
+	 * <code>ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER</code> tai
+	 * <code>ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_DATE</code>
+	 * @param callback callback, jolle annetaan tosite ja vienti
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void getByPeriodIdWithDocuments(int periodId, int orderBy,
+			DocumentEntryCallback callback) throws DataAccessException;
+
+	/**
+	 * Hakee tietokannasta tietyn tilikauden viennit, joiden tositteen
+	 * päivämäärä on välillä <code>startDate</code>..<code>endDate</code>.
+	 * Tositteen numero ja päivämäärä haetaan samalla kyselyllä kuten
+	 * <code>getByPeriodIdWithDocuments</code>-metodissa.
+	 *
+	 * @param periodId tilikauden tunniste
+	 * @param startDate alkamispäivämäärä
+	 * @param endDate päättymispäivämäärä
+	 * @param orderBy <code>ORDER_BY_DOCUMENT_NUMBER</code> tai
+	 * <code>ORDER_BY_DOCUMENT_DATE</code>
+	 * @param callback callback, jolle annetaan tosite ja vienti
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void getByPeriodIdAndDateWithDocuments(int periodId, Date startDate,
+			Date endDate, int orderBy, DocumentEntryCallback callback)
+			throws DataAccessException;
+
+	/**
+	 * Hakee tietokannasta tietyn tilikauden viennit, jotka kohdistuvat
+	 * tiettyyn tiliin. Tositteen numero ja päivämäärä haetaan samalla
+	 * kyselyllä kuten <code>getByPeriodIdWithDocuments</code>-metodissa.
+	 *
+	 * @param periodId tilikauden tunniste
+	 * @param accountId tilin tunniste
+	 * @param orderBy <code>ORDER_BY_DOCUMENT_NUMBER</code> tai
+	 * <code>ORDER_BY_DOCUMENT_DATE</code>
+	 * @param callback callback, jolle annetaan tosite ja vienti
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void getByPeriodIdAndAccountIdWithDocuments(int periodId, int accountId,
+			int orderBy, DocumentEntryCallback callback) throws DataAccessException;
+
 	/**
 	 * Hakee tietokannasta tietyn tilikauden viennit, jotka
 	 * kohdistuvat tiettyyn tiliin. Viennit järjestetään päivämäärän mukaan.
@@ -147,4 +209,23 @@ public interface EntryDAO {
 	public void getByPeriodIdAndNumber(int periodId,
 			int startNumber, int endNumber, DTOCallback<Entry> callback)
 			throws DataAccessException;
+
+	/**
+	 * Laskee tietokannassa vientien summat tileittäin aikaväliltä
+	 * <code>startDate</code>..<code>endDate</code>. Vientejä ei
+	 * siirretä sovellukseen, vaan callbackille annetaan yksi rivi
+	 * jokaista käytettyä tiliä kohden. Jos <code>periodId</code> on
+	 * pienempi kuin 1, summat lasketaan kaikilta tilikausilta.
+	 *
+	 * @param periodId tilikauden tunniste tai -1
+	 * @param startDate alkamispäivämäärä
+	 * @param endDate päättymispäivämäärä
+	 * @param startNumber tositenumerovälin alku tai -1
+	 * @param excludedFlags liput, joista yhdenkin sisältävät viennit jätetään pois
+	 * @param callback callback, jolle annetaan jokaisen käytetyn tilin summat
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void sumByAccount(int periodId, Date startDate, Date endDate,
+			int startNumber, int excludedFlags, DTOCallback<AccountTotal> callback)
+			throws DataAccessException;
 }
@@ -4,6 +4,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import kirjanpito.db.sql.SQLAccountDAO;
+import kirjanpito.db.sql.SQLSearchIndexKt;
 
 /**
  * <code>MySQLAccountDAO</code>:n avulla voidaan lisätä, muokata ja
@@ -22,6 +23,10 @@ public class MySQLAccountDAO extends SQLAccountDAO {
 		return sess.getInsertId();
 	}
 
+	protected SQLSearchIndexKt getSearchIndex() {
+		return new MySQLSearchIndex(sess);
+	}
+
 	protected PreparedStatement getSelectAllQuery() throws SQLException {
 		return sess.prepareStatement("SELECT id, number, name, type, vat_code, vat_percentage, vat_account1_id, vat_account2_id, flags FROM account ORDER BY number");
 	}
@@ -6,12 +6,15 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import kirjanpito.db.AccountDAO;
 import kirjanpito.db.AttachmentDAO;
+import kirjanpito.db.BalanceDAO;
 import kirjanpito.db.COAHeadingDAO;
+import kirjanpito.db.ConnectionPool;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.DatabaseUpgradeUtil;
@@ -23,12 +26,13 @@ import kirjanpito.db.PeriodDAO;
 import kirjanpito.db.ReportStructureDAO;
 import kirjanpito.db.Session;
 import kirjanpito.db.SettingsDAO;
+import kirjanpito.util.AppSettings;
 
 /**
  * @author Tommi Helineva
  */
 public class MySQLDataSource implements DataSource {
-	private Connection conn;
+	private ConnectionPool pool;
 
 	private static final String JDBC_DRIVER_CLASS = "com.mysql.jdbc.Driver";
 
@@ -44,20 +48,38 @@ public class MySQLDataSource implements DataSource {
 		}
 
 		try {
-			conn = DriverManager.getConnection(url, username, password);
-			conn.setAutoCommit(false);
-			upgradeDatabase(conn);
+			/* rewriteBatchedStatements yhdistää eräajon INSERT-kyselyt
+			 * yhdeksi monirivikyselyksi. */
+			Properties props = new Properties();
+			if (username != null) props.setProperty("user", username);
+			if (password != null) props.setProperty("password", password);
+			props.setProperty("rewriteBatchedStatements", "true");
+			pool = new ConnectionPool(() -> DriverManager.getConnection(url, props),
+					ConnectionPool.Config.fromSettings(AppSettings.getInstance()));
+			ConnectionPool.PooledConnection pooled = pool.borrow();
+
+			try {
+				upgradeDatabase(pooled.getConnection());
+			}
+			finally {
+				pool.release(pooled);
+			}
 		}
 		catch (SQLException e) {
+			close();
 			throw new DataAccessException(e.getMessage(), e);
 		}
+		catch (DataAccessException e) {
+			close();
+			throw e;
+		}
 	}
 
 	public void close() {
-		try {
-			conn.close();
+		if (pool != null) {
+			pool.close();
+			pool = null;
 		}
-		catch (SQLException e) { }
 	}
 
 	public void backup() {
@@ -79,6 +101,10 @@ public class MySQLDataSource implements DataSource {
 		return new MySQLEntryDAO((MySQLSession)session);
 	}
 
+	public BalanceDAO getBalanceDAO(Session session) {
+		return new MySQLBalanceDAO((MySQLSession)session);
+	}
+
 	public PeriodDAO getPeriodDAO(Session session) {
 		return new MySQLPeriodDAO((MySQLSession)session);
 	}
@@ -104,7 +130,27 @@ public class MySQLDataSource implements DataSource {
 	}
 
 	public Session openSession() throws DataAccessException {
-		return new MySQLSession(conn);
+		return openSession(false);
+	}
+
+	public Session openReadOnlySession() throws DataAccessException {
+		return openSession(true);
+	}
+
+	/**
+	 * Jokainen istunto lainaa poolista oman yhteyden.
+	 */
+	public boolean hasReaderConnections() {
+		return true;
+	}
+
+	private Session openSession(boolean readOnly) throws DataAccessException {
+		try {
+			return new MySQLSession(pool, pool.borrow(readOnly));
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
 	}
 
 	private static void createTables(Connection conn)
@@ -126,15 +172,37 @@ public class MySQLDataSource implements DataSource {
 		throws DataAccessException {
 
 		int version = 0;
+		Statement stmt;
 
 		try {
-			Statement stmt = conn.createStatement();
+			stmt = conn.createStatement();
 			ResultSet rs = stmt.executeQuery("SELECT version FROM settings");
 
 			if (rs.next()) {
 				version = rs.getInt(1);
 			}
 
+			rs.close();
+		}
+		catch (SQLException e) {
+			try {
+				conn.rollback();
+			}
+			catch (SQLException exc) {
+			}
+
+			/* Tietokanta on tyhjä, jos settings-taulua ei ole. Päivitysten
+			 * virheitä ei käsitellä tässä, jotta olemassa olevaan
+			 * tietokantaan ei yritetä luoda tauluja uudelleen. */
+			if (e.getMessage() != null && e.getMessage().contains("exist")) {
+				createTables(conn);
+				return;
+			}
+
+			throw new DataAccessException(e.getMessage(), e);
+		}
+
+		try {
 			if (version == 1) {
 				upgrade1to2(conn, stmt);
 				version = 2;
@@ -205,6 +273,23 @@ public class MySQLDataSource implements DataSource {
 				version = 15;
 			}
 
+			if (version == 15) {
+				DatabaseUpgradeUtil.upgrade15to16(conn, stmt);
+				version = 16;
+			}
+
+			if (version == 16) {
+				DatabaseUpgradeUtil.upgrade16to17(conn, stmt);
+				version = 17;
+			}
+
+			if (version == 17) {
+				upgrade17to18(conn, stmt);
+				version = 18;
+			}
+
+			DatabaseUpgradeUtil.createMissingIndexes(conn);
+
 			stmt.close();
 		}
 		catch (Exception e) {
@@ -214,11 +299,6 @@ public class MySQLDataSource implements DataSource {
 			catch (SQLException exc) {
 			}
 
-			if (e.getMessage() != null || e.getMessage().contains("exist")) {
-				createTables(conn);
-				return;
-			}
-
 			Logger logger = Logger.getLogger("kirjanpito.db.sqlite");
 			logger.log(Level.SEVERE, "Tietokannan päivittäminen epäonnistui", e);
 			throw new DataAccessException(e.getMessage(), e);
@@ -243,4 +323,15 @@ public class MySQLDataSource implements DataSource {
 		Logger logger = Logger.getLogger("kirjanpito.db.mysql");
 		logger.info("Tietokannan päivittäminen versioon 3 onnistui");
 	}
+
+	private static void upgrade17to18(Connection conn, Statement stmt) throws SQLException {
+		stmt.execute("CREATE TABLE document_search (document_id int NOT NULL, period_id int NOT NULL, search_text text NOT NULL, PRIMARY KEY (document_id), FULLTEXT (search_text)) ENGINE=InnoDB");
+		stmt.execute("CREATE INDEX document_search_period_idx ON document_search (period_id)");
+		new MySQLSearchIndex(new MySQLSession(conn)).rebuild();
+		stmt.executeUpdate("UPDATE settings SET version=18");
+		conn.commit();
+
+		Logger logger = Logger.getLogger("kirjanpito.db.mysql");
+		logger.info("Tietokannan päivittäminen versioon 18 onnistui");
+	}
 }
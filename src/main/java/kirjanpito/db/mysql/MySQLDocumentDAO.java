@@ -3,7 +3,9 @@ package kirjanpito.db.mysql;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import kirjanpito.db.BalanceDAO;
 import kirjanpito.db.sql.SQLDocumentDAO;
+import kirjanpito.db.sql.SQLSearchIndexKt;
 
 /**
  * <code>MySQLDocumentDAO</code>:n avulla voidaan lisätä, muokata ja
@@ -23,6 +25,14 @@ public class MySQLDocumentDAO extends SQLDocumentDAO {
 		return sess.getInsertId();
 	}
 	
+	protected SQLSearchIndexKt getSearchIndex() {
+		return new MySQLSearchIndex(sess);
+	}
+	
+	protected BalanceDAO getBalanceDAO() {
+		return new MySQLBalanceDAO(sess);
+	}
+	
 	protected PreparedStatement getSelectLastDocumentQuery() throws SQLException {
 		return sess.prepareStatement("SELECT number, date FROM document WHERE period_id = ? AND number BETWEEN ? AND ? ORDER BY number DESC LIMIT 1");
 	}
@@ -39,6 +49,10 @@ public class MySQLDocumentDAO extends SQLDocumentDAO {
 		return sess.prepareStatement("SELECT id, number, period_id, date FROM document WHERE period_id = ? AND number BETWEEN ? AND ? ORDER BY number LIMIT ? OFFSET ?");
 	}
 	
+	protected PreparedStatement getSelectLastByPeriodIdAndNumberQuery() throws SQLException {
+		return sess.prepareStatement("SELECT id, number, period_id, date FROM document WHERE period_id = ? AND number BETWEEN ? AND ? ORDER BY number DESC LIMIT ?");
+	}
+	
 	protected PreparedStatement getSelectCountByPeriodIdAndNumberQuery() throws SQLException {
 		return sess.prepareStatement("SELECT count(*) FROM document WHERE period_id = ? AND number BETWEEN ? AND ?");
 	}
@@ -48,11 +62,11 @@ public class MySQLDocumentDAO extends SQLDocumentDAO {
 	}
 	
 	protected PreparedStatement getSelectCountByPeriodIdAndPhraseQuery() throws SQLException {
-		return sess.prepareStatement("SELECT count(*) FROM document d WHERE d.period_id = ? AND (SELECT count(*) FROM entry e WHERE e.document_id = d.id AND e.description LIKE ?) > 0");
+		return sess.prepareStatement("SELECT count(*) FROM document_search s WHERE s.period_id = ? AND MATCH (s.search_text) AGAINST (? IN BOOLEAN MODE)");
 	}
 	
 	protected PreparedStatement getSelectByPeriodIdAndPhraseQuery() throws SQLException {
-		return sess.prepareStatement("SELECT d.id, d.number, d.period_id, d.date FROM document d WHERE d.period_id = ? AND (SELECT count(*) FROM entry e WHERE e.document_id = d.id AND e.description LIKE ?) > 0 ORDER BY d.number LIMIT ? OFFSET ?");
+		return sess.prepareStatement("SELECT d.id, d.number, d.period_id, d.date, count(*) OVER () FROM document_search s INNER JOIN document d ON d.id = s.document_id WHERE s.period_id = ? AND MATCH (s.search_text) AGAINST (? IN BOOLEAN MODE) ORDER BY MATCH (s.search_text) AGAINST (? IN BOOLEAN MODE) DESC, d.number LIMIT ? OFFSET ?");
 	}
 	
 	protected PreparedStatement getSelectByPeriodIdAndDateQuery() throws SQLException {
@@ -63,6 +77,10 @@ public class MySQLDocumentDAO extends SQLDocumentDAO {
 		return sess.prepareStatement("INSERT INTO document (number, period_id, date) VALUES (?, ?, ?)");
 	}
 	
+	protected PreparedStatement getBatchInsertQuery() throws SQLException {
+		return sess.prepareStatement("INSERT INTO document (number, period_id, date) VALUES (?, ?, ?)", "id");
+	}
+	
 	protected PreparedStatement getUpdateQuery() throws SQLException {
 		return sess.prepareStatement("UPDATE document SET number=?, period_id=?, date=? WHERE id = ?");
 	}
@@ -3,7 +3,9 @@ package kirjanpito.db.mysql;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import kirjanpito.db.BalanceDAO;
 import kirjanpito.db.sql.SQLEntryDAO;
+import kirjanpito.db.sql.SQLSearchIndexKt;
 
 /**
  * <code>MySQLEntryDAO</code>:n avulla voidaan lisätä, muokata ja
@@ -23,12 +25,24 @@ public class MySQLEntryDAO extends SQLEntryDAO {
 		return sess.getInsertId();
 	}
 
+	protected SQLSearchIndexKt getSearchIndex() {
+		return new MySQLSearchIndex(sess);
+	}
+
+	protected BalanceDAO getBalanceDAO() {
+		return new MySQLBalanceDAO(sess);
+	}
+
 	protected PreparedStatement getSelectByDocumentIdQuery() throws SQLException {
 		return sess.prepareStatement("SELECT id, document_id, account_id, debit, amount, description, row_number, flags FROM entry WHERE document_id = ? ORDER BY row_number");
 	}
 
-	protected PreparedStatement getSelectByDocumentIdsQuery(String documentIds) throws SQLException {
-		return sess.prepareStatement("SELECT id, document_id, account_id, debit, amount, description, row_number, flags FROM entry WHERE document_id IN (" + documentIds + ") ORDER BY row_number");
+	protected PreparedStatement getSelectByDocumentIdsQuery(String placeholders) throws SQLException {
+		return sess.prepareStatement("SELECT id, document_id, account_id, debit, amount, description, row_number, flags FROM entry WHERE document_id IN (" + placeholders + ") ORDER BY row_number");
+	}
+
+	protected PreparedStatement getSelectByIdsQuery(String placeholders) throws SQLException {
+		return sess.prepareStatement("SELECT id, document_id, account_id, debit, amount, description, row_number, flags FROM entry WHERE id IN (" + placeholders + ")");
 	}
 
 	protected PreparedStatement getSelectByPeriodIdOrderByNumberQuery() throws SQLException {
@@ -47,6 +61,10 @@ public class MySQLEntryDAO extends SQLEntryDAO {
 		return sess.prepareStatement("SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags FROM entry e INNER JOIN account a ON a.id = e.account_id INNER JOIN document d ON d.id = e.document_id WHERE d.period_id = ? ORDER BY a.number, d.date, d.number, e.row_number");
 	}
 
+	protected PreparedStatement getSelectWithDocumentsQuery(String condition, String orderBy) throws SQLException {
+		return sess.prepareStatement("SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags, d.number, d.date FROM entry e INNER JOIN account a ON a.id = e.account_id INNER JOIN document d ON d.id = e.document_id WHERE " + condition + " ORDER BY " + orderBy);
+	}
+
 	protected PreparedStatement getSelectByPeriodIdAndAccountIdOrderByDateQuery() throws SQLException {
 		return sess.prepareStatement("SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags FROM entry e INNER JOIN document d ON d.id = e.document_id WHERE d.period_id = ? AND e.account_id = ? ORDER BY d.date, d.number, e.row_number");
 	}
@@ -71,6 +89,14 @@ public class MySQLEntryDAO extends SQLEntryDAO {
 		return sess.prepareStatement("SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags FROM entry e INNER JOIN document d ON d.id = e.document_id WHERE d.period_id = ? AND d.date >= ? AND d.date <= ? AND d.number >= ? ORDER BY d.number, e.row_number");
 	}
 
+	protected PreparedStatement getSumByDateQuery() throws SQLException {
+		return sess.prepareStatement("SELECT e.account_id, SUM(CASE WHEN e.debit THEN ROUND(e.amount * 100) ELSE 0 END), SUM(CASE WHEN e.debit THEN 0 ELSE ROUND(e.amount * 100) END), COUNT(*) FROM entry e INNER JOIN document d ON d.id = e.document_id WHERE d.date >= ? AND d.date <= ? AND d.number >= ? AND (e.flags & ?) = 0 GROUP BY e.account_id");
+	}
+
+	protected PreparedStatement getSumByPeriodIdAndDateQuery() throws SQLException {
+		return sess.prepareStatement("SELECT e.account_id, SUM(CASE WHEN e.debit THEN ROUND(e.amount * 100) ELSE 0 END), SUM(CASE WHEN e.debit THEN 0 ELSE ROUND(e.amount * 100) END), COUNT(*) FROM entry e INNER JOIN document d ON d.id = e.document_id WHERE d.period_id = ? AND d.date >= ? AND d.date <= ? AND d.number >= ? AND (e.flags & ?) = 0 GROUP BY e.account_id");
+	}
+
 	protected PreparedStatement getSelectByPeriodIdAndNumberQuery() throws SQLException {
 		return sess.prepareStatement("SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags FROM entry e INNER JOIN document d ON d.id = e.document_id WHERE d.period_id = ? AND d.number BETWEEN ? AND ? ORDER BY e.document_id, e.row_number");
 	}
@@ -79,6 +105,10 @@ public class MySQLEntryDAO extends SQLEntryDAO {
 		return sess.prepareStatement("INSERT INTO entry (document_id, account_id, debit, amount, description, row_number, flags) VALUES (?, ?, ?, ?, ?, ?, ?)");
 	}
 
+	protected PreparedStatement getBatchInsertQuery() throws SQLException {
+		return sess.prepareStatement("INSERT INTO entry (document_id, account_id, debit, amount, description, row_number, flags) VALUES (?, ?, ?, ?, ?, ?, ?)", "id");
+	}
+
 	protected PreparedStatement getUpdateQuery() throws SQLException {
 		return sess.prepareStatement("UPDATE entry SET document_id=?, account_id=?, debit=?, amount=?, description=?, row_number=?, flags=? WHERE id = ?");
 	}
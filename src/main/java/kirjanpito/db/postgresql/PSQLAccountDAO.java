@@ -4,6 +4,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import kirjanpito.db.sql.SQLAccountDAO;
+import kirjanpito.db.sql.SQLSearchIndexKt;
 
 /**
  * <code>PSQLAccountDAO</code>:n avulla voidaan lisätä, muokata ja
@@ -22,6 +23,10 @@ public class PSQLAccountDAO extends SQLAccountDAO {
 		return sess.getSequenceValue("account_id_seq");
 	}
 
+	protected SQLSearchIndexKt getSearchIndex() {
+		return new PSQLSearchIndex(sess);
+	}
+
 	protected PreparedStatement getSelectAllQuery() throws SQLException {
 		return sess.prepareStatement("SELECT id, number, name, type, vat_code, vat_percentage, vat_account1_id, vat_account2_id, flags FROM account ORDER BY number");
 	}
@@ -10,7 +10,9 @@ import java.util.logging.Logger;
 
 import kirjanpito.db.AccountDAO;
 import kirjanpito.db.AttachmentDAO;
+import kirjanpito.db.BalanceDAO;
 import kirjanpito.db.COAHeadingDAO;
+import kirjanpito.db.ConnectionPool;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.DatabaseUpgradeUtil;
@@ -22,12 +24,13 @@ import kirjanpito.db.PeriodDAO;
 import kirjanpito.db.ReportStructureDAO;
 import kirjanpito.db.Session;
 import kirjanpito.db.SettingsDAO;
+import kirjanpito.util.AppSettings;
 
 /**
  * @author Tommi Helineva
  */
 public class PSQLDataSource implements DataSource {
-	private Connection conn;
+	private ConnectionPool pool;
 
 	private static final String JDBC_DRIVER_CLASS = "org.postgresql.Driver";
 
@@ -43,20 +46,32 @@ public class PSQLDataSource implements DataSource {
 		}
 
 		try {
-			conn = DriverManager.getConnection(url, username, password);
-			conn.setAutoCommit(false);
-			upgradeDatabase(conn);
+			pool = new ConnectionPool(() -> DriverManager.getConnection(url, username, password),
+					ConnectionPool.Config.fromSettings(AppSettings.getInstance()));
+			ConnectionPool.PooledConnection pooled = pool.borrow();
+
+			try {
+				upgradeDatabase(pooled.getConnection());
+			}
+			finally {
+				pool.release(pooled);
+			}
 		}
 		catch (SQLException e) {
+			close();
 			throw new DataAccessException(e.getMessage(), e);
 		}
+		catch (DataAccessException e) {
+			close();
+			throw e;
+		}
 	}
 
 	public void close() {
-		try {
-			conn.close();
+		if (pool != null) {
+			pool.close();
+			pool = null;
 		}
-		catch (SQLException e) { }
 	}
 
 	public void backup() {
@@ -78,6 +93,10 @@ public class PSQLDataSource implements DataSource {
 		return new PSQLEntryDAO((PSQLSession)session);
 	}
 
+	public BalanceDAO getBalanceDAO(Session session) {
+		return new PSQLBalanceDAO((PSQLSession)session);
+	}
+
 	public PeriodDAO getPeriodDAO(Session session) {
 		return new PSQLPeriodDAO((PSQLSession)session);
 	}
@@ -103,7 +122,27 @@ public class PSQLDataSource implements DataSource {
 	}
 
 	public Session openSession() throws DataAccessException {
-		return new PSQLSession(conn);
+		return openSession(false);
+	}
+
+	public Session openReadOnlySession() throws DataAccessException {
+		return openSession(true);
+	}
+
+	/**
+	 * Jokainen istunto lainaa poolista oman yhteyden.
+	 */
+	public boolean hasReaderConnections() {
+		return true;
+	}
+
+	private Session openSession(boolean readOnly) throws DataAccessException {
+		try {
+			return new PSQLSession(pool, pool.borrow(readOnly));
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
 	}
 
 	private static void createTables(Connection conn)
@@ -125,15 +164,37 @@ public class PSQLDataSource implements DataSource {
 		throws DataAccessException {
 
 		int version = 0;
+		Statement stmt;
 
 		try {
-			Statement stmt = conn.createStatement();
+			stmt = conn.createStatement();
 			ResultSet rs = stmt.executeQuery("SELECT version FROM settings");
 
 			if (rs.next()) {
 				version = rs.getInt(1);
 			}
 
+			rs.close();
+		}
+		catch (SQLException e) {
+			try {
+				conn.rollback();
+			}
+			catch (SQLException exc) {
+			}
+
+			/* Tietokanta on tyhjä, jos settings-taulua ei ole. Päivitysten
+			 * virheitä ei käsitellä tässä, jotta olemassa olevaan
+			 * tietokantaan ei yritetä luoda tauluja uudelleen. */
+			if (e.getMessage() != null && e.getMessage().contains("does not exist")) {
+				createTables(conn);
+				return;
+			}
+
+			throw new DataAccessException(e.getMessage(), e);
+		}
+
+		try {
 			if (version == 1) {
 				upgrade1to2(conn, stmt);
 				version = 2;
@@ -204,6 +265,23 @@ public class PSQLDataSource implements DataSource {
 				version = 15;
 			}
 
+			if (version == 15) {
+				DatabaseUpgradeUtil.upgrade15to16(conn, stmt);
+				version = 16;
+			}
+
+			if (version == 16) {
+				DatabaseUpgradeUtil.upgrade16to17(conn, stmt);
+				version = 17;
+			}
+
+			if (version == 17) {
+				upgrade17to18(conn, stmt);
+				version = 18;
+			}
+
+			DatabaseUpgradeUtil.createMissingIndexes(conn);
+
 			stmt.close();
 		}
 		catch (Exception e) {
@@ -213,11 +291,6 @@ public class PSQLDataSource implements DataSource {
 			catch (SQLException exc) {
 			}
 
-			if (e.getMessage() != null || e.getMessage().contains("does not exist")) {
-				createTables(conn);
-				return;
-			}
-
 			throw new DataAccessException(e.getMessage(), e);
 		}
 	}
@@ -242,4 +315,16 @@ public class PSQLDataSource implements DataSource {
 		Logger logger = Logger.getLogger("kirjanpito.db.postgresql");
 		logger.info("Tietokannan päivittäminen versioon 3 onnistui");
 	}
+
+	private static void upgrade17to18(Connection conn, Statement stmt) throws SQLException {
+		stmt.execute("CREATE TABLE document_search (document_id int4 NOT NULL, period_id int4 NOT NULL, search_text text NOT NULL, PRIMARY KEY (document_id))");
+		stmt.execute("CREATE INDEX document_search_idx ON document_search USING gin (to_tsvector('simple', search_text))");
+		stmt.execute("CREATE INDEX document_search_period_idx ON document_search (period_id)");
+		new PSQLSearchIndex(new PSQLSession(conn)).rebuild();
+		stmt.executeUpdate("UPDATE settings SET version=18");
+		conn.commit();
+
+		Logger logger = Logger.getLogger("kirjanpito.db.postgresql");
+		logger.info("Tietokannan päivittäminen versioon 18 onnistui");
+	}
 }
@@ -7,8 +7,10 @@ import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import kirjanpito.db.ConnectionPool;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.Session;
+import kirjanpito.db.StatementCache;
 
 /**
  * PostgreSQL-tietokantaistunto
@@ -19,9 +21,46 @@ public class PSQLSession implements Session {
 	private static Logger logger = Logger.getLogger("kirjanpito.db.postgresql");
 	
 	protected Connection conn;
+	protected StatementCache statementCache;
+	private ConnectionPool pool;
+	private ConnectionPool.PooledConnection pooled;
 
 	public PSQLSession(Connection conn) {
+		this(conn, null);
+	}
+
+	/**
+	 * Luo istunnon, joka ottaa valmistellut kyselyt välimuistista.
+	 * 
+	 * @param conn tietokantayhteys
+	 * @param statementCache kyselyvälimuisti tai <code>null</code>
+	 */
+	public PSQLSession(Connection conn, StatementCache statementCache) {
 		this.conn = conn;
+		this.statementCache = statementCache;
+	}
+
+	/**
+	 * Luo istunnon altaasta varatulle yhteydelle. Yhteys palautetaan
+	 * altaaseen, kun istunto päätetään.
+	 * 
+	 * @param pool yhteysallas
+	 * @param pooled altaasta varattu yhteys
+	 */
+	public PSQLSession(ConnectionPool pool, ConnectionPool.PooledConnection pooled) {
+		this(pooled.getConnection(), pooled.getStatementCache());
+		this.pool = pool;
+		this.pooled = pooled;
+	}
+	
+	/**
+	 * Palauttaa kyselyvälimuistin, jonka osuma- ja ohituslaskureista
+	 * näkee välimuistin hyödyn.
+	 * 
+	 * @return kyselyvälimuisti tai <code>null</code>
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
 	}
 	
 	public Connection getConnection() {
@@ -46,15 +85,45 @@ public class PSQLSession implements Session {
 		}
 	}
 	
+	/**
+	 * Päättää istunnon. Altaasta varattu yhteys palautetaan altaaseen,
+	 * ja keskeneräinen transaktio perutaan.
+	 */
 	public void close() {
+		if (pooled != null) {
+			pool.release(pooled);
+			pooled = null;
+		}
 	}
 	
 	public PreparedStatement prepareStatement(String sql) throws SQLException
 	{
 		logger.log(Level.FINER, "Suoritetaan tietokantakysely: " + sql);
+		
+		if (statementCache != null) {
+			return statementCache.prepareStatement(sql);
+		}
+		
 		return conn.prepareStatement(sql);
 	}
 	
+	/**
+	 * Valmistelee INSERT-kyselyn, jonka lisäämien rivien tunnisteet
+	 * voidaan hakea <code>getGeneratedKeys</code>-metodilla myös
+	 * eräajon jälkeen.
+	 * 
+	 * @param sql INSERT-kysely
+	 * @param keyColumn tunnistesarakkeen nimi
+	 * @return valmisteltu kysely
+	 * @throws SQLException jos kyselyn valmisteleminen epäonnistuu
+	 */
+	public PreparedStatement prepareStatement(String sql, String keyColumn)
+		throws SQLException
+	{
+		logger.log(Level.FINER, "Suoritetaan tietokantakysely: " + sql);
+		return conn.prepareStatement(sql, new String[] { keyColumn });
+	}
+	
 	/**
 	 * Hakee tietokannasta sekvenssin <code>name</code> nykyisen arvon.
 	 * 
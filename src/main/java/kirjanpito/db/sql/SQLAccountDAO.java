@@ -71,7 +71,14 @@ public abstract class SQLAccountDAO implements AccountDAO {
 				executeInsertQuery(account);
 			}
 			else {
+				/* Tilin numero ja nimi ovat mukana tositteiden hakuteksteissä. */
+				SQLSearchIndexKt searchIndex = getSearchIndex();
+				boolean renamed = searchIndex.isRenamed(account);
 				executeUpdateQuery(account);
+
+				if (renamed) {
+					searchIndex.updateByAccountId(account.getId());
+				}
 			}
 		}
 		catch (SQLException e) {
@@ -109,6 +116,14 @@ public abstract class SQLAccountDAO implements AccountDAO {
 	 */
 	protected abstract int getGeneratedKey() throws SQLException;
 
+	/**
+	 * Palauttaa hakuhakemiston, jota päivitetään tilin numeron tai
+	 * nimen muuttuessa.
+	 *
+	 * @return hakuhakemisto
+	 */
+	protected abstract SQLSearchIndexKt getSearchIndex();
+
 	/**
 	 * Päivittää tilin tiedot tietokantaan.
 	 *
@@ -4,9 +4,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import kirjanpito.db.BalanceDAO;
+import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.Document;
 import kirjanpito.db.DocumentDAO;
@@ -358,25 +361,35 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	}
 	
 	/**
-	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa
-	 * tulosten lukumäärän.
+	 * Hakee tietokannasta numerovälin <code>startNumber</code>..<code>endNumber</code>
+	 * viimeiset <code>limit</code> tositetta tietyltä tilikaudelta.
+	 * Tositteet palautetaan numerojärjestyksessä.
 	 * 
 	 * @param periodId tilikauden tunniste
-	 * @param q hakusana
-	 * @return tulosten lukumäärä
+	 * @param startNumber tositenumerovälin alku
+	 * @param endNumber tositenumerovälin loppu
+	 * @param limit tositteiden enimmäismäärä
+	 * @return tositteet
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
 	 */
-	public int getCountByPeriodIdAndPhrase(int periodId, String q) throws DataAccessException {
-		int count = 0;
+	public List<Document> getLastByPeriodIdAndNumber(int periodId,
+			int startNumber, int endNumber, int limit)
+			throws DataAccessException
+	{
+		ArrayList<Document> list;
 		ResultSet rs;
 		
 		try {
-			PreparedStatement stmt = getSelectCountByPeriodIdAndPhraseQuery();
+			PreparedStatement stmt = getSelectLastByPeriodIdAndNumberQuery();
 			stmt.setInt(1, periodId);
-			stmt.setString(2, escapePhrase(q));
+			stmt.setInt(2, startNumber);
+			stmt.setInt(3, endNumber);
+			stmt.setInt(4, limit);
 			rs = stmt.executeQuery();
+			list = new ArrayList<Document>();
 			
-			if (rs.next()) {
-				count = rs.getInt(1);
+			while (rs.next()) {
+				list.add(createObject(rs));
 			}
 			
 			rs.close();
@@ -386,12 +399,78 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 			throw new DataAccessException(e.getMessage(), e);
 		}
 		
+		Collections.reverse(list);
+		return list;
+	}
+	
+	/**
+	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan tositteet tietyltä
+	 * numeroväliltä ja tietyltä tilikaudelta laskevassa numerojärjestyksessä.
+	 * Kyselyn parametrit ovat tilikauden tunniste, numerovälin alku,
+	 * numerovälin loppu ja LIMIT.
+	 * 
+	 * @return SELECT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getSelectLastByPeriodIdAndNumberQuery() throws SQLException;
+	
+	/**
+	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa
+	 * tulosten lukumäärän. Jos hakemistosta ei löydy mitään, tositteita
+	 * etsitään hakutekstin alimerkkijonona.
+	 * 
+	 * @param periodId tilikauden tunniste
+	 * @param q hakusana
+	 * @return tulosten lukumäärä
+	 */
+	public int getCountByPeriodIdAndPhrase(int periodId, String q) throws DataAccessException {
+		SQLSearchIndexKt searchIndex = getSearchIndex();
+		String query = searchIndex.createMatchQuery(q);
+		
+		if (query == null) {
+			return 0;
+		}
+		
+		try {
+			if (searchIndex.isIndexed(q)) {
+				int count = getIndexCount(periodId, query);
+				
+				if (count > 0) {
+					return count;
+				}
+			}
+			
+			return searchIndex.getCountBySubstring(periodId, q);
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Laskee tositteet, jotka löytyvät hakemistosta hakukyselyllä
+	 * <code>query</code>.
+	 */
+	private int getIndexCount(int periodId, String query) throws SQLException {
+		int count = 0;
+		PreparedStatement stmt = getSelectCountByPeriodIdAndPhraseQuery();
+		stmt.setInt(1, periodId);
+		stmt.setString(2, query);
+		ResultSet rs = stmt.executeQuery();
+		
+		if (rs.next()) {
+			count = rs.getInt(1);
+		}
+		
+		rs.close();
+		stmt.close();
 		return count;
 	}
 	
 	/**
-	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan tositteet, joiden
-	 * vienneistä löytyy tietty merkkijono.
+	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan niiden tositteiden
+	 * lukumäärä, joiden hakutekstistä löytyvät hakusanat. Kyselyn
+	 * parametrit ovat tilikauden tunniste ja hakukysely.
 	 * 
 	 * @return SELECT-kysely
 	 * @throws SQLException jos kyselyn luominen epäonnistuu
@@ -400,7 +479,7 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	
 	/**
 	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa
-	 * löytyneet tositteet
+	 * löytyneet tositteet hakusanaa parhaiten vastaavat ensin.
 	 * 
 	 * @param periodId tilikauden tunniste
 	 * @param q hakusana
@@ -411,47 +490,88 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	public List<Document> getByPeriodIdAndPhrase(int periodId,
 			String q, int offset, int limit) throws DataAccessException
 	{
-		ArrayList<Document> list;
+		final ArrayList<Document> list = new ArrayList<Document>();
+		
+		searchByPeriodIdAndPhrase(periodId, q, offset, limit, new DTOCallback<Document>() {
+			public void process(Document obj) {
+				list.add(obj);
+			}
+		});
+		
+		return list;
+	}
+	
+	/**
+	 * Etsii tositteita hakusanalla <code>q</code> ja palauttaa sekä
+	 * sivullisen tuloksia että tulosten kokonaismäärän yhdellä
+	 * kyselyllä. Jos hakemistosta ei löydy mitään, tositteita etsitään
+	 * hakutekstin alimerkkijonona tositenumeron mukaan järjestettynä.
+	 * 
+	 * @param periodId tilikauden tunniste
+	 * @param q hakusana
+	 * @param offset ensimmäisen palautettavan tuloksen järjestysnumero
+	 * @param limit palautettavien tulosten enimmäismäärä
+	 * @param callback callback, jolle tositteet annetaan
+	 * @return tulosten kokonaismäärä tai 0, jos sivulla ei ole tuloksia
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public int searchByPeriodIdAndPhrase(int periodId, String q,
+			int offset, int limit, DTOCallback<Document> callback)
+			throws DataAccessException
+	{
+		SQLSearchIndexKt searchIndex = getSearchIndex();
+		String query = searchIndex.createMatchQuery(q);
+		int count = 0;
 		ResultSet rs;
 		
+		if (query == null) {
+			return 0;
+		}
+		
 		try {
-			PreparedStatement stmt = getSelectByPeriodIdAndPhraseQuery();
-			stmt.setInt(1, periodId);
-			stmt.setString(2, escapePhrase(q));
-			stmt.setInt(3, limit);
-			stmt.setInt(4, offset);
-			rs = stmt.executeQuery();
-			list = new ArrayList<Document>();
-			
-			while (rs.next()) {
-				list.add(createObject(rs));
+			if (searchIndex.isIndexed(q)) {
+				PreparedStatement stmt = getSelectByPeriodIdAndPhraseQuery();
+				stmt.setInt(1, periodId);
+				stmt.setString(2, query);
+				stmt.setString(3, query);
+				stmt.setInt(4, limit);
+				stmt.setInt(5, offset);
+				rs = stmt.executeQuery();
+				
+				while (rs.next()) {
+					callback.process(createObject(rs));
+					count = rs.getInt(5);
+				}
+				
+				rs.close();
+				stmt.close();
+				
+				/* Tyhjä sivu voi olla myös tulosten lopun jälkeen,
+				 * jolloin alimerkkijonohakuun ei siirrytä. */
+				if (count > 0 || (offset > 0 && getIndexCount(periodId, query) > 0)) {
+					return count;
+				}
 			}
 			
-			rs.close();
-			stmt.close();
+			return searchIndex.searchBySubstring(periodId, q, offset, limit, callback);
 		}
 		catch (SQLException e) {
 			throw new DataAccessException(e.getMessage(), e);
 		}
-		
-		return list;
 	}
 	
 	/**
 	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan tositteet, joiden
-	 * vienneistä löytyy tietty merkkijono.
+	 * hakutekstistä löytyvät hakusanat, paremmuusjärjestyksessä.
+	 * Kyselyn parametrit ovat tilikauden tunniste, hakukysely
+	 * hakuehtoa varten, hakukysely järjestystä varten, LIMIT ja OFFSET.
+	 * Viidentenä sarakkeena palautetaan tulosten kokonaismäärä.
 	 * 
 	 * @return SELECT-kysely
 	 * @throws SQLException jos kyselyn luominen epäonnistuu
 	 */
 	protected abstract PreparedStatement getSelectByPeriodIdAndPhraseQuery() throws SQLException;
 	
-	private String escapePhrase(String q) {
-		q = q.replace("%", "\\%").replace("_", "\\_").replace("*", "%");
-		if (!q.endsWith("%")) q += "%";
-		return q;
-	}
-	
 	/**
 	 * Hakee tietokannasta tositteet tietyltä aikaväliltä.
 	 * 
@@ -510,7 +630,58 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 				executeInsertQuery(document);
 			}
 			else {
+				/* Jos päivämäärä tai tilikausi muuttuu, tositteen viennit
+				 * siirretään saldotaulussa uudelle päivälle. */
+				BalanceDAO balanceDAO = getBalanceDAO();
+				boolean moved = balanceDAO.isMoved(document);
+
+				if (moved) {
+					balanceDAO.removeDocument(document.getId());
+				}
+
 				executeUpdateQuery(document);
+
+				if (moved) {
+					balanceDAO.addDocument(document.getId());
+				}
+			}
+
+			getSearchIndex().update(document.getId());
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Tallentaa useamman tositteen tiedot tietokantaan. Uudet
+	 * tositteet lisätään yhdellä eräajolla.
+	 * 
+	 * @param documents tallennettavat tositteet
+	 * @throws DataAccessException jos tallentaminen epäonnistuu
+	 */
+	public void saveAll(List<Document> documents) throws DataAccessException {
+		ArrayList<Document> inserted = new ArrayList<Document>();
+
+		for (Document document : documents) {
+			if (document.getId() == 0) {
+				inserted.add(document);
+			}
+			else {
+				save(document);
+			}
+		}
+
+		if (inserted.isEmpty()) {
+			return;
+		}
+
+		try {
+			executeBatchInsertQuery(inserted);
+			SQLSearchIndexKt searchIndex = getSearchIndex();
+
+			for (Document document : inserted) {
+				searchIndex.update(document.getId());
 			}
 		}
 		catch (SQLException e) {
@@ -540,6 +711,47 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	 */
 	protected abstract PreparedStatement getInsertQuery() throws SQLException;
 	
+	/**
+	 * Lisää tositteet tietokantaan yhdellä eräajolla ja asettaa
+	 * tositteiden tunnisteet <code>getGeneratedKeys</code>-metodin
+	 * palauttamista arvoista.
+	 * 
+	 * @param objs tallennettavat tositteet
+	 * @throws SQLException jos tallentaminen epäonnistuu
+	 */
+	protected void executeBatchInsertQuery(List<Document> objs) throws SQLException {
+		PreparedStatement stmt = getBatchInsertQuery();
+
+		for (Document obj : objs) {
+			setValuesToStatement(stmt, obj);
+			stmt.addBatch();
+		}
+
+		stmt.executeBatch();
+		ResultSet rs = stmt.getGeneratedKeys();
+
+		for (Document obj : objs) {
+			if (!rs.next()) {
+				throw new SQLException("Generated key missing for batch insert");
+			}
+
+			obj.setId(rs.getInt(1));
+		}
+
+		rs.close();
+		stmt.close();
+	}
+	
+	/**
+	 * Palauttaa INSERT-kyselyn, jonka avulla rivit lisätään eräajona.
+	 * Kysely on valmisteltava niin, että lisättyjen rivien tunnisteet
+	 * voidaan hakea <code>getGeneratedKeys</code>-metodilla.
+	 * 
+	 * @return INSERT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getBatchInsertQuery() throws SQLException;
+	
 	/**
 	 * Palauttaa tietokantaan lisätyn tositteen tunnisteen.
 	 *
@@ -548,6 +760,22 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	 */
 	protected abstract int getGeneratedKey() throws SQLException;
 
+	/**
+	 * Palauttaa <code>BalanceDAO</code>-olion, jonka saldot siirretään
+	 * tositteen päivämäärän muuttuessa.
+	 *
+	 * @return <code>BalanceDAO</code>-olio
+	 */
+	protected abstract BalanceDAO getBalanceDAO();
+
+	/**
+	 * Palauttaa hakuhakemiston, jota päivitetään tositteiden
+	 * tallentamisen ja poistamisen yhteydessä.
+	 *
+	 * @return hakuhakemisto
+	 */
+	protected abstract SQLSearchIndexKt getSearchIndex();
+
 	/**
 	 * Päivittää tositteen tiedot tietokantaan.
 	 * 
@@ -578,6 +806,7 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	 */
 	public void delete(int documentId) throws DataAccessException {
 		try {
+			getSearchIndex().delete(documentId);
 			PreparedStatement stmt = getDeleteQuery();
 			stmt.setInt(1, documentId);
 			stmt.executeUpdate();
@@ -605,6 +834,7 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 	 */
 	public void deleteByPeriodId(int periodId) throws DataAccessException {
 		try {
+			getSearchIndex().deleteByPeriodId(periodId);
 			PreparedStatement stmt = getDeleteByPeriodIdQuery();
 			stmt.setInt(1, periodId);
 			stmt.executeUpdate();
@@ -643,6 +873,8 @@ public abstract class SQLDocumentDAO implements DocumentDAO {
 			stmt.setInt(4, endNumber);
 			stmt.executeUpdate();
 			stmt.close();
+			getSearchIndex().updateByPeriodIdAndNumber(periodId,
+					startNumber + shift, endNumber + shift);
 		}
 		catch (SQLException e) {
 			throw new DataAccessException(e.getMessage(), e);
@@ -1,15 +1,20 @@
 package kirjanpito.db.sql;
 
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 
+import kirjanpito.db.AccountTotal;
+import kirjanpito.db.BalanceDAO;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.Document;
+import kirjanpito.db.DocumentEntryCallback;
 import kirjanpito.db.Entry;
 import kirjanpito.db.EntryDAO;
 
@@ -56,45 +61,80 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	protected abstract PreparedStatement getSelectByDocumentIdQuery()
 		throws SQLException;
 
+	/** Yhdellä kyselyllä haettavien tositteiden enimmäismäärä. */
+	private static final int MAX_DOCUMENT_IDS = 512;
+
 	public void getByDocuments(List<Document> documents, DTOCallback<Entry> callback)
 		throws DataAccessException {
 
 		ResultSet rs;
-		StringBuilder sb = new StringBuilder();
-
-		for (Document document : documents) {
-			if (sb.length() > 0) sb.append(',');
-			sb.append(document.getId());
-		}
 
 		try {
-			PreparedStatement stmt = getSelectByDocumentIdsQuery(
-					sb.toString());
+			for (int start = 0; start < documents.size(); start += MAX_DOCUMENT_IDS) {
+				List<Document> part = documents.subList(start,
+						Math.min(documents.size(), start + MAX_DOCUMENT_IDS));
+				int parameterCount = getParameterCount(part.size());
+				StringBuilder sb = new StringBuilder();
 
-			rs = stmt.executeQuery();
+				for (int i = 0; i < parameterCount; i++) {
+					if (i > 0) sb.append(',');
+					sb.append('?');
+				}
 
-			while (rs.next()) {
-				callback.process(createObject(rs));
-			}
+				PreparedStatement stmt = getSelectByDocumentIdsQuery(
+						sb.toString());
 
-			rs.close();
-			stmt.close();
+				/* Ylimääräisiin parametreihin asetetaan viimeinen tunniste. */
+				for (int i = 0; i < parameterCount; i++) {
+					stmt.setInt(i + 1, part.get(Math.min(i, part.size() - 1)).getId());
+				}
+
+				rs = stmt.executeQuery();
+
+				while (rs.next()) {
+					callback.process(createObject(rs));
+				}
+
+				rs.close();
+				stmt.close();
+			}
 		}
 		catch (SQLException e) {
 			throw new DataAccessException(e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Palauttaa IN-listan parametrien lukumäärän. Lukumäärä pyöristetään
+	 * ylöspäin kahden potenssiin, jotta eri kokoisille tositejoukoille
+	 * käytetään vain muutamaa eri kyselyä ja valmistellut kyselyt
+	 * voidaan käyttää uudelleen.
+	 *
+	 * @param idCount tunnisteiden lukumäärä
+	 * @return parametrien lukumäärä
+	 */
+	protected static int getParameterCount(int idCount) {
+		int count = 8;
+
+		while (count < idCount) {
+			count *= 2;
+		}
+
+		return count;
+	}
+
 	/**
 	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan tiettyihin tositteisiin
-	 * kuuluvat viennit.
+	 * kuuluvat viennit. Kyselyn IN-listaan sijoitetaan
+	 * <code>placeholders</code>, jossa on yksi parametri kutakin
+	 * tositteen tunnistetta kohden.
 	 *
-	 * @param documentIds lista tositteiden tunnisteista
+	 * @param placeholders pilkuilla erotetut parametrit
 	 * @return SELECT-kysely
 	 * @throws SQLException jos kyselyn luominen epäonnistuu
 	 */
 	protected abstract PreparedStatement getSelectByDocumentIdsQuery(
-		String documentIds) throws SQLException;
+		String placeholders) throws SQLException;
 
 	public void getByPeriodId(int periodId, int orderBy,
 			DTOCallback<Entry> callback) throws DataAccessException
@@ -128,6 +168,131 @@ public abstract class SQLEntryDAO implements EntryDAO {
 		}
 	}
 
+	public void getByPeriodIdWithDocuments(int periodId, int orderBy,
+			DocumentEntryCallback callback) throws DataAccessException
+	{
+		try {
+			PreparedStatement stmt = getSelectWithDocumentsQuery(
+					"d.period_id = ?", getOrderByClause(orderBy));
+			stmt.setInt(1, periodId);
+			processWithDocuments(stmt, periodId, callback);
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+
+	public void getByPeriodIdAndDateWithDocuments(int periodId, Date startDate,
+			Date endDate, int orderBy, DocumentEntryCallback callback)
+			throws DataAccessException
+	{
+		try {
+			PreparedStatement stmt = getSelectWithDocumentsQuery(
+					"d.period_id = ? AND d.date >= ? AND d.date <= ?",
+					getOrderByClause(orderBy));
+			stmt.setInt(1, periodId);
+			stmt.setTimestamp(2, new java.sql.Timestamp(startDate.getTime()));
+			stmt.setTimestamp(3, new java.sql.Timestamp(endDate.getTime()));
+			processWithDocuments(stmt, periodId, callback);
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+
+	public void getByPeriodIdAndAccountIdWithDocuments(int periodId, int accountId,
+			int orderBy, DocumentEntryCallback callback) throws DataAccessException
+	{
+		try {
+			PreparedStatement stmt = getSelectWithDocumentsQuery(
+					"d.period_id = ? AND e.account_id = ?", getOrderByClause(orderBy));
+			stmt.setInt(1, periodId);
+			stmt.setInt(2, accountId);
+			processWithDocuments(stmt, periodId, callback);
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Suorittaa <code>getSelectWithDocumentsQuery</code>-kyselyn ja antaa
+	 * viennit callbackille. Saman tositteen peräkkäisille vienneille
+	 * annetaan sama <code>Document</code>-olio. Kysely suljetaan lopuksi.
+	 *
+	 * @param stmt kysely, jonka parametrit on asetettu
+	 * @param periodId tilikauden tunniste
+	 * @param callback callback, jolle annetaan tosite ja vienti
+	 * @throws SQLException jos kyselyn suorittaminen epäonnistuu
+	 */
+	private void processWithDocuments(PreparedStatement stmt, int periodId,
+			DocumentEntryCallback callback) throws SQLException
+	{
+		ResultSet rs = null;
+
+		try {
+			Document document = null;
+			rs = stmt.executeQuery();
+
+			while (rs.next()) {
+				Entry entry = createObject(rs);
+
+				if (document == null || document.getId() != entry.getDocumentId()) {
+					document = new Document();
+					document.setId(entry.getDocumentId());
+					document.setNumber(rs.getInt(9));
+					document.setPeriodId(periodId);
+					document.setDate(rs.getDate(10));
+				}
+
+				callback.process(document, entry);
+			}
+		}
+		finally {
+			if (rs != null) rs.close();
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Palauttaa ORDER BY -lausekkeen, joka vastaa järjestystä
+	 * <code>orderBy</code>. Taulujen aliakset ovat samat kuin
+	 * <code>getSelectWithDocumentsQuery</code>-kyselyssä.
+	 *
+	 * @param orderBy järjestys
+	 * @return ORDER BY -lauseke ilman avainsanoja
+	 */
+	protected static String getOrderByClause(int orderBy) {
+		switch (orderBy) {
+		case ORDER_BY_DOCUMENT_NUMBER:
+			return "d.number, e.row_number";
+		case ORDER_BY_DOCUMENT_DATE:
+			return "d.date, d.number, e.row_number";
+		case ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER:
+			return "a.number, d.number, e.row_number";
+		case ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_DATE:
+			return "a.number, d.date, d.number, e.row_number";
+		default:
+			throw new IllegalArgumentException("Invalid orderBy: " + orderBy);
+		}
+	}
+
+	/**
+	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan ehdon
+	 * <code>condition</code> täyttävät viennit ja niiden tositteiden
+	 * numerot ja päivämäärät. Viennin sarakkeiden jälkeen ovat
+	 * tositenumero ja päivämäärä. Viennit (e), tilit (a) ja tositteet (d)
+	 * yhdistetään, ja rivit järjestetään lausekkeen <code>orderBy</code>
+	 * mukaan.
+	 *
+	 * @param condition WHERE-ehto
+	 * @param orderBy ORDER BY -lauseke
+	 * @return SELECT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getSelectWithDocumentsQuery(
+		String condition, String orderBy) throws SQLException;
+
 	/**
 	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan kaikki tietyn
 	 * tilikauden viennit. Rivit järjestetään tositenumeron mukaan.
@@ -301,6 +466,67 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	 */
 	protected abstract PreparedStatement getSelectByPeriodIdAndDateAndNumberQuery() throws SQLException;
 
+	public void sumByAccount(int periodId, Date startDate, Date endDate,
+			int startNumber, int excludedFlags, DTOCallback<AccountTotal> callback)
+			throws DataAccessException {
+
+		ResultSet rs;
+
+		try {
+			PreparedStatement stmt;
+			int index = 1;
+
+			if (periodId > 0) {
+				stmt = getSumByPeriodIdAndDateQuery();
+				stmt.setInt(index++, periodId);
+			}
+			else {
+				stmt = getSumByDateQuery();
+			}
+
+			stmt.setTimestamp(index++, new java.sql.Timestamp(startDate.getTime()));
+			stmt.setTimestamp(index++, new java.sql.Timestamp(endDate.getTime()));
+			stmt.setInt(index++, startNumber);
+			stmt.setInt(index++, excludedFlags);
+			rs = stmt.executeQuery();
+
+			while (rs.next()) {
+				callback.process(new AccountTotal(rs.getInt(1),
+						BigDecimal.valueOf(rs.getLong(2), 2),
+						BigDecimal.valueOf(rs.getLong(3), 2), rs.getInt(4)));
+			}
+
+			rs.close();
+			stmt.close();
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Palauttaa SELECT-kyselyn, jonka avulla lasketaan vientien summat
+	 * tileittäin tietyltä aikaväliltä. Kyselyssä on neljä parametria:
+	 * 1. alkamispäivämäärä, 2. päättymispäivämäärä, 3. tositenumerovälin
+	 * alku ja 4. pois jätettävät liput. Sarakkeet ovat tilin tunniste,
+	 * debet-summa sentteinä, kredit-summa sentteinä ja vientien lukumäärä.
+	 *
+	 * @return SELECT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getSumByDateQuery() throws SQLException;
+
+	/**
+	 * Palauttaa SELECT-kyselyn, jonka avulla lasketaan tietyn tilikauden
+	 * vientien summat tileittäin. Parametrit ovat samat kuin
+	 * <code>getSumByDateQuery</code>-kyselyssä, mutta ensimmäisenä
+	 * parametrina on tilikauden tunniste.
+	 *
+	 * @return SELECT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getSumByPeriodIdAndDateQuery() throws SQLException;
+
 	public void getByPeriodIdAndNumber(int periodId,
 			int startNumber, int endNumber, DTOCallback<Entry> callback)
 			throws DataAccessException
@@ -342,19 +568,150 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	 * @throws DataAccessException jos tallentaminen epäonnistuu
 	 */
 	public void save(Entry obj) throws DataAccessException {
+		BalanceDAO balanceDAO = getBalanceDAO();
+		SQLSearchIndexKt searchIndex = getSearchIndex();
+
 		try {
 			if (obj.getId() == 0) {
 				executeInsertQuery(obj);
 			}
 			else {
+				int prevDocumentId = searchIndex.getDocumentIdByEntryId(obj.getId());
+				balanceDAO.removeEntry(obj.getId());
 				executeUpdateQuery(obj);
+
+				if (prevDocumentId != 0 && prevDocumentId != obj.getDocumentId()) {
+					searchIndex.update(prevDocumentId);
+				}
 			}
+
+			searchIndex.update(obj.getDocumentId());
 		}
 		catch (SQLException e) {
 			throw new DataAccessException(e.getMessage(), e);
 		}
+
+		balanceDAO.addEntry(obj);
 	}
 
+	/**
+	 * Tallentaa useamman viennin tiedot tietokantaan. Uudet viennit
+	 * lisätään ja muutetut päivitetään eräajoina, tilien summat
+	 * päivitetään yhteenlaskettuina ja tositteiden hakutekstit
+	 * päivitetään vasta lopuksi kerran tositetta kohden.
+	 *
+	 * @param entries tallennettavat viennit
+	 * @throws DataAccessException jos tallentaminen epäonnistuu
+	 */
+	public void saveAll(List<Entry> entries) throws DataAccessException {
+		SQLSearchIndexKt searchIndex = getSearchIndex();
+		ArrayList<Entry> inserted = new ArrayList<Entry>();
+		ArrayList<Entry> updated = new ArrayList<Entry>();
+		LinkedHashSet<Integer> documentIds = new LinkedHashSet<Integer>();
+		List<Entry> stored;
+
+		for (Entry entry : entries) {
+			if (entry.getId() == 0) {
+				inserted.add(entry);
+			}
+			else {
+				updated.add(entry);
+			}
+		}
+
+		try {
+			stored = getStoredEntries(updated);
+
+			for (Entry entry : stored) {
+				documentIds.add(entry.getDocumentId());
+			}
+
+			if (!updated.isEmpty()) {
+				executeBatchUpdateQuery(updated);
+			}
+
+			if (!inserted.isEmpty()) {
+				executeBatchInsertQuery(inserted);
+			}
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+
+		getBalanceDAO().updateEntries(stored, entries);
+
+		for (Entry entry : entries) {
+			documentIds.add(entry.getDocumentId());
+		}
+
+		try {
+			for (int documentId : documentIds) {
+				searchIndex.update(documentId);
+			}
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Hakee vientien tietokantaan tallennetut tiedot, jotta niiden
+	 * vanhat summat voidaan vähentää ennen päivittämistä.
+	 *
+	 * @param entries viennit, joiden tiedot haetaan
+	 * @return tallennetut viennit
+	 * @throws SQLException jos hakeminen epäonnistuu
+	 */
+	private List<Entry> getStoredEntries(List<Entry> entries) throws SQLException {
+		ArrayList<Entry> list = new ArrayList<Entry>();
+
+		for (int start = 0; start < entries.size(); start += MAX_DOCUMENT_IDS) {
+			List<Entry> part = entries.subList(start,
+					Math.min(entries.size(), start + MAX_DOCUMENT_IDS));
+			int parameterCount = getParameterCount(part.size());
+			StringBuilder sb = new StringBuilder();
+
+			for (int i = 0; i < parameterCount; i++) {
+				if (i > 0) sb.append(',');
+				sb.append('?');
+			}
+
+			PreparedStatement stmt = getSelectByIdsQuery(sb.toString());
+			ResultSet rs = null;
+
+			try {
+				/* Ylimääräisiin parametreihin asetetaan viimeinen tunniste. */
+				for (int i = 0; i < parameterCount; i++) {
+					stmt.setInt(i + 1, part.get(Math.min(i, part.size() - 1)).getId());
+				}
+
+				rs = stmt.executeQuery();
+
+				while (rs.next()) {
+					list.add(createObject(rs));
+				}
+			}
+			finally {
+				if (rs != null) rs.close();
+				stmt.close();
+			}
+		}
+
+		return list;
+	}
+
+	/**
+	 * Palauttaa SELECT-kyselyn, jonka avulla haetaan viennit tunnisteiden
+	 * perusteella. Kyselyn IN-listaan sijoitetaan <code>placeholders</code>,
+	 * jossa on yksi parametri kutakin viennin tunnistetta kohden.
+	 *
+	 * @param placeholders IN-listan parametrit
+	 * @return SELECT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getSelectByIdsQuery(String placeholders)
+		throws SQLException;
+
 	/**
 	 * Lisää viennin tiedot tietokantaan.
 	 *
@@ -377,6 +734,51 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	 */
 	protected abstract PreparedStatement getInsertQuery() throws SQLException;
 
+	/**
+	 * Lisää viennit tietokantaan yhdellä eräajolla ja asettaa
+	 * vientien tunnisteet <code>getGeneratedKeys</code>-metodin
+	 * palauttamista arvoista.
+	 *
+	 * @param objs tallennettavat viennit
+	 * @throws SQLException jos tallentaminen epäonnistuu
+	 */
+	protected void executeBatchInsertQuery(List<Entry> objs) throws SQLException {
+		PreparedStatement stmt = getBatchInsertQuery();
+		ResultSet rs = null;
+
+		try {
+			for (Entry obj : objs) {
+				setValuesToStatement(stmt, obj);
+				stmt.addBatch();
+			}
+
+			stmt.executeBatch();
+			rs = stmt.getGeneratedKeys();
+
+			for (Entry obj : objs) {
+				if (!rs.next()) {
+					throw new SQLException("Generated key missing for batch insert");
+				}
+
+				obj.setId(rs.getInt(1));
+			}
+		}
+		finally {
+			if (rs != null) rs.close();
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Palauttaa INSERT-kyselyn, jonka avulla rivit lisätään eräajona.
+	 * Kysely on valmisteltava niin, että lisättyjen rivien tunnisteet
+	 * voidaan hakea <code>getGeneratedKeys</code>-metodilla.
+	 *
+	 * @return INSERT-kysely
+	 * @throws SQLException jos kyselyn luominen epäonnistuu
+	 */
+	protected abstract PreparedStatement getBatchInsertQuery() throws SQLException;
+
 	/**
 	 * Palauttaa tietokantaan lisätyn viennin tunnisteen.
 	 *
@@ -385,6 +787,22 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	 */
 	protected abstract int getGeneratedKey() throws SQLException;
 
+	/**
+	 * Palauttaa <code>BalanceDAO</code>-olion, jonka saldoja päivitetään
+	 * vientien tallentamisen ja poistamisen yhteydessä.
+	 *
+	 * @return <code>BalanceDAO</code>-olio
+	 */
+	protected abstract BalanceDAO getBalanceDAO();
+
+	/**
+	 * Palauttaa hakuhakemiston, johon viennin tositteen hakuteksti
+	 * päivitetään.
+	 *
+	 * @return hakuhakemisto
+	 */
+	protected abstract SQLSearchIndexKt getSearchIndex();
+
 	/**
 	 * Päivittää viennin tiedot tietokantaan.
 	 *
@@ -399,6 +817,29 @@ public abstract class SQLEntryDAO implements EntryDAO {
 		stmt.close();
 	}
 
+	/**
+	 * Päivittää vientien tiedot tietokantaan yhdellä eräajolla.
+	 *
+	 * @param objs tallennettavat viennit
+	 * @throws SQLException jos kyselyn suorittaminen epäonnistuu
+	 */
+	protected void executeBatchUpdateQuery(List<Entry> objs) throws SQLException {
+		PreparedStatement stmt = getUpdateQuery();
+
+		try {
+			for (Entry obj : objs) {
+				setValuesToStatement(stmt, obj);
+				stmt.setInt(8, obj.getId());
+				stmt.addBatch();
+			}
+
+			stmt.executeBatch();
+		}
+		finally {
+			stmt.close();
+		}
+	}
+
 	/**
 	 * Palauttaa UPDATE-kyselyn, jonka avulla rivin kaikki kentät päivitetään.
 	 *
@@ -414,11 +855,19 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	 * @throws DataAccessException jos poistaminen epäonnistuu
 	 */
 	public void delete(int entryId) throws DataAccessException {
+		SQLSearchIndexKt searchIndex = getSearchIndex();
+		getBalanceDAO().removeEntry(entryId);
+
 		try {
+			int documentId = searchIndex.getDocumentIdByEntryId(entryId);
 			PreparedStatement stmt = getDeleteQuery();
 			stmt.setInt(1, entryId);
 			stmt.executeUpdate();
 			stmt.close();
+
+			if (documentId != 0) {
+				searchIndex.update(documentId);
+			}
 		}
 		catch (SQLException e) {
 			throw new DataAccessException(e.getMessage(), e);
@@ -441,6 +890,8 @@ public abstract class SQLEntryDAO implements EntryDAO {
 	 * @throws DataAccessException jos poistaminen epäonnistuu
 	 */
 	public void deleteByPeriodId(int periodId) throws DataAccessException {
+		getBalanceDAO().deleteByPeriodId(periodId);
+
 		try {
 			PreparedStatement stmt = getDeleteByPeriodIdQuery();
 			stmt.setInt(1, periodId);
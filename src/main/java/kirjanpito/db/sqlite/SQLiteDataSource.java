@@ -1,8 +1,6 @@
 package kirjanpito.db.sqlite;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -16,7 +14,9 @@ import java.util.logging.Logger;
 
 import kirjanpito.db.AccountDAO;
 import kirjanpito.db.AttachmentDAO;
+import kirjanpito.db.BalanceDAO;
 import kirjanpito.db.COAHeadingDAO;
+import kirjanpito.db.ConnectionPool;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.DatabaseUpgradeUtil;
@@ -28,15 +28,19 @@ import kirjanpito.db.PeriodDAO;
 import kirjanpito.db.ReportStructureDAO;
 import kirjanpito.db.Session;
 import kirjanpito.db.SettingsDAO;
+import kirjanpito.db.StatementCache;
 import kirjanpito.db.sqlite.SQLiteAccountDAOKt;
 import kirjanpito.db.sqlite.SQLiteEntryDAOKt;
+import kirjanpito.db.sqlite.SQLiteBalanceDAOKt;
 import kirjanpito.db.sqlite.SQLiteDocumentDAOKt;
 import kirjanpito.db.sqlite.SQLitePeriodDAOKt;
 import kirjanpito.db.sqlite.SQLiteDocumentTypeDAOKt;
 import kirjanpito.db.sqlite.SQLiteCOAHeadingDAOKt;
 import kirjanpito.db.sqlite.SQLiteSettingsDAOKt;
 import kirjanpito.db.sqlite.SQLiteReportStructureDAOKt;
+import kirjanpito.db.sqlite.SQLiteSearchIndexKt;
 import kirjanpito.db.sqlite.SQLiteEntryTemplateDAOKt;
+import kirjanpito.util.AppSettings;
 
 /**
  * @author Tommi Helineva
@@ -45,6 +49,8 @@ public class SQLiteDataSource implements DataSource {
 	private String url;
 	private File file;
 	private Connection conn;
+	private StatementCache statementCache;
+	private ConnectionPool readerPool;
 
 	private static final String JDBC_DRIVER_CLASS = "org.sqlite.JDBC";
 
@@ -69,8 +75,12 @@ public class SQLiteDataSource implements DataSource {
 		boolean tablesExist = file.exists();
 
 		try {
+			SQLiteTuning.Options options = SQLiteTuning.Options.fromSettings(
+					AppSettings.getInstance());
 			conn = DriverManager.getConnection(url);
+			SQLiteTuning.configureWriter(conn, options);
 			conn.setAutoCommit(false);
+			statementCache = new StatementCache(conn);
 
 			if (tablesExist) {
 				upgradeDatabase(conn, file);
@@ -78,6 +88,8 @@ public class SQLiteDataSource implements DataSource {
 			else {
 				createTables(conn);
 			}
+
+			readerPool = SQLiteTuning.createReaderPool(url, options);
 		}
 		catch (SQLException e) {
 			throw new DataAccessException(e.getMessage(), e);
@@ -85,16 +97,27 @@ public class SQLiteDataSource implements DataSource {
 	}
 
 	public void close() {
+		if (readerPool != null) {
+			readerPool.close();
+			readerPool = null;
+		}
+
+		if (statementCache != null) {
+			statementCache.close();
+			statementCache = null;
+		}
+
 		try {
 			conn.close();
 		}
 		catch (SQLException e) { }
 	}
 
+	/**
+	 * Varmuuskopioi tietokannan sulkematta tietokantayhteyttä.
+	 */
 	public void backup() throws DataAccessException {
-		close();
 		backupDatabase(file);
-		open(url, null, null);
 	}
 
 	public AccountDAO getAccountDAO(Session session) {
@@ -113,6 +136,10 @@ public class SQLiteDataSource implements DataSource {
 		return new SQLiteEntryDAOKt(session);
 	}
 
+	public BalanceDAO getBalanceDAO(Session session) {
+		return new SQLiteBalanceDAOKt(session);
+	}
+
 	public PeriodDAO getPeriodDAO(Session session) {
 		return new SQLitePeriodDAOKt(session);
 	}
@@ -138,7 +165,29 @@ public class SQLiteDataSource implements DataSource {
 	}
 
 	public Session openSession() throws DataAccessException {
-		return new SQLiteSession(conn);
+		return new SQLiteSession(conn, statementCache);
+	}
+
+	/**
+	 * Avaa istunnon lukijayhteydellä. Lukijayhteydet ovat käytössä
+	 * sekä WAL-tilassa että rollback-journalin kanssa.
+	 */
+	public Session openReadOnlySession() throws DataAccessException {
+		if (readerPool == null) {
+			return openSession();
+		}
+
+		/* Lukijayhteydet ovat valmiiksi vain luku -tilassa (query_only). */
+		try {
+			return new SQLiteSession(readerPool, readerPool.borrow());
+		}
+		catch (SQLException e) {
+			throw new DataAccessException(e.getMessage(), e);
+		}
+	}
+
+	public boolean hasReaderConnections() {
+		return readerPool != null;
 	}
 
 	private static void createTables(Connection conn)
@@ -253,6 +302,26 @@ public class SQLiteDataSource implements DataSource {
 				version = 15;
 			}
 
+			if (version == 15) {
+				backupDatabase(file);
+				DatabaseUpgradeUtil.upgrade15to16(conn, stmt);
+				version = 16;
+			}
+
+			if (version == 16) {
+				backupDatabase(file);
+				DatabaseUpgradeUtil.upgrade16to17(conn, stmt);
+				version = 17;
+			}
+
+			if (version == 17) {
+				backupDatabase(file);
+				upgrade17to18(conn, stmt);
+				version = 18;
+			}
+
+			DatabaseUpgradeUtil.createMissingIndexes(conn);
+
 			stmt.close();
 		}
 		catch (Exception e) {
@@ -287,6 +356,16 @@ public class SQLiteDataSource implements DataSource {
 		logger.info("Tietokannan päivittäminen versioon 3 onnistui");
 	}
 
+	private static void upgrade17to18(Connection conn, Statement stmt) throws SQLException {
+		stmt.execute("CREATE VIRTUAL TABLE document_search USING fts5(search_text, period_id UNINDEXED)");
+		new SQLiteSearchIndexKt(new SQLiteSession(conn)).rebuild();
+		stmt.executeUpdate("UPDATE settings SET version=18");
+		conn.commit();
+
+		Logger logger = Logger.getLogger("kirjanpito.db.sqlite");
+		logger.info("Tietokannan päivittäminen versioon 18 onnistui");
+	}
+
 	private static void backupDatabase(File file) {
 		File dir = file.getParentFile();
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
@@ -301,24 +380,13 @@ public class SQLiteDataSource implements DataSource {
 		logger.severe("Varmuuskopioidaan tietokanta, " + file + " -> " + destination);
 
 		try {
-			copyFile(file, destination);
+			new SQLiteBackup(file).copyTo(destination);
+		}
+		catch (SQLException e) {
+			logger.log(Level.SEVERE, "Tietokannan varmuuskopiointi epäonnistui", e);
 		}
 		catch (IOException e) {
 			logger.log(Level.SEVERE, "Tietokannan varmuuskopiointi epäonnistui", e);
 		}
 	}
-
-	private static void copyFile(File src, File dst) throws IOException {
-	    FileInputStream in = new FileInputStream(src);
-	    FileOutputStream out = new FileOutputStream(dst);
-	    byte[] buf = new byte[1024];
-	    int len;
-
-	    while ((len = in.read(buf)) > 0) {
-	        out.write(buf, 0, len);
-	    }
-
-	    in.close();
-	    out.close();
-	}
 }
@@ -7,8 +7,10 @@ import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import kirjanpito.db.ConnectionPool;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.Session;
+import kirjanpito.db.StatementCache;
 
 /**
  * SQLite-tietokantaistunto.
@@ -19,9 +21,46 @@ public class SQLiteSession implements Session {
 	private static Logger logger = Logger.getLogger("kirjanpito.db.sqlite");
 	
 	private Connection conn;
+	private StatementCache statementCache;
+	private ConnectionPool pool;
+	private ConnectionPool.PooledConnection pooled;
 
 	public SQLiteSession(Connection conn) {
+		this(conn, null);
+	}
+
+	/**
+	 * Luo istunnon, joka ottaa valmistellut kyselyt välimuistista.
+	 * 
+	 * @param conn tietokantayhteys
+	 * @param statementCache kyselyvälimuisti tai <code>null</code>
+	 */
+	public SQLiteSession(Connection conn, StatementCache statementCache) {
 		this.conn = conn;
+		this.statementCache = statementCache;
+	}
+
+	/**
+	 * Luo istunnon altaasta varatulle yhteydelle. Yhteys palautetaan
+	 * altaaseen, kun istunto päätetään.
+	 * 
+	 * @param pool yhteysallas
+	 * @param pooled altaasta varattu yhteys
+	 */
+	public SQLiteSession(ConnectionPool pool, ConnectionPool.PooledConnection pooled) {
+		this(pooled.getConnection(), pooled.getStatementCache());
+		this.pool = pool;
+		this.pooled = pooled;
+	}
+	
+	/**
+	 * Palauttaa kyselyvälimuistin, jonka osuma- ja ohituslaskureista
+	 * näkee välimuistin hyödyn.
+	 * 
+	 * @return kyselyvälimuisti tai <code>null</code>
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
 	}
 	
 	/**
@@ -51,12 +90,25 @@ public class SQLiteSession implements Session {
 		}
 	}
 	
+	/**
+	 * Päättää istunnon. Altaasta varattu yhteys palautetaan altaaseen,
+	 * ja keskeneräinen transaktio perutaan.
+	 */
 	public void close() {
+		if (pooled != null) {
+			pool.release(pooled);
+			pooled = null;
+		}
 	}
 	
 	public PreparedStatement prepareStatement(String sql) throws SQLException
 	{
 		logger.log(Level.FINER, "Suoritetaan tietokantakysely: " + sql);
+		
+		if (statementCache != null) {
+			return statementCache.prepareStatement(sql);
+		}
+		
 		return conn.prepareStatement(sql);
 	}
 	
@@ -199,6 +199,7 @@ public class COAModel {
 	 */
 	public void updateRow(int index, boolean positionChanged) {
 		DataSourceAction action;
+		coa.clearSearchIndex();
 
 		if (coa.getType(index) == ChartOfAccounts.TYPE_ACCOUNT) {
 			Account account = coa.getAccount(index);
@@ -8,16 +8,14 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
-import java.util.HashMap;
-import java.util.List;
 
 import javax.swing.SwingWorker;
 
 import kirjanpito.db.Account;
-import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
+import kirjanpito.db.DocumentEntryCallback;
 import kirjanpito.db.Entry;
 import kirjanpito.db.EntryDAO;
 import kirjanpito.db.Period;
@@ -74,18 +72,6 @@ public class CSVExportWorker extends SwingWorker<Void, Void> {
 		DataSource dataSource = registry.getDataSource();
 		Period period = registry.getPeriod();
 		
-		List<Document> documents = dataSource.getDocumentDAO(
-				sess).getByPeriodId(period.getId(), 1);
-		
-		final HashMap<Integer, Document> documentMap =
-			new HashMap<Integer, Document>();
-		
-		for (Document document : documents) {
-			documentMap.put(document.getId(), document);
-		}
-		
-		documents = null;
-
 		// Luo FileOutputStream ja kirjoita UTF-8 BOM (Byte Order Mark)
 		// jotta Excel tunnistaa merkistön oikein
 		FileOutputStream fos = new FileOutputStream(file);
@@ -108,11 +94,13 @@ public class CSVExportWorker extends SwingWorker<Void, Void> {
 		writer.writeField("Selite");
 		writer.writeLine();
 		
-		dataSource.getEntryDAO(sess).getByPeriodId(period.getId(),
-			EntryDAO.ORDER_BY_DOCUMENT_NUMBER, new DTOCallback<Entry>() {
-			public void process(Entry entry) {
-				Document document = documentMap.get(entry.getDocumentId());
-				if (document == null) return;
+		/* Tositteiden numerot ja päivämäärät haetaan samalla kyselyllä
+		 * vientien kanssa, joten rivit kirjoitetaan sitä mukaa kuin
+		 * ne luetaan. Alkusaldotositetta ei viedä. */
+		dataSource.getEntryDAO(sess).getByPeriodIdWithDocuments(period.getId(),
+			EntryDAO.ORDER_BY_DOCUMENT_NUMBER, new DocumentEntryCallback() {
+			public void process(Document document, Entry entry) {
+				if (document.getNumber() < 1) return;
 				Account account = registry.getAccountById(entry.getAccountId());
 				
 				try {
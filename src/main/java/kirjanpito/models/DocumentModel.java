@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
@@ -583,9 +584,10 @@ public class DocumentModel {
 
 			for (Entry entry : entries) {
 				entry.setDocumentId(document.getId());
-				entryDAO.save(entry);
 			}
 
+			entryDAO.saveAll(entries);
+
 			sess.commit();
 		}
 		catch (DataAccessException e) {
@@ -887,13 +889,13 @@ public class DocumentModel {
 		try {
 			sess = dataSource.openSession();
 			/* Lasketaan ALV-tilien saldot. */
-			dataSource.getEntryDAO(sess).getByPeriodId(period.getId(), EntryDAO.ORDER_BY_DOCUMENT_NUMBER,
-				new DTOCallback<Entry>() {
-					public void process(Entry entry) {
-						Account account = registry.getAccountById(entry.getAccountId());
+			dataSource.getBalanceDAO(sess).getByPeriodId(period.getId(),
+				new DTOCallback<AccountTotal>() {
+					public void process(AccountTotal total) {
+						Account account = registry.getAccountById(total.getAccountId());
 
 						if (account.getVatCode() == 2 || account.getVatCode() == 3) {
-							balances.addEntry(entry);
+							balances.addTotal(total);
 						}
 					}
 				});
@@ -0,0 +1,40 @@
+package kirjanpito.models;
+
+import java.io.File;
+
+import javax.swing.SwingWorker;
+
+import kirjanpito.reports.PDFExporter;
+
+/**
+ * <code>SwingWorker</code>, joka tallentaa esikatseltavan
+ * tulosteen PDF-tiedostoon.
+ */
+public class PDFExportWorker extends SwingWorker<Void, Void> {
+	private PrintPreviewModel model;
+	private File file;
+
+	public PDFExportWorker(PrintPreviewModel model, File file) {
+		this.model = model;
+		this.file = file;
+	}
+
+	protected Void doInBackground() throws Exception {
+		model.writePDF(file, new PDFExporter.ProgressListener() {
+			public void progressChanged(int pagesDone, int pageCount) {
+				setProgress(pagesDone * 100 / Math.max(1, pageCount));
+			}
+		});
+
+		return null;
+	}
+
+	/**
+	 * Palauttaa tiedoston, johon tuloste tallennetaan.
+	 *
+	 * @return PDF-tiedosto
+	 */
+	public File getFile() {
+		return file;
+	}
+}
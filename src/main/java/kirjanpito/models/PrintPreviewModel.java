@@ -5,6 +5,8 @@ import java.awt.print.Paper;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 
 import javax.print.Doc;
 import javax.print.DocFlavor;
@@ -21,8 +23,9 @@ import javax.print.attribute.standard.MediaPrintableArea;
 import javax.print.attribute.standard.MediaSizeName;
 import javax.print.attribute.standard.OrientationRequested;
 
+import kirjanpito.db.DataAccessException;
 import kirjanpito.reports.AWTPrintable;
-import kirjanpito.reports.PDFCanvas;
+import kirjanpito.reports.PDFExporter;
 import kirjanpito.reports.Print;
 import kirjanpito.reports.PrintCanvas;
 import kirjanpito.reports.PrintModel;
@@ -31,10 +34,7 @@ import kirjanpito.util.AppSettings;
 import kirjanpito.util.CSVWriter;
 import kirjanpito.util.ODFSpreadsheet;
 
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 
 /**
  * Malli tulosteiden esikatseluikkunalle.
@@ -288,67 +288,81 @@ public class PrintPreviewModel {
 	 * @param file PDF-tiedosto
 	 */
 	public void writePDF(File file) throws IOException {
-		PrintCanvas oldCanvas = print.getCanvas();
-		AppSettings settings = AppSettings.getInstance();
-		String orientation = settings.getString("paper.orientation", "");
-		PDDocument document = null;
-
-		try {
-			document = new PDDocument();
-
-			// Set document metadata
-			PDDocumentInformation info = document.getDocumentInformation();
-			info.setTitle(print.getTitle());
-			info.setCreator(Kirjanpito.APP_NAME + " " + Kirjanpito.APP_VERSION);
-			info.setProducer(Kirjanpito.APP_NAME + " " + Kirjanpito.APP_VERSION);
-			info.setCreationDate(java.util.Calendar.getInstance());
-
-			int pageCount = print.getPageCount();
-
-			for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
-				// Create page with correct orientation
-				PDRectangle pageSize;
-				if (orientation.equalsIgnoreCase("landscape") ||
-						orientation.equalsIgnoreCase("reverse-landscape")) {
-					pageSize = PDRectangle.A4;
-					pageSize = new PDRectangle(pageSize.getHeight(), pageSize.getWidth());
-				}
-				else {
-					pageSize = PDRectangle.A4;
-				}
+		writePDF(file, null);
+	}
 
-				PDPage page = new PDPage(pageSize);
-				document.addPage(page);
+	/**
+	 * Tallentaa tulosteen PDF-tiedostoon. Sivut piirretään rinnakkain
+	 * <code>PDFExporter</code>illa. Tallennus peruutetaan, jos kutsuva
+	 * säie keskeytetään.
+	 *
+	 * @param file PDF-tiedosto
+	 * @param listener edistymisen kuuntelija tai <code>null</code>
+	 * @throws InterruptedIOException jos tallennus peruutetaan
+	 */
+	public void writePDF(File file, PDFExporter.ProgressListener listener)
+		throws IOException {
 
-				// Create canvas for this page
-				PDFCanvas canvas = new PDFCanvas(document, page);
-				print.setCanvas(canvas);
-				print.printPage(pageIndex);
-				canvas.close();
-			}
+		AppSettings settings = AppSettings.getInstance();
+		String orientation = settings.getString("paper.orientation", "");
+		PDRectangle pageSize = PDRectangle.A4;
 
-			// Save document
-			document.save(file);
-		}
-		finally {
-			if (document != null) {
-				document.close();
-			}
-			print.setCanvas(oldCanvas);
+		if (orientation.equalsIgnoreCase("landscape") ||
+				orientation.equalsIgnoreCase("reverse-landscape")) {
+			pageSize = new PDRectangle(pageSize.getHeight(), pageSize.getWidth());
 		}
+
+		PDFExporter exporter = new PDFExporter(print, pageSize);
+		exporter.setCreator(Kirjanpito.APP_NAME + " " + Kirjanpito.APP_VERSION);
+		exporter.export(file, listener);
 	}
 	
+	/**
+	 * Tallentaa tulosteen CSV-tiedostoon. Rivit haetaan tietokannasta
+	 * sitä mukaa kuin ne kirjoitetaan.
+	 *
+	 * @param file tiedosto
+	 * @param delimiter kenttien erotin
+	 * @throws IOException jos tallentaminen epäonnistuu
+	 */
 	public void writeCSV(File file, char delimiter) throws IOException {
 		FileWriter writer = new FileWriter(file);
 		CSVWriter csv = new CSVWriter(writer);
 		csv.setDelimiter(delimiter);
-		printModel.writeCSV(csv);
-		writer.close();
+
+		try {
+			printModel.streamCSV(csv);
+		}
+		catch (DataAccessException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		finally {
+			writer.close();
+		}
 	}
 
+	/**
+	 * Tallentaa tulosteen ODS-tiedostoon. Rivit haetaan tietokannasta
+	 * sitä mukaa kuin ne kirjoitetaan.
+	 *
+	 * @param file tiedosto
+	 * @throws IOException jos tallentaminen epäonnistuu
+	 */
 	public void writeODS(File file) throws IOException {
 		ODFSpreadsheet spreadsheet = new ODFSpreadsheet();
-		printModel.writeODS(spreadsheet);
-		spreadsheet.save(file);
+		spreadsheet.open(file);
+
+		try {
+			printModel.streamODS(spreadsheet);
+		}
+		catch (DataAccessException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			spreadsheet.close();
+		}
 	}
 }
@@ -4,12 +4,12 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
 import kirjanpito.db.Entry;
-import kirjanpito.db.EntryDAO;
 import kirjanpito.db.Period;
 import kirjanpito.db.Session;
 import kirjanpito.util.AccountBalances;
@@ -135,9 +135,8 @@ public class StartingBalanceModel {
 		try {
 			sess = dataSource.openSession();
 			
-			for (int i = 0; i < entryIndex; i++) {
-				dataSource.getEntryDAO(sess).save(entries.get(i));
-			}
+			dataSource.getEntryDAO(sess).saveAll(
+					entries.subList(0, entryIndex));
 			
 			/* Poistetaan ylimääräiset viennit,
 			 * jos vientejä on ollut aikaisemmin enemmän. */
@@ -263,10 +262,10 @@ public class StartingBalanceModel {
 				return false;
 			}
 			
-			dataSource.getEntryDAO(sess).getByPeriodId(prevPeriod.getId(), EntryDAO.ORDER_BY_DOCUMENT_NUMBER,
-				new DTOCallback<Entry>() {
-					public void process(Entry obj) {
-						balances.addEntry(obj);
+			dataSource.getBalanceDAO(sess).getByPeriodId(prevPeriod.getId(),
+				new DTOCallback<AccountTotal>() {
+					public void process(AccountTotal obj) {
+						balances.addTotal(obj);
 					}
 				});
 		}
@@ -19,7 +19,9 @@ import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
 import kirjanpito.db.Entry;
 import kirjanpito.db.Session;
+import kirjanpito.util.AccountIndex;
 import kirjanpito.util.CSVWriter;
+import kirjanpito.util.CentAccumulator;
 import kirjanpito.util.Registry;
 
 public class StatisticsModel {
@@ -159,12 +161,14 @@ public class StatisticsModel {
 		Session sess = null;
 		int periodId = registry.getPeriod().getId();
 		final HashMap<Integer, Integer> documentMap = new HashMap<Integer, Integer>();
-		final HashMap<Integer, ArrayList<BigDecimal>> map = new HashMap<Integer, ArrayList<BigDecimal>>();
 		final int periodCount = startDates.size();
+		final AccountIndex accountIndex = new AccountIndex(registry.getAccounts());
+		final CentAccumulator sums = new CentAccumulator(accountIndex.size() * periodCount);
+		final boolean[] used = new boolean[accountIndex.size()];
 		Date date;
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			documents = dataSource.getDocumentDAO(sess).getByPeriodIdAndDate(
 					periodId, startDate, endDate);
 
@@ -185,25 +189,21 @@ public class StatisticsModel {
 			dataSource.getEntryDAO(sess).getByPeriodIdAndDate(
 					periodId, startDate, endDate, new DTOCallback<Entry>() {
 				public void process(Entry entry) {
-					int accountId;
+					int slot;
 					int type;
 					boolean debit;
-					BigDecimal amount;
 
-					accountId = entry.getAccountId();
-					type = registry.getAccountById(accountId).getType();
+					slot = accountIndex.indexOf(entry.getAccountId());
+
+					if (slot < 0)
+						return;
+
+					type = accountIndex.get(slot).getType();
 
 					if (type != Account.TYPE_EXPENSE && type != Account.TYPE_REVENUE)
 						return;
 
 					debit = entry.isDebit();
-					amount = entry.getAmount();
-
-					if ((type == Account.TYPE_EXPENSE && !debit) ||
-							(type == Account.TYPE_REVENUE && debit))
-					{
-						amount = amount.negate();
-					}
 
 					Integer periodIndex = documentMap.get(entry.getDocumentId());
 
@@ -211,16 +211,12 @@ public class StatisticsModel {
 						return;
 					}
 
-					ArrayList<BigDecimal> list = map.get(accountId);
+					boolean negate = (type == Account.TYPE_EXPENSE && !debit) ||
+						(type == Account.TYPE_REVENUE && debit);
 
-					if (list == null) {
-						list = createList(periodCount);
-						list.set(periodIndex, amount);
-						map.put(accountId, list);
-					}
-					else {
-						list.set(periodIndex, list.get(periodIndex).add(amount));
-					}
+					sums.add(slot * periodCount + periodIndex,
+							entry.getAmount(), negate ? -1 : 1);
+					used[slot] = true;
 				}
 			});
 		}
@@ -228,31 +224,29 @@ public class StatisticsModel {
 			if (sess != null) sess.close();
 		}
 
-		accounts = new Account[map.size()];
-		amounts = new BigDecimal[accounts.length][periodCount];
+		int usedCount = 0;
+
+		for (boolean u : used) {
+			if (u) usedCount++;
+		}
+
+		accounts = new Account[usedCount];
+		amounts = new BigDecimal[usedCount][periodCount];
 		int index = 0;
 
-		for (Account account : registry.getAccounts()) {
-			ArrayList<BigDecimal> list = map.get(account.getId());
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				accounts[index] = accountIndex.get(i);
+
+				for (int j = 0; j < periodCount; j++) {
+					amounts[index][j] = sums.getOrZero(i * periodCount + j);
+				}
 
-			if (list != null) {
-				accounts[index] = account;
-				list.toArray(amounts[index]);
 				index++;
 			}
 		}
 	}
 
-	private ArrayList<BigDecimal> createList(int size) {
-		ArrayList<BigDecimal> amounts = new ArrayList<BigDecimal>(size);
-
-		for (int i = 0; i < size; i++) {
-			amounts.add(BigDecimal.ZERO);
-		}
-
-		return amounts;
-	}
-
 	public void save(File file) throws IOException {
 		CSVWriter writer = new CSVWriter(new FileWriter(file));
 		writer.writeField("Nro");
@@ -15,18 +15,25 @@ public class AWTPrintable implements Printable {
 	}
 
 	public int print(Graphics g, PageFormat pf, int pageIndex) {
-		if (canvas == null) {
-			canvas = new AWTCanvas(pf);
-			print.setCanvas(canvas);
-		}
-		
-		if (pageIndex < print.getPageCount()) {
-			canvas.setGraphics((Graphics2D)g);
-			print.printPage(pageIndex);
-			return Printable.PAGE_EXISTS;
-		}
-		else {
-			return Printable.NO_SUCH_PAGE;
+		/* PDFExporter asettelee sivuja samalla Print-oliolla
+		 * taustasäikeessä. */
+		synchronized (print) {
+			if (canvas == null) {
+				canvas = new AWTCanvas(pf);
+				print.setCanvas(canvas);
+			}
+			else if (print.getCanvas() != canvas) {
+				print.setCanvas(canvas);
+			}
+			
+			if (pageIndex < print.getPageCount()) {
+				canvas.setGraphics((Graphics2D)g);
+				print.printPage(pageIndex);
+				return Printable.PAGE_EXISTS;
+			}
+			else {
+				return Printable.NO_SUCH_PAGE;
+			}
 		}
 	}
 }
@@ -1,19 +1,19 @@
 package kirjanpito.reports;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 
 import kirjanpito.db.Account;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
+import kirjanpito.db.DocumentEntryCallback;
 import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
 import kirjanpito.db.Session;
@@ -177,8 +177,29 @@ public class AccountStatementModel implements PrintModel {
 	}
 
 	public void run() throws DataAccessException {
-		Session sess = null;
 		final ArrayList<AccountStatementRow> rowList = new ArrayList<AccountStatementRow>();
+		generateRows(new DTOCallback<AccountStatementRow>() {
+			public void process(AccountStatementRow row) {
+				rowList.add(row);
+			}
+		});
+
+		rowList.add(new AccountStatementRow(-1, null, null, balance));
+		rows = new AccountStatementRow[rowList.size()];
+		rowList.toArray(rows);
+	}
+
+	/**
+	 * Muodostaa tiliotteen vientirivit ja antaa ne yksi kerrallaan
+	 * callbackille. Viimeistä yhteenvetoriviä ei muodosteta.
+	 *
+	 * @param callback callback, jolle rivit annetaan
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	private void generateRows(final DTOCallback<AccountStatementRow> callback)
+		throws DataAccessException {
+
+		Session sess = null;
 		balance = BigDecimal.ZERO;
 		balances = new AccountBalances();
 		balances.addAccount(account);
@@ -187,28 +208,17 @@ public class AccountStatementModel implements PrintModel {
 		lastDocumentNumber = 0;
 		entryCount = 0;
 
-		/* Haetaan tilikauden tositteet ja viennit. */
+		/* Haetaan tilikauden viennit tositteineen. Aikavälin ulkopuolisetkin
+		 * viennit lasketaan saldoon, mutta niistä ei muodosteta rivejä. */
 		try {
-			sess = dataSource.openSession();
-			List<Document> documents = dataSource.getDocumentDAO(
-					sess).getByPeriodIdAndDate(period.getId(), startDate, endDate);
-
-			/* Luodaan tositteista hajautustaulu, jotta ne
-			 * löytyvät nopeasti tunnisteen perusteella. */
-			final HashMap<Integer, Document> documentMap = new HashMap<Integer, Document>();
-
-			for (Document d : documents) {
-				documentMap.put(d.getId(), d);
-			}
-
-			dataSource.getEntryDAO(sess).getByPeriodIdAndAccountId(
+			sess = dataSource.openReadOnlySession();
+			dataSource.getEntryDAO(sess).getByPeriodIdAndAccountIdWithDocuments(
 					period.getId(), account.getId(), orderBy,
-					new DTOCallback<Entry>() {
-						public void process(Entry entry) {
+					new DocumentEntryCallback() {
+						public void process(Document document, Entry entry) {
 							balances.addEntry(entry);
-							Document document = documentMap.get(entry.getDocumentId());
 
-							if (document == null) {
+							if (document.getDate().before(startDate) || document.getDate().after(endDate)) {
 								return;
 							}
 
@@ -226,7 +236,7 @@ public class AccountStatementModel implements PrintModel {
 
 							balance = balances.getBalance(account.getId());
 
-							rowList.add(new AccountStatementRow(
+							callback.process(new AccountStatementRow(
 									document.getNumber(), document.getDate(),
 									entry, balance));
 						}
@@ -235,17 +245,41 @@ public class AccountStatementModel implements PrintModel {
 		finally {
 			if (sess != null) sess.close();
 		}
-
-		rowList.add(new AccountStatementRow(-1, null, null, balance));
-		rows = new AccountStatementRow[rowList.size()];
-		rowList.toArray(rows);
 	}
 
 	public void writeCSV(CSVWriter writer) throws IOException {
+		writeCSVHeader(writer);
+		CSVRowWriter rowWriter = new CSVRowWriter(writer);
+
+		for (AccountStatementRow row : rows) {
+			rowWriter.write(row);
+		}
+	}
+
+	@Override
+	public void streamCSV(CSVWriter writer) throws DataAccessException, IOException {
+		writeCSVHeader(writer);
+		final CSVRowWriter rowWriter = new CSVRowWriter(writer);
+
+		try {
+			generateRows(new DTOCallback<AccountStatementRow>() {
+				public void process(AccountStatementRow row) {
+					try {
+						rowWriter.write(row);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeCSVHeader(CSVWriter writer) throws IOException {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("d.M.yyyy");
-		DecimalFormat numberFormat = new DecimalFormat();
-		numberFormat.setMinimumFractionDigits(2);
-		numberFormat.setMaximumFractionDigits(2);
 
 		writer.writeField("Tiliote");
 		writer.writeLine();
@@ -275,31 +309,29 @@ public class AccountStatementModel implements PrintModel {
 		writer.writeField("Saldo");
 		writer.writeField("Selite");
 		writer.writeLine();
+	}
 
-		for (AccountStatementRow row : rows) {
-			if (row.documentNumber < 0) {
-				continue;
-			}
+	public void writeODS(ODFSpreadsheet s) {
+		writeODSHeader(s);
 
-			writer.writeField((row.documentNumber == 0) ? "" : Integer.toString(row.documentNumber));
-			writer.writeField(dateFormat.format(row.date));
+		for (AccountStatementRow row : rows) {
+			writeODSRow(s, row);
+		}
+	}
 
-			if (row.entry.isDebit()) {
-				writer.writeField(numberFormat.format(row.entry.getAmount()));
-				writer.writeField("");
-			}
-			else {
-				writer.writeField("");
-				writer.writeField(numberFormat.format(row.entry.getAmount()));
+	@Override
+	public void streamODS(final ODFSpreadsheet s) throws DataAccessException {
+		writeODSHeader(s);
+		generateRows(new DTOCallback<AccountStatementRow>() {
+			public void process(AccountStatementRow row) {
+				writeODSRow(s, row);
 			}
+		});
 
-			writer.writeField(numberFormat.format(row.balance));
-			writer.writeField(row.entry.getDescription());
-			writer.writeLine();
-		}
+		writeODSRow(s, new AccountStatementRow(-1, null, null, balance));
 	}
 
-	public void writeODS(ODFSpreadsheet s) {
+	private void writeODSHeader(ODFSpreadsheet s) {
 		s.setTitle(String.format("Tiliote: %s %s", account.getNumber(), account.getName()));
 		s.defineColumn("co1", "1.2cm");
 		s.defineColumn("co2", "2.6cm");
@@ -322,36 +354,36 @@ public class AccountStatementModel implements PrintModel {
 		s.writeTextCell("Kredit", "boldAlignRightBorderBottom");
 		s.writeTextCell("Saldo", "boldAlignRightBorderBottom");
 		s.writeTextCell("Selite", "boldBorderBottom");
+	}
 
-		for (AccountStatementRow row : rows) {
-			s.addRow();
-
-			if (row.documentNumber >= 0) {
-				if (row.documentNumber > 0) {
-					s.writeFloatCell(row.documentNumber, "num0AlignLeft");
-					s.writeDateCell(row.date, "date");
-				}
-				else {
-					s.writeEmptyCell();
-					s.writeEmptyCell();
-				}
+	private void writeODSRow(ODFSpreadsheet s, AccountStatementRow row) {
+		s.addRow();
 
-				if (row.entry.isDebit()) {
-					s.writeFloatCell(row.entry.getAmount(), "num2");
-					s.writeEmptyCell();
-				}
-				else {
-					s.writeEmptyCell();
-					s.writeFloatCell(row.entry.getAmount(), "num2");
-				}
+		if (row.documentNumber >= 0) {
+			if (row.documentNumber > 0) {
+				s.writeFloatCell(row.documentNumber, "num0AlignLeft");
+				s.writeDateCell(row.date, "date");
+			}
+			else {
+				s.writeEmptyCell();
+				s.writeEmptyCell();
+			}
 
-				s.writeFloatCell(row.balance, "num2");
-				s.writeTextCell(row.entry.getDescription());
+			if (row.entry.isDebit()) {
+				s.writeFloatCell(row.entry.getAmount(), "num2");
+				s.writeEmptyCell();
 			}
 			else {
-				String text = (entryCount == 1) ? "1 vienti" : entryCount + " vientiä";
-				s.writeTextCell(text, "bold");
+				s.writeEmptyCell();
+				s.writeFloatCell(row.entry.getAmount(), "num2");
 			}
+
+			s.writeFloatCell(row.balance, "num2");
+			s.writeTextCell(row.entry.getDescription());
+		}
+		else {
+			String text = (entryCount == 1) ? "1 vienti" : entryCount + " vientiä";
+			s.writeTextCell(text, "bold");
 		}
 	}
 
@@ -444,6 +476,45 @@ public class AccountStatementModel implements PrintModel {
 		return lastDocumentNumber;
 	}
 
+	/**
+	 * Kirjoittaa tiliotteen rivejä CSV-tiedostoon.
+	 */
+	private class CSVRowWriter {
+		private CSVWriter writer;
+		private SimpleDateFormat dateFormat;
+		private DecimalFormat numberFormat;
+
+		public CSVRowWriter(CSVWriter writer) {
+			this.writer = writer;
+			dateFormat = new SimpleDateFormat("d.M.yyyy");
+			numberFormat = new DecimalFormat();
+			numberFormat.setMinimumFractionDigits(2);
+			numberFormat.setMaximumFractionDigits(2);
+		}
+
+		public void write(AccountStatementRow row) throws IOException {
+			if (row.documentNumber < 0) {
+				return;
+			}
+
+			writer.writeField((row.documentNumber == 0) ? "" : Integer.toString(row.documentNumber));
+			writer.writeField(dateFormat.format(row.date));
+
+			if (row.entry.isDebit()) {
+				writer.writeField(numberFormat.format(row.entry.getAmount()));
+				writer.writeField("");
+			}
+			else {
+				writer.writeField("");
+				writer.writeField(numberFormat.format(row.entry.getAmount()));
+			}
+
+			writer.writeField(numberFormat.format(row.balance));
+			writer.writeField(row.entry.getDescription());
+			writer.writeLine();
+		}
+	}
+
 	private class AccountStatementRow {
 		public int documentNumber;
 		public Date date;
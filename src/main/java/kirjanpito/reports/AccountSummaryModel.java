@@ -10,11 +10,11 @@ import java.util.List;
 import java.util.Stack;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.COAHeading;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
-import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
 import kirjanpito.db.Session;
 import kirjanpito.db.Settings;
@@ -153,16 +153,7 @@ public class AccountSummaryModel implements PrintModel {
 
 		try {
 			final HashSet<Integer> accountIds = new HashSet<Integer>();
-			sess = dataSource.openSession();
-			dataSource.getEntryDAO(sess).getByPeriodIdAndDate(period.getId(),
-				startDate, endDate, new DTOCallback<Entry>() {
-					public void process(Entry entry) {
-						if (isAccountPrinted(entry.getAccountId())) {
-							balances.addEntry(entry);
-							accountIds.add(entry.getAccountId());
-						}
-					}
-				});
+			sess = dataSource.openReadOnlySession();
 
 			if (previousPeriodVisible) {
 				/* Haetaan edellinen tilikausi. */
@@ -179,20 +170,41 @@ public class AccountSummaryModel implements PrintModel {
 				if (periodPrev == null) {
 					previousPeriodVisible = false;
 				}
-				else {
-					/* Lasketaan edellisen tilikauden tilien saldot. */
-					dataSource.getEntryDAO(sess).getByPeriodIdAndDate(periodPrev.getId(),
-						periodPrev.getStartDate(), periodPrev.getEndDate(), new DTOCallback<Entry>() {
-							public void process(Entry entry) {
-								if (isAccountPrinted(entry.getAccountId())) {
-									balancesPrev.addEntry(entry);
-									accountIds.add(entry.getAccountId());
-								}
-							}
-						});
-				}
 			}
 
+			/* Lasketaan tilien saldot ja edellisen tilikauden
+			 * saldot yhdellä kyselyllä. */
+			int[] periodIds;
+			Date[] startDates;
+			Date[] endDates;
+
+			if (previousPeriodVisible) {
+				periodIds = new int[] { period.getId(), periodPrev.getId() };
+				startDates = new Date[] { startDate, periodPrev.getStartDate() };
+				endDates = new Date[] { endDate, periodPrev.getEndDate() };
+			}
+			else {
+				periodIds = new int[] { period.getId() };
+				startDates = new Date[] { startDate };
+				endDates = new Date[] { endDate };
+			}
+
+			dataSource.getBalanceDAO(sess).getByDateRanges(periodIds,
+				startDates, endDates, new DTOCallback<AccountTotal[]>() {
+					public void process(AccountTotal[] totals) {
+						AccountBalances[] targets = { balances, balancesPrev };
+
+						for (int i = 0; i < totals.length; i++) {
+							AccountTotal total = totals[i];
+
+							if (total != null && isAccountPrinted(total.getAccountId())) {
+								targets[i].addTotal(total);
+								accountIds.add(total.getAccountId());
+							}
+						}
+					}
+				});
+
 			accountCount = accountIds.size();
 		}
 		finally {
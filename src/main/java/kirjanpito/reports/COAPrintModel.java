@@ -6,12 +6,11 @@ import java.text.DecimalFormat;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.COAHeading;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
-import kirjanpito.db.Entry;
-import kirjanpito.db.EntryDAO;
 import kirjanpito.db.Period;
 import kirjanpito.db.Session;
 import kirjanpito.db.Settings;
@@ -167,7 +166,7 @@ public class COAPrintModel implements PrintModel {
 		List<Period> periods;
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			periods = dataSource.getPeriodDAO(sess).getAll();
 
 			for (int i = 0; i < periods.size(); i++) {
@@ -178,19 +177,17 @@ public class COAPrintModel implements PrintModel {
 				}
 			}
 
-			DTOCallback<Entry> callback = new DTOCallback<Entry>() {
-				public void process(Entry obj) {
-					balances.addEntry(obj);
+			DTOCallback<AccountTotal> callback = new DTOCallback<AccountTotal>() {
+				public void process(AccountTotal obj) {
+					balances.addTotal(obj);
 				}
 			};
 
-			dataSource.getEntryDAO(sess).getByPeriodId(period.getId(),
-					EntryDAO.ORDER_BY_DOCUMENT_NUMBER, callback);
+			dataSource.getBalanceDAO(sess).getByPeriodId(period.getId(), callback);
 
 			if (periodIndex > 0) {
 				period = periods.get(periodIndex - 1);
-				dataSource.getEntryDAO(sess).getByPeriodId(period.getId(),
-						EntryDAO.ORDER_BY_DOCUMENT_NUMBER, callback);
+				dataSource.getBalanceDAO(sess).getByPeriodId(period.getId(), callback);
 			}
 		}
 		finally {
@@ -49,7 +49,7 @@ public class DocumentPrintModel implements PrintModel {
 		settings = registry.getSettings();
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			entries = dataSource.getEntryDAO(sess
 					).getByDocumentId(document.getId());
 		}
@@ -1,21 +1,20 @@
 package kirjanpito.reports;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
-import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
 import kirjanpito.db.ReportStructure;
 import kirjanpito.db.Session;
@@ -41,6 +40,7 @@ public class FinancialStatementModel implements PrintModel {
 	private List<Account> accounts;
 	private List<FinancialStatementRow> rows;
 	private AccountBalances[] balances;
+	private ReportStructurePlan.RangeSums[] sums;
 	private DecimalFormat numberFormat;
 	private boolean details;
 	private boolean emptyRow;
@@ -219,7 +219,7 @@ public class FinancialStatementModel implements PrintModel {
 		}
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			structure = dataSource.getReportStructureDAO(
 					sess).getById(reportId);
 
@@ -247,18 +247,21 @@ public class FinancialStatementModel implements PrintModel {
 				balances[i] = new AccountBalances(accounts);
 			}
 
-			/* Lasketaan tilien saldot. */
-			for (int i = 0; i < startDates.length; i++) {
-				final int index = i;
-
-				dataSource.getEntryDAO(sess).getByPeriodIdAndDate(-1,
-						startDates[i], endDates[i],
-					new DTOCallback<Entry>() {
-						public void process(Entry entry) {
-							balances[index].addEntry(entry);
+			/* Lasketaan kaikkien sarakkeiden saldot yhdellä kyselyllä. */
+			int[] periodIds = new int[startDates.length];
+			Arrays.fill(periodIds, -1);
+
+			dataSource.getBalanceDAO(sess).getByDateRanges(periodIds,
+					startDates, endDates,
+				new DTOCallback<AccountTotal[]>() {
+					public void process(AccountTotal[] totals) {
+						for (int i = 0; i < totals.length; i++) {
+							if (totals[i] != null) {
+								balances[i].addTotal(totals[i]);
+							}
 						}
-					});
-			}
+					}
+				});
 		}
 		finally {
 			if (sess != null) sess.close();
@@ -289,25 +292,24 @@ public class FinancialStatementModel implements PrintModel {
 		 *
 		 * Viimeinen kenttä on tulostettava teksti.
 		 */
-		BufferedReader reader = new BufferedReader(
-				new StringReader(structure.getData()));
-		String line;
+		ReportStructurePlan plan = ReportStructurePlan.get(
+				reportId, structure.getData(), accounts);
+		sums = new ReportStructurePlan.RangeSums[balances.length];
+
+		for (int i = 0; i < balances.length; i++) {
+			sums[i] = plan.createSums(balances[i], accounts);
+		}
+
 		rows = new ArrayList<FinancialStatementRow>();
 		maxLevel = 0;
 		styleBold = false;
 		styleItalic = false;
 
-		try {
-			while ((line = reader.readLine()) != null) {
-				if (line.length() > 0) {
-					processLine(line);
-				}
-			}
-		}
-		catch (IOException e) {
-			e.printStackTrace();
+		for (ReportStructurePlan.Line line : plan.getLines()) {
+			processLine(plan, line);
 		}
 
+		sums = null;
 		balances = null;
 	}
 
@@ -419,15 +421,16 @@ public class FinancialStatementModel implements PrintModel {
 		}
 	}
 
-	private void processLine(String line) {
-		if (line.equals("--") && pageBreakEnabled) {
+	private void processLine(ReportStructurePlan plan, ReportStructurePlan.Line line) {
+		if (line.type == ReportStructurePlan.TYPE_PAGE_BREAK && pageBreakEnabled) {
 			rows.add(new FinancialStatementRow(null,
 					"", STYLE_PLAIN, -1, null));
 			emptyRow = true;
 			return;
 		}
 
-		if (line.startsWith("-")) {
+		if (line.type == ReportStructurePlan.TYPE_PAGE_BREAK ||
+				line.type == ReportStructurePlan.TYPE_EMPTY) {
 			if (!emptyRow) {
 				rows.add(new FinancialStatementRow(null,
 					"", STYLE_PLAIN, 0, null));
@@ -437,24 +440,15 @@ public class FinancialStatementModel implements PrintModel {
 			return;
 		}
 
-		String text;
-		int style, level;
-		char typeChar = line.charAt(0);
-		char styleChar = line.charAt(1);
-		int offset = 1;
-
-		if (typeChar == 'D' && (styleChar == '+' || styleChar == '-' || styleChar == '0')) {
-			offset = 2;
-			styleChar = line.charAt(offset);
-		}
-
-		level = line.charAt(offset + 1) - '0';
+		int style;
+		char typeChar = line.type;
+		int level = line.level;
 
-		if (styleChar == 'B') {
+		if (line.style == 'B') {
 			style = STYLE_BOLD;
 			styleBold = true;
 		}
-		else if (styleChar == 'I') {
+		else if (line.style == 'I') {
 			style = STYLE_ITALIC;
 			styleItalic = true;
 		}
@@ -463,14 +457,13 @@ public class FinancialStatementModel implements PrintModel {
 		}
 
 		if (typeChar == 'F') {
-			String[] fields = line.substring(offset + 3).split(";");
 			FinancialStatementRow row = new FinancialStatementRow(null,
-					fields[0], style, level, new BigDecimal[startDates.length]);
+					line.text, style, level, new BigDecimal[startDates.length]);
 
 			try {
 				for (int i = 0; i < startDates.length; i++) {
-					if (fields.length >= 2 + i) {
-						row.amounts[i] = (BigDecimal)numberFormat.parse(fields[1 + i]);
+					if (line.fixedAmounts.length >= 1 + i) {
+						row.amounts[i] = (BigDecimal)numberFormat.parse(line.fixedAmounts[i]);
 					}
 				}
 			}
@@ -483,33 +476,27 @@ public class FinancialStatementModel implements PrintModel {
 			return;
 		}
 
-		/* Luetaan tilinumerot ja lasketaan rivin rahamäärä. */
-		int pos1, pos2, pos3;
-		pos1 = offset + 3;
-		pos2 = line.indexOf(';', pos1);
-		pos3 = line.indexOf(';', pos2 + 1);
+		/* Lasketaan rivin rahamäärä tilinumeroväleistä. */
 		BigDecimal[] amounts = new BigDecimal[startDates.length];
 
-		while (pos2 >= 0) {
-			String start = line.substring(pos1, pos2);
-			String stop = line.substring(pos2 + 1, pos3);
+		for (int j = 0; j < line.spans.length; j += 2) {
+			int from = line.spans[j];
+			int to = line.spans[j + 1];
 
 			if (typeChar == 'D') {
-				addDetailRows(start, stop, style, level, line.charAt(1));
+				addDetailRows(plan.getAccountIndices(from, to), style, level, line.filter);
 			}
 			else {
 				for (int i = 0; i < amounts.length; i++) {
-					amounts[i] = calculateBalance(balances[i], start, stop, amounts[i]);
+					BigDecimal sum = sums[i].sum(from, to);
+
+					if (sum != null) {
+						amounts[i] = (amounts[i] == null) ? sum : amounts[i].add(sum);
+					}
 				}
 			}
-
-			pos1 = pos3 + 1;
-			pos2 = line.indexOf(';', pos1);
-			pos3 = line.indexOf(';', pos2 + 1);
 		}
 
-		text = line.substring(pos1);
-
 		/* H- ja S-rivit näytetään aina, G- ja T-rivit vain, jos
 		 * jokin summattavista tileistä on ollut käytössä. */
 		boolean nonZero = false;
@@ -533,106 +520,66 @@ public class FinancialStatementModel implements PrintModel {
 		if (typeChar != 'D') {
 			maxLevel = Math.max(level, maxLevel);
 			rows.add(new FinancialStatementRow(null,
-				text, style, level, amounts));
+				line.text, style, level, amounts));
 			emptyRow = false;
 		}
 	}
 
 	/**
-	 * Laskee yhteen saldot niiltä tileiltä, joiden numero
-	 * on välillä <code>[start, stop[</code>.
+	 * Lisää tilierittelyrivit tileille, joiden indeksit tililuettelossa
+	 * ovat <code>indices</code>.
 	 *
-	 * @param balances tilien saldot
-	 * @param start välin alku
-	 * @param stop välin loppu
-	 * @return saldojen summa
+	 * @param indices tilien indeksit tililuettelon järjestyksessä
+	 * @param style tekstityyli
+	 * @param level sisennystaso
+	 * @param filterChar suodatin '+', '-', '0' tai ' '
 	 */
-	private BigDecimal calculateBalance(AccountBalances balances,
-			String start, String stop, BigDecimal sum) {
-		String number;
-		BigDecimal balance;
-		boolean singleAccount = start.equals(stop);
-
-		for (Account account : accounts) {
-			number = account.getNumber();
-
-			/* Jos tilinumero on välillä [start; stop[, lisätään tilin
-			 * saldo summaan. */
-			if ((number.compareTo(start) >= 0 && number.compareTo(stop) < 0) ||
-					(singleAccount && number.equals(start))) {
-				balance = balances.getBalance(account.getId());
-
-				if (balance != null) {
-					if (account.getType() == Account.TYPE_EXPENSE)
-						balance = balance.negate();
-
-					if (sum == null) {
-						sum = balance;
-					}
-					else {
-						sum = sum.add(balance);
-					}
-				}
-			}
-		}
-
-		return sum;
-	}
+	private void addDetailRows(int[] indices, int style, int level, char filterChar) {
+		for (int index : indices) {
+			Account account = accounts.get(index);
+			BigDecimal[] amounts = new BigDecimal[startDates.length];
+			boolean nonZero = false;
 
-	private void addDetailRows(String start, String stop, int style, int level, char filterChar) {
-		String number;
-		boolean singleAccount = start.equals(stop);
+			for (int i = 0; i < startDates.length; i++) {
+				amounts[i] = balances[i].getBalance(account.getId());
 
-		for (Account account : accounts) {
-			number = account.getNumber();
+				if (amounts[i] != null) {
+					nonZero = true;
+				}
+			}
 
-			if ((number.compareTo(start) >= 0 && number.compareTo(stop) < 0) ||
-					(singleAccount && number.equals(start))) {
+			if (amounts[0] == null && filterChar == '0') {
+				amounts[0] = BigDecimal.ZERO;
+				nonZero = true;
+			}
 
-				BigDecimal[] amounts = new BigDecimal[startDates.length];
-				boolean nonZero = false;
+			if (!nonZero) {
+				continue;
+			}
 
+			if (account.getType() == Account.TYPE_EXPENSE) {
 				for (int i = 0; i < startDates.length; i++) {
-					amounts[i] = balances[i].getBalance(account.getId());
-
-					if (amounts[i] != null) {
-						nonZero = true;
-					}
-				}
-
-				if (amounts[0] == null && filterChar == '0') {
-					amounts[0] = BigDecimal.ZERO;
-					nonZero = true;
+					if (amounts[i] != null) amounts[i] = amounts[i].negate();
 				}
+			}
 
-				if (!nonZero) {
+			if (amounts[0] != null) {
+				if (filterChar == '+' && amounts[0].compareTo(BigDecimal.ZERO) < 0) {
 					continue;
 				}
-
-				if (account.getType() == Account.TYPE_EXPENSE) {
-					for (int i = 0; i < startDates.length; i++) {
-						if (amounts[i] != null) amounts[i] = amounts[i].negate();
-					}
+				else if (filterChar == '-' && amounts[0].compareTo(BigDecimal.ZERO) > 0) {
+					continue;
 				}
-
-				if (amounts[0] != null) {
-					if (filterChar == '+' && amounts[0].compareTo(BigDecimal.ZERO) < 0) {
-						continue;
-					}
-					else if (filterChar == '-' && amounts[0].compareTo(BigDecimal.ZERO) > 0) {
-						continue;
-					}
-					else if (filterChar == '0' && amounts[0].compareTo(BigDecimal.ZERO) != 0) {
-						continue;
-					}
+				else if (filterChar == '0' && amounts[0].compareTo(BigDecimal.ZERO) != 0) {
+					continue;
 				}
-
-				details = true;
-				emptyRow = false;
-				maxLevel = Math.max(level, maxLevel);
-				rows.add(new FinancialStatementRow(account.getNumber(),
-						account.getName(), style, level, amounts));
 			}
+
+			details = true;
+			emptyRow = false;
+			maxLevel = Math.max(level, maxLevel);
+			rows.add(new FinancialStatementRow(account.getNumber(),
+					account.getName(), style, level, amounts));
 		}
 	}
 
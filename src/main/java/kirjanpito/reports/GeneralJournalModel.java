@@ -1,12 +1,12 @@
 package kirjanpito.reports;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 
 import kirjanpito.db.Account;
@@ -14,6 +14,7 @@ import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
+import kirjanpito.db.DocumentEntryCallback;
 import kirjanpito.db.DocumentType;
 import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
@@ -134,46 +135,53 @@ public class GeneralJournalModel implements PrintModel {
 	}
 
 	public void run() throws DataAccessException {
-		List<Document> documents;
+		rows = new ArrayList<GeneralJournalRow>();
+		generateRows(new DTOCallback<GeneralJournalRow>() {
+			public void process(GeneralJournalRow row) {
+				rows.add(row);
+			}
+		});
+
+		if (totalAmountVisible) {
+			rows.add(new GeneralJournalRow(0, null, null, null, null));
+			rows.add(new GeneralJournalRow(4, null, null, null, null));
+		}
+	}
+
+	/**
+	 * Muodostaa päiväkirjan tosite- ja vientirivit ja antaa ne yksi
+	 * kerrallaan callbackille. Yhteissummarivejä ei muodosteta.
+	 *
+	 * @param callback callback, jolle rivit annetaan
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	protected void generateRows(final DTOCallback<GeneralJournalRow> callback)
+		throws DataAccessException {
+
 		DataSource dataSource = registry.getDataSource();
 		Session sess = null;
 
-		final HashMap<Integer, Document> documentMap =
-			new HashMap<Integer, Document>();
-
 		settings = registry.getSettings();
 		prevDocumentId = -1;
-		rows = new ArrayList<GeneralJournalRow>();
 		lastDocumentNumber = 0;
 		totalDebit = BigDecimal.ZERO;
 		totalCredit = BigDecimal.ZERO;
 
 		try {
-			sess = dataSource.openSession();
-			documents = dataSource.getDocumentDAO(
-					sess).getByPeriodIdAndDate(period.getId(), startDate, endDate);
-
-			for (Document d : documents) {
-				if (d.getNumber() >= 1) {
-					documentMap.put(d.getId(), d);
-				}
-			}
-
-			documents = null;
-			dataSource.getEntryDAO(sess).getByPeriodId(
-				period.getId(), orderBy,
-				new DTOCallback<Entry>() {
-					public void process(Entry entry) {
+			sess = dataSource.openReadOnlySession();
+			dataSource.getEntryDAO(sess).getByPeriodIdAndDateWithDocuments(
+				period.getId(), startDate, endDate, orderBy,
+				new DocumentEntryCallback() {
+					public void process(Document document, Entry entry) {
 						Account account = registry.getAccountById(entry.getAccountId());
-						Document document = documentMap.get(entry.getDocumentId());
 
-						if (account == null || document == null) {
+						if (account == null || document.getNumber() < 1) {
 							return;
 						}
 
 						if (prevDocumentId != document.getId()) {
 							lastDocumentNumber = Math.max(lastDocumentNumber, document.getNumber());
-							rows.add(new GeneralJournalRow(2, document, null, null, null));
+							callback.process(new GeneralJournalRow(2, document, null, null, null));
 						}
 
 						if (entry.isDebit()) {
@@ -183,7 +191,7 @@ public class GeneralJournalModel implements PrintModel {
 							totalCredit = totalCredit.add(entry.getAmount());
 						}
 
-						rows.add(new GeneralJournalRow(1, document, null, account, entry));
+						callback.process(new GeneralJournalRow(1, document, null, account, entry));
 						prevDocumentId = document.getId();
 					}
 				});
@@ -191,10 +199,23 @@ public class GeneralJournalModel implements PrintModel {
 		finally {
 			if (sess != null) sess.close();
 		}
+	}
+
+	/**
+	 * Muodostaa kaikki päiväkirjan rivit samassa järjestyksessä kuin
+	 * <code>run</code>, mutta ei tallenna niitä.
+	 *
+	 * @param callback callback, jolle rivit annetaan
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	protected void streamRows(DTOCallback<GeneralJournalRow> callback)
+		throws DataAccessException {
+
+		generateRows(callback);
 
 		if (totalAmountVisible) {
-			rows.add(new GeneralJournalRow(0, null, null, null, null));
-			rows.add(new GeneralJournalRow(4, null, null, null, null));
+			callback.process(new GeneralJournalRow(0, null, null, null, null));
+			callback.process(new GeneralJournalRow(4, null, null, null, null));
 		}
 	}
 
@@ -203,10 +224,39 @@ public class GeneralJournalModel implements PrintModel {
 	}
 
 	protected void writeCSV(CSVWriter writer, boolean documentTypes) throws IOException {
+		writeCSVHeader(writer, documentTypes);
+		CSVRowWriter rowWriter = new CSVRowWriter(writer, documentTypes);
+
+		for (GeneralJournalRow row : rows) {
+			rowWriter.write(row);
+		}
+	}
+
+	@Override
+	public void streamCSV(CSVWriter writer) throws DataAccessException, IOException {
+		settings = registry.getSettings();
+		writeCSVHeader(writer, false);
+		final CSVRowWriter rowWriter = new CSVRowWriter(writer, false);
+
+		try {
+			streamRows(new DTOCallback<GeneralJournalRow>() {
+				public void process(GeneralJournalRow row) {
+					try {
+						rowWriter.write(row);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeCSVHeader(CSVWriter writer, boolean documentTypes) throws IOException {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("d.M.yyyy");
-		DecimalFormat numberFormat = new DecimalFormat();
-		numberFormat.setMinimumFractionDigits(2);
-		numberFormat.setMaximumFractionDigits(2);
 
 		if (documentTypes) {
 			writer.writeField("Päiväkirja tositelajeittain");
@@ -242,36 +292,27 @@ public class GeneralJournalModel implements PrintModel {
 		writer.writeField("Kredit");
 		writer.writeField("Selite");
 		writer.writeLine();
+	}
 
-		for (GeneralJournalRow row : rows) {
-			if (row.type != 1) {
-				continue;
-			}
-
-			if (documentTypes) {
-				writer.writeField(row.documentType.getName());
-			}
+	public void writeODS(ODFSpreadsheet s) {
+		writeODSHeader(s);
 
-			writer.writeField(Integer.toString(row.document.getNumber()));
-			writer.writeField(dateFormat.format(row.document.getDate()));
-			writer.writeField(row.account.getNumber());
-			writer.writeField(row.account.getName());
+		for (GeneralJournalRow row : rows) {
+			writeODSRow(s, row);
+		}
+	}
 
-			if (row.entry.isDebit()) {
-				writer.writeField(numberFormat.format(row.entry.getAmount()));
-				writer.writeField("");
-			}
-			else {
-				writer.writeField("");
-				writer.writeField(numberFormat.format(row.entry.getAmount()));
+	@Override
+	public void streamODS(final ODFSpreadsheet s) throws DataAccessException {
+		writeODSHeader(s);
+		streamRows(new DTOCallback<GeneralJournalRow>() {
+			public void process(GeneralJournalRow row) {
+				writeODSRow(s, row);
 			}
-
-			writer.writeField(row.entry.getDescription());
-			writer.writeLine();
-		}
+		});
 	}
 
-	public void writeODS(ODFSpreadsheet s) {
+	private void writeODSHeader(ODFSpreadsheet s) {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("d.M.yyyy");
 		s.setTitle(String.format("Päiväkirja: %s - %s",
 				dateFormat.format(startDate), dateFormat.format(endDate)));
@@ -303,45 +344,45 @@ public class GeneralJournalModel implements PrintModel {
 		s.writeTextCell("Debet", "boldAlignRightBorderBottom");
 		s.writeTextCell("Kredit", "boldAlignRightBorderBottom");
 		s.writeTextCell("Selite", "boldBorderBottom");
+	}
 
-		for (GeneralJournalRow row : rows) {
+	private void writeODSRow(ODFSpreadsheet s, GeneralJournalRow row) {
+		s.addRow();
+
+		if (row.type == 3) {
 			s.addRow();
+			s.writeTextCell(row.documentType.getName(), "bold");
+		}
+		else if (row.type == 2) {
+			s.writeTextCell(Integer.toString(row.document.getNumber()), "num0AlignLeft");
+			s.setColSpan(3);
+			s.writeDateCell(row.document.getDate(), "dateAlignLeft");
+			s.setColSpan(1);
+		}
+		else if (row.type == 1) {
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeTextCell(row.account.getNumber());
+			s.writeTextCell(row.account.getName());
 
-			if (row.type == 3) {
-				s.addRow();
-				s.writeTextCell(row.documentType.getName(), "bold");
+			if (row.entry.isDebit()) {
+				s.writeFloatCell(row.entry.getAmount(), "num2");
+				s.writeTextCell("", "num2");
 			}
-			else if (row.type == 2) {
-				s.writeTextCell(Integer.toString(row.document.getNumber()), "num0AlignLeft");
-				s.setColSpan(3);
-				s.writeDateCell(row.document.getDate(), "dateAlignLeft");
-				s.setColSpan(1);
+			else {
+				s.writeTextCell("", "num2");
+				s.writeFloatCell(row.entry.getAmount(), "num2");
 			}
-			else if (row.type == 1) {
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeTextCell(row.account.getNumber());
-				s.writeTextCell(row.account.getName());
-
-				if (row.entry.isDebit()) {
-					s.writeFloatCell(row.entry.getAmount(), "num2");
-					s.writeTextCell("", "num2");
-				}
-				else {
-					s.writeTextCell("", "num2");
-					s.writeFloatCell(row.entry.getAmount(), "num2");
-				}
 
-				s.writeTextCell(row.entry.getDescription());
-			}
-			else if (row.type == 4) {
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeFloatCell(totalDebit, "num2Bold");
-				s.writeFloatCell(totalCredit, "num2Bold");
-			}
+			s.writeTextCell(row.entry.getDescription());
+		}
+		else if (row.type == 4) {
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeFloatCell(totalDebit, "num2Bold");
+			s.writeFloatCell(totalCredit, "num2Bold");
 		}
 	}
 
@@ -432,6 +473,52 @@ public class GeneralJournalModel implements PrintModel {
 		return totalCredit;
 	}
 
+	/**
+	 * Kirjoittaa päiväkirjan rivejä CSV-tiedostoon.
+	 */
+	private class CSVRowWriter {
+		private CSVWriter writer;
+		private boolean documentTypes;
+		private SimpleDateFormat dateFormat;
+		private DecimalFormat numberFormat;
+
+		public CSVRowWriter(CSVWriter writer, boolean documentTypes) {
+			this.writer = writer;
+			this.documentTypes = documentTypes;
+			dateFormat = new SimpleDateFormat("d.M.yyyy");
+			numberFormat = new DecimalFormat();
+			numberFormat.setMinimumFractionDigits(2);
+			numberFormat.setMaximumFractionDigits(2);
+		}
+
+		public void write(GeneralJournalRow row) throws IOException {
+			if (row.type != 1) {
+				return;
+			}
+
+			if (documentTypes) {
+				writer.writeField(row.documentType.getName());
+			}
+
+			writer.writeField(Integer.toString(row.document.getNumber()));
+			writer.writeField(dateFormat.format(row.document.getDate()));
+			writer.writeField(row.account.getNumber());
+			writer.writeField(row.account.getName());
+
+			if (row.entry.isDebit()) {
+				writer.writeField(numberFormat.format(row.entry.getAmount()));
+				writer.writeField("");
+			}
+			else {
+				writer.writeField("");
+				writer.writeField(numberFormat.format(row.entry.getAmount()));
+			}
+
+			writer.writeField(row.entry.getDescription());
+			writer.writeLine();
+		}
+	}
+
 	protected class GeneralJournalRow {
 		public int type;
 		public Document document;
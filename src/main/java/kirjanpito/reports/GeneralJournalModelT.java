@@ -17,6 +17,7 @@ import kirjanpito.db.DocumentType;
 import kirjanpito.db.Entry;
 import kirjanpito.db.Session;
 import kirjanpito.util.CSVWriter;
+import kirjanpito.util.ODFSpreadsheet;
 
 /**
  * Malli päiväkirja tositelajeittain -tulosteelle.
@@ -44,7 +45,7 @@ public class GeneralJournalModelT extends GeneralJournalModel {
 		totalCredit = BigDecimal.ZERO;
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			documents = dataSource.getDocumentDAO(sess).getByPeriodId(period.getId(), 1);
 
 			for (Document d : documents) {
@@ -141,6 +142,20 @@ public class GeneralJournalModelT extends GeneralJournalModel {
 		writeCSV(writer, true);
 	}
 
+	/* Rivit lajitellaan tositelajeittain, joten ne on muodostettava
+	 * kokonaan ennen kirjoittamista. */
+	@Override
+	public void streamCSV(CSVWriter writer) throws DataAccessException, IOException {
+		run();
+		writeCSV(writer);
+	}
+
+	@Override
+	public void streamODS(ODFSpreadsheet spreadsheet) throws DataAccessException {
+		run();
+		writeODS(spreadsheet);
+	}
+
 	private DocumentType getDocumentTypeByNumber(int number) {
 		for (DocumentType type : documentTypes) {
 			if (number >= type.getNumberStart() && number <= type.getNumberEnd()) {
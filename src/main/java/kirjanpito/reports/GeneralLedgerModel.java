@@ -1,20 +1,22 @@
 package kirjanpito.reports;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
+import kirjanpito.db.DocumentEntryCallback;
 import kirjanpito.db.DocumentType;
 import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
@@ -136,38 +138,53 @@ public class GeneralLedgerModel implements PrintModel {
 	}
 
 	public void run() throws DataAccessException {
-		List<Document> documents;
+		rows = new ArrayList<GeneralLedgerRow>();
+		BigDecimal profit = generateRows(new DTOCallback<GeneralLedgerRow>() {
+			public void process(GeneralLedgerRow row) {
+				rows.add(row);
+			}
+		});
+
+		addProfitRow(profit);
+
+		if (totalAmountVisible) {
+			rows.add(new GeneralLedgerRow(0, null, null, null, null, null));
+			rows.add(new GeneralLedgerRow(5, null, null, null, null, null));
+		}
+	}
+
+	/**
+	 * Muodostaa pääkirjan vientirivit ja antaa ne yksi kerrallaan
+	 * callbackille. Tilikauden voitto/tappio -rivejä ja
+	 * yhteissummarivejä ei muodosteta.
+	 *
+	 * @param callback callback, jolle rivit annetaan
+	 * @return tilikauden voitto/tappio
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	protected BigDecimal generateRows(final DTOCallback<GeneralLedgerRow> callback)
+		throws DataAccessException {
+
 		DataSource dataSource = registry.getDataSource();
 		Session sess = null;
 
-		final HashMap<Integer, Document> documentMap =
-			new HashMap<Integer, Document>();
-
 		final AccountBalances balances = new AccountBalances(registry.getAccounts());
 
 		settings = registry.getSettings();
 		prevAccountId = -1;
-		rows = new ArrayList<GeneralLedgerRow>();
 		lastDocumentNumber = 0;
 		totalDebit = BigDecimal.ZERO;
 		totalCredit = BigDecimal.ZERO;
 
 		try {
-			sess = dataSource.openSession();
-			documents = dataSource.getDocumentDAO(sess).getByPeriodId(period.getId(), 0);
-
-			for (Document d : documents) {
-				documentMap.put(d.getId(), d);
-			}
-
-			dataSource.getEntryDAO(sess).getByPeriodId(
+			sess = dataSource.openReadOnlySession();
+			dataSource.getEntryDAO(sess).getByPeriodIdWithDocuments(
 				period.getId(), orderBy,
-				new DTOCallback<Entry>() {
-					public void process(Entry entry) {
+				new DocumentEntryCallback() {
+					public void process(Document document, Entry entry) {
 						Account account = registry.getAccountById(entry.getAccountId());
-						Document document = documentMap.get(entry.getDocumentId());
 
-						if (account == null || document == null) {
+						if (account == null) {
 							return;
 						}
 
@@ -188,22 +205,22 @@ public class GeneralLedgerModel implements PrintModel {
 
 						if (account.getType() == Account.TYPE_PROFIT_PREV) {
 							if (prevAccountId != -1)
-								rows.add(new GeneralLedgerRow(0, null, null, null, null, null));
+								callback.process(new GeneralLedgerRow(0, null, null, null, null, null));
 
-							rows.add(new GeneralLedgerRow(4, document, null, account, null,
+							callback.process(new GeneralLedgerRow(4, document, null, account, null,
 									balances.getBalance(entry.getAccountId())));
 							return;
 						}
 
 						if (prevAccountId != account.getId()) {
 							if (prevAccountId != -1)
-								rows.add(new GeneralLedgerRow(0, null, null, null, null, null));
+								callback.process(new GeneralLedgerRow(0, null, null, null, null, null));
 
-							rows.add(new GeneralLedgerRow(2, null, null, account, null, null));
+							callback.process(new GeneralLedgerRow(2, null, null, account, null, null));
 						}
 
 						lastDocumentNumber = Math.max(lastDocumentNumber, document.getNumber());
-						rows.add(new GeneralLedgerRow(1, document, null, account, entry,
+						callback.process(new GeneralLedgerRow(1, document, null, account, entry,
 								balances.getBalance(entry.getAccountId())));
 
 						prevAccountId = account.getId();
@@ -214,11 +231,45 @@ public class GeneralLedgerModel implements PrintModel {
 			if (sess != null) sess.close();
 		}
 
-		addProfitRow(balances.getProfit());
+		return balances.getProfit();
+	}
+
+	/**
+	 * Muodostaa kaikki pääkirjan rivit samassa järjestyksessä kuin
+	 * <code>run</code>, mutta ei tallenna niitä. Tilikauden voitto
+	 * lasketaan ensin tilien summista, jotta voitto/tappio -rivit voidaan
+	 * lisätä oikeaan kohtaan rivien joukkoon.
+	 *
+	 * @param callback callback, jolle rivit annetaan
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	protected void streamRows(DTOCallback<GeneralLedgerRow> callback)
+		throws DataAccessException {
+
+		DataSource dataSource = registry.getDataSource();
+		final AccountBalances totals = new AccountBalances(registry.getAccounts());
+		Session sess = null;
+
+		try {
+			sess = dataSource.openReadOnlySession();
+			dataSource.getBalanceDAO(sess).getByPeriodId(period.getId(),
+				new DTOCallback<AccountTotal>() {
+					public void process(AccountTotal total) {
+						totals.addTotal(total);
+					}
+				});
+		}
+		finally {
+			if (sess != null) sess.close();
+		}
+
+		ProfitRowInserter inserter = new ProfitRowInserter(callback, totals.getProfit());
+		generateRows(inserter);
+		inserter.finish();
 
 		if (totalAmountVisible) {
-			rows.add(new GeneralLedgerRow(0, null, null, null, null, null));
-			rows.add(new GeneralLedgerRow(5, null, null, null, null, null));
+			callback.process(new GeneralLedgerRow(0, null, null, null, null, null));
+			callback.process(new GeneralLedgerRow(5, null, null, null, null, null));
 		}
 	}
 
@@ -271,10 +322,39 @@ public class GeneralLedgerModel implements PrintModel {
 	}
 
 	protected void writeCSV(CSVWriter writer, boolean documentTypes) throws IOException {
+		writeCSVHeader(writer, documentTypes);
+		CSVRowWriter rowWriter = new CSVRowWriter(writer, documentTypes);
+
+		for (GeneralLedgerRow row : rows) {
+			rowWriter.write(row);
+		}
+	}
+
+	@Override
+	public void streamCSV(CSVWriter writer) throws DataAccessException, IOException {
+		settings = registry.getSettings();
+		writeCSVHeader(writer, false);
+		final CSVRowWriter rowWriter = new CSVRowWriter(writer, false);
+
+		try {
+			streamRows(new DTOCallback<GeneralLedgerRow>() {
+				public void process(GeneralLedgerRow row) {
+					try {
+						rowWriter.write(row);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeCSVHeader(CSVWriter writer, boolean documentTypes) throws IOException {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("d.M.yyyy");
-		DecimalFormat numberFormat = new DecimalFormat();
-		numberFormat.setMinimumFractionDigits(2);
-		numberFormat.setMaximumFractionDigits(2);
 
 		if (documentTypes) {
 			writer.writeField("Pääkirja tositelajeittain");
@@ -311,50 +391,27 @@ public class GeneralLedgerModel implements PrintModel {
 		writer.writeField("Saldo");
 		writer.writeField("Selite");
 		writer.writeLine();
+	}
 
-		for (GeneralLedgerRow row : rows) {
-			if (row.type != 1 && row.type != 4) {
-				continue;
-			}
-
-			if (documentTypes) {
-				writer.writeField(row.documentType.getName());
-			}
-
-			writer.writeField(row.account.getNumber());
-			writer.writeField(row.account.getName());
+	public void writeODS(ODFSpreadsheet s) {
+		writeODSHeader(s);
 
-			if (row.document == null || row.document.getNumber() == 0) {
-				writer.writeField("");
-				writer.writeField("");
-				writer.writeField("");
-				writer.writeField("");
-			}
-			else {
-				writer.writeField(Integer.toString(row.document.getNumber()));
-				writer.writeField(dateFormat.format(row.document.getDate()));
+		for (GeneralLedgerRow row : rows) {
+			writeODSRow(s, row);
+		}
+	}
 
-				if (row.entry.isDebit()) {
-					writer.writeField(numberFormat.format(row.entry.getAmount()));
-					writer.writeField("");
-				}
-				else {
-					writer.writeField("");
-					writer.writeField(numberFormat.format(row.entry.getAmount()));
-				}
+	@Override
+	public void streamODS(final ODFSpreadsheet s) throws DataAccessException {
+		writeODSHeader(s);
+		streamRows(new DTOCallback<GeneralLedgerRow>() {
+			public void process(GeneralLedgerRow row) {
+				writeODSRow(s, row);
 			}
-
-			writer.writeField(numberFormat.format(row.balance));
-
-			if (row.type == 1) {
-				writer.writeField(row.entry.getDescription());
-			}
-
-			writer.writeLine();
-		}
+		});
 	}
 
-	public void writeODS(ODFSpreadsheet s) {
+	private void writeODSHeader(ODFSpreadsheet s) {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("d.M.yyyy");
 		s.setTitle(String.format("Pääkirja: %s - %s",
 				dateFormat.format(startDate), dateFormat.format(endDate)));
@@ -385,64 +442,64 @@ public class GeneralLedgerModel implements PrintModel {
 		s.writeTextCell("Kredit", "boldAlignRightBorderBottom");
 		s.writeTextCell("Saldo", "boldAlignRightBorderBottom");
 		s.writeTextCell("Selite", "boldBorderBottom");
+	}
 
-		for (GeneralLedgerRow row : rows) {
-			s.addRow();
+	private void writeODSRow(ODFSpreadsheet s, GeneralLedgerRow row) {
+		s.addRow();
 
-			if (row.type == 3) {
-				s.addRow();
-				s.writeTextCell(row.documentType.getName(), "bold");
-			}
-			else if (row.type == 2) {
-				s.writeTextCell(row.account.getNumber());
-				s.setColSpan(3);
-				s.writeTextCell(row.account.getName());
-				s.setColSpan(1);
-			}
-			else if (row.type == 1) {
-				s.writeEmptyCell();
+		if (row.type == 3) {
+			s.addRow();
+			s.writeTextCell(row.documentType.getName(), "bold");
+		}
+		else if (row.type == 2) {
+			s.writeTextCell(row.account.getNumber());
+			s.setColSpan(3);
+			s.writeTextCell(row.account.getName());
+			s.setColSpan(1);
+		}
+		else if (row.type == 1) {
+			s.writeEmptyCell();
 
-				if (row.document.getNumber() != 0) {
-					s.writeFloatCell(row.document.getNumber(), "num0");
-					s.writeDateCell(row.document.getDate(), "date");
+			if (row.document.getNumber() != 0) {
+				s.writeFloatCell(row.document.getNumber(), "num0");
+				s.writeDateCell(row.document.getDate(), "date");
 
-					if (row.entry.isDebit()) {
-						s.writeFloatCell(row.entry.getAmount(), "num2");
-						s.writeTextCell("", "num2");
-					}
-					else {
-						s.writeTextCell("", "num2");
-						s.writeFloatCell(row.entry.getAmount(), "num2");
-					}
+				if (row.entry.isDebit()) {
+					s.writeFloatCell(row.entry.getAmount(), "num2");
+					s.writeTextCell("", "num2");
 				}
 				else {
-					s.writeTextCell("", "num0");
-					s.writeTextCell("", "date");
-					s.writeTextCell("", "num2");
 					s.writeTextCell("", "num2");
+					s.writeFloatCell(row.entry.getAmount(), "num2");
 				}
-
-				s.writeFloatCell(row.balance, "num2");
-				s.writeTextCell(row.entry.getDescription());
-			}
-			else if (row.type == 4) {
-				s.writeTextCell(row.account.getNumber());
-				s.setColSpan(3);
-				s.writeTextCell(row.account.getName());
-				s.setColSpan(1);
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeFloatCell(row.balance, "num2");
 			}
-			else if (row.type == 5) {
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeEmptyCell();
-				s.writeFloatCell(totalDebit, "num2Bold");
-				s.writeFloatCell(totalCredit, "num2Bold");
+			else {
+				s.writeTextCell("", "num0");
+				s.writeTextCell("", "date");
+				s.writeTextCell("", "num2");
+				s.writeTextCell("", "num2");
 			}
+
+			s.writeFloatCell(row.balance, "num2");
+			s.writeTextCell(row.entry.getDescription());
+		}
+		else if (row.type == 4) {
+			s.writeTextCell(row.account.getNumber());
+			s.setColSpan(3);
+			s.writeTextCell(row.account.getName());
+			s.setColSpan(1);
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeFloatCell(row.balance, "num2");
+		}
+		else if (row.type == 5) {
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeEmptyCell();
+			s.writeFloatCell(totalDebit, "num2Bold");
+			s.writeFloatCell(totalCredit, "num2Bold");
 		}
 	}
 
@@ -544,6 +601,122 @@ public class GeneralLedgerModel implements PrintModel {
 		return totalCredit;
 	}
 
+	/**
+	 * Kirjoittaa pääkirjan rivejä CSV-tiedostoon.
+	 */
+	private class CSVRowWriter {
+		private CSVWriter writer;
+		private boolean documentTypes;
+		private SimpleDateFormat dateFormat;
+		private DecimalFormat numberFormat;
+
+		public CSVRowWriter(CSVWriter writer, boolean documentTypes) {
+			this.writer = writer;
+			this.documentTypes = documentTypes;
+			dateFormat = new SimpleDateFormat("d.M.yyyy");
+			numberFormat = new DecimalFormat();
+			numberFormat.setMinimumFractionDigits(2);
+			numberFormat.setMaximumFractionDigits(2);
+		}
+
+		public void write(GeneralLedgerRow row) throws IOException {
+			if (row.type != 1 && row.type != 4) {
+				return;
+			}
+
+			if (documentTypes) {
+				writer.writeField(row.documentType.getName());
+			}
+
+			writer.writeField(row.account.getNumber());
+			writer.writeField(row.account.getName());
+
+			if (row.document == null || row.document.getNumber() == 0) {
+				writer.writeField("");
+				writer.writeField("");
+				writer.writeField("");
+				writer.writeField("");
+			}
+			else {
+				writer.writeField(Integer.toString(row.document.getNumber()));
+				writer.writeField(dateFormat.format(row.document.getDate()));
+
+				if (row.entry.isDebit()) {
+					writer.writeField(numberFormat.format(row.entry.getAmount()));
+					writer.writeField("");
+				}
+				else {
+					writer.writeField("");
+					writer.writeField(numberFormat.format(row.entry.getAmount()));
+				}
+			}
+
+			writer.writeField(numberFormat.format(row.balance));
+
+			if (row.type == 1) {
+				writer.writeField(row.entry.getDescription());
+			}
+
+			writer.writeLine();
+		}
+	}
+
+	/**
+	 * Lisää tilikauden voitto/tappio -rivit rivien joukkoon samoihin
+	 * kohtiin kuin <code>addProfitRow</code>, kun rivejä ei tallenneta.
+	 */
+	private class ProfitRowInserter implements DTOCallback<GeneralLedgerRow> {
+		private DTOCallback<GeneralLedgerRow> callback;
+		private BigDecimal profit;
+		private ArrayList<Account> profitAccounts;
+
+		public ProfitRowInserter(DTOCallback<GeneralLedgerRow> callback, BigDecimal profit) {
+			this.callback = callback;
+			this.profit = profit;
+			profitAccounts = new ArrayList<Account>();
+
+			for (Account account : registry.getAccounts()) {
+				if (account.getType() == Account.TYPE_PROFIT) {
+					profitAccounts.add(account);
+				}
+			}
+		}
+
+		public void process(GeneralLedgerRow row) {
+			if (row.type == 2 && !profitAccounts.isEmpty()) {
+				ArrayList<Account> before = new ArrayList<Account>();
+				Iterator<Account> iter = profitAccounts.iterator();
+
+				while (iter.hasNext()) {
+					Account profitAccount = iter.next();
+
+					if (profitAccount.getNumber().compareTo(row.account.getNumber()) < 0) {
+						before.add(profitAccount);
+						iter.remove();
+					}
+				}
+
+				/* addProfitRow lisää rivit aina samaan kohtaan,
+				 * joten ne päätyvät käänteiseen järjestykseen. */
+				for (int i = before.size() - 1; i >= 0; i--) {
+					callback.process(new GeneralLedgerRow(4, null, null, before.get(i), null, profit));
+					callback.process(new GeneralLedgerRow(0, null, null, null, null, null));
+				}
+			}
+
+			callback.process(row);
+		}
+
+		public void finish() {
+			for (Account profitAccount : profitAccounts) {
+				callback.process(new GeneralLedgerRow(0, null, null, null, null, null));
+				callback.process(new GeneralLedgerRow(4, null, null, profitAccount, null, profit));
+			}
+
+			profitAccounts.clear();
+		}
+	}
+
 	protected class GeneralLedgerRow {
 		public int type;
 		public Document document;
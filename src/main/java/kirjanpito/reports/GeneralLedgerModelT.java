@@ -18,6 +18,7 @@ import kirjanpito.db.Entry;
 import kirjanpito.db.Session;
 import kirjanpito.util.AccountBalances;
 import kirjanpito.util.CSVWriter;
+import kirjanpito.util.ODFSpreadsheet;
 
 /**
  * Malli pääkirja tositelajeittain -tulosteelle.
@@ -46,7 +47,7 @@ public class GeneralLedgerModelT extends GeneralLedgerModel {
 		totalCredit = BigDecimal.ZERO;
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			documents = dataSource.getDocumentDAO(sess).getByPeriodId(period.getId(), 0);
 
 			for (Document d : documents) {
@@ -159,6 +160,20 @@ public class GeneralLedgerModelT extends GeneralLedgerModel {
 		writeCSV(writer, true);
 	}
 
+	/* Rivit lajitellaan tositelajeittain, joten ne on muodostettava
+	 * kokonaan ennen kirjoittamista. */
+	@Override
+	public void streamCSV(CSVWriter writer) throws DataAccessException, IOException {
+		run();
+		writeCSV(writer);
+	}
+
+	@Override
+	public void streamODS(ODFSpreadsheet spreadsheet) throws DataAccessException {
+		run();
+		writeODS(spreadsheet);
+	}
+
 	private DocumentType getDocumentTypeByNumber(int number) {
 		for (DocumentType type : documentTypes) {
 			if (number >= type.getNumberStart() && number <= type.getNumberEnd()) {
@@ -22,15 +22,34 @@ public class PDFCanvas implements PrintCanvas {
 	private PDFont italicFont;
 
 	public PDFCanvas(PDDocument document, PDPage page) throws IOException {
+		// Standard PDF fonts (equivalent to iText's Helvetica)
+		this(document, page,
+				new PDType1Font(Standard14Fonts.FontName.HELVETICA),
+				new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD),
+				new PDType1Font(Standard14Fonts.FontName.HELVETICA_OBLIQUE));
+	}
+
+	/**
+	 * Luo piirtoalustan, joka käyttää annettuja fontteja. Samoja
+	 * fontteja voi käyttää usealla sivulla, kunhan sivuja ei piirretä
+	 * samanaikaisesti eri säikeissä.
+	 *
+	 * @param document PDF-dokumentti
+	 * @param page sivu
+	 * @param normalFont normaali fontti
+	 * @param boldFont lihavoitu fontti
+	 * @param italicFont kursivoitu fontti
+	 * @throws IOException jos sivun sisällön luominen epäonnistuu
+	 */
+	public PDFCanvas(PDDocument document, PDPage page, PDFont normalFont,
+			PDFont boldFont, PDFont italicFont) throws IOException {
 		PDRectangle mediaBox = page.getMediaBox();
 		this.pageWidth = mediaBox.getWidth();
 		this.pageHeight = mediaBox.getHeight();
 		this.contentStream = new PDPageContentStream(document, page);
-
-		// Standard PDF fonts (equivalent to iText's Helvetica)
-		this.normalFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
-		this.boldFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
-		this.italicFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_OBLIQUE);
+		this.normalFont = normalFont;
+		this.boldFont = boldFont;
+		this.italicFont = italicFont;
 	}
 
 	public int getPageWidth() {
@@ -0,0 +1,275 @@
+package kirjanpito.reports;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+/**
+ * Tallentaa tulosteen PDF-tiedostoon usealla säikeellä.
+ *
+ * Tulosteen sivut asetellaan yksi kerrallaan kutsuvassa säikeessä
+ * <code>RecordingCanvas</code>ille, koska <code>Print</code>-oliot eivät
+ * ole säieturvallisia. Tallennetut sivut piirretään PDF-sivuiksi
+ * rinnakkain. Jokaisella työsäikeellä on oma <code>PDDocument</code>
+ * ja omat fonttinsa, joita käytetään kaikilla säikeen piirtämillä
+ * sivuilla. Valmiit sivut lisätään lopulliseen dokumenttiin
+ * sivunumerojärjestyksessä.
+ */
+public class PDFExporter {
+	private Print print;
+	private PDRectangle pageSize;
+	private String creator;
+	private int threadCount;
+	private volatile boolean cancelled;
+
+	/** Rinnakkain piirrettävien sivujen enimmäismäärä säiettä kohden. */
+	private static final int PAGES_PER_THREAD = 8;
+
+	/**
+	 * Edistymisen kuuntelija.
+	 */
+	public interface ProgressListener {
+		/**
+		 * Kutsutaan, kun sivu on lisätty dokumenttiin.
+		 *
+		 * @param pagesDone valmiiden sivujen lukumäärä
+		 * @param pageCount sivujen kokonaismäärä
+		 */
+		public void progressChanged(int pagesDone, int pageCount);
+	}
+
+	/**
+	 * Luo PDF-viejän tulosteelle <code>print</code>.
+	 *
+	 * @param print tuloste
+	 * @param pageSize sivun koko
+	 */
+	public PDFExporter(Print print, PDRectangle pageSize) {
+		this.print = print;
+		this.pageSize = pageSize;
+		this.threadCount = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Asettaa dokumentin tietoihin tallennettavan ohjelman nimen.
+	 *
+	 * @param creator ohjelman nimi
+	 */
+	public void setCreator(String creator) {
+		this.creator = creator;
+	}
+
+	/**
+	 * Asettaa työsäikeiden lukumäärän.
+	 *
+	 * @param threadCount säikeiden lukumäärä
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Peruuttaa tallennuksen. Tiedostoa ei kirjoiteta, jos
+	 * tallennus peruutetaan ennen sivujen valmistumista.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Tallentaa tulosteen tiedostoon <code>file</code>.
+	 *
+	 * @param file PDF-tiedosto
+	 * @param listener edistymisen kuuntelija tai <code>null</code>
+	 * @throws InterruptedIOException jos tallennus peruutetaan
+	 * @throws IOException jos tallentaminen epäonnistuu
+	 */
+	public void export(File file, ProgressListener listener) throws IOException {
+		final List<Worker> workers =
+			Collections.synchronizedList(new ArrayList<Worker>());
+
+		final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>() {
+			protected Worker initialValue() {
+				Worker worker = new Worker();
+				workers.add(worker);
+				return worker;
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "pdf-export");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		PDDocument document = new PDDocument();
+
+		try {
+			PDDocumentInformation info = document.getDocumentInformation();
+			info.setTitle(print.getTitle());
+			info.setCreator(creator);
+			info.setProducer(creator);
+			info.setCreationDate(Calendar.getInstance());
+
+			ArrayList<Future<PDPage>> futures = new ArrayList<Future<PDPage>>();
+			int window = threadCount * PAGES_PER_THREAD;
+			int pageCount;
+			int added = 0;
+
+			/* Print-olion tilaa ei saa muuttaa samaan aikaan esikatselussa,
+			 * joten sivut asetellaan lukittuna. */
+			synchronized (print) {
+				PrintCanvas oldCanvas = print.getCanvas();
+				RecordingCanvas recorder = new RecordingCanvas(
+						(int)pageSize.getWidth(), (int)pageSize.getHeight());
+
+				try {
+					print.setCanvas(recorder);
+					pageCount = print.getPageCount();
+
+					for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+						checkCancelled();
+						print.printPage(pageIndex);
+
+						for (final RecordingCanvas.RecordedPage page : recorder.takePages()) {
+							futures.add(executor.submit(new Callable<PDPage>() {
+								public PDPage call() throws IOException {
+									return currentWorker.get().render(page);
+								}
+							}));
+						}
+
+						/* Rajoitetaan keskeneräisten sivujen määrää. */
+						while (futures.size() - added > window) {
+							addPage(document, futures, added++);
+							fireProgressChanged(listener, added, pageCount);
+						}
+					}
+				}
+				finally {
+					if (oldCanvas != null) {
+						print.setCanvas(oldCanvas);
+					}
+				}
+			}
+
+			while (added < futures.size()) {
+				checkCancelled();
+				addPage(document, futures, added++);
+				fireProgressChanged(listener, added, pageCount);
+			}
+
+			checkCancelled();
+			document.save(file);
+		}
+		finally {
+			executor.shutdownNow();
+			awaitTermination(executor);
+			document.close();
+
+			/* Työsäikeiden dokumentteja ei voi sulkea ennen kuin lopullinen
+			 * dokumentti on tallennettu, koska sivujen sisältö on niissä. */
+			synchronized (workers) {
+				for (Worker worker : workers) {
+					worker.close();
+				}
+			}
+		}
+	}
+
+	private void addPage(PDDocument document, List<Future<PDPage>> futures,
+			int index) throws IOException {
+		try {
+			document.addPage(futures.get(index).get());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("PDF-tiedoston tallennus keskeytettiin");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void awaitTermination(ExecutorService executor) {
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void checkCancelled() throws InterruptedIOException {
+		if (cancelled || Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("PDF-tiedoston tallennus peruutettiin");
+		}
+	}
+
+	private void fireProgressChanged(ProgressListener listener,
+			int pagesDone, int pageCount) {
+		if (listener != null) {
+			listener.progressChanged(pagesDone, pageCount);
+		}
+	}
+
+	/**
+	 * Työsäikeen dokumentti ja fontit.
+	 */
+	private class Worker {
+		private PDDocument document;
+		private PDFont normalFont;
+		private PDFont boldFont;
+		private PDFont italicFont;
+
+		public Worker() {
+			document = new PDDocument();
+			normalFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+			boldFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+			italicFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_OBLIQUE);
+		}
+
+		public PDPage render(RecordingCanvas.RecordedPage recorded) throws IOException {
+			PDPage page = new PDPage(pageSize);
+			PDFCanvas canvas = new PDFCanvas(document, page,
+					normalFont, boldFont, italicFont);
+			recorded.replay(canvas);
+			return page;
+		}
+
+		public void close() {
+			try {
+				document.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
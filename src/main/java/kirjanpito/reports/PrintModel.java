@@ -33,4 +33,35 @@ public interface PrintModel {
 	 * @param spreadsheet laskentataulukko
 	 */
 	public void writeODS(ODFSpreadsheet spreadsheet);
+
+	/**
+	 * Kirjoittaa tulosteen tiedot CSV-tiedostoon suoraan tietokannasta.
+	 * Rivit muodostetaan sitä mukaa kuin ne kirjoitetaan, eikä niitä
+	 * säilytetä muistissa, joten <code>run</code>-metodia ei kutsuta
+	 * ensin. Oletustoteutus hakee kaikki rivit <code>run</code>-metodilla.
+	 *
+	 * @param writer CSV-tiedoston kirjoittaja
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 * @throws IOException jos tiedoston kirjoitus epäonnistuu
+	 */
+	public default void streamCSV(CSVWriter writer)
+		throws DataAccessException, IOException {
+
+		run();
+		writeCSV(writer);
+	}
+
+	/**
+	 * Muodostaa ODS-laskentataulukon suoraan tietokannasta samalla
+	 * tavalla kuin <code>streamCSV</code>.
+	 *
+	 * @param spreadsheet laskentataulukko
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public default void streamODS(ODFSpreadsheet spreadsheet)
+		throws DataAccessException {
+
+		run();
+		writeODS(spreadsheet);
+	}
 }
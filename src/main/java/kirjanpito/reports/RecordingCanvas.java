@@ -0,0 +1,232 @@
+package kirjanpito.reports;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+/**
+ * Piirtoalusta, joka tallentaa sivulle piirretyt tekstit ja viivat
+ * sen sijaan, että piirtäisi ne. Tallennettu sivu voidaan piirtää
+ * myöhemmin toiselle piirtoalustalle, esim. <code>PDFCanvas</code>ille
+ * toisessa säikeessä. Tekstin leveys lasketaan samoilla fonteilla
+ * kuin <code>PDFCanvas</code>issa, joten tulosteen asettelu ei muutu.
+ */
+public class RecordingCanvas implements PrintCanvas {
+	private static final int HEADING_STYLE = 0;
+	private static final int NORMAL_STYLE = 1;
+	private static final int SMALL_STYLE = 2;
+	private static final int BOLD_STYLE = 3;
+	private static final int ITALIC_STYLE = 4;
+	private static final int TEXT = 5;
+	private static final int TEXT_CENTER = 6;
+	private static final int TEXT_RIGHT = 7;
+	private static final int LINE = 8;
+
+	private int pageWidth;
+	private int pageHeight;
+	private PDFont normalFont;
+	private PDFont boldFont;
+	private PDFont italicFont;
+	private PDFont currentFont;
+	private float currentFontSize;
+	private ArrayList<Command> commands;
+	private ArrayList<List<Command>> pages;
+
+	/**
+	 * Luo piirtoalustan, jonka sivun koko on
+	 * <code>pageWidth</code> x <code>pageHeight</code> pistettä.
+	 *
+	 * @param pageWidth sivun leveys
+	 * @param pageHeight sivun korkeus
+	 */
+	public RecordingCanvas(int pageWidth, int pageHeight) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.normalFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+		this.boldFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+		this.italicFont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_OBLIQUE);
+		this.currentFont = normalFont;
+		this.currentFontSize = 10f;
+		this.commands = new ArrayList<Command>();
+		this.pages = new ArrayList<List<Command>>();
+	}
+
+	/**
+	 * Palauttaa valmiit sivut ja tyhjentää sivuluettelon. Sivu on
+	 * valmis, kun <code>close</code>-metodia on kutsuttu.
+	 *
+	 * @return valmiit sivut
+	 */
+	public List<RecordedPage> takePages() {
+		ArrayList<RecordedPage> result = new ArrayList<RecordedPage>(pages.size());
+
+		for (List<Command> page : pages) {
+			result.add(new RecordedPage(page));
+		}
+
+		pages.clear();
+		return result;
+	}
+
+	public int getPageWidth() {
+		return pageWidth;
+	}
+
+	public int getPageHeight() {
+		return pageHeight;
+	}
+
+	public int getImageableHeight() {
+		return pageHeight;
+	}
+
+	public int getImageableWidth() {
+		return pageWidth;
+	}
+
+	public int getImageableX() {
+		return 0;
+	}
+
+	public int getImageableY() {
+		return 0;
+	}
+
+	public void close() {
+		pages.add(commands);
+		commands = new ArrayList<Command>();
+	}
+
+	public void setHeadingStyle() {
+		setStyle(HEADING_STYLE, normalFont, 14f);
+	}
+
+	public void setNormalStyle() {
+		setStyle(NORMAL_STYLE, normalFont, 10f);
+	}
+
+	public void setSmallStyle() {
+		setStyle(SMALL_STYLE, normalFont, 9f);
+	}
+
+	public void setBoldStyle() {
+		setStyle(BOLD_STYLE, boldFont, 10f);
+	}
+
+	public void setItalicStyle() {
+		setStyle(ITALIC_STYLE, italicFont, 10f);
+	}
+
+	public void drawText(int x, int y, String s) {
+		commands.add(new Command(TEXT, x, y, 0, 0, 0f, s));
+	}
+
+	public void drawTextCenter(int x, int y, String s) {
+		commands.add(new Command(TEXT_CENTER, x, y, 0, 0, 0f, s));
+	}
+
+	public void drawTextRight(int x, int y, String s) {
+		commands.add(new Command(TEXT_RIGHT, x, y, 0, 0, 0f, s));
+	}
+
+	public void drawLine(int x1, int y1, int x2, int y2, float lineWidth) {
+		commands.add(new Command(LINE, x1, y1, x2, y2, lineWidth, null));
+	}
+
+	public int stringWidth(String s) {
+		try {
+			return (int)(currentFont.getStringWidth(s) / 1000 * currentFontSize);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	private void setStyle(int style, PDFont font, float size) {
+		currentFont = font;
+		currentFontSize = size;
+		commands.add(new Command(style, 0, 0, 0, 0, 0f, null));
+	}
+
+	private static class Command {
+		final int type;
+		final int x1, y1, x2, y2;
+		final float lineWidth;
+		final String text;
+
+		Command(int type, int x1, int y1, int x2, int y2, float lineWidth, String text) {
+			this.type = type;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.x2 = x2;
+			this.y2 = y2;
+			this.lineWidth = lineWidth;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Tallennettu sivu.
+	 */
+	public static class RecordedPage {
+		private final List<Command> commands;
+
+		private RecordedPage(List<Command> commands) {
+			this.commands = commands;
+		}
+
+		/**
+		 * Piirtää sivun piirtoalustalle <code>canvas</code> ja
+		 * sulkee piirtoalustan.
+		 *
+		 * @param canvas piirtoalusta
+		 */
+		public void replay(PrintCanvas canvas) {
+			for (Command c : commands) {
+				switch (c.type) {
+				case HEADING_STYLE:
+					canvas.setHeadingStyle();
+					break;
+
+				case NORMAL_STYLE:
+					canvas.setNormalStyle();
+					break;
+
+				case SMALL_STYLE:
+					canvas.setSmallStyle();
+					break;
+
+				case BOLD_STYLE:
+					canvas.setBoldStyle();
+					break;
+
+				case ITALIC_STYLE:
+					canvas.setItalicStyle();
+					break;
+
+				case TEXT:
+					canvas.drawText(c.x1, c.y1, c.text);
+					break;
+
+				case TEXT_CENTER:
+					canvas.drawTextCenter(c.x1, c.y1, c.text);
+					break;
+
+				case TEXT_RIGHT:
+					canvas.drawTextRight(c.x1, c.y1, c.text);
+					break;
+
+				case LINE:
+					canvas.drawLine(c.x1, c.y1, c.x2, c.y2, c.lineWidth);
+					break;
+				}
+			}
+
+			canvas.close();
+		}
+	}
+}
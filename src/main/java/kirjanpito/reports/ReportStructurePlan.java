@@ -0,0 +1,366 @@
+package kirjanpito.reports;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import kirjanpito.db.Account;
+import kirjanpito.util.AccountBalances;
+
+/**
+ * Tuloslaskelman tai taseen rakenne käännettynä valmiiksi
+ * laskettavaan muotoon. Rakenteen rivit jäsennetään kerran, ja
+ * jokaisen rivin tilinumerovälit muunnetaan numerojärjestykseen
+ * lajiteltujen tilien indeksiväleiksi <code>[from, to[</code>.
+ * Välin summa saadaan sarakkeen kumulatiivisista summista kahdella
+ * haulla, joten raportin laskenta ei käy tilikarttaa läpi jokaisen
+ * välin kohdalla.
+ *
+ * Käännetyt rakenteet tallennetaan välimuistiin raportin tunnisteen
+ * perusteella. Välimuistissa oleva rakenne käytetään uudelleen vain,
+ * jos rakenteen sisältö ja tilikartan tilit ovat ennallaan.
+ */
+public class ReportStructurePlan {
+	/** Rivityyppi: sivunvaihto ("--"). */
+	public static final char TYPE_PAGE_BREAK = '=';
+
+	/** Rivityyppi: tyhjä rivi ("-"). */
+	public static final char TYPE_EMPTY = '-';
+
+	private static final HashMap<String, ReportStructurePlan> cache =
+		new HashMap<String, ReportStructurePlan>();
+
+	private final String data;
+	private final int[] accountIds;
+	private final String[] accountNumbers;
+	private final String[] sortedNumbers;
+	private final int[] order;
+	private final List<Line> lines;
+
+	/**
+	 * Kääntää rakenteen <code>data</code> tileille <code>accounts</code>.
+	 *
+	 * @param data rakenteen sisältö
+	 * @param accounts tilit
+	 */
+	public ReportStructurePlan(String data, List<Account> accounts) {
+		final int count = accounts.size();
+		this.data = data;
+		accountIds = new int[count];
+		accountNumbers = new String[count];
+
+		for (int i = 0; i < count; i++) {
+			Account account = accounts.get(i);
+			accountIds[i] = account.getId();
+			accountNumbers[i] = account.getNumber();
+		}
+
+		/* Lajitellaan tilit numerojärjestykseen. Lajittelu on vakaa,
+		 * joten samannumeroiset tilit säilyttävät järjestyksensä. */
+		Integer[] sorted = new Integer[count];
+
+		for (int i = 0; i < count; i++) {
+			sorted[i] = i;
+		}
+
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return accountNumbers[a].compareTo(accountNumbers[b]);
+			}
+		});
+
+		order = new int[count];
+		sortedNumbers = new String[count];
+
+		for (int i = 0; i < count; i++) {
+			order[i] = sorted[i];
+			sortedNumbers[i] = accountNumbers[order[i]];
+		}
+
+		lines = new ArrayList<Line>();
+		BufferedReader reader = new BufferedReader(new StringReader(data));
+		String line;
+
+		try {
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					lines.add(compileLine(line));
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Palauttaa raportin <code>reportId</code> käännetyn rakenteen
+	 * välimuistista tai kääntää sen, jos rakenne tai tilikartta on
+	 * muuttunut.
+	 *
+	 * @param reportId raportin tunniste
+	 * @param data rakenteen sisältö
+	 * @param accounts tilit
+	 * @return käännetty rakenne
+	 */
+	public static ReportStructurePlan get(String reportId, String data,
+			List<Account> accounts) {
+		synchronized (cache) {
+			ReportStructurePlan plan = cache.get(reportId);
+
+			if (plan == null || !plan.matches(data, accounts)) {
+				plan = new ReportStructurePlan(data, accounts);
+				cache.put(reportId, plan);
+			}
+
+			return plan;
+		}
+	}
+
+	/**
+	 * Tarkistaa, onko rakenne käännetty sisällöstä <code>data</code>
+	 * ja samoista tileistä samassa järjestyksessä.
+	 *
+	 * @param data rakenteen sisältö
+	 * @param accounts tilit
+	 * @return <code>true</code>, jos rakennetta voi käyttää
+	 */
+	public boolean matches(String data, List<Account> accounts) {
+		if (!this.data.equals(data) || accounts.size() != accountIds.length) {
+			return false;
+		}
+
+		for (int i = 0; i < accountIds.length; i++) {
+			Account account = accounts.get(i);
+
+			if (account.getId() != accountIds[i] ||
+					!account.getNumber().equals(accountNumbers[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Palauttaa käännetyt rivit.
+	 *
+	 * @return rivit
+	 */
+	public List<Line> getLines() {
+		return Collections.unmodifiableList(lines);
+	}
+
+	/**
+	 * Palauttaa välin <code>[from, to[</code> tilien indeksit
+	 * tililuettelossa. Indeksit ovat tililuettelon järjestyksessä.
+	 *
+	 * @param from välin alku
+	 * @param to välin loppu
+	 * @return tilien indeksit
+	 */
+	public int[] getAccountIndices(int from, int to) {
+		int[] indices = Arrays.copyOfRange(order, from, to);
+		Arrays.sort(indices);
+		return indices;
+	}
+
+	/**
+	 * Laskee sarakkeen kumulatiiviset summat, joista välien summat
+	 * haetaan.
+	 *
+	 * @param balances tilien saldot
+	 * @param accounts tilit samassa järjestyksessä kuin käännettäessä
+	 * @return kumulatiiviset summat
+	 */
+	public RangeSums createSums(AccountBalances balances, List<Account> accounts) {
+		return new RangeSums(balances, accounts);
+	}
+
+	private Line compileLine(String line) {
+		if (line.equals("--")) {
+			return new Line(TYPE_PAGE_BREAK, ' ', ' ', 0, "", null, null);
+		}
+
+		if (line.startsWith("-")) {
+			return new Line(TYPE_EMPTY, ' ', ' ', 0, "", null, null);
+		}
+
+		char typeChar = line.charAt(0);
+		char styleChar = line.charAt(1);
+		char filterChar = ' ';
+		int offset = 1;
+
+		if (typeChar == 'D' && (styleChar == '+' || styleChar == '-' || styleChar == '0')) {
+			filterChar = styleChar;
+			offset = 2;
+			styleChar = line.charAt(offset);
+		}
+
+		int level = line.charAt(offset + 1) - '0';
+
+		if (typeChar == 'F') {
+			String[] fields = line.substring(offset + 3).split(";");
+			return new Line(typeChar, styleChar, filterChar, level, fields[0],
+					null, Arrays.copyOfRange(fields, 1, fields.length));
+		}
+
+		/* Muunnetaan tilinumerovälit indeksiväleiksi. */
+		int pos1, pos2, pos3;
+		pos1 = offset + 3;
+		pos2 = line.indexOf(';', pos1);
+		pos3 = line.indexOf(';', pos2 + 1);
+		int[] spans = new int[0];
+
+		while (pos2 >= 0) {
+			String start = line.substring(pos1, pos2);
+			String stop = line.substring(pos2 + 1, pos3);
+			int from = lowerBound(start);
+			int to = start.equals(stop) ? upperBound(start) : lowerBound(stop);
+			spans = Arrays.copyOf(spans, spans.length + 2);
+			spans[spans.length - 2] = from;
+			spans[spans.length - 1] = Math.max(from, to);
+
+			pos1 = pos3 + 1;
+			pos2 = line.indexOf(';', pos1);
+			pos3 = line.indexOf(';', pos2 + 1);
+		}
+
+		return new Line(typeChar, styleChar, filterChar, level,
+				line.substring(pos1), spans, null);
+	}
+
+	/**
+	 * Palauttaa ensimmäisen tilin indeksin, jonka numero on
+	 * vähintään <code>number</code>.
+	 */
+	private int lowerBound(String number) {
+		int low = 0;
+		int high = sortedNumbers.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (sortedNumbers[mid].compareTo(number) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Palauttaa ensimmäisen tilin indeksin, jonka numero on
+	 * suurempi kuin <code>number</code>.
+	 */
+	private int upperBound(String number) {
+		int low = 0;
+		int high = sortedNumbers.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (sortedNumbers[mid].compareTo(number) <= 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Käännetty rakenteen rivi.
+	 */
+	public static class Line {
+		/** Rivin tyyppi, esim. 'S', 'D' tai <code>TYPE_EMPTY</code>. */
+		public final char type;
+
+		/** Tekstityyli 'P', 'B' tai 'I'. */
+		public final char style;
+
+		/** Tilierittelyn suodatin '+', '-', '0' tai ' '. */
+		public final char filter;
+
+		/** Sisennystaso. */
+		public final int level;
+
+		/** Tulostettava teksti. */
+		public final String text;
+
+		/** Indeksivälit pareittain: alku, loppu. */
+		public final int[] spans;
+
+		/** F-rivin kiinteät rahamäärät. */
+		public final String[] fixedAmounts;
+
+		Line(char type, char style, char filter, int level, String text,
+				int[] spans, String[] fixedAmounts) {
+			this.type = type;
+			this.style = style;
+			this.filter = filter;
+			this.level = level;
+			this.text = text;
+			this.spans = spans;
+			this.fixedAmounts = fixedAmounts;
+		}
+	}
+
+	/**
+	 * Sarakkeen saldojen kumulatiiviset summat tilinumerojärjestyksessä.
+	 * Kulutilien saldot on käännetty negatiivisiksi kuten raportissa.
+	 */
+	public class RangeSums {
+		private final BigDecimal[] sums;
+		private final int[] counts;
+
+		private RangeSums(AccountBalances balances, List<Account> accounts) {
+			sums = new BigDecimal[order.length + 1];
+			counts = new int[order.length + 1];
+			sums[0] = BigDecimal.ZERO;
+
+			for (int i = 0; i < order.length; i++) {
+				Account account = accounts.get(order[i]);
+				BigDecimal balance = balances.getBalance(account.getId());
+				sums[i + 1] = sums[i];
+				counts[i + 1] = counts[i];
+
+				if (balance != null) {
+					if (account.getType() == Account.TYPE_EXPENSE)
+						balance = balance.negate();
+
+					sums[i + 1] = sums[i].add(balance);
+					counts[i + 1]++;
+				}
+			}
+		}
+
+		/**
+		 * Palauttaa välin <code>[from, to[</code> saldojen summan.
+		 *
+		 * @param from välin alku
+		 * @param to välin loppu
+		 * @return summa tai <code>null</code>, jos yhdelläkään välin
+		 * tilillä ei ole saldoa
+		 */
+		public BigDecimal sum(int from, int to) {
+			if (counts[to] == counts[from]) {
+				return null;
+			}
+
+			return sums[to].subtract(sums[from]);
+		}
+	}
+}
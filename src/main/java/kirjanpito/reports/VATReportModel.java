@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
@@ -19,6 +20,8 @@ import kirjanpito.db.Period;
 import kirjanpito.db.Session;
 import kirjanpito.db.Settings;
 import kirjanpito.util.AccountBalances;
+import kirjanpito.util.AccountIndex;
+import kirjanpito.util.CentAccumulator;
 import kirjanpito.util.CSVWriter;
 import kirjanpito.util.ODFSpreadsheet;
 
@@ -160,20 +163,14 @@ public class VATReportModel implements PrintModel {
 	public void run() throws DataAccessException {
 		Session sess = null;
 		final AccountBalances balances = new AccountBalances(accounts);
+		final AccountIndex accountIndex = new AccountIndex(accounts);
 
-		final HashMap<Integer, BigDecimal> vatAmounts =
-			new HashMap<Integer, BigDecimal>();
+		final CentAccumulator vatAmounts =
+			new CentAccumulator(accountIndex.size());
 
 		final HashMap<Integer, Entry> entryMap =
 			new HashMap<Integer, Entry>();
 
-		final HashMap<Integer, Account> accountMap =
-			new HashMap<Integer, Account>();
-
-		for (Account a : accounts) {
-			accountMap.put(a.getId(), a);
-		}
-
 		documentId = -1;
 		totalVatAmount2 = BigDecimal.ZERO;
 		totalVatAmount3 = BigDecimal.ZERO;
@@ -181,7 +178,7 @@ public class VATReportModel implements PrintModel {
 		totalVatAmount3M = BigDecimal.ZERO;
 
 		try {
-			sess = dataSource.openSession();
+			sess = dataSource.openReadOnlySession();
 			dataSource.getEntryDAO(sess).getByPeriodIdAndDate(period.getId(),
 				startDate, endDate, 1, new DTOCallback<Entry>() {
 				public void process(Entry entry) {
@@ -194,7 +191,13 @@ public class VATReportModel implements PrintModel {
 						entryMap.clear();
 					}
 
-					Account account = accountMap.get(entry.getAccountId());
+					int slot = accountIndex.indexOf(entry.getAccountId());
+
+					if (slot < 0) {
+						return;
+					}
+
+					Account account = accountIndex.get(slot);
 					addVatAmount(account, entry);
 
 					/* Verollinen myynti, verollinen osto, yhteisöosto tai rakentamispalvelun osto */
@@ -203,12 +206,6 @@ public class VATReportModel implements PrintModel {
 						entryMap.put(entry.getRowNumber(), entry);
 					}
 
-					/* Veroton myynti, veroton osto, yhteisömyynti tai rakentamispalvelun myynti */
-					if (account.getVatCode() == 6 || account.getVatCode() == 7 ||
-							account.getVatCode() == 8 || account.getVatCode() == 10) {
-						balances.addEntry(entry);
-					}
-
 					if (entry.getRowNumber() >= 100000 &&
 							entry.getRowNumber() < 300000) {
 
@@ -217,19 +214,29 @@ public class VATReportModel implements PrintModel {
 
 						if (entry2 != null) {
 							balances.addEntry(entry2);
-							BigDecimal vatAmount = entry.getAmount();
+							vatAmounts.add(accountIndex.indexOf(entry2.getAccountId()),
+									entry.getAmount(), entry.isDebit() ? -1 : 1);
+						}
+					}
+				}
+			});
 
-							if (entry.isDebit())
-								vatAmount = vatAmount.negate();
+			/* Verottoman myynnin, verottoman oston, yhteisömyynnin ja
+			 * rakentamispalvelun myynnin perusteet ovat pelkkiä tilien
+			 * summia, joten ne lasketaan tietokannassa. */
+			dataSource.getEntryDAO(sess).sumByAccount(period.getId(),
+				startDate, endDate, 1, 1, new DTOCallback<AccountTotal>() {
+				public void process(AccountTotal total) {
+					int slot = accountIndex.indexOf(total.getAccountId());
 
-							BigDecimal vatAmountTotal = vatAmounts.get(entry2.getAccountId());
+					if (slot < 0) {
+						return;
+					}
 
-							if (vatAmountTotal == null)
-								vatAmountTotal = BigDecimal.ZERO;
+					int vatCode = accountIndex.get(slot).getVatCode();
 
-							vatAmountTotal = vatAmountTotal.add(vatAmount);
-							vatAmounts.put(entry2.getAccountId(), vatAmountTotal);
-						}
+					if (vatCode == 6 || vatCode == 7 || vatCode == 8 || vatCode == 10) {
+						balances.addTotal(total);
 					}
 				}
 			});
@@ -244,7 +251,7 @@ public class VATReportModel implements PrintModel {
 		/* Otetaan talteen veron perusteet ja veron määrät. */
 		for (Account account : accounts) {
 			vatExcluded = balances.getBalance(account.getId());
-			vatAmount = vatAmounts.get(account.getId());
+			vatAmount = vatAmounts.get(accountIndex.indexOf(account.getId()));
 
 			if (vatExcluded != null && account.getVatCode() >= 4 &&
 					vatExcluded.compareTo(BigDecimal.ZERO) != 0) {
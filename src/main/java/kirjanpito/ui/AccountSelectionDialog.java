@@ -332,17 +332,21 @@ public class AccountSelectionDialog extends JDialog {
 
 			/* Taulukossa näytetään kaikki tilit, joiden nimi *sisältää*
 			 * hakusanan. Valitaan tili, jonka nimi *alkaa* hakusanalla. */
-			for (int i = 0; i < accountTable.getRowCount(); i++) {
-				int modelIndex = accountTable.convertRowIndexToModel(i);
-				Account account = tableModel.getChartOfAccounts().getAccount(modelIndex);
+			for (Account account : registry.getAccountLookup().searchByName(searchPhrase)) {
+				int modelIndex = tableModel.getChartOfAccounts().indexOfAccount(account);
+				int i = (modelIndex < 0) ? -1 : accountTable.convertRowIndexToView(modelIndex);
 
-				if (account.getName().regionMatches(true, 0, searchPhrase, 0, searchPhrase.length())) {
-					if (account.getName().length() == searchPhrase.length()) {
+				if (i < 0) {
+					continue;
+				}
+
+				if (account.getName().length() == searchPhrase.length()) {
+					if (index1 < 0 || i < index1) {
 						index1 = i;
 					}
-					else if (index2 < 0) {
-						index2 = i;
-					}
+				}
+				else if (index2 < 0 || i < index2) {
+					index2 = i;
 				}
 			}
 
@@ -135,7 +135,7 @@ public class AttachmentsDialog extends BaseDialog {
                 Session session = dataSource.openSession();
                 try {
                     AttachmentDAO dao = dataSource.getAttachmentDAO(session);
-                    return dao.findByDocumentId(documentId);
+                    return dao.findMetadataByDocumentId(documentId);
                 } finally {
                     session.close();
                 }
@@ -327,8 +327,12 @@ public class AttachmentsDialog extends BaseDialog {
             SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
                 @Override
                 protected Void doInBackground() throws Exception {
+                    Session session = dataSource.openSession();
                     try (FileOutputStream out = new FileOutputStream(file)) {
-                        out.write(selected.getData());
+                        AttachmentDAO dao = dataSource.getAttachmentDAO(session);
+                        dao.writeContent(selected.getId(), out);
+                    } finally {
+                        session.close();
                     }
                     return null;
                 }
@@ -128,7 +128,7 @@ public class AttachmentsPanel extends JPanel {
         try {
             session = dataSource.openSession();
             AttachmentDAO dao = dataSource.getAttachmentDAO(session);
-            List<Attachment> attachments = dao.findByDocumentId(documentId);
+            List<Attachment> attachments = dao.findMetadataByDocumentId(documentId);
             tableModel.setAttachments(attachments);
             session.commit();
         } catch (DataAccessException e) {
@@ -268,8 +268,12 @@ public class AttachmentsPanel extends JPanel {
                     "Virhe liitteen tallentamisessa: " + e.getMessage(),
                     "Virhe",
                     JOptionPane.ERROR_MESSAGE);
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
             }
-            
+
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this,
                 "Virhe tiedoston lukemisessa: " + e.getMessage(),
@@ -384,17 +388,24 @@ public class AttachmentsPanel extends JPanel {
             }
         }
         
+        Session session = null;
         try (FileOutputStream fos = new FileOutputStream(exportFile)) {
-            fos.write(attachment.getData());
+            session = dataSource.openSession();
+            AttachmentDAO dao = dataSource.getAttachmentDAO(session);
+            dao.writeContent(attachment.getId(), fos);
             JOptionPane.showMessageDialog(this,
                 "PDF-tiedosto viety onnistuneesti.",
                 "Onnistui",
                 JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException e) {
+        } catch (IOException | DataAccessException e) {
             JOptionPane.showMessageDialog(this,
                 "Virhe tiedoston kirjoittamisessa: " + e.getMessage(),
                 "Virhe",
                 JOptionPane.ERROR_MESSAGE);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
         }
     }
 }
@@ -16,8 +16,11 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.print.PageFormat;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,8 +40,10 @@ import javax.swing.JScrollPane;
 import javax.swing.JToolBar;
 import javax.swing.JViewport;
 import javax.swing.KeyStroke;
+import javax.swing.SwingWorker.StateValue;
 import javax.swing.filechooser.FileFilter;
 
+import kirjanpito.models.PDFExportWorker;
 import kirjanpito.models.PrintPreviewModel;
 import kirjanpito.reports.AWTCanvas;
 import kirjanpito.reports.AWTPrintable;
@@ -412,7 +417,7 @@ public class PrintPreviewFrame extends JFrame {
 					model.writeCSV(file, ';');
 				}
 				else if (ext.equals(".pdf")) {
-					model.writePDF(file);
+					startPDFExport(file);
 				}
 				else if (ext.equals(".ods")) {
 					model.writeODS(file);
@@ -443,7 +448,7 @@ public class PrintPreviewFrame extends JFrame {
 						file = new File(file.getAbsolutePath() + ".pdf");
 					}
 
-					model.writePDF(file);
+					startPDFExport(file);
 				}
 			}
 			catch (IOException e) {
@@ -454,6 +459,42 @@ public class PrintPreviewFrame extends JFrame {
 		}
 	}
 
+	/**
+	 * Tallentaa tulosteen PDF-tiedostoon taustalla. Edistyminen
+	 * näytetään erillisessä ikkunassa, josta tallennuksen voi peruuttaa.
+	 *
+	 * @param file PDF-tiedosto
+	 */
+	private void startPDFExport(File file) {
+		final PDFExportWorker worker = new PDFExportWorker(model, file);
+		TaskProgressDialog dialog = new TaskProgressDialog(
+				this, "PDF-tiedostoon vienti", worker);
+		dialog.create();
+		dialog.setVisible(true);
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (!"state".equals(evt.getPropertyName()) ||
+						evt.getNewValue() != StateValue.DONE ||
+						worker.isCancelled()) {
+					return;
+				}
+
+				try {
+					worker.get();
+				}
+				catch (ExecutionException e) {
+					logger.log(Level.SEVERE, "Tallentaminen epäonnistui", e.getCause());
+					SwingUtils.showErrorMessage(PrintPreviewFrame.this,
+							"Tallentaminen epäonnistui. " + e.getCause().getMessage());
+				}
+				catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		worker.execute();
+	}
+
 	/**
 	 * Siirtyy edelliselle sivulle.
 	 */
@@ -1,9 +1,11 @@
 package kirjanpito.ui.dialogs
 
+import kirjanpito.ui.TaskProgressDialog
 import kirjanpito.util.Registry
 import kirjanpito.util.csv.*
 import java.awt.*
 import java.io.File
+import java.util.concurrent.ExecutionException
 import javax.swing.*
 import javax.swing.filechooser.FileNameExtensionFilter
 import javax.swing.table.AbstractTableModel
@@ -18,6 +20,7 @@ import javax.swing.table.DefaultTableCellRenderer
  * - Column type detection (date, money, text, etc.)
  * - Smart column mapping suggestions
  * - Preview of CSV data
+ * - Large files are streamed in the background with progress
  */
 class CsvImportDialog(
     parent: JFrame,
@@ -27,6 +30,7 @@ class CsvImportDialog(
     private var csvData: CsvData? = null
     private var columns: List<ColumnInfo> = emptyList()
     private var selectedFile: File? = null
+    private var streaming = false
 
     // UI Components
     private val previewTable = JTable()
@@ -197,7 +201,13 @@ class CsvImportDialog(
 
     private fun loadCsvFile(file: File) {
         try {
-            val data = file.readBytes()
+            // Large files are only previewed here and streamed when imported
+            val streaming = file.length() > STREAMING_THRESHOLD
+            val data = if (streaming) {
+                file.inputStream().use { it.readNBytes(VALIDATION_BYTES) }
+            } else {
+                file.readBytes()
+            }
 
             // Validate CSV
             if (!CsvParser.isValidCsv(data)) {
@@ -215,8 +225,9 @@ class CsvImportDialog(
             }
 
             // Parse CSV
-            csvData = CsvParser.parse(data)
+            csvData = if (streaming) readPreview(file) else CsvParser.parse(data)
             selectedFile = file
+            this.streaming = streaming
             columns = CsvColumnAnalyzer.analyzeColumns(csvData!!)
 
             // Check if this is Procountor format and apply preset mappings
@@ -244,6 +255,11 @@ class CsvImportDialog(
         }
     }
 
+    private fun readPreview(file: File): CsvData =
+        CsvParser.open(file).use { reader ->
+            CsvData(reader.records().take(PREVIEW_ROWS + 1).toList(), reader.delimiter, reader.encoding)
+        }
+
     private fun updateInfoLabels() {
         val data = csvData ?: return
         
@@ -261,7 +277,12 @@ class CsvImportDialog(
             '\t' -> "sarkain (Tab)"
             else -> data.delimiter.toString()
         }
-        delimiterLabel.text = "| Erotin: $delimiterName | ${data.rowCount} riviä, ${data.columnCount} saraketta"
+        val size = if (streaming) {
+            "${(selectedFile?.length() ?: 0) / (1024 * 1024)} Mt"
+        } else {
+            "${data.rowCount} riviä"
+        }
+        delimiterLabel.text = "| Erotin: $delimiterName | $size, ${data.columnCount} saraketta"
     }
 
     private fun updatePreviewTable() {
@@ -399,7 +420,8 @@ class CsvImportDialog(
         }
         
         // Confirm import
-        val confirmMessage = "Tuodaanko ${data.dataRows.size} riviä?\n\n" +
+        val rows = if (streaming) "kaikki tiedoston rivit" else "${data.dataRows.size} riviä"
+        val confirmMessage = "Tuodaanko $rows?\n\n" +
                 "Oletustili: ${selectedAccount.number} ${selectedAccount.name}"
         
         val confirm = JOptionPane.showConfirmDialog(
@@ -414,6 +436,11 @@ class CsvImportDialog(
             return
         }
         
+        if (streaming) {
+            importFile(selectedFile ?: return, selectedAccount.id)
+            return
+        }
+        
         // Perform import
         cursor = Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR)
         importButton.isEnabled = false
@@ -423,52 +450,103 @@ class CsvImportDialog(
             val result = importer.import(data, columns, selectedAccount.id)
             
             cursor = Cursor.getDefaultCursor()
+            showImportResult(result)
+        } catch (e: Exception) {
+            cursor = Cursor.getDefaultCursor()
+            importButton.isEnabled = true
             
-            if (result.success) {
-                val message = "Tuonti onnistui!\n\n" +
-                        "Luotuja tositteita: ${result.documentsCreated}\n" +
-                        "Luotuja vientejä: ${result.entriesCreated}" +
-                        (if (result.warnings.isNotEmpty()) "\n\nVaroituksia: ${result.warnings.size}" else "")
-                
+            JOptionPane.showMessageDialog(
+                this,
+                "Odottamaton virhe: ${e.message}",
+                "Virhe",
+                JOptionPane.ERROR_MESSAGE
+            )
+        }
+    }
+
+    /**
+     * Import a large file in the background. Cancelling keeps the rows
+     * committed so far, and importing the same file again continues
+     * from there.
+     */
+    private fun importFile(file: File, defaultAccountId: Int) {
+        val importColumns = columns
+        val worker = object : SwingWorker<CsvImporter.ImportResult, Void>() {
+            override fun doInBackground(): CsvImporter.ImportResult =
+                CsvImporter(registry).importFile(file, importColumns, defaultAccountId) { setProgress(it) }
+        }
+        
+        worker.addPropertyChangeListener { e ->
+            if (e.propertyName != "state" || e.newValue != SwingWorker.StateValue.DONE) {
+                return@addPropertyChangeListener
+            }
+            
+            if (worker.isCancelled) {
+                importButton.isEnabled = true
                 JOptionPane.showMessageDialog(
                     this,
-                    message,
-                    "Tuonti valmis",
+                    "Tuonti keskeytettiin. Tuo sama tiedosto uudelleen jatkaaksesi.",
+                    "Tuonti keskeytetty",
                     JOptionPane.INFORMATION_MESSAGE
                 )
-                
-                importResult = ImportResult(
-                    success = true,
-                    importedCount = result.entriesCreated,
-                    errorCount = result.errors.size,
-                    errors = result.errors
-                )
-                
-                dispose()
-            } else {
-                val errorMessage = "Tuonti epäonnistui:\n\n" +
-                        result.errors.take(5).joinToString("\n") +
-                        (if (result.errors.size > 5) "\n...ja ${result.errors.size - 5} muuta virhettä" else "")
-                
+                return@addPropertyChangeListener
+            }
+            
+            try {
+                showImportResult(worker.get())
+            } catch (ex: ExecutionException) {
+                importButton.isEnabled = true
                 JOptionPane.showMessageDialog(
                     this,
-                    errorMessage,
-                    "Tuontivirhe",
+                    "Odottamaton virhe: ${ex.cause?.message}",
+                    "Virhe",
                     JOptionPane.ERROR_MESSAGE
                 )
-                
-                importButton.isEnabled = true
             }
-        } catch (e: Exception) {
-            cursor = Cursor.getDefaultCursor()
-            importButton.isEnabled = true
+        }
+        
+        importButton.isEnabled = false
+        val progressDialog = TaskProgressDialog(this, title, worker)
+        progressDialog.create()
+        progressDialog.isVisible = true
+        worker.execute()
+    }
+
+    private fun showImportResult(result: CsvImporter.ImportResult) {
+        if (result.success) {
+            val message = "Tuonti onnistui!\n\n" +
+                    "Luotuja tositteita: ${result.documentsCreated}\n" +
+                    "Luotuja vientejä: ${result.entriesCreated}" +
+                    (if (result.warnings.isNotEmpty()) "\n\nVaroituksia: ${result.warnings.size}" else "")
             
             JOptionPane.showMessageDialog(
                 this,
-                "Odottamaton virhe: ${e.message}",
-                "Virhe",
+                message,
+                "Tuonti valmis",
+                JOptionPane.INFORMATION_MESSAGE
+            )
+            
+            importResult = ImportResult(
+                success = true,
+                importedCount = result.entriesCreated,
+                errorCount = result.errors.size,
+                errors = result.errors
+            )
+            
+            dispose()
+        } else {
+            val errorMessage = "Tuonti epäonnistui:\n\n" +
+                    result.errors.take(5).joinToString("\n") +
+                    (if (result.errors.size > 5) "\n...ja ${result.errors.size - 5} muuta virhettä" else "")
+            
+            JOptionPane.showMessageDialog(
+                this,
+                errorMessage,
+                "Tuontivirhe",
                 JOptionPane.ERROR_MESSAGE
             )
+            
+            importButton.isEnabled = true
         }
     }
 
@@ -504,4 +582,15 @@ class CsvImportDialog(
             return c
         }
     }
+
+    companion object {
+        /** Files larger than this are streamed instead of read into memory. */
+        private const val STREAMING_THRESHOLD = 5L * 1024 * 1024
+
+        /** Bytes read to validate a large file. */
+        private const val VALIDATION_BYTES = 4096
+
+        /** Data rows read for the preview and column analysis of a large file. */
+        private const val PREVIEW_ROWS = 200
+    }
 }
@@ -27,6 +27,7 @@ import kirjanpito.ui.javafx.EntryTableNavigationHandler;
 import kirjanpito.ui.javafx.DocumentAsyncOperations;
 import kirjanpito.util.AppSettings;
 import kirjanpito.util.AutoCompleteSupport;
+import kirjanpito.util.DocumentCursor;
 import kirjanpito.util.TreeMapAutoCompleteSupport;
 import kirjanpito.util.RecentDatabases;
 import kirjanpito.util.Registry;
@@ -92,8 +93,7 @@ public class MainController implements Initializable {
     
     // Period and documents
     private Period currentPeriod;
-    private List<Document> documents;
-    private int currentDocumentIndex = -1;
+    private DocumentCursor documentCursor;
     private Document currentDocument;
     private List<Entry> currentEntries;
     private List<Account> accounts;
@@ -771,6 +771,8 @@ public class MainController implements Initializable {
             }
         }
         
+        setDocumentCursor(null);
+        
         // Sulje tietokantayhteys
         if (dataSource != null) {
             try {
@@ -871,6 +873,13 @@ public class MainController implements Initializable {
             }
         }
         
+        // Esihaetut viennit vanhenevat, kun tosite tallennetaan
+        final Document savedDocument = currentDocument;
+        
+        if (documentCursor != null) {
+            documentCursor.invalidate(savedDocument.getId());
+        }
+        
         // 3. Tallenna async-versiolla
         DocumentAsyncOperations.saveDocumentAsync(
             dataSource,
@@ -879,6 +888,10 @@ public class MainController implements Initializable {
             entriesToDelete,
             () -> {
                 // Success callback - runs on JavaFX thread
+                if (documentCursor != null) {
+                    documentCursor.invalidate(savedDocument.getId());
+                }
+                
                 int savedCount = entriesToSave.size();
                 int deletedCount = entriesToDelete.size();
                 setStatus("Tallennettu: " + savedCount + " vientiä" + 
@@ -1019,16 +1032,14 @@ public class MainController implements Initializable {
     // Navigation handlers
     @FXML
     private void handlePrevDocument() {
-        if (documents == null || documents.isEmpty()) return;
+        if (documentCursor == null || documentCount == 0) return;
         
         // Tallenna ennen siirtymistä
         if (hasUnsavedChanges()) {
             handleSave();
         }
         
-        if (currentDocumentIndex > 0) {
-            currentDocumentIndex--;
-            loadDocument(documents.get(currentDocumentIndex));
+        if (moveDocumentCursor(DocumentCursor::previous) != null) {
             setStatus("Tosite " + currentDocument.getNumber());
         } else {
             setStatus("Ensimmäinen tosite");
@@ -1037,16 +1048,14 @@ public class MainController implements Initializable {
     
     @FXML
     private void handleNextDocument() {
-        if (documents == null || documents.isEmpty()) return;
+        if (documentCursor == null || documentCount == 0) return;
         
         // Tallenna ennen siirtymistä
         if (hasUnsavedChanges()) {
             handleSave();
         }
         
-        if (currentDocumentIndex < documents.size() - 1) {
-            currentDocumentIndex++;
-            loadDocument(documents.get(currentDocumentIndex));
+        if (moveDocumentCursor(DocumentCursor::next) != null) {
             setStatus("Tosite " + currentDocument.getNumber());
         } else {
             setStatus("Viimeinen tosite");
@@ -1055,30 +1064,69 @@ public class MainController implements Initializable {
     
     @FXML
     private void handleFirstDocument() {
-        if (documents == null || documents.isEmpty()) return;
+        if (documentCursor == null || documentCount == 0) return;
         
         // Tallenna ennen siirtymistä
         if (hasUnsavedChanges()) {
             handleSave();
         }
         
-        currentDocumentIndex = 0;
-        loadDocument(documents.get(0));
-        setStatus("Ensimmäinen tosite: " + currentDocument.getNumber());
+        if (moveDocumentCursor(DocumentCursor::first) != null) {
+            setStatus("Ensimmäinen tosite: " + currentDocument.getNumber());
+        }
     }
     
     @FXML
     private void handleLastDocument() {
-        if (documents == null || documents.isEmpty()) return;
+        if (documentCursor == null || documentCount == 0) return;
         
         // Tallenna ennen siirtymistä
         if (hasUnsavedChanges()) {
             handleSave();
         }
         
-        currentDocumentIndex = documents.size() - 1;
-        loadDocument(documents.get(currentDocumentIndex));
-        setStatus("Viimeinen tosite: " + currentDocument.getNumber());
+        if (moveDocumentCursor(DocumentCursor::last) != null) {
+            setStatus("Viimeinen tosite: " + currentDocument.getNumber());
+        }
+    }
+    
+    /**
+     * Kursorin siirto, joka voi joutua hakemaan tositteita tietokannasta.
+     */
+    private interface DocumentCursorMove {
+        Document move(DocumentCursor cursor) throws DataAccessException;
+    }
+    
+    /**
+     * Siirtää tositekursoria ja lataa tositteen, jolle siirryttiin.
+     * 
+     * @return tosite tai <code>null</code>, jos siirto ei onnistunut
+     */
+    private Document moveDocumentCursor(DocumentCursorMove move) {
+        try {
+            Document doc = move.move(documentCursor);
+            
+            if (doc != null) {
+                loadDocument(doc);
+            }
+            
+            return doc;
+        } catch (DataAccessException e) {
+            showError("Virhe haettaessa tositteita", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Vaihtaa tositekursorin ja pysäyttää edellisen kursorin esihaun.
+     */
+    private void setDocumentCursor(DocumentCursor cursor) {
+        if (documentCursor != null) {
+            documentCursor.close();
+        }
+        
+        documentCursor = cursor;
+        documentCount = (cursor != null) ? cursor.getCount() : 0;
     }
     
     private boolean hasUnsavedChanges() {
@@ -1145,21 +1193,15 @@ public class MainController implements Initializable {
             
             session.commit();
             
-            // Poista listasta
-            int deletedIndex = currentDocumentIndex;
-            documents.remove(deletedIndex);
-            documentCount = documents.size();
+            // Poista kursorista ja siirry seuraavaan tai edelliseen
+            Document nextDoc = documentCursor.remove();
+            documentCount = documentCursor.getCount();
             
-            // Siirry edelliseen tai seuraavaan
-            if (!documents.isEmpty()) {
-                if (deletedIndex >= documents.size()) {
-                    currentDocumentIndex = documents.size() - 1;
-                }
-                loadDocument(documents.get(currentDocumentIndex));
+            if (nextDoc != null) {
+                loadDocument(nextDoc);
             } else {
                 currentDocument = null;
                 currentEntries = null;
-                currentDocumentIndex = -1;
                 updateUI();
             }
             
@@ -1189,17 +1231,13 @@ public class MainController implements Initializable {
     }
     
     private void gotoDocumentNumber(int docNum) {
-        if (documents == null) return;
+        if (documentCursor == null) return;
         
-        for (int i = 0; i < documents.size(); i++) {
-            if (documents.get(i).getNumber() == docNum) {
-                currentDocumentIndex = i;
-                loadDocument(documents.get(i));
-                setStatus("Tosite " + docNum);
-                return;
-            }
+        if (moveDocumentCursor(cursor -> cursor.seek(docNum)) != null) {
+            setStatus("Tosite " + docNum);
+        } else {
+            setStatus("Tositetta " + docNum + " ei löytynyt");
         }
-        setStatus("Tositetta " + docNum + " ei löytynyt");
     }
     
     @FXML
@@ -1218,10 +1256,9 @@ public class MainController implements Initializable {
             Document newDoc = documentDAO.create(currentPeriod.getId(), 1, 999999);
             session.commit();
             
-            // Lisää listaan ja siirry siihen
-            documents.add(newDoc);
-            documentCount = documents.size();
-            currentDocumentIndex = documents.size() - 1;
+            // Lisää kursoriin ja siirry siihen
+            documentCursor.add(newDoc);
+            documentCount = documentCursor.getCount();
             loadDocument(newDoc);
             
             setStatus("Uusi tosite " + newDoc.getNumber() + " luotu");
@@ -1251,15 +1288,16 @@ public class MainController implements Initializable {
             session = dataSource.openSession();
             DocumentDAO documentDAO = dataSource.getDocumentDAO(session);
             
-            List<Document> results = documentDAO.getByPeriodIdAndPhrase(
-                currentPeriod.getId(), query, 0, 100);
+            // Tulokset ovat paremmuusjärjestyksessä; kokonaismäärä tulee samasta kyselystä
+            List<Document> results = new ArrayList<>();
+            int total = documentDAO.searchByPeriodIdAndPhrase(
+                currentPeriod.getId(), query, 0, 100, results::add);
             
             if (!results.isEmpty()) {
-                documents = results;
-                documentCount = results.size();
-                currentDocumentIndex = 0;
-                loadDocument(results.get(0));
-                setStatus("Löytyi " + results.size() + " tositetta hakusanalla '" + query + "'");
+                setDocumentCursor(new DocumentCursor(dataSource, results));
+                loadDocument(documentCursor.first());
+                setStatus("Löytyi " + total + " tositetta hakusanalla '" + query + "'" +
+                    (total > results.size() ? " (näytetään " + results.size() + ")" : ""));
             } else {
                 setStatus("Ei tuloksia hakusanalla '" + query + "'");
             }
@@ -1623,9 +1661,8 @@ public class MainController implements Initializable {
             sess.commit();
             
             // Switch to the new document
-            documents.add(newDoc);
-            documentCount = documents.size();
-            currentDocumentIndex = documents.size() - 1;
+            documentCursor.add(newDoc);
+            documentCount = documentCursor.getCount();
             currentDocument = newDoc;
             
             // Clear entries
@@ -2312,19 +2349,19 @@ public class MainController implements Initializable {
                         // Get next document number
                         int nextNumber = documentDAO.getCountByPeriodId(period.getId(), 1) + 1;
                         
+                        var docs = new ArrayList<kirjanpito.db.Document>();
+                        var bankEntries = new ArrayList<kirjanpito.db.Entry>();
+                        
                         for (var importEntry : importedEntries) {
                             try {
                                 // Create a new document for each entry
                                 kirjanpito.db.Document doc = new kirjanpito.db.Document();
                                 doc.setDate(java.sql.Date.valueOf(importEntry.getDate()));
                                 doc.setPeriodId(period.getId());
-                                doc.setNumber(nextNumber++);
-                                
-                                documentDAO.save(doc);
+                                doc.setNumber(nextNumber);
                                 
                                 // Create debit entry (bank account)
                                 kirjanpito.db.Entry bankEntry = new kirjanpito.db.Entry();
-                                bankEntry.setDocumentId(doc.getId());
                                 bankEntry.setAccountId(importEntry.getAccount().getId());
                                 bankEntry.setDescription(importEntry.getDescription());
                                 bankEntry.setRowNumber(0);
@@ -2337,14 +2374,25 @@ public class MainController implements Initializable {
                                     bankEntry.setAmount(importEntry.getAmount().abs());
                                 }
                                 
-                                entryDAO.save(bankEntry);
-                                imported++;
+                                docs.add(doc);
+                                bankEntries.add(bankEntry);
+                                nextNumber++;
                                 
                             } catch (Exception e) {
                                 System.err.println("Error importing entry: " + e.getMessage());
                             }
                         }
                         
+                        // Save documents and entries in two batches
+                        documentDAO.saveAll(docs);
+                        
+                        for (int i = 0; i < docs.size(); i++) {
+                            bankEntries.get(i).setDocumentId(docs.get(i).getId());
+                        }
+                        
+                        entryDAO.saveAll(bankEntries);
+                        imported = docs.size();
+                        
                         // Commit the transaction
                         session.commit();
                         
@@ -2545,18 +2593,17 @@ public class MainController implements Initializable {
             if (currentPeriod != null) {
                 System.out.println("Tilikausi: " + currentPeriod.getStartDate() + " - " + currentPeriod.getEndDate());
                 
-                // 3. Lataa tositteet
-                DocumentDAO documentDAO = dataSource.getDocumentDAO(session);
-                documentCount = documentDAO.getCountByPeriodId(currentPeriod.getId(), 1);
-                documents = documentDAO.getByPeriodId(currentPeriod.getId(), 1);
-                System.out.println("Ladattu " + documents.size() + " tositetta");
+                // 3. Avaa tositekursori, joka hakee tositteet ikkunoittain
+                setDocumentCursor(new DocumentCursor(dataSource,
+                    currentPeriod.getId(), 1, Integer.MAX_VALUE));
+                System.out.println("Tositteita " + documentCount);
                 
                 // 4. Siirry ensimmäiseen tositteeseen
-                if (!documents.isEmpty()) {
-                    currentDocumentIndex = 0;
-                    loadDocument(documents.get(0));
+                Document firstDoc = documentCursor.first();
+                
+                if (firstDoc != null) {
+                    loadDocument(firstDoc);
                 } else {
-                    currentDocumentIndex = -1;
                     currentDocument = null;
                     currentEntries = null;
                 }
@@ -2586,6 +2633,16 @@ public class MainController implements Initializable {
         if (dataSource == null || doc == null) return;
         
         currentDocument = doc;
+        
+        // Viereisten tositteiden viennit on haettu valmiiksi taustalla
+        List<Entry> prefetched = (documentCursor != null) ?
+            documentCursor.takeEntries(doc.getId()) : null;
+        
+        if (prefetched != null) {
+            showEntries(doc, prefetched);
+            return;
+        }
+        
         setStatus("Ladataan tositetta...");
         
         // Use async version to keep UI responsive
@@ -2593,20 +2650,11 @@ public class MainController implements Initializable {
             dataSource,
             doc,
             entries -> {
-                // This runs on JavaFX thread
-                currentEntries = entries;
-                System.out.println("Tosite " + doc.getNumber() + ": " + currentEntries.size() + " vientiä");
-                
-                // Lisää viennit auto-complete tukeen
-                if (autoCompleteSupport != null) {
-                    for (Entry entry : currentEntries) {
-                        autoCompleteSupport.addEntry(entry);
-                    }
+                // This runs on JavaFX thread. Ohitetaan, jos käyttäjä
+                // on jo siirtynyt toiseen tositteeseen.
+                if (currentDocument == doc) {
+                    showEntries(doc, entries);
                 }
-                
-                // Päivitä UI
-                updateUI();
-                setStatus("Tosite " + doc.getNumber() + " ladattu");
             },
             errorMsg -> {
                 System.err.println("Virhe ladattaessa tositetta: " + errorMsg);
@@ -2616,6 +2664,22 @@ public class MainController implements Initializable {
         );
     }
     
+    private void showEntries(Document doc, List<Entry> entries) {
+        currentEntries = entries;
+        System.out.println("Tosite " + doc.getNumber() + ": " + currentEntries.size() + " vientiä");
+        
+        // Lisää viennit auto-complete tukeen
+        if (autoCompleteSupport != null) {
+            for (Entry entry : currentEntries) {
+                autoCompleteSupport.addEntry(entry);
+            }
+        }
+        
+        // Päivitä UI
+        updateUI();
+        setStatus("Tosite " + doc.getNumber() + " ladattu");
+    }
+    
     private void updatePeriodLabel() {
         if (currentPeriod != null) {
             java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd.MM.yyyy");
@@ -2870,7 +2934,7 @@ public class MainController implements Initializable {
         updateDocumentTypeMenuSelection();
         
         // Lataa valitun tositelajin tositteet
-        loadDocumentsForType(selectedType.getNumber());
+        loadDocumentsForType(selectedType);
         
         setStatus("Tositelaji: " + selectedType.getName());
     }
@@ -2891,45 +2955,36 @@ public class MainController implements Initializable {
     }
     
     /**
-     * Lataa tietyn tositelajin tositteet taustasäikeessä (coroutine).
+     * Avaa tositekursorin tositelajin numeroväliltä. Kursori hakee
+     * tositteet ikkunoittain, joten avaaminen ei riipu tositteiden määrästä.
      */
-    private void loadDocumentsForType(int docTypeNumber) {
+    private void loadDocumentsForType(DocumentType docType) {
         if (dataSource == null || currentPeriod == null) return;
         
-        setStatus("Ladataan tositteita...");
-        
-        // Käytä coroutine-pohjaista latausta
-        DatabaseOperations.loadDocumentsJava(
-            dataSource,
-            currentPeriod.getId(),
-            docTypeNumber,
-            loadedDocs -> {
-                // Tämä suoritetaan JavaFX-säikeessä
-                documents = loadedDocs;
-                documentCount = loadedDocs.size();
-                
-                System.out.println("Ladattu " + documents.size() + " tositetta tositelajille " + docTypeNumber);
-                
-                // Siirry ensimmäiseen tositteeseen
-                if (!documents.isEmpty()) {
-                    currentDocumentIndex = 0;
-                    loadDocument(documents.get(0));
-                } else {
-                    currentDocumentIndex = -1;
-                    currentDocument = null;
-                    currentEntries = null;
-                    entries.clear();
-                }
-                
-                updateUI();
-                setStatus("Valmiina");
-            },
-            error -> {
-                System.err.println("Virhe ladattaessa tositteita: " + error.getMessage());
-                error.printStackTrace();
-                setStatus("Virhe ladattaessa tositteita");
+        try {
+            setDocumentCursor(new DocumentCursor(dataSource, currentPeriod.getId(),
+                docType.getNumberStart(), docType.getNumberEnd()));
+            
+            System.out.println("Tositteita " + documentCount + " tositelajilla " + docType.getNumber());
+            
+            // Siirry ensimmäiseen tositteeseen
+            Document firstDoc = documentCursor.first();
+            
+            if (firstDoc != null) {
+                loadDocument(firstDoc);
+            } else {
+                currentDocument = null;
+                currentEntries = null;
+                entries.clear();
             }
-        );
+            
+            updateUI();
+            setStatus("Valmiina");
+        } catch (DataAccessException e) {
+            System.err.println("Virhe ladattaessa tositteita: " + e.getMessage());
+            e.printStackTrace();
+            setStatus("Virhe ladattaessa tositteita");
+        }
     }
     
     /**
@@ -0,0 +1,254 @@
+package kirjanpito.ui.javafx;
+
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import kirjanpito.reports.AWTPrintable;
+import kirjanpito.reports.Print;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Piirtää esikatselun sivuja taustasäikeessä ja säilyttää valmiit
+ * kuvat välimuistissa sivun ja suurennoksen perusteella.
+ *
+ * Jos pyydettyä sivua ei ole välimuistissa, siitä piirretään ensin
+ * nopea pienen tarkkuuden kuva ja sen jälkeen tarkka kuva. Kun sivu
+ * on valmis, viereiset sivut piirretään valmiiksi. Uusi pyyntö
+ * peruuttaa edellisen pyynnön töistä ne, joita ei ole vielä aloitettu.
+ *
+ * Print-olio ei ole säieturvallinen, joten kaikki sivut piirretään
+ * samassa säikeessä.
+ */
+public class PageRenderService {
+
+    private static final Logger logger = Logger.getLogger("kirjanpito");
+
+    /** Välimuistiin mahtuvien sivukuvien enimmäismäärä. */
+    private static final int CACHE_SIZE = 16;
+
+    /** Pienen tarkkuuden esikatselukuvan mittakaava suhteessa suurennokseen. */
+    private static final double LOW_RES_SCALE = 0.35;
+
+    /** Montako sivua valmiiksi piirretään kumpaankin suuntaan. */
+    private static final int PREFETCH_PAGES = 2;
+
+    private final Print print;
+    private final PageFormat pageFormat;
+    private final ExecutorService executor;
+    private final Map<PageKey, Image> cache;
+    private final List<Future<?>> pending;
+    private int generation;
+
+    /**
+     * Luo palvelun tulosteelle <code>print</code>.
+     *
+     * @param print tuloste
+     * @param pageFormat sivun asetukset
+     */
+    public PageRenderService(Print print, PageFormat pageFormat) {
+        this.print = print;
+        this.pageFormat = pageFormat;
+        this.pending = new ArrayList<>();
+        this.cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageKey, Image> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "print-preview");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Pyytää sivun <code>page</code> kuvan suurennoksella
+     * <code>zoom</code>. Kutsutaan JavaFX-säikeessä. Callbackia kutsutaan
+     * JavaFX-säikeessä ensin mahdollisella pienen tarkkuuden kuvalla ja
+     * sitten tarkalla kuvalla. Callbackia ei kutsuta, jos uusi pyyntö
+     * on tehty ennen kuin kuva valmistuu.
+     *
+     * @param page sivunumero
+     * @param zoom suurennos
+     * @param callback kuvan vastaanottaja
+     */
+    public void request(int page, double zoom, Consumer<Image> callback) {
+        cancelPending();
+        final int requestGeneration = ++generation;
+        PageKey key = new PageKey(page, zoom);
+        Image image = getCached(key);
+
+        if (image != null) {
+            callback.accept(image);
+            prefetch(page, zoom);
+            return;
+        }
+
+        submit(() -> {
+            Image lowRes = render(page, zoom * LOW_RES_SCALE);
+            deliver(requestGeneration, lowRes, callback);
+        });
+
+        submit(() -> {
+            Image fullRes = getCached(key);
+
+            if (fullRes == null) {
+                fullRes = render(page, zoom);
+                putCached(key, fullRes);
+            }
+
+            deliver(requestGeneration, fullRes, callback);
+        });
+
+        prefetch(page, zoom);
+    }
+
+    /**
+     * Tyhjentää välimuistin, esim. kun tulosteen sisältö muuttuu.
+     * Kutsutaan JavaFX-säikeessä.
+     */
+    public void clear() {
+        cancelPending();
+        generation++;
+
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Pysäyttää taustasäikeen.
+     */
+    public void shutdown() {
+        cancelPending();
+        executor.shutdownNow();
+    }
+
+    private void prefetch(int page, double zoom) {
+        int pageCount = print.getPageCount();
+
+        for (int i = 1; i <= PREFETCH_PAGES; i++) {
+            for (int neighbour : new int[] { page + i, page - i }) {
+                if (neighbour < 0 || neighbour >= pageCount) {
+                    continue;
+                }
+
+                PageKey key = new PageKey(neighbour, zoom);
+
+                submit(() -> {
+                    if (getCached(key) == null) {
+                        putCached(key, render(neighbour, zoom));
+                    }
+                });
+            }
+        }
+    }
+
+    private void submit(Runnable task) {
+        pending.add(executor.submit(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Sivun piirtäminen epäonnistui", e);
+            }
+        }));
+    }
+
+    private void cancelPending() {
+        Iterator<Future<?>> iter = pending.iterator();
+
+        while (iter.hasNext()) {
+            iter.next().cancel(false);
+            iter.remove();
+        }
+    }
+
+    private void deliver(int requestGeneration, Image image, Consumer<Image> callback) {
+        Platform.runLater(() -> {
+            if (requestGeneration == generation) {
+                callback.accept(image);
+            }
+        });
+    }
+
+    private Image getCached(PageKey key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void putCached(PageKey key, Image image) {
+        synchronized (cache) {
+            cache.put(key, image);
+        }
+    }
+
+    private Image render(int page, double scale) {
+        int width = Math.max(1, (int) (pageFormat.getWidth() * scale));
+        int height = Math.max(1, (int) (pageFormat.getHeight() * scale));
+
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = bufferedImage.createGraphics();
+
+        try {
+            g2d.setColor(java.awt.Color.WHITE);
+            g2d.fillRect(0, 0, width, height);
+            g2d.scale(scale, scale);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+            AWTPrintable printable = new AWTPrintable(print, null);
+            printable.print(g2d, pageFormat, page);
+        } finally {
+            g2d.dispose();
+        }
+
+        return SwingFXUtils.toFXImage(bufferedImage, null);
+    }
+
+    /**
+     * Välimuistin avain: sivunumero ja suurennos.
+     */
+    private static final class PageKey {
+        private final int page;
+        private final double zoom;
+
+        PageKey(int page, double zoom) {
+            this.page = page;
+            this.zoom = zoom;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PageKey)) {
+                return false;
+            }
+
+            PageKey other = (PageKey) obj;
+            return page == other.page && Double.compare(zoom, other.zoom) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * page + Double.hashCode(zoom);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package kirjanpito.ui.javafx;
 
 import javafx.application.Platform;
-import javafx.embed.swing.SwingFXUtils;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.print.PrinterJob;
@@ -9,7 +9,6 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
@@ -24,9 +23,6 @@ import kirjanpito.reports.Print;
 import kirjanpito.reports.PrintModel;
 import kirjanpito.util.AppSettings;
 
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.image.BufferedImage;
 import java.awt.print.PageFormat;
 import java.io.File;
 import java.util.logging.Level;
@@ -52,6 +48,8 @@ public class PrintPreviewStageFX {
     
     private int currentPage = 0;
     private double currentZoom = 1.0;
+    private PageRenderService renderService;
+    private PageFormat pageFormat;
 
     public PrintPreviewStageFX(Window owner, PrintPreviewModel model) {
         this.model = model;
@@ -109,6 +107,12 @@ public class PrintPreviewStageFX {
             settings.set("print-preview-window.width", (int) stage.getWidth());
             settings.set("print-preview-window.height", (int) stage.getHeight());
         });
+        
+        stage.setOnHidden(e -> {
+            if (renderService != null) {
+                renderService.shutdown();
+            }
+        });
     }
 
     private ToolBar createToolBar() {
@@ -242,43 +246,18 @@ public class PrintPreviewStageFX {
         int pageCount = getPageCount();
         pageLabel.setText(String.format("Sivu %d / %d", currentPage + 1, pageCount));
         
-        // Render the page to an image
-        PageFormat pageFormat = model.createPageFormat();
-        int width = (int) pageFormat.getWidth();
-        int height = (int) pageFormat.getHeight();
-        
-        // Apply zoom
-        int scaledWidth = (int) (width * currentZoom);
-        int scaledHeight = (int) (height * currentZoom);
-        
-        // Create buffered image and render
-        BufferedImage bufferedImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = bufferedImage.createGraphics();
-        
-        // White background
-        g2d.setColor(java.awt.Color.WHITE);
-        g2d.fillRect(0, 0, scaledWidth, scaledHeight);
-        
-        // Apply zoom transform
-        g2d.scale(currentZoom, currentZoom);
-        
-        // Enable antialiasing
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        
-        try {
-            // Use AWTPrintable from the print model - pass null for canvas, it will create one
-            kirjanpito.reports.AWTPrintable printable = new kirjanpito.reports.AWTPrintable(print, null);
-            printable.print(g2d, pageFormat, currentPage);
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Sivun piirtäminen epäonnistui", e);
+        // Pages are rendered in the background and cached by page and zoom
+        if (renderService == null) {
+            pageFormat = model.createPageFormat();
+            renderService = new PageRenderService(print, pageFormat);
         }
         
-        g2d.dispose();
-        
-        // Convert to JavaFX image
-        WritableImage fxImage = SwingFXUtils.toFXImage(bufferedImage, null);
-        imageView.setImage(fxImage);
+        // Low resolution images are scaled up to the final size
+        int scaledWidth = (int) (pageFormat.getWidth() * currentZoom);
+        renderService.request(currentPage, currentZoom, image -> {
+            imageView.setFitWidth(scaledWidth);
+            imageView.setImage(image);
+        });
     }
 
     private void print() {
@@ -316,12 +295,15 @@ public class PrintPreviewStageFX {
         if (file != null) {
             settings.set("pdf-directory", file.getParent());
             
+            String filename = file.getName().toLowerCase();
+            
+            if (filename.endsWith(".pdf")) {
+                exportPDF(file);
+                return;
+            }
+            
             try {
-                String filename = file.getName().toLowerCase();
-                
-                if (filename.endsWith(".pdf")) {
-                    model.writePDF(file);
-                } else if (filename.endsWith(".csv")) {
+                if (filename.endsWith(".csv")) {
                     model.writeCSV(file, ';');
                 } else if (filename.endsWith(".ods")) {
                     model.writeODS(file);
@@ -335,6 +317,58 @@ public class PrintPreviewStageFX {
         }
     }
 
+    /**
+     * Tallentaa PDF-tiedoston taustasäikeessä ja näyttää edistymisen
+     * ikkunassa, josta tallennuksen voi peruuttaa.
+     */
+    private void exportPDF(File file) {
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                model.writePDF(file, (pagesDone, pageCount) ->
+                    updateProgress(pagesDone, pageCount));
+                return null;
+            }
+        };
+        
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        progressBar.progressProperty().bind(task.progressProperty());
+        
+        Button cancelBtn = new Button("Peruuta");
+        cancelBtn.setOnAction(e -> task.cancel());
+        
+        HBox box = new HBox(10, progressBar, cancelBtn);
+        box.setAlignment(Pos.CENTER);
+        box.setPadding(new Insets(10));
+        
+        Stage progressStage = new Stage();
+        progressStage.initOwner(stage);
+        progressStage.initModality(Modality.WINDOW_MODAL);
+        progressStage.setTitle("PDF-tiedostoon vienti");
+        progressStage.setScene(new Scene(box));
+        progressStage.setOnCloseRequest(e -> task.cancel());
+        
+        task.setOnSucceeded(e -> {
+            progressStage.close();
+            showInfo("Tiedosto tallennettu: " + file.getName());
+        });
+        
+        task.setOnCancelled(e -> progressStage.close());
+        
+        task.setOnFailed(e -> {
+            progressStage.close();
+            Throwable ex = task.getException();
+            logger.log(Level.SEVERE, "Tallentaminen epäonnistui", ex);
+            showError("Tallentaminen epäonnistui: " + ex.getMessage());
+        });
+        
+        Thread thread = new Thread(task, "pdf-export");
+        thread.setDaemon(true);
+        thread.start();
+        progressStage.show();
+    }
+
     private void showInfo(String message) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.initOwner(stage);
@@ -134,7 +134,7 @@ public class AttachmentsDialogFX {
                 Session session = dataSource.openSession();
                 try {
                     AttachmentDAO dao = dataSource.getAttachmentDAO(session);
-                    return dao.findByDocumentId(documentId);
+                    return dao.findMetadataByDocumentId(documentId);
                 } finally {
                     session.close();
                 }
@@ -298,8 +298,12 @@ public class AttachmentsDialogFX {
         Task<Void> task = new Task<Void>() {
             @Override
             protected Void call() throws Exception {
+                Session session = dataSource.openSession();
                 try (FileOutputStream out = new FileOutputStream(file)) {
-                    out.write(selected.getData());
+                    AttachmentDAO dao = dataSource.getAttachmentDAO(session);
+                    dao.writeContent(selected.getId(), out);
+                } finally {
+                    session.close();
                 }
                 return null;
             }
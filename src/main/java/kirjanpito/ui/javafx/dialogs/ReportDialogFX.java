@@ -140,7 +140,7 @@ public class ReportDialogFX {
     }
     
     private void generateJournal(StringBuilder sb) throws DataAccessException {
-        Session session = dataSource.openSession();
+        Session session = dataSource.openReadOnlySession();
         try {
             DocumentDAO docDao = dataSource.getDocumentDAO(session);
             EntryDAO entryDao = dataSource.getEntryDAO(session);
@@ -204,7 +204,7 @@ public class ReportDialogFX {
     }
     
     private void generateLedger(StringBuilder sb) throws DataAccessException {
-        Session session = dataSource.openSession();
+        Session session = dataSource.openReadOnlySession();
         try {
             EntryDAO entryDao = dataSource.getEntryDAO(session);
             
@@ -355,7 +355,7 @@ public class ReportDialogFX {
     private Map<Integer, BigDecimal> calculateBalances() throws DataAccessException {
         Map<Integer, BigDecimal> balances = new HashMap<>();
         
-        Session session = dataSource.openSession();
+        Session session = dataSource.openReadOnlySession();
         try {
             EntryDAO entryDao = dataSource.getEntryDAO(session);
             
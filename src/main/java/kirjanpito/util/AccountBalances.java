@@ -1,10 +1,11 @@
 package kirjanpito.util;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
 import kirjanpito.db.Account;
+import kirjanpito.db.AccountTotal;
 import kirjanpito.db.Entry;
 
 /**
@@ -12,11 +13,18 @@ import kirjanpito.db.Entry;
  * tilit, joiden saldot lasketaan. Tilit voidaan antaa luotaessa oliota
  * tai <code>addAccount()</code>-metodilla.
  * 
+ * Saldot lasketaan senteissä tilien indeksien mukaan järjestettyyn
+ * taulukkoon (ks. {@link CentAccumulator}).
+ * 
  * @author Tommi Helineva
  */
 public class AccountBalances {
-	private HashMap<Integer, AccountBalance> balances;
-	private BigDecimal profit;
+	private AccountIndex index;
+	private CentAccumulator balances;
+	private CentAccumulator profit;
+	private int[] debitSign;
+	private int[] creditSign;
+	private int[] profitSign;
 	private int count;
 	
 	/**
@@ -24,8 +32,7 @@ public class AccountBalances {
 	 * asetettu tilejä, joiden saldot lasketaan.
 	 */
 	public AccountBalances() {
-		balances = new HashMap<Integer, AccountBalance>();
-		profit = BigDecimal.ZERO;
+		this(new AccountIndex());
 	}
 	
 	/**
@@ -35,10 +42,20 @@ public class AccountBalances {
 	 * @param accounts tilit
 	 */
 	public AccountBalances(List<Account> accounts) {
-		this();
+		this(new AccountIndex(accounts));
+	}
+	
+	private AccountBalances(AccountIndex index) {
+		int size = Math.max(16, index.size());
+		this.index = index;
+		balances = new CentAccumulator(size);
+		profit = new CentAccumulator(1);
+		debitSign = new int[size];
+		creditSign = new int[size];
+		profitSign = new int[size];
 		
-		for (Account account : accounts) {
-			balances.put(account.getId(), new AccountBalance(account));
+		for (int i = 0; i < index.size(); i++) {
+			setSigns(i, index.get(i).getType());
 		}
 	}
 	
@@ -48,24 +65,20 @@ public class AccountBalances {
 	 * @param account tili
 	 */
 	public void addAccount(Account account) {
-		balances.put(account.getId(), new AccountBalance(account));
-	}
-	
-	/**
-	 * Laskee tilin uuden saldon parametrina annetun viennin perusteella.
-	 * 
-	 * @param entry vienti
-	 */
-	public void addEntry(Entry entry) {
-		AccountBalance ab = balances.get(entry.getAccountId());
-		
-		if (ab == null)
-			return;
+		int slot = index.add(account);
 		
-		BigDecimal amount = entry.getAmount();
-		int type = ab.account.getType();
-		boolean debit = entry.isDebit();
+		if (slot >= debitSign.length) {
+			int size = debitSign.length * 2;
+			balances.ensureCapacity(size);
+			debitSign = Arrays.copyOf(debitSign, size);
+			creditSign = Arrays.copyOf(creditSign, size);
+			profitSign = Arrays.copyOf(profitSign, size);
+		}
 		
+		setSigns(slot, account.getType());
+	}
+	
+	private void setSigns(int slot, int type) {
 		/* Tilin saldo lasketaan seuraavan taulukon mukaan:
 		 * 
 		 * +-------------+--------+--------+
@@ -79,32 +92,78 @@ public class AccountBalances {
 		 * +-------------+--------+--------+
 		 * 
 		 * (INC = saldo kasvaa, DEC = saldo vähenee)
+		 * 
+		 * Etumerkit lasketaan valmiiksi tilin lisäämisen yhteydessä,
+		 * jotta vientien läpikäynnissä ei tarvitse tutkia tilityyppiä.
 		 */
 		
-		if ((type == Account.TYPE_ASSET && !debit) ||
-				(type == Account.TYPE_EXPENSE && !debit) ||
-				(type == Account.TYPE_LIABILITY && debit) ||
-				(type == Account.TYPE_EQUITY && debit) ||
-				(type == Account.TYPE_REVENUE && debit) ||
-				(type == Account.TYPE_PROFIT_PREV && debit) ||
-				(type == Account.TYPE_PROFIT && debit))
+		debitSign[slot] = 1;
+		creditSign[slot] = 1;
+		
+		if (type == Account.TYPE_ASSET || type == Account.TYPE_EXPENSE) {
+			creditSign[slot] = -1;
+		}
+		else if (type == Account.TYPE_LIABILITY ||
+				type == Account.TYPE_EQUITY ||
+				type == Account.TYPE_REVENUE ||
+				type == Account.TYPE_PROFIT_PREV ||
+				type == Account.TYPE_PROFIT)
 		{
-			amount = amount.negate();
+			debitSign[slot] = -1;
 		}
 		
 		if (type == Account.TYPE_EXPENSE) {
-			profit = profit.subtract(amount);
+			profitSign[slot] = -1;
 		}
 		else if (type == Account.TYPE_REVENUE) {
-			profit = profit.add(amount);
+			profitSign[slot] = 1;
 		}
+		else {
+			profitSign[slot] = 0;
+		}
+	}
+	
+	/**
+	 * Laskee tilin uuden saldon parametrina annetun viennin perusteella.
+	 * 
+	 * @param entry vienti
+	 */
+	public void addEntry(Entry entry) {
+		int slot = index.indexOf(entry.getAccountId());
+		
+		if (slot < 0)
+			return;
+		
+		addAmount(slot, entry.isDebit(), entry.getAmount());
+	}
+	
+	/**
+	 * Laskee tilin uuden saldon <code>BalanceDAO</code>:lta haettujen
+	 * debet- ja kreditsummien perusteella.
+	 * 
+	 * @param total tilin summat
+	 */
+	public void addTotal(AccountTotal total) {
+		int slot = index.indexOf(total.getAccountId());
+		
+		if (slot < 0)
+			return;
 		
-		if (ab.balance == null) {
-			ab.balance = amount;
+		addAmount(slot, true, total.getDebitTotal());
+		addAmount(slot, false, total.getCreditTotal());
+	}
+	
+	private void addAmount(int slot, boolean debit, BigDecimal amount) {
+		int sign = debit ? debitSign[slot] : creditSign[slot];
+		
+		if (!balances.isSet(slot)) {
 			count++;
 		}
-		else {
-			ab.balance = ab.balance.add(amount);
+		
+		balances.add(slot, amount, sign);
+		
+		if (profitSign[slot] != 0) {
+			profit.add(0, amount, sign * profitSign[slot]);
 		}
 	}
 	
@@ -112,12 +171,9 @@ public class AccountBalances {
 	 * Nollaa saldot.
 	 */
 	public void reset() {
-		for (AccountBalance ab : balances.values()) {
-			ab.balance = null;
-		}
-		
+		balances.reset();
+		profit.reset();
 		count = 0;
-		profit = BigDecimal.ZERO;
 	}
 	
 	/**
@@ -128,8 +184,8 @@ public class AccountBalances {
 	 * yhtään vientiä
 	 */
 	public BigDecimal getBalance(int id) {
-		AccountBalance ab = balances.get(id);
-		return (ab == null) ? null : ab.balance;
+		int slot = index.indexOf(id);
+		return (slot < 0) ? null : balances.get(slot);
 	}
 	
 	/**
@@ -147,15 +203,6 @@ public class AccountBalances {
 	 * @return tilikauden voitto
 	 */
 	public BigDecimal getProfit() {
-		return profit;
-	}
-
-	private class AccountBalance {
-		public Account account;
-		public BigDecimal balance;
-		
-		public AccountBalance(Account account) {
-			this.account = account;
-		}
+		return profit.getOrZero(0);
 	}
 }
@@ -0,0 +1,126 @@
+package kirjanpito.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import kirjanpito.db.Account;
+
+/**
+ * Numeroi tilit peräkkäisillä indekseillä 0..n-1, jotta tilikohtaiset
+ * summat voidaan tallentaa taulukoihin. Tunnisteen haku ei luo olioita:
+ * tavalliset, pienet tunnisteet haetaan suoraan taulukosta.
+ */
+public class AccountIndex {
+	/* Tätä suuremmat tunnisteet haetaan HashMapista, jottei
+	 * hakutaulukosta tule kohtuuttoman suuri. */
+	private static final int MAX_DIRECT_ID = 1 << 20;
+
+	private Account[] accounts;
+	private int size;
+	private int[] slotById;
+	private HashMap<Integer, Integer> largeIds;
+
+	/**
+	 * Luo tyhjän indeksin.
+	 */
+	public AccountIndex() {
+		accounts = new Account[16];
+		slotById = new int[64];
+	}
+
+	/**
+	 * Luo indeksin tileille <code>accounts</code>.
+	 *
+	 * @param accounts tilit
+	 */
+	public AccountIndex(List<Account> accounts) {
+		this.accounts = new Account[Math.max(16, accounts.size())];
+		slotById = new int[64];
+
+		for (Account account : accounts) {
+			add(account);
+		}
+	}
+
+	/**
+	 * Lisää tilin, jos sitä ei ole vielä lisätty. Jos saman tunnisteen
+	 * tili on jo indeksissä, se korvataan.
+	 *
+	 * @param account tili
+	 * @return tilin indeksi
+	 */
+	public int add(Account account) {
+		int id = account.getId();
+		int index = indexOf(id);
+
+		if (index >= 0) {
+			accounts[index] = account;
+			return index;
+		}
+
+		if (size == accounts.length) {
+			accounts = Arrays.copyOf(accounts, size * 2);
+		}
+
+		index = size++;
+		accounts[index] = account;
+
+		if (id >= 0 && id < MAX_DIRECT_ID) {
+			if (id >= slotById.length) {
+				slotById = Arrays.copyOf(slotById,
+						Math.min(MAX_DIRECT_ID, Math.max(id + 1, slotById.length * 2)));
+			}
+
+			/* 0 tarkoittaa puuttuvaa tiliä. */
+			slotById[id] = index + 1;
+		}
+		else {
+			if (largeIds == null) {
+				largeIds = new HashMap<Integer, Integer>();
+			}
+
+			largeIds.put(id, index);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Palauttaa tilin indeksin.
+	 *
+	 * @param accountId tilin tunniste
+	 * @return indeksi tai -1, jos tiliä ei ole indeksissä
+	 */
+	public int indexOf(int accountId) {
+		if (accountId >= 0 && accountId < slotById.length) {
+			return slotById[accountId] - 1;
+		}
+
+		if (largeIds != null) {
+			Integer index = largeIds.get(accountId);
+			return (index == null) ? -1 : index;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Palauttaa indeksin <code>index</code> tilin.
+	 *
+	 * @param index indeksi
+	 * @return tili
+	 */
+	public Account get(int index) {
+		return accounts[index];
+	}
+
+	/**
+	 * Palauttaa tilien lukumäärän.
+	 *
+	 * @return tilien lukumäärä
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,135 @@
+package kirjanpito.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import kirjanpito.db.Account;
+
+/**
+ * Muuttumaton tilihakemisto. Tilit löytyvät tunnisteen ja numeron
+ * perusteella vakioajassa ja numeron tai nimen alkuosan perusteella
+ * binäärihaulla. Tunnistehaku käyttää {@link AccountIndex}iä.
+ *
+ * Hakemisto luodaan kerran, kun tilikartta haetaan tai päivitetään.
+ * Koska hakemistoa ei muuteta luomisen jälkeen, sitä voidaan lukea
+ * useasta säikeestä. Versionumero kasvaa jokaisella luontikerralla,
+ * joten hakemistosta johdettuja tietoja voidaan tallentaa välimuistiin.
+ */
+public final class AccountLookup {
+	/** Tyhjä hakemisto, jota käytetään ennen tilikartan hakemista. */
+	public static final AccountLookup EMPTY = new AccountLookup(
+			Collections.<Account>emptyList(), 0);
+
+	private final int version;
+	private final Account[] accounts;
+	private final AccountIndex byId;
+	private final HashMap<String, Account> byNumber;
+	private final PrefixIndex numberIndex;
+	private final PrefixIndex nameIndex;
+
+	/**
+	 * Luo hakemiston tileistä <code>accounts</code>.
+	 *
+	 * @param accounts tilit
+	 * @param version versionumero
+	 */
+	public AccountLookup(List<Account> accounts, int version) {
+		this.version = version;
+		this.accounts = accounts.toArray(new Account[0]);
+
+		String[] numbers = new String[this.accounts.length];
+		String[] names = new String[this.accounts.length];
+		int[] positions = new int[this.accounts.length];
+		byNumber = new HashMap<String, Account>(this.accounts.length * 2);
+
+		for (int i = 0; i < this.accounts.length; i++) {
+			Account account = this.accounts[i];
+			numbers[i] = account.getNumber();
+			names[i] = account.getName();
+			positions[i] = i;
+
+			if (account.getNumber() != null) {
+				byNumber.putIfAbsent(account.getNumber(), account);
+			}
+		}
+
+		/* AccountIndexiä ei muuteta luomisen jälkeen. */
+		byId = new AccountIndex(accounts);
+		numberIndex = new PrefixIndex(numbers, positions);
+		nameIndex = new PrefixIndex(names, positions);
+	}
+
+	/**
+	 * Palauttaa versionumeron.
+	 *
+	 * @return versionumero
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Palauttaa tilien lukumäärän.
+	 *
+	 * @return tilien lukumäärä
+	 */
+	public int size() {
+		return accounts.length;
+	}
+
+	/**
+	 * Palauttaa tilin, jonka tunniste on <code>id</code>.
+	 *
+	 * @param id tilin tunniste
+	 * @return tili tai <code>null</code>, jos tiliä ei löydy
+	 */
+	public Account getById(int id) {
+		int index = byId.indexOf(id);
+		return (index < 0) ? null : byId.get(index);
+	}
+
+	/**
+	 * Palauttaa tilin, jonka numero on <code>number</code>.
+	 *
+	 * @param number tilinumero
+	 * @return tili tai <code>null</code>, jos tiliä ei löydy
+	 */
+	public Account getByNumber(String number) {
+		return byNumber.get(number);
+	}
+
+	/**
+	 * Palauttaa tilit, joiden numero alkaa merkkijonolla
+	 * <code>prefix</code>, numerojärjestyksessä.
+	 *
+	 * @param prefix numeron alkuosa
+	 * @return tilit
+	 */
+	public List<Account> searchByNumber(String prefix) {
+		return toList(numberIndex.find(prefix));
+	}
+
+	/**
+	 * Palauttaa tilit, joiden nimi alkaa merkkijonolla
+	 * <code>prefix</code>, aakkosjärjestyksessä. Kirjainkoolla
+	 * ei ole merkitystä.
+	 *
+	 * @param prefix nimen alkuosa
+	 * @return tilit
+	 */
+	public List<Account> searchByName(String prefix) {
+		return toList(nameIndex.find(prefix));
+	}
+
+	private List<Account> toList(int[] positions) {
+		ArrayList<Account> list = new ArrayList<Account>(positions.length);
+
+		for (int position : positions) {
+			list.add(accounts[position]);
+		}
+
+		return list;
+	}
+}
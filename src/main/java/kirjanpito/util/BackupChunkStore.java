@@ -0,0 +1,439 @@
+package kirjanpito.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Lohkoihin perustuva varmuuskopiovarasto.
+ *
+ * Tietokanta jaetaan kiinteän kokoisiin lohkoihin, jotka tallennetaan
+ * pakattuina SHA-256-tiivisteen mukaan nimettyihin tiedostoihin. Jokaisesta
+ * varmuuskopiosta kirjoitetaan luettelo (*.snapshot), jossa on lohkojen
+ * tiivisteet järjestyksessä. Muuttumattomat lohkot ovat jo varastossa,
+ * joten uusi varmuuskopio vie tilaa vain muuttuneiden lohkojen verran.
+ * Pilvipalveluun synkronoidaan samasta syystä vain uudet lohkot ja
+ * pieni luettelotiedosto.
+ *
+ * Lohkot ovat varmuuskopiokansion alikansiossa, ja saman kansion kaikki
+ * tietokannat käyttävät samaa varastoa. Luettelon kirjoittaminen ja
+ * käyttämättömien lohkojen poistaminen lukitsevat varaston, jotta
+ * siivous ei poista lohkoa, jota keskeneräinen varmuuskopio käyttää.
+ */
+public class BackupChunkStore {
+	/** Luettelotiedoston pääte. */
+	public static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+	/** Oletuslohkon koko: 64 SQLiten oletuskokoista sivua. */
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+	private static final String CHUNK_DIRECTORY = "tilitin-chunks";
+	private static final String CHUNK_SUFFIX = ".z";
+	private static final String HEADER = "tilitin-snapshot 1";
+	private static final String LOCK_FILE = "lock";
+
+	/**
+	 * Saman ohjelman säikeet eivät voi lukita samaa tiedostoa
+	 * <code>FileLock</code>illa, joten ne odottavat tätä lukkoa.
+	 */
+	private static final Object LOCK = new Object();
+
+	private final File chunkDirectory;
+	private final int blockSize;
+
+	/**
+	 * Luo varaston kansioon <code>directory</code>.
+	 *
+	 * @param directory varmuuskopiokansio
+	 */
+	public BackupChunkStore(File directory) {
+		this(directory, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Luo varaston kansioon <code>directory</code>.
+	 *
+	 * @param directory varmuuskopiokansio
+	 * @param blockSize lohkon koko tavuina
+	 */
+	public BackupChunkStore(File directory, int blockSize) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("blockSize must be positive");
+		}
+
+		this.chunkDirectory = new File(directory, CHUNK_DIRECTORY);
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Tarkistaa, onko tiedosto varaston luettelotiedosto.
+	 *
+	 * @param file tiedosto
+	 * @return <code>true</code>, jos tiedosto on luettelo
+	 */
+	public static boolean isSnapshot(File file) {
+		return file.getName().endsWith(SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * Tallentaa tiedoston <code>source</code> varastoon ja kirjoittaa
+	 * luettelon tiedostoon <code>snapshot</code>. Luettelo kirjoitetaan
+	 * vasta, kun kaikki lohkot on tallennettu. Varastossa jo olevat lohkot
+	 * puretaan ja tarkistetaan, ja vioittunut lohko kirjoitetaan uudelleen.
+	 *
+	 * @param source tallennettava tiedosto, jota ei saa muuttaa kesken
+	 * @param snapshot luettelotiedosto
+	 * @return tiedot tallennetuista lohkoista
+	 * @throws IOException jos tallentaminen epäonnistuu
+	 */
+	public SnapshotStats writeSnapshot(File source, File snapshot) throws IOException {
+		List<String> hashes = new ArrayList<String>();
+		byte[] block = new byte[blockSize];
+		long size = 0;
+		int newChunks = 0;
+		long storedBytes = 0;
+
+		if (!chunkDirectory.exists() && !chunkDirectory.mkdirs()) {
+			throw new IOException("Kansion luonti epäonnistui: " + chunkDirectory);
+		}
+
+		synchronized (LOCK) {
+			try (FileChannel lock = lock()) {
+				try (InputStream in = new FileInputStream(source)) {
+					int len;
+
+					while ((len = in.readNBytes(block, 0, blockSize)) > 0) {
+						String hash = hash(block, len);
+						File chunk = getChunkFile(hash);
+						hashes.add(hash);
+						size += len;
+
+						if (!isChunkValid(chunk, len)) {
+							storedBytes += writeChunk(chunk, block, len);
+							newChunks++;
+						}
+					}
+				}
+
+				StringBuilder sb = new StringBuilder();
+				sb.append(HEADER).append('\n');
+				sb.append("size ").append(size).append('\n');
+				sb.append("block-size ").append(blockSize).append('\n');
+
+				for (String hash : hashes) {
+					sb.append(hash).append('\n');
+				}
+
+				writeAtomically(snapshot, sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		return new SnapshotStats(hashes.size(), newChunks, storedBytes);
+	}
+
+	/**
+	 * Kokoaa luettelon <code>snapshot</code> mukaisen tiedoston
+	 * tiedostoon <code>target</code>. Lohkojen tiivisteet tarkistetaan.
+	 *
+	 * @param snapshot luettelotiedosto
+	 * @param target kohdetiedosto
+	 * @throws IOException jos lohko puuttuu tai on vioittunut
+	 */
+	public void restoreSnapshot(File snapshot, File target) throws IOException {
+		List<String> hashes = new ArrayList<String>();
+		long size = readSnapshot(snapshot, hashes);
+		File temp = new File(target.getAbsoluteFile().getParentFile(),
+				target.getName() + ".tmp");
+		long written = 0;
+
+		try {
+			try (OutputStream out = new FileOutputStream(temp)) {
+				for (String hash : hashes) {
+					byte[] data = readChunk(hash);
+
+					if (!hash.equals(hash(data, data.length))) {
+						throw new IOException("Varmuuskopion lohko on vioittunut: " + hash);
+					}
+
+					out.write(data);
+					written += data.length;
+				}
+			}
+
+			if (written != size) {
+				throw new IOException("Varmuuskopion koko ei täsmää: " +
+						written + " != " + size);
+			}
+
+			move(temp, target);
+		}
+		finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * Poistaa lohkot, joihin mikään kansion luettelo ei viittaa.
+	 *
+	 * @param directory varmuuskopiokansio
+	 * @return poistettujen lohkojen määrä
+	 * @throws IOException jos luettelon lukeminen epäonnistuu
+	 */
+	public int removeUnusedChunks(File directory) throws IOException {
+		if (!chunkDirectory.isDirectory()) {
+			return 0;
+		}
+
+		synchronized (LOCK) {
+			try (FileChannel lock = lock()) {
+				return removeUnusedChunksLocked(directory);
+			}
+		}
+	}
+
+	private int removeUnusedChunksLocked(File directory) throws IOException {
+		File[] snapshots = directory.listFiles((dir, name) -> name.endsWith(SNAPSHOT_SUFFIX));
+		File[] subdirs = chunkDirectory.listFiles(File::isDirectory);
+		Set<String> used = new HashSet<String>();
+		int count = 0;
+
+		if (subdirs == null) {
+			return 0;
+		}
+
+		if (snapshots != null) {
+			for (File snapshot : snapshots) {
+				readSnapshot(snapshot, used);
+			}
+		}
+
+		for (File subdir : subdirs) {
+			File[] chunks = subdir.listFiles((dir, name) -> name.endsWith(CHUNK_SUFFIX));
+
+			if (chunks == null) {
+				continue;
+			}
+
+			for (File chunk : chunks) {
+				String name = chunk.getName();
+				String hash = name.substring(0, name.length() - CHUNK_SUFFIX.length());
+
+				if (!used.contains(hash) && chunk.delete()) {
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Lukitsee varaston muilta ohjelmilta, jotka käyttävät samaa
+	 * varmuuskopiokansiota. Lukko vapautuu, kun kanava suljetaan.
+	 */
+	private FileChannel lock() throws IOException {
+		FileChannel channel = FileChannel.open(new File(chunkDirectory, LOCK_FILE).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+		try {
+			channel.lock();
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+		return channel;
+	}
+
+	/**
+	 * Lukee luettelon lohkojen tiivisteet kokoelmaan <code>hashes</code>.
+	 *
+	 * @return alkuperäisen tiedoston koko
+	 */
+	private long readSnapshot(File snapshot, Collection<String> hashes)
+		throws IOException {
+
+		long size = -1;
+
+		try (BufferedReader reader = Files.newBufferedReader(snapshot.toPath(),
+				StandardCharsets.UTF_8)) {
+
+			if (!HEADER.equals(reader.readLine())) {
+				throw new IOException("Tuntematon varmuuskopion muoto: " + snapshot);
+			}
+
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("size ")) {
+					size = Long.parseLong(line.substring(5));
+				}
+				else if (!line.isEmpty() && !line.contains(" ")) {
+					hashes.add(line);
+				}
+			}
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Virheellinen varmuuskopion luettelo: " + snapshot, e);
+		}
+
+		return size;
+	}
+
+	private File getChunkFile(String hash) {
+		return new File(new File(chunkDirectory, hash.substring(0, 2)), hash + CHUNK_SUFFIX);
+	}
+
+	private long writeChunk(File chunk, byte[] data, int len) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+			out.write(data, 0, len);
+		}
+		finally {
+			deflater.end();
+		}
+
+		File dir = chunk.getParentFile();
+
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Kansion luonti epäonnistui: " + dir);
+		}
+
+		writeAtomically(chunk, bytes.toByteArray());
+		return bytes.size();
+	}
+
+	/**
+	 * Tarkistaa, että lohko on varastossa ja purkautuu oikean kokoiseksi.
+	 * Pakatun datan tarkistussumma tarkistetaan purettaessa, joten myös
+	 * katkennut tai muuten vioittunut lohko havaitaan.
+	 */
+	private static boolean isChunkValid(File chunk, int len) {
+		if (!chunk.exists()) {
+			return false;
+		}
+
+		try (InputStream in = new InflaterInputStream(new FileInputStream(chunk))) {
+			return in.transferTo(OutputStream.nullOutputStream()) == len;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	private byte[] readChunk(String hash) throws IOException {
+		File chunk = getChunkFile(hash);
+
+		if (!chunk.exists()) {
+			throw new IOException("Varmuuskopion lohko puuttuu: " + hash);
+		}
+
+		try (InputStream in = new InflaterInputStream(new FileInputStream(chunk))) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * Kirjoittaa tiedoston ensin väliaikaiseen tiedostoon, jotta
+	 * keskeneräistä tiedostoa ei koskaan näy varastossa.
+	 */
+	private static void writeAtomically(File file, byte[] data) throws IOException {
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+
+		try {
+			try (OutputStream out = new FileOutputStream(temp)) {
+				out.write(data);
+			}
+
+			move(temp, file);
+		}
+		finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static String hash(byte[] data, int len) {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		digest.update(data, 0, len);
+		byte[] hash = digest.digest();
+		StringBuilder sb = new StringBuilder(hash.length * 2);
+
+		for (byte b : hash) {
+			sb.append(String.format("%02x", b));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Tiedot tallennetusta varmuuskopiosta.
+	 */
+	public static class SnapshotStats {
+		private final int blockCount;
+		private final int newChunkCount;
+		private final long storedBytes;
+
+		public SnapshotStats(int blockCount, int newChunkCount, long storedBytes) {
+			this.blockCount = blockCount;
+			this.newChunkCount = newChunkCount;
+			this.storedBytes = storedBytes;
+		}
+
+		/** Lohkojen kokonaismäärä. */
+		public int getBlockCount() {
+			return blockCount;
+		}
+
+		/** Uusien, varastoon kirjoitettujen lohkojen määrä. */
+		public int getNewChunkCount() {
+			return newChunkCount;
+		}
+
+		/** Uusien lohkojen koko pakattuna. */
+		public long getStoredBytes() {
+			return storedBytes;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,6 +20,9 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import kirjanpito.db.sqlite.SQLiteBackup;
+import kirjanpito.db.sqlite.SQLiteTuning;
+
 /**
  * Hallinnoi tietokannan automaattisia varmuuskopioita.
  * Tukee Wordin AutoSave-tyylistä automaattista tallennusta pilveen.
@@ -26,6 +30,10 @@ import java.util.logging.Logger;
  * Varmuuskopiot nimetään muodossa: nimi_TUNNISTE_aikaleima.sqlite
  * TUNNISTE on 6 merkin hash tietokannan polusta, joka estää eri 
  * tietokantojen sekoittumisen vaikka niillä olisi sama nimi.
+ * 
+ * Lohkovarastotilassa varmuuskopio on luettelo nimi_TUNNISTE_aikaleima.snapshot,
+ * ja tietokannan sisältö on kansion yhteisessä lohkovarastossa
+ * (ks. {@link BackupChunkStore}).
  */
 public class BackupService {
     
@@ -43,6 +51,7 @@ public class BackupService {
     private int autoBackupIntervalMinutes = DEFAULT_AUTO_BACKUP_INTERVAL;
     private File backupDirectory; // Legacy: yhteinen oletussijainti
     private int maxBackups = DEFAULT_MAX_BACKUPS;
+    private boolean incremental = false;
     private Date lastBackupTime;
     private String currentDatabasePath;
     private List<String> selectedDatabases = new ArrayList<>();
@@ -101,6 +110,7 @@ public class BackupService {
         autoBackupIntervalMinutes = settings.getInt("backup.autoInterval", DEFAULT_AUTO_BACKUP_INTERVAL);
         String backupPath = settings.getString("backup.directory", null);
         maxBackups = settings.getInt("backup.maxCount", DEFAULT_MAX_BACKUPS);
+        incremental = settings.getBoolean("backup.incremental", false);
         
         if (backupPath != null && !backupPath.isEmpty()) {
             backupDirectory = new File(backupPath);
@@ -169,6 +179,7 @@ public class BackupService {
         settings.set("backup.autoInterval", String.valueOf(autoBackupIntervalMinutes));
         settings.set("backup.directory", backupDirectory != null ? backupDirectory.getAbsolutePath() : "");
         settings.set("backup.maxCount", String.valueOf(maxBackups));
+        settings.set("backup.incremental", String.valueOf(incremental));
         if (lastBackupTime != null) {
             settings.set("backup.lastTime", String.valueOf(lastBackupTime.getTime()));
         }
@@ -315,7 +326,7 @@ public class BackupService {
     /**
      * Suorittaa varmuuskopioinnin tiettyyn sijaintiin.
      */
-    public boolean performBackupToLocation(String databasePath, BackupLocation location, int maxBackupsForLocation) {
+    public synchronized boolean performBackupToLocation(String databasePath, BackupLocation location, int maxBackupsForLocation) {
         if (databasePath == null || databasePath.isEmpty()) {
             logger.warning("Tietokannan polku on tyhjä");
             return false;
@@ -351,15 +362,7 @@ public class BackupService {
                 }
             }
             
-            // Luo backup-tiedoston nimi
-            String pathHash = generatePathHash(sourceFile.getAbsolutePath());
-            String baseName = sourceFile.getName().replace(".sqlite", "");
-            String timestamp = DATE_FORMAT.format(new Date());
-            String backupName = baseName + "_" + pathHash + "_" + timestamp + ".sqlite";
-            File backupFile = new File(backupDir, backupName);
-            
-            // Kopioi tiedosto
-            Files.copy(sourceFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            File backupFile = writeBackup(sourceFile, backupDir);
             
             lastBackupTime = new Date();
             logger.info("Varmuuskopio luotu: " + backupFile.getAbsolutePath());
@@ -392,7 +395,7 @@ public class BackupService {
         String pattern = getBackupPattern(sourceFile);
         
         File[] backups = backupDir.listFiles((dir, name) -> 
-            name.startsWith(pattern) && name.endsWith(".sqlite"));
+            name.startsWith(pattern) && isBackupFile(name));
         
         if (backups == null || backups.length <= maxBackupsForLocation) {
             return;
@@ -401,11 +404,17 @@ public class BackupService {
         Arrays.sort(backups, Comparator.comparingLong(File::lastModified));
         
         int toDelete = backups.length - maxBackupsForLocation;
+        boolean snapshotDeleted = false;
         for (int i = 0; i < toDelete; i++) {
             if (backups[i].delete()) {
                 logger.info("Vanha varmuuskopio poistettu: " + backups[i].getName());
+                snapshotDeleted |= BackupChunkStore.isSnapshot(backups[i]);
             }
         }
+        
+        if (snapshotDeleted) {
+            removeUnusedChunks(backupDir);
+        }
     }
     
     // ========== Vanhat metodit (yhteensopivuus) ==========
@@ -541,19 +550,7 @@ public class BackupService {
                 }
             }
             
-            // Luo yksilöivä tunniste tietokannan polusta
-            // Tämä estää eri tietokantojen (sama nimi, eri sijainti) sekoittumisen
-            String pathHash = generatePathHash(sourceFile.getAbsolutePath());
-            
-            // Luo backup-tiedoston nimi: nimi_TUNNISTE_aikaleima.sqlite
-            // Esim: kirjanpito_a1b2c3_2025-12-28_14-30-00.sqlite
-            String baseName = sourceFile.getName().replace(".sqlite", "");
-            String timestamp = DATE_FORMAT.format(new Date());
-            String backupName = baseName + "_" + pathHash + "_" + timestamp + ".sqlite";
-            File backupFile = new File(backupDirectory, backupName);
-            
-            // Kopioi tiedosto
-            Files.copy(sourceFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            File backupFile = writeBackup(sourceFile, backupDirectory);
             
             lastBackupTime = new Date();
             logger.info("Varmuuskopio luotu: " + backupFile.getAbsolutePath());
@@ -582,6 +579,91 @@ public class BackupService {
         }
     }
     
+    /**
+     * Kirjoittaa tietokannasta varmuuskopion kansioon <code>backupDir</code>.
+     * Lohkovarastotilassa tallennetaan vain muuttuneet lohkot.
+     * 
+     * @return varmuuskopiotiedosto tai lohkovaraston luettelo
+     */
+    private File writeBackup(File sourceFile, File backupDir) throws IOException {
+        // Luo yksilöivä tunniste tietokannan polusta
+        // Tämä estää eri tietokantojen (sama nimi, eri sijainti) sekoittumisen
+        String pathHash = generatePathHash(sourceFile.getAbsolutePath());
+        
+        // Luo backup-tiedoston nimi: nimi_TUNNISTE_aikaleima.sqlite
+        // Esim: kirjanpito_a1b2c3_2025-12-28_14-30-00.sqlite
+        String baseName = sourceFile.getName().replace(".sqlite", "");
+        String timestamp = DATE_FORMAT.format(new Date());
+        String backupName = baseName + "_" + pathHash + "_" + timestamp;
+        
+        if (!incremental) {
+            // Kopioi tietokanta sen ollessa käytössä
+            File backupFile = new File(backupDir, backupName + ".sqlite");
+            copyDatabase(sourceFile, backupFile);
+            return backupFile;
+        }
+        
+        // Lohkot luetaan eheästä paikallisesta kopiosta, koska
+        // tietokantaan voidaan kirjoittaa samaan aikaan
+        File snapshot = new File(backupDir, backupName + BackupChunkStore.SNAPSHOT_SUFFIX);
+        File temp = File.createTempFile("tilitin-backup-", ".sqlite");
+        
+        try {
+            copyDatabase(sourceFile, temp);
+            BackupChunkStore.SnapshotStats stats = new BackupChunkStore(backupDir).writeSnapshot(temp, snapshot);
+            logger.fine("Uusia lohkoja " + stats.getNewChunkCount() + "/" + stats.getBlockCount() +
+                " (" + stats.getStoredBytes() + " tavua)");
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        
+        return snapshot;
+    }
+    
+    /**
+     * Poistaa lohkovarastosta lohkot, joita poistetut luettelot käyttivät.
+     */
+    private void removeUnusedChunks(File backupDir) {
+        try {
+            int count = new BackupChunkStore(backupDir).removeUnusedChunks(backupDir);
+            if (count > 0) {
+                logger.info("Käyttämättömiä lohkoja poistettu: " + count);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Lohkovaraston siivous epäonnistui: " + backupDir, e);
+        }
+    }
+    
+    /**
+     * Tarkistaa, onko tiedosto varmuuskopio tai lohkovaraston luettelo.
+     */
+    private static boolean isBackupFile(String name) {
+        return name.endsWith(".sqlite") || name.endsWith(BackupChunkStore.SNAPSHOT_SUFFIX);
+    }
+    
+    /**
+     * Kopioi tietokannan SQLiten varmuuskopiointirajapinnalla, jolloin
+     * kopio on eheä, vaikka tietokantaan kirjoitettaisiin samaan aikaan.
+     * Jos kopiointi epäonnistuu, WAL-loki siirretään tietokantaan ja
+     * tiedosto kopioidaan sellaisenaan.
+     */
+    private void copyDatabase(File sourceFile, File backupFile) throws IOException {
+        try {
+            new SQLiteBackup(sourceFile).copyTo(backupFile, (remaining, pageCount) ->
+                logger.finer("Varmuuskopioidaan: " + (pageCount - remaining) + "/" + pageCount + " sivua"));
+            return;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Varmuuskopiointirajapinta epäonnistui, kopioidaan tiedosto", e);
+        }
+
+        if (!SQLiteTuning.checkpoint(sourceFile)) {
+            logger.warning("WAL-lokia ei saatu siirrettyä tietokantaan, " +
+                "varmuuskopiosta voi puuttua viimeisimpiä muutoksia: " + sourceFile);
+        }
+
+        Files.copy(sourceFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
     /**
      * Tarkistaa onko varmuuskopiokansio pilvipalvelussa.
      */
@@ -662,7 +744,7 @@ public class BackupService {
         String pattern = getBackupPattern(sourceFile);
         
         File[] backups = backupDirectory.listFiles((dir, name) -> 
-            name.startsWith(pattern) && name.endsWith(".sqlite"));
+            name.startsWith(pattern) && isBackupFile(name));
         
         if (backups == null || backups.length <= maxBackups) {
             return;
@@ -673,11 +755,17 @@ public class BackupService {
         
         // Poista vanhimmat
         int toDelete = backups.length - maxBackups;
+        boolean snapshotDeleted = false;
         for (int i = 0; i < toDelete; i++) {
             if (backups[i].delete()) {
                 logger.info("Vanha varmuuskopio poistettu: " + backups[i].getName());
+                snapshotDeleted |= BackupChunkStore.isSnapshot(backups[i]);
             }
         }
+        
+        if (snapshotDeleted) {
+            removeUnusedChunks(backupDirectory);
+        }
     }
     
     /**
@@ -693,7 +781,7 @@ public class BackupService {
         String pattern = getBackupPattern(sourceFile);
         
         File[] backups = backupDirectory.listFiles((dir, name) -> 
-            name.startsWith(pattern) && name.endsWith(".sqlite"));
+            name.startsWith(pattern) && isBackupFile(name));
         
         return backups != null ? backups.length : 0;
     }
@@ -711,7 +799,7 @@ public class BackupService {
         String pattern = getBackupPattern(sourceFile);
         
         File[] backups = backupDirectory.listFiles((dir, name) -> 
-            name.startsWith(pattern) && name.endsWith(".sqlite"));
+            name.startsWith(pattern) && isBackupFile(name));
         
         if (backups != null) {
             // Järjestä uusimmasta vanhimpaan
@@ -730,7 +818,7 @@ public class BackupService {
         }
         
         File[] backups = backupDirectory.listFiles((dir, name) -> 
-            name.endsWith(".sqlite"));
+            isBackupFile(name));
         
         if (backups != null) {
             // Järjestä uusimmasta vanhimpaan
@@ -764,7 +852,7 @@ public class BackupService {
         }
         
         // Pura alkuperäinen tietokannan nimi varmuuskopion nimestä
-        // Muoto: nimi_HASH_aikaleima.sqlite
+        // Muoto: nimi_HASH_aikaleima.sqlite tai nimi_HASH_aikaleima.snapshot
         String backupName = backupFile.getName();
         String originalName = extractOriginalDatabaseName(backupName);
         
@@ -779,7 +867,13 @@ public class BackupService {
         }
         
         try {
-            Files.copy(backupFile.toPath(), targetFile.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            if (BackupChunkStore.isSnapshot(backupFile)) {
+                // Kokoa tietokanta lohkovaraston lohkoista
+                new BackupChunkStore(backupFile.getAbsoluteFile().getParentFile())
+                    .restoreSnapshot(backupFile, targetFile);
+            } else {
+                Files.copy(backupFile.toPath(), targetFile.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            }
             logger.info("Varmuuskopio palautettu: " + targetFile.getAbsolutePath());
             return targetFile;
         } catch (IOException e) {
@@ -805,10 +899,12 @@ public class BackupService {
      * nimi_HASH_aikaleima.sqlite -> nimi.sqlite
      */
     private String extractOriginalDatabaseName(String backupFileName) {
-        // Poista .sqlite lopusta
+        // Poista .sqlite tai .snapshot lopusta
         String name = backupFileName;
         if (name.endsWith(".sqlite")) {
             name = name.substring(0, name.length() - 7);
+        } else if (name.endsWith(BackupChunkStore.SNAPSHOT_SUFFIX)) {
+            name = name.substring(0, name.length() - BackupChunkStore.SNAPSHOT_SUFFIX.length());
         }
         
         // Etsi viimeinen _ ennen aikaleimaa (muoto: yyyy-MM-dd_HH-mm-ss)
@@ -865,6 +961,9 @@ public class BackupService {
     public int getMaxBackups() { return maxBackups; }
     public void setMaxBackups(int maxBackups) { this.maxBackups = Math.max(1, Math.min(100, maxBackups)); }
     
+    public boolean isIncremental() { return incremental; }
+    public void setIncremental(boolean incremental) { this.incremental = incremental; }
+    
     public Date getLastBackupTime() { return lastBackupTime; }
     
     public void setStatusListener(BackupStatusListener listener) { this.statusListener = listener; }
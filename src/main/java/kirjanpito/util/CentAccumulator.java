@@ -0,0 +1,197 @@
+package kirjanpito.util;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Laskee yhteen rahamääriä senteissä <code>long</code>-taulukkoon.
+ * Summat indeksoidaan kokonaisluvuilla, esim. {@link AccountIndex}:n
+ * antamilla tilien indekseillä.
+ *
+ * Tavallinen kahden desimaalin rahamäärä lisätään kokonaislukuna, joten
+ * summaa varten ei luoda uusia <code>BigDecimal</code>-olioita. Jos summa
+ * ylittäisi <code>long</code>-arvoalueen tai rahamäärässä on enemmän kuin
+ * kaksi desimaalia, kyseinen summa lasketaan <code>BigDecimal</code>-oliona,
+ * joten tulos on aina tarkka.
+ */
+public class CentAccumulator {
+	/* Senteiksi muunnettavan rahamäärän kokonaisosan enimmäispituus.
+	 * 16 + 2 numeroa mahtuu long-arvoon. */
+	private static final int MAX_INTEGER_DIGITS = 16;
+
+	private long[] cents;
+	private boolean[] set;
+	private BigDecimal[] overflow;
+
+	/**
+	 * Luo laskurin <code>size</code> summalle.
+	 *
+	 * @param size summien lukumäärä
+	 */
+	public CentAccumulator(int size) {
+		cents = new long[size];
+		set = new boolean[size];
+	}
+
+	/**
+	 * Kasvattaa summien lukumäärää tarvittaessa.
+	 *
+	 * @param size summien vähimmäismäärä
+	 */
+	public void ensureCapacity(int size) {
+		if (size > cents.length) {
+			int newSize = Math.max(size, cents.length * 2);
+			cents = Arrays.copyOf(cents, newSize);
+			set = Arrays.copyOf(set, newSize);
+
+			if (overflow != null) {
+				overflow = Arrays.copyOf(overflow, newSize);
+			}
+		}
+	}
+
+	/**
+	 * Palauttaa summien lukumäärän.
+	 *
+	 * @return summien lukumäärä
+	 */
+	public int size() {
+		return cents.length;
+	}
+
+	/**
+	 * Lisää rahamäärän summaan.
+	 *
+	 * @param index summan indeksi
+	 * @param amount rahamäärä
+	 */
+	public void add(int index, BigDecimal amount) {
+		add(index, amount, 1);
+	}
+
+	/**
+	 * Lisää rahamäärän summaan etumerkillä <code>sign</code> kerrottuna.
+	 *
+	 * @param index summan indeksi
+	 * @param amount rahamäärä
+	 * @param sign 1 tai -1
+	 */
+	public void add(int index, BigDecimal amount, int sign) {
+		set[index] = true;
+
+		if (fitsCents(amount)) {
+			long value = toCents(amount);
+			addCents(index, (sign < 0) ? -value : value);
+		}
+		else {
+			addOverflow(index, (sign < 0) ? amount.negate() : amount);
+		}
+	}
+
+	/**
+	 * Lisää senttimäärän summaan.
+	 *
+	 * @param index summan indeksi
+	 * @param value senttimäärä
+	 */
+	public void addCents(int index, long value) {
+		set[index] = true;
+		long current = cents[index];
+		long sum = current + value;
+
+		/* Ylivuoto, jos molemmilla yhteenlaskettavilla on eri
+		 * etumerkki kuin summalla. */
+		if (((current ^ sum) & (value ^ sum)) < 0) {
+			addOverflow(index, BigDecimal.valueOf(current, 2));
+			sum = value;
+		}
+
+		cents[index] = sum;
+	}
+
+	private void addOverflow(int index, BigDecimal amount) {
+		if (overflow == null) {
+			overflow = new BigDecimal[cents.length];
+		}
+
+		BigDecimal current = overflow[index];
+		overflow[index] = (current == null) ? amount : current.add(amount);
+	}
+
+	/**
+	 * Tarkistaa, onko summaan lisätty yhtään rahamäärää.
+	 *
+	 * @param index summan indeksi
+	 * @return <code>true</code>, jos summa on asetettu
+	 */
+	public boolean isSet(int index) {
+		return set[index];
+	}
+
+	/**
+	 * Palauttaa summan.
+	 *
+	 * @param index summan indeksi
+	 * @return summa tai <code>null</code>, jos summaan ei ole lisätty
+	 * yhtään rahamäärää
+	 */
+	public BigDecimal get(int index) {
+		if (!set[index]) {
+			return null;
+		}
+
+		BigDecimal value = BigDecimal.valueOf(cents[index], 2);
+
+		if (overflow != null && overflow[index] != null) {
+			value = value.add(overflow[index]);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Palauttaa summan tai nollan, jos summaa ei ole asetettu.
+	 *
+	 * @param index summan indeksi
+	 * @return summa
+	 */
+	public BigDecimal getOrZero(int index) {
+		BigDecimal value = get(index);
+		return (value == null) ? BigDecimal.ZERO : value;
+	}
+
+	/**
+	 * Nollaa summat.
+	 */
+	public void reset() {
+		Arrays.fill(cents, 0L);
+		Arrays.fill(set, false);
+		overflow = null;
+	}
+
+	/**
+	 * Tarkistaa, voidaanko rahamäärä esittää senttimääränä.
+	 */
+	static boolean fitsCents(BigDecimal amount) {
+		int scale = amount.scale();
+		return scale >= 0 && scale <= 2 &&
+			amount.precision() - scale <= MAX_INTEGER_DIGITS;
+	}
+
+	/**
+	 * Muuntaa rahamäärän senteiksi. Rahamäärän on oltava
+	 * <code>fitsCents</code>-metodin hyväksymä.
+	 */
+	static long toCents(BigDecimal amount) {
+		long unscaled = amount.unscaledValue().longValue();
+
+		switch (amount.scale()) {
+		case 0:
+			return unscaled * 100;
+		case 1:
+			return unscaled * 10;
+		default:
+			return unscaled;
+		}
+	}
+}
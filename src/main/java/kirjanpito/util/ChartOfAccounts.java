@@ -1,6 +1,7 @@
 package kirjanpito.util;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,6 +11,11 @@ import kirjanpito.db.COAHeading;
 public class ChartOfAccounts {
 	private COAItem[] items;
 	
+	/* Hakemistot luodaan tarvittaessa ja poistetaan, kun rivit muuttuvat. */
+	private IdentityHashMap<Object, Integer> rowIndex;
+	private PrefixIndex accountSearchIndex;
+	private PrefixIndex headingSearchIndex;
+	
 	/**
 	 * Tili
 	 */
@@ -61,6 +67,9 @@ public class ChartOfAccounts {
 				}
 			}
 		}
+		
+		rowIndex = null;
+		clearSearchIndex();
 	}
 	
 	/**
@@ -111,17 +120,7 @@ public class ChartOfAccounts {
 	 * @return rivinumero tai -1, jos tiliä ei löydy
 	 */
 	public int indexOfAccount(Account account) {
-		int index = 0;
-		
-		for (COAItem item : items) {
-			if (item.account == account) {
-				return index;
-			}
-			
-			index++;
-		}
-		
-		return -1;
+		return indexOf(account);
 	}
 	
 	/**
@@ -132,17 +131,21 @@ public class ChartOfAccounts {
 	 * @return rivinumero tai -1, jos tiliä ei löydy
 	 */
 	public int indexOfHeading(COAHeading heading) {
-		int index = 0;
-		
-		for (COAItem item : items) {
-			if (item.heading == heading) {
-				return index;
-			}
+		return indexOf(heading);
+	}
+	
+	private int indexOf(Object item) {
+		if (rowIndex == null) {
+			rowIndex = new IdentityHashMap<Object, Integer>(items.length * 2);
 			
-			index++;
+			for (int i = 0; i < items.length; i++) {
+				rowIndex.put((items[i].account != null) ?
+						items[i].account : items[i].heading, i);
+			}
 		}
 		
-		return -1;
+		Integer index = rowIndex.get(item);
+		return (index == null) ? -1 : index;
 	}
 	
 	/**
@@ -154,45 +157,66 @@ public class ChartOfAccounts {
 	 * @return rivinumero
 	 */
 	public int search(String q) {
-		int index = 0;
-		int match1 = -1;
-		int match2 = -1;
-		int match3 = -1;
-		int len = q.length();
+		if (accountSearchIndex == null) {
+			createSearchIndex();
+		}
 		
-		for (COAItem item : items) {
-			if (item.account != null) {
-				if (item.account.getNumber().equalsIgnoreCase(q) ||
-						item.account.getName().equalsIgnoreCase(q)) {
-					match1 = index;
-					break;
-				}
-				else if (item.account.getNumber().regionMatches(true, 0, q, 0, len) ||
-						item.account.getName().regionMatches(true, 0, q, 0, len)) {
-					
-					if (match2 < 0) {
-						match2 = index;
-					}
-				}
+		/* Ensisijaisesti tili, jonka numero tai nimi on hakusana,
+		 * sitten tili, jonka numero tai nimi alkaa hakusanalla, ja
+		 * lopuksi otsikko, joka alkaa hakusanalla. */
+		int index = accountSearchIndex.min(q, true);
+		
+		if (index < 0) {
+			index = accountSearchIndex.min(q, false);
+		}
+		
+		if (index < 0) {
+			index = headingSearchIndex.min(q, false);
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Poistaa hakemiston, jota käytetään tilikartan hakuun. Kutsutaan,
+	 * kun tilin tai otsikon tietoja on muutettu.
+	 */
+	public void clearSearchIndex() {
+		accountSearchIndex = null;
+		headingSearchIndex = null;
+	}
+	
+	private void createSearchIndex() {
+		ArrayList<String> accountKeys = new ArrayList<String>();
+		ArrayList<Integer> accountRows = new ArrayList<Integer>();
+		ArrayList<String> headingKeys = new ArrayList<String>();
+		ArrayList<Integer> headingRows = new ArrayList<Integer>();
+		
+		for (int i = 0; i < items.length; i++) {
+			if (items[i].account != null) {
+				accountKeys.add(items[i].account.getNumber());
+				accountRows.add(i);
+				accountKeys.add(items[i].account.getName());
+				accountRows.add(i);
 			}
-			else if (item.heading.getText().regionMatches(true, 0, q, 0, len)) {
-				if (match3 < 0) {
-					match3 = index;
-				}
+			else {
+				headingKeys.add(items[i].heading.getText());
+				headingRows.add(i);
 			}
-			
-			index++;
 		}
 		
-		if (match2 < 0) {
-			match2 = match3;
-		}
+		accountSearchIndex = createPrefixIndex(accountKeys, accountRows);
+		headingSearchIndex = createPrefixIndex(headingKeys, headingRows);
+	}
+	
+	private static PrefixIndex createPrefixIndex(List<String> keys, List<Integer> rows) {
+		int[] values = new int[rows.size()];
 		
-		if (match1 < 0) {
-			match1 = match2;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rows.get(i);
 		}
 		
-		return match1;
+		return new PrefixIndex(keys.toArray(new String[0]), values);
 	}
 	
 	public void filterNonFavouriteAccounts() {
@@ -222,6 +246,8 @@ public class ChartOfAccounts {
 		
 		items = new COAItem[tmp.size()];
 		tmp.toArray(items);
+		rowIndex = null;
+		clearSearchIndex();
 	}
 	
 	public void filterNonUsedAccounts(AccountBalances balances) {
@@ -250,6 +276,8 @@ public class ChartOfAccounts {
 
 		items = new COAItem[tmp.size()];
 		tmp.toArray(items);
+		rowIndex = null;
+		clearSearchIndex();
 	}
 
 	private static class COAItem {
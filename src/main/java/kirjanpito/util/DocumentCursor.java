@@ -0,0 +1,658 @@
+package kirjanpito.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import kirjanpito.db.DTOCallback;
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.Document;
+import kirjanpito.db.DocumentDAO;
+import kirjanpito.db.Entry;
+import kirjanpito.db.Session;
+
+/**
+ * Selaa tositteita pitämällä muistissa vain osan tilikauden
+ * tositteista.
+ *
+ * Tositteet haetaan numerojärjestyksessä <code>windowSize</code>
+ * tositteen ikkunoina. Seuraava ikkuna haetaan ladatun jakson reunimmaisen
+ * tositenumeron perusteella, joten hakuaika ei riipu siitä, kuinka
+ * kaukana tilikauden alusta ollaan. Muistissa pidetään enintään
+ * <code>MAX_WINDOWS</code> ikkunaa; nykyisestä tositteesta kauimpana
+ * olevat tositteet poistetaan.
+ *
+ * Kun tositteesta siirrytään toiseen, taustasäikeessä haetaan valmiiksi
+ * <code>prefetchCount</code> seuraavan ja edellisen tositteen viennit
+ * sekä seuraava ikkuna, jos ladatun jakson reuna on lähellä.
+ *
+ * Kursoria käytetään yhdestä säikeestä. Esihaetut viennit annetaan
+ * kutsujalle vain kerran, koska käyttöliittymä muokkaa vientiolioita.
+ */
+public class DocumentCursor {
+	private static final Logger logger = Logger.getLogger("kirjanpito");
+
+	/** Muistissa pidettävien ikkunoiden enimmäismäärä. */
+	private static final int MAX_WINDOWS = 3;
+
+	private DataSource dataSource;
+	private int periodId;
+	private int startNumber;
+	private int endNumber;
+	private boolean complete;
+	private ArrayList<Document> documents;
+	private int offset;
+	private int position;
+	private int count;
+	private int windowSize;
+	private int prefetchCount;
+	private int version;
+	private final HashMap<Integer, List<Entry>> entryCache;
+	private final AtomicInteger entryVersion;
+	private final ExecutorService executor;
+	private Future<?> pending;
+
+	/**
+	 * Luo kursorin, joka selaa tilikauden <code>periodId</code> tositteita
+	 * numeroväliltä <code>startNumber</code>..<code>endNumber</code>.
+	 *
+	 * @param dataSource tietokanta
+	 * @param periodId tilikauden tunniste
+	 * @param startNumber tositenumerovälin alku
+	 * @param endNumber tositenumerovälin loppu
+	 * @throws DataAccessException jos tositteiden lukumäärän hakeminen epäonnistuu
+	 */
+	public DocumentCursor(DataSource dataSource, int periodId,
+			int startNumber, int endNumber) throws DataAccessException {
+		this(dataSource, new ArrayList<Document>());
+		this.periodId = periodId;
+		this.startNumber = startNumber;
+		this.endNumber = endNumber;
+		this.complete = false;
+		this.count = countBetween(startNumber, endNumber);
+	}
+
+	/**
+	 * Luo kursorin, joka selaa valmiiksi haettuja tositteita,
+	 * esim. hakutuloksia.
+	 *
+	 * @param dataSource tietokanta
+	 * @param documents tositteet
+	 */
+	public DocumentCursor(DataSource dataSource, List<Document> documents) {
+		this.dataSource = dataSource;
+		this.documents = new ArrayList<Document>(documents);
+		this.complete = true;
+		this.offset = 0;
+		this.position = -1;
+		this.count = documents.size();
+		this.windowSize = 100;
+		this.prefetchCount = 5;
+		this.entryCache = new HashMap<Integer, List<Entry>>();
+		this.entryVersion = new AtomicInteger();
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "document-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Asettaa kerralla haettavien tositteiden lukumäärän.
+	 *
+	 * @param windowSize ikkunan koko
+	 */
+	public void setWindowSize(int windowSize) {
+		this.windowSize = Math.max(2, windowSize);
+	}
+
+	/**
+	 * Asettaa, monenko viereisen tositteen viennit haetaan valmiiksi
+	 * kumpaankin suuntaan.
+	 *
+	 * @param prefetchCount tositteiden lukumäärä
+	 */
+	public void setPrefetchCount(int prefetchCount) {
+		this.prefetchCount = Math.max(0, prefetchCount);
+	}
+
+	/**
+	 * Palauttaa tositteiden lukumäärän.
+	 *
+	 * @return tositteiden lukumäärä
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Palauttaa nykyisen tositteen järjestysnumeron.
+	 *
+	 * @return järjestysnumero tai -1, jos tositetta ei ole valittu
+	 */
+	public synchronized int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Palauttaa nykyisen tositteen.
+	 *
+	 * @return tosite tai <code>null</code>, jos tositetta ei ole valittu
+	 */
+	public synchronized Document getDocument() {
+		return (position < 0) ? null : documents.get(position - offset);
+	}
+
+	/**
+	 * Palauttaa muistissa olevien tositteiden lukumäärän.
+	 *
+	 * @return tositteiden lukumäärä
+	 */
+	public synchronized int getLoadedCount() {
+		return documents.size();
+	}
+
+	/**
+	 * Siirtyy ensimmäiseen tositteeseen.
+	 *
+	 * @return tosite tai <code>null</code>, jos tositteita ei ole
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document first() throws DataAccessException {
+		if (count == 0) {
+			return null;
+		}
+
+		if (offset != 0 || documents.isEmpty()) {
+			replace(fetchFirst(), 0);
+		}
+
+		return documents.isEmpty() ? clear() : moveTo(0);
+	}
+
+	/**
+	 * Siirtyy viimeiseen tositteeseen.
+	 *
+	 * @return tosite tai <code>null</code>, jos tositteita ei ole
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document last() throws DataAccessException {
+		if (count == 0) {
+			return null;
+		}
+
+		if (offset + documents.size() != count) {
+			List<Document> list = fetchLast();
+			replace(list, count - list.size());
+		}
+
+		return documents.isEmpty() ? clear() : moveTo(count - 1);
+	}
+
+	/**
+	 * Siirtyy seuraavaan tositteeseen.
+	 *
+	 * @return tosite tai <code>null</code>, jos nykyinen tosite on viimeinen
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document next() throws DataAccessException {
+		if (position < 0 || position + 1 >= count) {
+			return null;
+		}
+
+		if (position + 1 >= offset + documents.size()) {
+			/* Tositteita on poistettu muualla, jos ikkuna on tyhjä. */
+			if (!append(fetchAfter(lastLoadedNumber()))) {
+				count = offset + documents.size();
+				return null;
+			}
+		}
+
+		return moveTo(position + 1);
+	}
+
+	/**
+	 * Siirtyy edelliseen tositteeseen.
+	 *
+	 * @return tosite tai <code>null</code>, jos nykyinen tosite on ensimmäinen
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document previous() throws DataAccessException {
+		if (position <= 0) {
+			return null;
+		}
+
+		if (position - 1 < offset) {
+			prepend(fetchBefore(documents.get(0).getNumber()));
+
+			if (position <= 0) {
+				return null;
+			}
+		}
+
+		return moveTo(position - 1);
+	}
+
+	/**
+	 * Siirtyy tositteeseen, jonka numero on <code>number</code>.
+	 *
+	 * @param number tositenumero
+	 * @return tosite tai <code>null</code>, jos tositetta ei löytynyt
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document seek(int number) throws DataAccessException {
+		for (int i = 0; i < documents.size(); i++) {
+			if (documents.get(i).getNumber() == number) {
+				return moveTo(offset + i);
+			}
+		}
+
+		if (complete || number < startNumber || number > endNumber) {
+			return null;
+		}
+
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			if (dataSource.getDocumentDAO(session).getByPeriodIdAndNumber(
+					periodId, number) == null) {
+				return null;
+			}
+		}
+		finally {
+			session.close();
+		}
+
+		return moveTo(loadAround(number));
+	}
+
+	/**
+	 * Lisää uuden tositteen viimeiseksi ja siirtyy siihen.
+	 *
+	 * @param document tosite
+	 * @return tosite
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document add(Document document) throws DataAccessException {
+		if (offset + documents.size() != count) {
+			List<Document> list = fetchLast();
+			replace(list, count - list.size());
+		}
+
+		documents.add(document);
+		count++;
+		version++;
+		return moveTo(count - 1);
+	}
+
+	/**
+	 * Poistaa nykyisen tositteen kursorista ja siirtyy seuraavaan
+	 * tai, jos poistettu tosite oli viimeinen, edelliseen tositteeseen.
+	 * Tosite on poistettava tietokannasta ennen tämän metodin kutsumista.
+	 *
+	 * @return uusi nykyinen tosite tai <code>null</code>, jos tositteita ei ole
+	 * @throws DataAccessException jos tositteiden hakeminen epäonnistuu
+	 */
+	public synchronized Document remove() throws DataAccessException {
+		if (position < 0) {
+			return null;
+		}
+
+		Document removed = documents.remove(position - offset);
+		invalidate(removed.getId());
+		count--;
+		version++;
+
+		if (count == 0) {
+			return clear();
+		}
+
+		int index = Math.min(position, count - 1);
+
+		if (index < offset || index >= offset + documents.size()) {
+			index = Math.min(loadAround(removed.getNumber()), count - 1);
+		}
+
+		return moveTo(index);
+	}
+
+	/**
+	 * Palauttaa esihaetut viennit ja poistaa ne välimuistista.
+	 *
+	 * @param documentId tositteen tunniste
+	 * @return viennit tai <code>null</code>, jos vientejä ei ole haettu
+	 */
+	public List<Entry> takeEntries(int documentId) {
+		synchronized (entryCache) {
+			return entryCache.remove(documentId);
+		}
+	}
+
+	/**
+	 * Poistaa tositteen viennit välimuistista. Kutsutaan, kun tositteen
+	 * viennit muuttuvat.
+	 *
+	 * @param documentId tositteen tunniste
+	 */
+	public void invalidate(int documentId) {
+		synchronized (entryCache) {
+			entryVersion.incrementAndGet();
+			entryCache.remove(documentId);
+		}
+	}
+
+	/**
+	 * Pysäyttää taustasäikeen.
+	 */
+	public synchronized void close() {
+		if (pending != null) {
+			pending.cancel(false);
+		}
+
+		executor.shutdownNow();
+	}
+
+	private Document moveTo(int index) {
+		position = index;
+		trim();
+		schedulePrefetch();
+		return documents.get(position - offset);
+	}
+
+	private Document clear() {
+		documents.clear();
+		offset = 0;
+		position = -1;
+		count = 0;
+		version++;
+		return null;
+	}
+
+	private void replace(List<Document> list, int newOffset) {
+		documents = new ArrayList<Document>(list);
+		offset = newOffset;
+		version++;
+	}
+
+	private boolean append(List<Document> list) {
+		if (list.isEmpty()) {
+			return false;
+		}
+
+		documents.addAll(list);
+		version++;
+		return true;
+	}
+
+	private void prepend(List<Document> list) {
+		documents.addAll(0, list);
+		offset -= list.size();
+		version++;
+
+		/* Jakson alku on tilikauden ensimmäinen tosite, jos ikkuna jäi
+		 * vajaaksi. Jos tositteita on poistettu muualla, järjestysnumerot
+		 * korjataan. */
+		if (list.size() < windowSize && offset != 0) {
+			position -= offset;
+			count -= offset;
+			offset = 0;
+		}
+	}
+
+	/**
+	 * Poistaa muistista nykyisestä tositteesta kauimpana olevat
+	 * tositteet. Kummallekin puolelle jätetään vähintään yksi ikkuna.
+	 */
+	private void trim() {
+		int max = MAX_WINDOWS * windowSize;
+		int front = Math.min(documents.size() - max, position - offset - windowSize);
+
+		if (front > 0) {
+			documents.subList(0, front).clear();
+			offset += front;
+			version++;
+		}
+
+		int back = Math.min(documents.size() - max,
+				offset + documents.size() - 1 - position - windowSize);
+
+		if (back > 0) {
+			documents.subList(documents.size() - back, documents.size()).clear();
+			version++;
+		}
+	}
+
+	/**
+	 * Hakee ikkunan tositteita numeron <code>number</code> ympäriltä.
+	 *
+	 * @param number tositenumero
+	 * @return ensimmäisen vähintään numeron <code>number</code> suuruisen
+	 * tositteen järjestysnumero
+	 */
+	private int loadAround(int number) throws DataAccessException {
+		Session session = dataSource.openReadOnlySession();
+		ArrayList<Document> list = new ArrayList<Document>();
+		int index;
+
+		try {
+			DocumentDAO dao = dataSource.getDocumentDAO(session);
+			count = dao.getCountByPeriodIdAndNumber(periodId, startNumber, endNumber);
+			index = dao.getCountByPeriodIdAndNumber(periodId, startNumber, number - 1);
+			list.addAll(dao.getLastByPeriodIdAndNumber(periodId,
+					startNumber, number - 1, windowSize / 2));
+			list.addAll(dao.getByPeriodIdAndNumber(periodId,
+					number, endNumber, 0, windowSize));
+		}
+		finally {
+			session.close();
+		}
+
+		replace(list, index - countBefore(list, number));
+		return index;
+	}
+
+	private static int countBefore(List<Document> list, int number) {
+		int n = 0;
+
+		for (Document document : list) {
+			if (document.getNumber() < number) {
+				n++;
+			}
+		}
+
+		return n;
+	}
+
+	private int lastLoadedNumber() {
+		return documents.get(documents.size() - 1).getNumber();
+	}
+
+	private int countBetween(int start, int end) throws DataAccessException {
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getDocumentDAO(session).getCountByPeriodIdAndNumber(
+					periodId, start, end);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private List<Document> fetchFirst() throws DataAccessException {
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getDocumentDAO(session).getByPeriodIdAndNumber(
+					periodId, startNumber, endNumber, 0, windowSize);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private List<Document> fetchLast() throws DataAccessException {
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getDocumentDAO(session).getLastByPeriodIdAndNumber(
+					periodId, startNumber, endNumber, windowSize);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private List<Document> fetchAfter(int number) throws DataAccessException {
+		if (complete || number >= endNumber) {
+			return new ArrayList<Document>();
+		}
+
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getDocumentDAO(session).getByPeriodIdAndNumber(
+					periodId, number + 1, endNumber, 0, windowSize);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private List<Document> fetchBefore(int number) throws DataAccessException {
+		if (complete || number <= startNumber) {
+			return new ArrayList<Document>();
+		}
+
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getDocumentDAO(session).getLastByPeriodIdAndNumber(
+					periodId, startNumber, number - 1, windowSize);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	/**
+	 * Käynnistää viereisten tositteiden vientien ja tarvittaessa
+	 * seuraavan ikkunan haun taustasäikeessä. Kesken oleva esihaku
+	 * peruutetaan, jos sitä ei ole vielä aloitettu.
+	 */
+	private void schedulePrefetch() {
+		if (pending != null) {
+			pending.cancel(false);
+		}
+
+		final ArrayList<Document> neighbours = new ArrayList<Document>();
+		HashSet<Integer> keep = new HashSet<Integer>();
+		int from = Math.max(offset, position - prefetchCount);
+		int to = Math.min(offset + documents.size() - 1, position + prefetchCount);
+
+		synchronized (entryCache) {
+			for (int i = from; i <= to; i++) {
+				Document document = documents.get(i - offset);
+
+				/* Uusia tositteita ei ole vielä tallennettu. */
+				if (i == position || document.getId() <= 0) {
+					continue;
+				}
+
+				keep.add(document.getId());
+
+				if (!entryCache.containsKey(document.getId())) {
+					neighbours.add(document);
+				}
+			}
+
+			entryCache.keySet().retainAll(keep);
+		}
+
+		final int expectedVersion = version;
+		final int expectedEntryVersion = entryVersion.get();
+		final int lastNumber = lastLoadedNumber();
+		final int firstNumber = documents.get(0).getNumber();
+		final boolean loadNext = !complete && offset + documents.size() < count &&
+			offset + documents.size() - 1 - position <= windowSize / 2;
+		final boolean loadPrevious = !complete && offset > 0 &&
+			position - offset <= windowSize / 2;
+
+		/* Ilman erillisiä lukijayhteyksiä taustahaku käyttäisi samaa
+		 * yhteyttä kuin tallennus, joten tositteet ja viennit haetaan
+		 * vasta tarvittaessa. */
+		if ((neighbours.isEmpty() && !loadNext && !loadPrevious) ||
+				!dataSource.hasReaderConnections()) {
+			pending = null;
+			return;
+		}
+
+		pending = executor.submit(() -> {
+			try {
+				if (!neighbours.isEmpty()) {
+					prefetchEntries(neighbours, expectedEntryVersion);
+				}
+
+				if (loadNext) {
+					appendPrefetched(fetchAfter(lastNumber), expectedVersion);
+				}
+				else if (loadPrevious) {
+					prependPrefetched(fetchBefore(firstNumber), expectedVersion);
+				}
+			}
+			catch (DataAccessException e) {
+				logger.log(Level.WARNING, "Tositteiden esihaku epäonnistui", e);
+			}
+		});
+	}
+
+	private void prefetchEntries(List<Document> documents, int expectedEntryVersion)
+			throws DataAccessException {
+		final HashMap<Integer, List<Entry>> map = new HashMap<Integer, List<Entry>>();
+
+		for (Document document : documents) {
+			map.put(document.getId(), new ArrayList<Entry>());
+		}
+
+		Session session = dataSource.openReadOnlySession();
+
+		try {
+			dataSource.getEntryDAO(session).getByDocuments(documents,
+				new DTOCallback<Entry>() {
+					public void process(Entry entry) {
+						map.get(entry.getDocumentId()).add(entry);
+					}
+				});
+		}
+		finally {
+			session.close();
+		}
+
+		/* Viennit on voitu tallentaa haun aikana. */
+		synchronized (entryCache) {
+			if (entryVersion.get() == expectedEntryVersion) {
+				entryCache.putAll(map);
+			}
+		}
+	}
+
+	private synchronized void appendPrefetched(List<Document> list, int expectedVersion) {
+		if (version == expectedVersion) {
+			append(list);
+		}
+	}
+
+	private synchronized void prependPrefetched(List<Document> list, int expectedVersion) {
+		if (version == expectedVersion && !list.isEmpty()) {
+			prepend(list);
+		}
+	}
+}
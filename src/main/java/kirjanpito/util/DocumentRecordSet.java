@@ -2,8 +2,19 @@ package kirjanpito.util;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
@@ -11,11 +22,48 @@ import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
 import kirjanpito.db.Session;
 
+/**
+ * Selaa tilikauden tositteita sivu kerrallaan.
+ *
+ * Kun sivulta siirrytään toiselle, samaan suuntaan oleva seuraava sivu
+ * haetaan valmiiksi taustasäikeessä. Edellinen sivu pidetään muistissa,
+ * jotta suunnan vaihtaminen ei vaadi uutta hakua. Sivukokoa kasvatetaan,
+ * kun sivuja selataan nopeasti, ja palautetaan, kun selaaminen hidastuu.
+ */
 public abstract class DocumentRecordSet {
+	private static final Logger logger = Logger.getLogger("kirjanpito");
+
+	/** Sivun vähimmäiskoko. */
+	private static final int MIN_PAGE_SIZE = 10;
+
+	/** Sivun enimmäiskoko. */
+	private static final int MAX_PAGE_SIZE = 160;
+
+	/** Jos sivu vaihtuu tätä nopeammin, sivukokoa kasvatetaan. */
+	private static final long FAST_PAGE_CHANGE_MILLIS = 3000;
+
+	/** Jos sivu vaihtuu tätä hitaammin, sivukoko palautetaan. */
+	private static final long SLOW_PAGE_CHANGE_MILLIS = 15000;
+
+	/** Muistissa pidettävien aiempien sivujen enimmäismäärä. */
+	private static final int MAX_CACHED_PAGES = 2;
+
+	private static final ExecutorService readAheadExecutor =
+		Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "document-read-ahead");
+			thread.setDaemon(true);
+			return thread;
+		});
+
 	private DataSource dataSource;
 	private Period period;
 	private List<Document> documents;
 	private HashMap<Integer, List<Entry>> entryMap;
+	private LinkedList<Page> cachedPages;
+	private Future<Page> readAhead;
+	private int readAheadOffset;
+	private int readAheadLimit;
+	private long lastPageChange;
 	private int pageSize;
 	private int offset;
 	private int index;
@@ -26,10 +74,11 @@ public abstract class DocumentRecordSet {
 			AutoCompleteSupport autoCompleteSupport) {
 		this.dataSource = dataSource;
 		this.period = period;
-		this.pageSize = 10;
+		this.pageSize = MIN_PAGE_SIZE;
 		this.offset = -1;
 		this.index = -1;
 		this.count = 0;
+		this.cachedPages = new LinkedList<Page>();
 		this.autoCompleteSupport = autoCompleteSupport;
 	}
 	
@@ -131,6 +180,7 @@ public abstract class DocumentRecordSet {
 		documents.add(null);
 		index++;
 		count++;
+		discardPages();
 	}
 	
 	/**
@@ -141,6 +191,7 @@ public abstract class DocumentRecordSet {
 	public void remove() throws DataAccessException {
 		documents.remove(index);
 		count--;
+		discardPages();
 		
 		if (count == 0)
 			index = -1;
@@ -169,6 +220,8 @@ public abstract class DocumentRecordSet {
 	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
 	 */
 	public void open(Session sess) throws DataAccessException {
+		discardPages();
+		documents = null;
 		fetchCount(sess);
 		
 		if (count > 0) {
@@ -187,24 +240,19 @@ public abstract class DocumentRecordSet {
 	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
 	 */
 	public void move(int i) throws DataAccessException {
-		if (documents != null && i >= offset && i < offset + documents.size()) {
-			index = i - offset;
+		if (moveInMemory(i)) {
 			return;
 		}
 		
 		Session sess = null;
-		int newOffset = i - (i % pageSize);
 
 		try {
 			sess = dataSource.openSession();
-			move(sess, i);
+			fetchPage(sess, i);
 		}
 		finally {
 			if (sess != null) sess.close();
 		}
-		
-		offset = newOffset;
-		index = i - newOffset;
 	}
 	
 	/**
@@ -214,15 +262,9 @@ public abstract class DocumentRecordSet {
 	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
 	 */
 	public void move(Session sess, int i) throws DataAccessException {
-		if (documents != null && i >= offset && i < offset + documents.size()) {
-			index = i - offset;
-			return;
+		if (!moveInMemory(i)) {
+			fetchPage(sess, i);
 		}
-		
-		int newOffset = i - (i % pageSize);
-		fetchDocuments(sess, newOffset, pageSize);
-		offset = newOffset;
-		index = i - newOffset;
 	}
 	
 	/**
@@ -297,6 +339,239 @@ public abstract class DocumentRecordSet {
 		move(sess, count - 1);
 	}
 	
+	/**
+	 * Siirtyy tositteeseen <code>i</code>, jos se on nykyisellä sivulla,
+	 * aiemmin haetulla sivulla tai taustalla haettavalla sivulla.
+	 * 
+	 * @param i tositteen järjestysnumero
+	 * @return <code>true</code>, jos tositetta ei tarvitse hakea
+	 */
+	private boolean moveInMemory(int i) {
+		if (documents != null && i >= offset && i < offset + documents.size()) {
+			setPosition(i, offset + index);
+			return true;
+		}
+		
+		for (Page page : cachedPages) {
+			if (page.contains(i)) {
+				cachedPages.remove(page);
+				showPage(page, i);
+				return true;
+			}
+		}
+		
+		if (readAhead != null && i >= readAheadOffset &&
+				i < readAheadOffset + readAheadLimit) {
+			Page page = takeReadAhead();
+			
+			if (page != null && page.contains(i)) {
+				showPage(page, i);
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Hakee sivun, jolla tosite <code>i</code> on. Jos tosite on heti
+	 * nykyisen sivun jälkeen tai ennen sitä, sivu alkaa tai päättyy
+	 * tositteeseen <code>i</code>.
+	 */
+	private void fetchPage(Session sess, int i) throws DataAccessException {
+		int newOffset;
+		
+		if (documents != null && i == offset + documents.size()) {
+			newOffset = i;
+		}
+		else if (documents != null && i == offset - 1) {
+			newOffset = Math.max(0, i - pageSize + 1);
+		}
+		else {
+			newOffset = i - (i % pageSize);
+		}
+		
+		showPage(fetchPage(sess, newOffset, pageSize), i);
+	}
+	
+	private Page fetchPage(Session sess, int pageOffset, int limit)
+			throws DataAccessException {
+		final Page page = new Page(pageOffset,
+				new ArrayList<Document>(fetchDocuments(sess, pageOffset, limit)));
+		
+		if (!page.documents.isEmpty()) {
+			fetchEntries(sess, page.documents, new DTOCallback<Entry>() {
+				public void process(Entry obj) {
+					page.addEntry(obj);
+				}
+			});
+		}
+		
+		return page;
+	}
+	
+	/**
+	 * Vaihtaa nykyiseksi sivuksi sivun <code>page</code>. Edellinen sivu
+	 * jää muistiin.
+	 */
+	private void showPage(Page page, int i) {
+		int oldPosition = (documents == null) ? -1 : offset + index;
+		updatePageSize();
+		
+		if (documents != null && !documents.isEmpty()) {
+			Page previous = new Page(offset, documents);
+			previous.entryMap = entryMap;
+			cachedPages.addFirst(previous);
+		}
+		
+		/* Sama tosite ei saa olla kahdella sivulla, koska muutokset
+		 * tallennetaan vain nykyiselle sivulle. */
+		Iterator<Page> iter = cachedPages.iterator();
+		
+		while (iter.hasNext()) {
+			if (iter.next().overlaps(page)) {
+				iter.remove();
+			}
+		}
+		
+		while (cachedPages.size() > MAX_CACHED_PAGES) {
+			cachedPages.removeLast();
+		}
+		
+		offset = page.offset;
+		updateDocuments(page.documents);
+		entryMap = page.entryMap;
+		
+		for (List<Entry> entries : entryMap.values()) {
+			for (Entry entry : entries) {
+				autoCompleteSupport.addEntry(entry);
+			}
+		}
+		
+		/* Avattaessa siirrytään viimeiseen tositteeseen, joten
+		 * selaaminen jatkuu todennäköisesti taaksepäin. */
+		if (oldPosition < 0) {
+			oldPosition = (i >= count - 1) ? i + 1 : i - 1;
+		}
+		
+		setPosition(i, oldPosition);
+	}
+	
+	/**
+	 * Asettaa nykyisen tositteen ja aloittaa seuraavan sivun haun
+	 * siirtymissuuntaan.
+	 * 
+	 * @param i uuden tositteen järjestysnumero
+	 * @param oldPosition edellisen tositteen järjestysnumero
+	 */
+	private void setPosition(int i, int oldPosition) {
+		int direction = Integer.signum(i - oldPosition);
+		index = i - offset;
+		
+		if (direction > 0) {
+			startReadAhead(offset + documents.size(), pageSize);
+		}
+		else if (direction < 0) {
+			int pageOffset = Math.max(0, offset - pageSize);
+			startReadAhead(pageOffset, offset - pageOffset);
+		}
+	}
+	
+	private void startReadAhead(final int pageOffset, final int limit) {
+		if (limit <= 0 || pageOffset < 0 || pageOffset >= count) {
+			return;
+		}
+		
+		/* Ilman erillisiä lukijayhteyksiä taustahaku käyttäisi samaa
+		 * yhteyttä kuin tallennus, joten sivu haetaan vasta tarvittaessa. */
+		if (!dataSource.hasReaderConnections()) {
+			return;
+		}
+		
+		for (Page page : cachedPages) {
+			if (page.contains(pageOffset)) {
+				return;
+			}
+		}
+		
+		if (readAhead != null) {
+			if (readAheadOffset == pageOffset) {
+				return;
+			}
+			
+			readAhead.cancel(false);
+		}
+		
+		readAheadOffset = pageOffset;
+		readAheadLimit = limit;
+		readAhead = readAheadExecutor.submit(new Callable<Page>() {
+			public Page call() throws DataAccessException {
+				Session sess = dataSource.openReadOnlySession();
+				
+				try {
+					return fetchPage(sess, pageOffset, limit);
+				}
+				finally {
+					sess.close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Odottaa taustalla haettavan sivun valmistumista.
+	 * 
+	 * @return sivu tai <code>null</code>, jos haku epäonnistui
+	 */
+	private Page takeReadAhead() {
+		Future<Page> future = readAhead;
+		readAhead = null;
+		
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (CancellationException e) {
+		}
+		catch (ExecutionException e) {
+			logger.log(Level.WARNING, "Tositteiden esihaku epäonnistui", e.getCause());
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Unohtaa muistissa olevat muut kuin nykyisen sivun. Kutsutaan,
+	 * kun tositteiden järjestysnumerot muuttuvat.
+	 */
+	private void discardPages() {
+		cachedPages.clear();
+		
+		if (readAhead != null) {
+			readAhead.cancel(false);
+			readAhead = null;
+		}
+	}
+	
+	/**
+	 * Kasvattaa sivukokoa, jos edellinen sivu vaihtui nopeasti, ja
+	 * palauttaa sen pienimpään arvoon, jos selaaminen on hidastunut.
+	 */
+	private void updatePageSize() {
+		long now = System.currentTimeMillis();
+		long elapsed = now - lastPageChange;
+		lastPageChange = now;
+		
+		if (elapsed < FAST_PAGE_CHANGE_MILLIS) {
+			pageSize = Math.min(MAX_PAGE_SIZE, pageSize * 2);
+		}
+		else if (elapsed > SLOW_PAGE_CHANGE_MILLIS) {
+			pageSize = MIN_PAGE_SIZE;
+		}
+	}
+	
 	protected void updateDocuments(List<Document> documents) {
 		this.documents = documents;
 		autoCompleteSupport.addDocuments(documents);
@@ -322,9 +597,72 @@ public abstract class DocumentRecordSet {
 		this.count = count;
 	}
 	
+	protected int getPageSize() {
+		return pageSize;
+	}
+	
 	protected abstract void fetchCount(Session sess)
 			throws DataAccessException;
 	
-	protected abstract void fetchDocuments(Session sess,
+	/**
+	 * Hakee tositteet järjestysnumeroväliltä
+	 * <code>offset</code>..<code>offset + limit - 1</code>. Metodia
+	 * kutsutaan myös taustasäikeestä, joten se ei saa muuttaa olion tilaa.
+	 * 
+	 * @param sess tietokantaistunto
+	 * @param offset ensimmäisen tositteen järjestysnumero
+	 * @param limit tositteiden enimmäismäärä
+	 * @return tositteet
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	protected abstract List<Document> fetchDocuments(Session sess,
 			int offset, int limit) throws DataAccessException;
+	
+	/**
+	 * Hakee tositteiden <code>documents</code> viennit.
+	 * 
+	 * @param sess tietokantaistunto
+	 * @param documents tositteet
+	 * @param callback callback, jolle viennit annetaan
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	protected void fetchEntries(Session sess, List<Document> documents,
+			DTOCallback<Entry> callback) throws DataAccessException {
+		dataSource.getEntryDAO(sess).getByDocuments(documents, callback);
+	}
+	
+	/**
+	 * Sivullinen tositteita ja niiden viennit.
+	 */
+	private static class Page {
+		private int offset;
+		private List<Document> documents;
+		private HashMap<Integer, List<Entry>> entryMap;
+		
+		public Page(int offset, List<Document> documents) {
+			this.offset = offset;
+			this.documents = documents;
+			this.entryMap = new HashMap<Integer, List<Entry>>();
+		}
+		
+		public boolean contains(int i) {
+			return i >= offset && i < offset + documents.size();
+		}
+		
+		public boolean overlaps(Page other) {
+			return offset < other.offset + other.documents.size() &&
+				other.offset < offset + documents.size();
+		}
+		
+		public void addEntry(Entry entry) {
+			List<Entry> entryList = entryMap.get(entry.getDocumentId());
+			
+			if (entryList == null) {
+				entryList = new ArrayList<Entry>();
+				entryMap.put(entry.getDocumentId(), entryList);
+			}
+			
+			entryList.add(entry);
+		}
+	}
 }
@@ -36,26 +36,22 @@ public class FilteredDocumentRecordSet extends DocumentRecordSet {
 						startNumber, endNumber));
 	}
 	
-	protected void fetchDocuments(Session sess, int offset, int limit)
+	protected List<Document> fetchDocuments(Session sess, int offset, int limit)
 		throws DataAccessException {
 		
-		DataSource dataSource = getDataSource();
-		List<Document> documents = dataSource.getDocumentDAO(
+		return getDataSource().getDocumentDAO(
 				sess).getByPeriodIdAndNumber(getPeriod().getId(), startNumber,
 						endNumber, offset, limit);
+	}
+	
+	protected void fetchEntries(Session sess, List<Document> documents,
+			DTOCallback<Entry> callback) throws DataAccessException {
 		
-		updateDocuments(documents);
-		clearEntries();
-		
-		if (documents.size() > 0) {
-			int firstNumber = documents.get(0).getNumber();
-			int lastNumber = documents.get(documents.size() - 1).getNumber();
-			dataSource.getEntryDAO(sess).getByPeriodIdAndNumber(
-					getPeriod().getId(), firstNumber, lastNumber, new DTOCallback<Entry>() {
-						public void process(Entry obj) {
-							addEntry(obj);
-						}
-					});
-		}
+		/* Sivun tositteet ovat peräkkäisiä, joten viennit voidaan hakea
+		 * numerovälin perusteella. */
+		int firstNumber = documents.get(0).getNumber();
+		int lastNumber = documents.get(documents.size() - 1).getNumber();
+		getDataSource().getEntryDAO(sess).getByPeriodIdAndNumber(
+				getPeriod().getId(), firstNumber, lastNumber, callback);
 	}
 }
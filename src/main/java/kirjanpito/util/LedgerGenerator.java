@@ -0,0 +1,452 @@
+package kirjanpito.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import kirjanpito.db.Account;
+import kirjanpito.db.AttachmentDAO;
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.Document;
+import kirjanpito.db.Entry;
+import kirjanpito.db.Period;
+import kirjanpito.db.Session;
+import kirjanpito.models.Attachment;
+import kirjanpito.models.DataSourceInitializationModel;
+import kirjanpito.models.DataSourceInitializationWorker;
+
+/**
+ * Luo tietokantaan synteettisen kirjanpidon suorituskyvyn mittaamista
+ * varten. Tilikartta ja tuloslaskelman ja taseen rakenteet otetaan
+ * tilikarttamallista samoin kuin uutta tietokantaa luotaessa.
+ *
+ * <p>Tositteet muistuttavat käsin kirjattuja: ensimmäinen rivi on
+ * pankkitilin vastavienti, ja myynti- ja ostoriveille lisätään
+ * ALV-viennit riveille 100000 + rivinumero samoin kuin
+ * <code>DocumentModel</code> tekee. Osaan tositteista lisätään
+ * PDF-liite. Tositteet, viennit ja liitteet tallennetaan erissä,
+ * ja jokainen erä vahvistetaan omana transaktionaan.</p>
+ *
+ * <p>Viennit arvotaan annetulla satunnaislukugeneraattorilla, joten
+ * samalla siemenluvulla ja samoilla parametreilla syntyy aina sama
+ * kirjanpito.</p>
+ */
+public class LedgerGenerator {
+	public static final String DEFAULT_MODEL = "Elinkeinotoiminta (ALV 25,5%)";
+
+	private final DataSource dataSource;
+	private final Random random;
+	private Registry registry;
+	private List<Account> activeAccounts;
+	private List<Account> vatAccounts;
+	private Account bankAccount;
+	private int batchSize;
+	private int accountCount;
+	private int vatPercentage;
+	private int attachmentInterval;
+	private byte[] attachmentData;
+
+	/**
+	 * Luo generaattorin.
+	 *
+	 * @param dataSource tyhjä tietokanta
+	 * @param random satunnaislukugeneraattori
+	 */
+	public LedgerGenerator(DataSource dataSource, Random random) {
+		this.dataSource = dataSource;
+		this.random = random;
+		this.batchSize = 500;
+		this.accountCount = 150;
+		this.vatPercentage = 40;
+		this.attachmentInterval = 0;
+	}
+
+	/**
+	 * Asettaa yhdessä transaktiossa tallennettavien tositteiden määrän.
+	 *
+	 * @param batchSize tositteiden määrä
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Asettaa niiden tilien määrän, joille vientejä tehdään.
+	 * Tilit valitaan tilikartasta tasaisin välein. Asetettava
+	 * ennen <code>initialize</code>- tai <code>load</code>-metodin
+	 * kutsumista.
+	 *
+	 * @param accountCount tilien määrä
+	 */
+	public void setAccountCount(int accountCount) {
+		this.accountCount = accountCount;
+	}
+
+	/**
+	 * Asettaa, kuinka monta prosenttia riveistä kirjataan
+	 * ALV-velvolliselle myynti- tai ostotilille.
+	 *
+	 * @param vatPercentage osuus prosentteina
+	 */
+	public void setVatPercentage(int vatPercentage) {
+		this.vatPercentage = Math.max(0, Math.min(100, vatPercentage));
+	}
+
+	/**
+	 * Asettaa, kuinka monennelle tositteelle lisätään liite.
+	 *
+	 * @param attachmentInterval tositteiden väli; 0, jos liitteitä ei lisätä
+	 */
+	public void setAttachmentInterval(int attachmentInterval) {
+		this.attachmentInterval = Math.max(0, attachmentInterval);
+	}
+
+	/**
+	 * Lisää tyhjään tietokantaan tilikartan, asetukset, nykyisen
+	 * tilikauden ja raporttien rakenteet tilikarttamallista, ja
+	 * hakee ne rekisteriin.
+	 *
+	 * @param modelName tilikarttamallin nimi, esim. {@link #DEFAULT_MODEL}
+	 * @throws IOException jos tietokannan alustaminen epäonnistuu
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void initialize(String modelName) throws IOException, DataAccessException {
+		DataSourceInitializationWorker worker = new DataSourceInitializationWorker(
+				dataSource, new DataSourceInitializationModel(), modelName);
+
+		/* Suoritetaan samassa säikeessä. */
+		worker.run();
+
+		try {
+			worker.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Tietokannan alustaminen epäonnistui", e.getCause());
+		}
+
+		load();
+	}
+
+	/**
+	 * Hakee rekisteriin aiemmin alustetun tietokannan asetukset,
+	 * tilikartan ja nykyisen tilikauden, ja valitsee tilit, joille
+	 * viennit kirjataan.
+	 *
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void load() throws DataAccessException {
+		registry = new Registry();
+		registry.setDataSource(dataSource);
+		Session sess = dataSource.openSession();
+
+		try {
+			registry.fetchSettings(sess);
+			registry.fetchChartOfAccounts(sess);
+			registry.fetchDocumentTypes(sess);
+			registry.fetchPeriod(sess);
+		}
+		finally {
+			sess.close();
+		}
+
+		pickAccounts(registry.getAccounts());
+	}
+
+	/**
+	 * Valitsee tasaisin välein <code>accountCount</code> tiliä sekä
+	 * vastaviennin pankkitilin ja ALV-velvolliset tilit.
+	 */
+	private void pickAccounts(List<Account> accounts) {
+		ArrayList<Account> sorted = new ArrayList<Account>(accounts);
+		sorted.sort(Comparator.comparing(Account::getNumber));
+		int count = Math.max(2, Math.min(accountCount, sorted.size()));
+
+		activeAccounts = new ArrayList<Account>(count);
+		vatAccounts = new ArrayList<Account>();
+		bankAccount = null;
+
+		for (int i = 0; i < count; i++) {
+			activeAccounts.add(sorted.get((int)((long)i * sorted.size() / count)));
+		}
+
+		for (Account account : sorted) {
+			if ((account.getVatCode() == 4 || account.getVatCode() == 5) &&
+					account.getVatAccount1Id() > 0 &&
+					account.getVatRate().compareTo(BigDecimal.ZERO) > 0) {
+				vatAccounts.add(account);
+			}
+
+			if (account.getType() == Account.TYPE_ASSET &&
+					(bankAccount == null || account.getNumber().equals("1910"))) {
+				bankAccount = account;
+			}
+		}
+
+		if (bankAccount == null) {
+			bankAccount = activeAccounts.get(0);
+		}
+	}
+
+	/**
+	 * Lisää tilikausia alustuksessa luodun tilikauden eteen niin, että
+	 * tilikausia on yhteensä <code>count</code>. Alustuksessa luotu
+	 * tilikausi on viimeinen ja nykyinen.
+	 *
+	 * @param count tilikausien määrä
+	 * @return tilikaudet alkamispäivän mukaan järjestettynä
+	 * @throws DataAccessException jos tallentaminen epäonnistuu
+	 */
+	public List<Period> createPeriods(int count) throws DataAccessException {
+		Session sess = dataSource.openSession();
+
+		try {
+			List<Period> periods = new ArrayList<Period>(dataSource.getPeriodDAO(sess).getAll());
+			Period current = periods.get(periods.size() - 1);
+			Calendar cal = Calendar.getInstance();
+
+			for (int i = 1; i < count; i++) {
+				Period period = new Period();
+				cal.setTime(current.getStartDate());
+				cal.add(Calendar.YEAR, -i);
+				period.setStartDate(cal.getTime());
+				cal.setTime(current.getEndDate());
+				cal.add(Calendar.YEAR, -i);
+				period.setEndDate(cal.getTime());
+				dataSource.getPeriodDAO(sess).save(period);
+				periods.add(0, period);
+			}
+
+			sess.commit();
+			return periods;
+		}
+		catch (DataAccessException e) {
+			sess.rollback();
+			throw e;
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Lisää tilikaudelle tositteet numeroista 1..<code>documentCount</code>.
+	 * Tositepäivät kasvavat tositenumeron mukana tilikauden alusta loppuun.
+	 *
+	 * @param period tilikausi
+	 * @param documentCount tositteiden määrä
+	 * @param rows rivien määrä tositetta kohti ilman ALV-vientejä
+	 * @param listener kutsutaan jokaisen erän jälkeen tallennettujen
+	 * tositteiden määrällä; voi olla <code>null</code>
+	 * @throws DataAccessException jos tallentaminen epäonnistuu
+	 */
+	public void createDocuments(Period period, int documentCount, int rows,
+			ProgressListener listener) throws DataAccessException {
+
+		long start = period.getStartDate().getTime();
+		long length = period.getEndDate().getTime() - start;
+		Session sess = dataSource.openSession();
+
+		try {
+			AttachmentDAO attachmentDAO = (attachmentInterval > 0) ?
+					dataSource.getAttachmentDAO(sess) : null;
+
+			for (int first = 1; first <= documentCount; first += batchSize) {
+				int last = Math.min(documentCount, first + batchSize - 1);
+				ArrayList<Document> documents = new ArrayList<Document>(last - first + 1);
+
+				for (int number = first; number <= last; number++) {
+					Document document = new Document();
+					document.setPeriodId(period.getId());
+					document.setNumber(number);
+					document.setDate(new Date(start + length * (number - 1) / documentCount));
+					documents.add(document);
+				}
+
+				dataSource.getDocumentDAO(sess).saveAll(documents);
+				ArrayList<Entry> entries = new ArrayList<Entry>();
+				ArrayList<Attachment> attachments = new ArrayList<Attachment>();
+
+				for (Document document : documents) {
+					addEntries(entries, document, rows, random);
+
+					if (attachmentDAO != null && document.getNumber() % attachmentInterval == 0) {
+						attachments.add(Attachment.Companion.fromFile(document.getId(),
+								"tosite-" + document.getNumber() + ".pdf",
+								getAttachmentData(), null));
+					}
+				}
+
+				dataSource.getEntryDAO(sess).saveAll(entries);
+
+				if (!attachments.isEmpty()) {
+					attachmentDAO.saveAll(attachments);
+				}
+				sess.commit();
+
+				if (listener != null) {
+					listener.batchSaved(last);
+				}
+			}
+		}
+		catch (DataAccessException e) {
+			sess.rollback();
+			throw e;
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Lisää tositteelle <code>rows</code> riviä. Ensimmäinen rivi on
+	 * pankkitilin vastavienti, joka täsmäyttää tositteen. ALV-velvollisille
+	 * tileille kirjataan veroton määrä, ja ALV-vienti lisätään riville
+	 * 100000 + rivinumero.
+	 *
+	 * @param entries lista, johon viennit lisätään
+	 * @param document tosite
+	 * @param rows rivien määrä ilman ALV-vientejä
+	 * @param random satunnaislukugeneraattori
+	 */
+	public void addEntries(List<Entry> entries, Document document, int rows, Random random) {
+		rows = Math.max(2, rows);
+		int firstIndex = entries.size();
+		BigDecimal balance = BigDecimal.ZERO;
+		entries.add(null);
+
+		for (int i = 1; i < rows; i++) {
+			BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(500000), 2);
+			Account account;
+			boolean debit;
+
+			if (!vatAccounts.isEmpty() && random.nextInt(100) < vatPercentage) {
+				account = vatAccounts.get(random.nextInt(vatAccounts.size()));
+				/* Myynti kirjataan kreditiin, ostot debetiin. */
+				debit = (account.getVatCode() == 5);
+				BigDecimal vatAmount = VATUtil.subtractVatAmount(account.getVatRate(), amount);
+				entries.add(createEntry(document, account.getVatAccount1Id(),
+						debit, vatAmount, "", i + 100000));
+				amount = amount.subtract(vatAmount);
+				balance = debit ? balance.add(vatAmount) : balance.subtract(vatAmount);
+			}
+			else {
+				account = activeAccounts.get(random.nextInt(activeAccounts.size()));
+				debit = random.nextBoolean();
+			}
+
+			entries.add(createEntry(document, account.getId(), debit, amount,
+					"Vienti " + document.getNumber() + "/" + i, i));
+			balance = debit ? balance.add(amount) : balance.subtract(amount);
+		}
+
+		entries.set(firstIndex, createEntry(document, bankAccount.getId(),
+				balance.signum() < 0, balance.abs(), "Tosite " + document.getNumber(), 0));
+
+		/* Viennit tallennetaan rivinumeron mukaisessa järjestyksessä. */
+		entries.subList(firstIndex, entries.size()).sort(
+				Comparator.comparingInt(Entry::getRowNumber));
+	}
+
+	private static Entry createEntry(Document document, int accountId,
+			boolean debit, BigDecimal amount, String description, int rowNumber) {
+
+		Entry entry = new Entry();
+		entry.setDocumentId(document.getId());
+		entry.setAccountId(accountId);
+		entry.setDebit(debit);
+		entry.setAmount(amount);
+		entry.setDescription(description);
+		entry.setRowNumber(rowNumber);
+		return entry;
+	}
+
+	/**
+	 * Palauttaa liitteiden sisällön. Sama yhden sivun PDF-tiedosto
+	 * luodaan vain kerran.
+	 */
+	private byte[] getAttachmentData() throws DataAccessException {
+		if (attachmentData != null) {
+			return attachmentData;
+		}
+
+		try (PDDocument pdf = new PDDocument()) {
+			PDPage page = new PDPage(PDRectangle.A4);
+			pdf.addPage(page);
+
+			try (PDPageContentStream stream = new PDPageContentStream(pdf, page)) {
+				stream.beginText();
+				stream.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+				stream.newLineAtOffset(50, 750);
+				stream.showText("Kuitti");
+				stream.endText();
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			pdf.save(out);
+			attachmentData = out.toByteArray();
+			return attachmentData;
+		}
+		catch (IOException e) {
+			throw new DataAccessException("Liitteen luominen epäonnistui", e);
+		}
+	}
+
+	/**
+	 * Palauttaa rekisterin, johon on haettu tietokannan asetukset,
+	 * tilikartta ja nykyinen tilikausi.
+	 *
+	 * @return rekisteri tai <code>null</code>, jos tietokantaa ei ole alustettu
+	 */
+	public Registry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Palauttaa tilit, joille ALV:ttomat rivit kirjataan.
+	 *
+	 * @return tilit
+	 */
+	public List<Account> getActiveAccounts() {
+		return activeAccounts;
+	}
+
+	/**
+	 * Palauttaa pankkitilin, jolle tositteiden vastaviennit kirjataan.
+	 *
+	 * @return pankkitili
+	 */
+	public Account getBankAccount() {
+		return bankAccount;
+	}
+
+	/**
+	 * Tositteiden tallentamisen edistymisen kuuntelija.
+	 */
+	public interface ProgressListener {
+		/**
+		 * Kutsutaan, kun erä on tallennettu.
+		 *
+		 * @param count tilikaudelle tallennettujen tositteiden määrä
+		 */
+		public void batchSaved(int count);
+	}
+}
@@ -0,0 +1,401 @@
+package kirjanpito.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import kirjanpito.db.DataAccessException;
+import kirjanpito.db.DataSource;
+import kirjanpito.db.DataSourceFactory;
+import kirjanpito.db.Document;
+import kirjanpito.db.Entry;
+import kirjanpito.db.Period;
+import kirjanpito.db.Session;
+import kirjanpito.reports.PrintModel;
+
+/**
+ * Komentorivityökalu, joka luo tietokantaan suuren synteettisen
+ * kirjanpidon ja mittaa tositteiden selaamisen, tallentamisen ja
+ * tulosteiden viiveet. Toimii SQLite-, PostgreSQL- ja
+ * MySQL-tietokantojen kanssa.
+ *
+ * <pre>
+ * java -cp tilitin.jar kirjanpito.util.LedgerLoadTest \
+ *     --url jdbc:postgresql://localhost/tilitin_kuorma --user tilitin --password salasana \
+ *     --periods 3 --documents 50000 --entries 6
+ * </pre>
+ *
+ * Jos osoitetta ei anneta, kirjanpito luodaan väliaikaiseen
+ * SQLite-tiedostoon, joka poistetaan lopuksi. Aineisto luodaan vain
+ * tyhjään tietokantaan; jos tietokannassa on jo tilikartta, mitataan
+ * sen nykyistä tilikautta.
+ */
+public class LedgerLoadTest {
+	private static final String USAGE =
+		"Käyttö: LedgerLoadTest [valinnat]\n" +
+		"  --url <osoite>        JDBC-osoite (oletus: väliaikainen SQLite-tiedosto)\n" +
+		"  --user <nimi>         käyttäjätunnus\n" +
+		"  --password <sana>     salasana\n" +
+		"  --model <nimi>        tilikarttamalli (oletus: " + LedgerGenerator.DEFAULT_MODEL + ")\n" +
+		"  --periods <N>         tilikausien määrä (oletus: 1)\n" +
+		"  --documents <M>       tositteiden määrä tilikautta kohti (oletus: 10000)\n" +
+		"  --entries <K>         rivejä tositetta kohti ilman ALV-vientejä (oletus: 4)\n" +
+		"  --vat <prosentti>     ALV-rivien osuus riveistä (oletus: 40)\n" +
+		"  --attachments <N>     liite joka N:nnelle tositteelle, 0 = ei liitteitä (oletus: 50)\n" +
+		"  --batch <N>           tositteita yhdessä transaktiossa (oletus: 500)\n" +
+		"  --navigation <N>      selattavien tositteiden määrä (oletus: 1000)\n" +
+		"  --saves <N>           tallennettavien tositteiden määrä (oletus: 100)\n" +
+		"  --reports <N>         kunkin tulosteen ajokerrat (oletus: 3)\n" +
+		"  --seed <N>            satunnaislukujen siemen (oletus: 42)";
+
+	private final DataSource dataSource;
+	private final LedgerGenerator generator;
+	private final Random random;
+
+	private LedgerLoadTest(DataSource dataSource, LedgerGenerator generator, Random random) {
+		this.dataSource = dataSource;
+		this.generator = generator;
+		this.random = random;
+	}
+
+	public static void main(String[] args) {
+		HashMap<String, String> options;
+
+		try {
+			options = parseOptions(args);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		if (options.containsKey("help")) {
+			System.out.println(USAGE);
+			return;
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		int status = 0;
+		File tempFile = null;
+		DataSource dataSource = null;
+
+		try {
+			String url = options.get("url");
+
+			if (url == null) {
+				tempFile = File.createTempFile("tilitin-load-", ".sqlite");
+				tempFile.delete();
+				url = "jdbc:sqlite:" + tempFile.getAbsolutePath();
+			}
+
+			System.out.println("Tietokanta: " + url);
+			dataSource = DataSourceFactory.create(url,
+					options.getOrDefault("user", ""), options.getOrDefault("password", ""));
+
+			Random random = new Random(intOption(options, "seed", 42));
+			LedgerGenerator generator = new LedgerGenerator(dataSource, random);
+			generator.setVatPercentage(intOption(options, "vat", 40));
+			generator.setAttachmentInterval(intOption(options, "attachments", 50));
+			generator.setBatchSize(intOption(options, "batch", 500));
+
+			LedgerLoadTest test = new LedgerLoadTest(dataSource, generator, random);
+
+			if (isEmpty(dataSource)) {
+				test.generate(options.getOrDefault("model", LedgerGenerator.DEFAULT_MODEL),
+						intOption(options, "periods", 1),
+						intOption(options, "documents", 10000),
+						intOption(options, "entries", 4));
+			}
+			else {
+				System.out.println("Tietokannassa on jo tilikartta; aineistoa ei luoda.");
+				generator.load();
+			}
+
+			int rows = intOption(options, "entries", 4);
+			System.out.println();
+			System.out.printf("%-28s %8s %10s %10s %10s %10s%n",
+					"Mittaus", "kpl", "ka. ms", "p50 ms", "p95 ms", "max ms");
+			test.measureNavigation(intOption(options, "navigation", 1000));
+			test.measureSaves(intOption(options, "saves", 100), rows);
+			test.measureReports(intOption(options, "reports", 3));
+		}
+		catch (IOException | DataAccessException | IllegalArgumentException e) {
+			System.err.println("Kuormitustesti epäonnistui: " + e.getMessage());
+			e.printStackTrace();
+			status = 1;
+		}
+		finally {
+			if (dataSource != null) dataSource.close();
+			if (tempFile != null) tempFile.delete();
+		}
+
+		System.exit(status);
+	}
+
+	/**
+	 * Lukee valinnat muodossa <code>--nimi arvo</code>.
+	 */
+	private static HashMap<String, String> parseOptions(String[] args) {
+		HashMap<String, String> options = new HashMap<String, String>();
+		List<String> names = Arrays.asList("url", "user", "password", "model",
+				"periods", "documents", "entries", "vat", "attachments", "batch",
+				"navigation", "saves", "reports", "seed");
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--help") || args[i].equals("-h")) {
+				options.put("help", "");
+				continue;
+			}
+
+			String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+
+			if (name == null || !names.contains(name)) {
+				throw new IllegalArgumentException("Tuntematon valinta: " + args[i]);
+			}
+
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Valinnalta " + args[i] + " puuttuu arvo");
+			}
+
+			options.put(name, args[++i]);
+		}
+
+		return options;
+	}
+
+	private static int intOption(HashMap<String, String> options, String name, int defaultValue) {
+		String value = options.get(name);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Virheellinen arvo valinnalle --" + name + ": " + value);
+		}
+	}
+
+	private static boolean isEmpty(DataSource dataSource) throws DataAccessException {
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getAccountDAO(sess).getAll().isEmpty();
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Alustaa tietokannan tilikarttamallista ja lisää tilikaudet ja tositteet.
+	 */
+	private void generate(String model, int periodCount, int documentCount, int rows)
+		throws IOException, DataAccessException {
+
+		System.out.println("Tilikarttamalli: " + model);
+		long start = System.nanoTime();
+		generator.initialize(model);
+		List<Period> periods = generator.createPeriods(periodCount);
+		int total = 0;
+
+		for (int i = 0; i < periods.size(); i++) {
+			final int periodIndex = i + 1;
+			generator.createDocuments(periods.get(i), documentCount, rows, count -> {
+				if (count % 10000 == 0 || count == documentCount) {
+					System.out.printf("  Tilikausi %d/%d: %d/%d tositetta%n",
+							periodIndex, periods.size(), count, documentCount);
+				}
+			});
+
+			total += documentCount;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Luotiin %d tositetta %.1f sekunnissa (%.0f tositetta/s)%n",
+				total, seconds, total / seconds);
+	}
+
+	/**
+	 * Selaa nykyisen tilikauden tositteita eteenpäin ja hyppii
+	 * satunnaisiin tositenumeroihin samoin kuin tositenäkymä.
+	 */
+	private void measureNavigation(int count) throws DataAccessException {
+		Period period = generator.getRegistry().getPeriod();
+		Latencies next = new Latencies("Selaus: seuraava tosite", count);
+		Latencies seek = new Latencies("Selaus: siirry numeroon", count / 10);
+		DocumentCursor cursor = new DocumentCursor(dataSource,
+				period.getId(), 1, Integer.MAX_VALUE);
+
+		try {
+			Document last = cursor.last();
+
+			if (last == null) {
+				System.out.println("Nykyisellä tilikaudella ei ole tositteita.");
+				return;
+			}
+
+			int maxNumber = last.getNumber();
+			cursor.first();
+
+			for (int i = 0; i < count; i++) {
+				long start = System.nanoTime();
+				Document document = cursor.next();
+
+				if (document == null) {
+					document = cursor.first();
+				}
+
+				loadEntries(cursor, document);
+				next.add(System.nanoTime() - start);
+			}
+
+			for (int i = 0; i < count / 10; i++) {
+				long start = System.nanoTime();
+				Document document = cursor.seek(1 + random.nextInt(maxNumber));
+
+				if (document != null) {
+					loadEntries(cursor, document);
+				}
+
+				seek.add(System.nanoTime() - start);
+			}
+		}
+		finally {
+			cursor.close();
+		}
+
+		next.print();
+		seek.print();
+	}
+
+	/**
+	 * Hakee tositteen viennit esihausta tai tietokannasta.
+	 */
+	private List<Entry> loadEntries(DocumentCursor cursor, Document document)
+		throws DataAccessException {
+
+		List<Entry> entries = cursor.takeEntries(document.getId());
+
+		if (entries != null) {
+			return entries;
+		}
+
+		Session sess = dataSource.openReadOnlySession();
+
+		try {
+			return dataSource.getEntryDAO(sess).getByDocumentId(document.getId());
+		}
+		finally {
+			sess.close();
+		}
+	}
+
+	/**
+	 * Tallentaa uusia tositteita nykyisen tilikauden loppuun samoin
+	 * kuin <code>DocumentModel</code>. Tositteet jäävät tietokantaan.
+	 */
+	private void measureSaves(int count, int rows) throws DataAccessException {
+		Period period = generator.getRegistry().getPeriod();
+		Latencies saves = new Latencies("Tallennus: uusi tosite", count);
+
+		for (int i = 0; i < count; i++) {
+			long start = System.nanoTime();
+			Session sess = dataSource.openSession();
+
+			try {
+				Document document = dataSource.getDocumentDAO(sess).create(
+						period.getId(), 1, Integer.MAX_VALUE);
+				dataSource.getDocumentDAO(sess).save(document);
+
+				ArrayList<Entry> entries = new ArrayList<Entry>();
+				generator.addEntries(entries, document, rows, random);
+				dataSource.getEntryDAO(sess).saveAll(entries);
+				sess.commit();
+			}
+			catch (DataAccessException e) {
+				sess.rollback();
+				throw e;
+			}
+			finally {
+				sess.close();
+			}
+
+			saves.add(System.nanoTime() - start);
+		}
+
+		saves.print();
+	}
+
+	/**
+	 * Luo jokaisen tulosteen nykyiselle tilikaudelle.
+	 */
+	private void measureReports(int runs) throws DataAccessException {
+		for (String name : ReportModels.NAMES) {
+			Latencies latencies = new Latencies("Tuloste: " + name, runs);
+
+			for (int i = 0; i < runs; i++) {
+				long start = System.nanoTime();
+				PrintModel model = ReportModels.create(name,
+						generator.getRegistry(), generator.getBankAccount());
+				model.run();
+				latencies.add(System.nanoTime() - start);
+			}
+
+			latencies.print();
+		}
+	}
+
+	/**
+	 * Mittauksen viiveet nanosekunteina.
+	 */
+	private static class Latencies {
+		private final String name;
+		private long[] samples;
+		private int count;
+
+		public Latencies(String name, int capacity) {
+			this.name = name;
+			this.samples = new long[Math.max(1, capacity)];
+		}
+
+		public void add(long nanos) {
+			if (count == samples.length) {
+				samples = Arrays.copyOf(samples, count * 2);
+			}
+
+			samples[count++] = nanos;
+		}
+
+		public void print() {
+			if (count == 0) {
+				return;
+			}
+
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			long sum = 0;
+
+			for (long sample : sorted) {
+				sum += sample;
+			}
+
+			System.out.printf("%-28s %8d %10.2f %10.2f %10.2f %10.2f%n", name, count,
+					sum / 1e6 / count, percentile(sorted, 50), percentile(sorted, 95),
+					sorted[count - 1] / 1e6);
+		}
+
+		private static double percentile(long[] sorted, int p) {
+			int index = (int)Math.ceil(p / 100.0 * sorted.length) - 1;
+			return sorted[Math.max(0, index)] / 1e6;
+		}
+	}
+}
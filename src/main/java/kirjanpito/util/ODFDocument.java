@@ -1,8 +1,14 @@
 package kirjanpito.util;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.zip.ZipEntry;
@@ -14,6 +20,8 @@ public class ODFDocument {
 	private String generator;
 	private String title;
 	private String mimeType;
+	private ZipOutputStream zip;
+	private Writer contentStream;
 
 	public ODFDocument() {
 		styleWriter = new XMLWriter();
@@ -53,6 +61,70 @@ public class ODFDocument {
 		return contentWriter;
 	}
 	
+	/**
+	 * Avaa tiedoston <code>file</code> kirjoittamista varten.
+	 * Tämän jälkeen sisältö kirjoitetaan suoraan tiedoston
+	 * content.xml-osaan sitä mukaa kuin <code>getContentWriter</code>-olion
+	 * <code>flush</code>-metodia kutsutaan. Dokumentti viimeistellään
+	 * <code>close</code>-metodilla.
+	 *
+	 * @param file tiedosto
+	 * @throws IOException jos tiedoston avaaminen epäonnistuu
+	 */
+	public void open(File file) throws IOException {
+		zip = new ZipOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 65536));
+
+		try {
+			writeMimeType(zip);
+			zip.putNextEntry(new ZipEntry("content.xml"));
+		}
+		catch (IOException e) {
+			zip.close();
+			zip = null;
+			throw e;
+		}
+
+		contentStream = new BufferedWriter(new OutputStreamWriter(
+				zip, StandardCharsets.UTF_8), 65536);
+		contentWriter = new XMLWriter(contentStream);
+	}
+
+	/**
+	 * Viimeistelee <code>open</code>-metodilla avatun dokumentin:
+	 * kirjoittaa loput sisällöstä sekä tyylit, metatiedot ja
+	 * manifestin ja sulkee tiedoston.
+	 *
+	 * @throws IOException jos kirjoittaminen epäonnistuu
+	 */
+	public void close() throws IOException {
+		if (zip == null) {
+			return;
+		}
+
+		try {
+			contentWriter.flush();
+			contentStream.flush();
+			zip.closeEntry();
+
+			ZipEntry entry = new ZipEntry("styles.xml");
+			zip.putNextEntry(entry);
+			writeXml(zip, styleWriter);
+			zip.closeEntry();
+
+			writeMeta(zip);
+			writeManifest(zip);
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			zip.close();
+			zip = null;
+			contentStream = null;
+		}
+	}
+
 	public void save(File file) throws IOException {
 		FileOutputStream stream = new FileOutputStream(file);
 		ZipOutputStream zip = new ZipOutputStream(stream);
@@ -92,6 +92,7 @@ public class ODFSpreadsheet extends ODFDocument {
 		if (rowElementOpen) {
 			XMLWriter w = getContentWriter();
 			w.endElement("table:table-row");
+			w.flush();
 			rowElementOpen = false;
 		}
 	}
@@ -445,6 +446,13 @@ public class ODFSpreadsheet extends ODFDocument {
 		super.save(file);
 	}
 
+	@Override
+	public void close() throws IOException {
+		endDocumentContent();
+		writeStyles();
+		super.close();
+	}
+
 	private static class ODFSpreadsheetColumn {
 		public String name;
 		public String width;
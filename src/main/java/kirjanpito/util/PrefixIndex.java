@@ -0,0 +1,118 @@
+package kirjanpito.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Lajiteltu avainhakemisto alkuosahakuja varten. Avaimet muutetaan
+ * pieniksi kirjaimiksi ja lajitellaan, jolloin kaikki hakusanalla
+ * alkavat avaimet ovat peräkkäin ja löytyvät binäärihaulla.
+ * Jokaiseen avaimeen liittyy kokonaislukuarvo, esim. rivinumero.
+ */
+final class PrefixIndex {
+	private final String[] keys;
+	private final int[] values;
+
+	/**
+	 * Luo hakemiston. Taulukoiden alkiot vastaavat toisiaan.
+	 * <code>null</code>-avaimet ohitetaan.
+	 *
+	 * @param keys avaimet
+	 * @param values avaimiin liittyvät arvot
+	 */
+	PrefixIndex(String[] keys, int[] values) {
+		int count = 0;
+		String[] normalized = new String[keys.length];
+
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				normalized[i] = normalize(keys[i]);
+				count++;
+			}
+		}
+
+		Integer[] order = new Integer[count];
+		int j = 0;
+
+		for (int i = 0; i < keys.length; i++) {
+			if (normalized[i] != null) order[j++] = i;
+		}
+
+		Arrays.sort(order, Comparator.comparing(i -> normalized[i]));
+		this.keys = new String[count];
+		this.values = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			this.keys[i] = normalized[order[i]];
+			this.values[i] = values[order[i]];
+		}
+	}
+
+	/**
+	 * Palauttaa pienimmän arvon niistä avaimista, jotka ovat
+	 * <code>q</code> tai (jos <code>exact</code> on <code>false</code>)
+	 * alkavat merkkijonolla <code>q</code>.
+	 *
+	 * @param q hakusana
+	 * @param exact haetaanko vain täsmälleen samaa avainta
+	 * @return pienin arvo tai -1, jos avainta ei löydy
+	 */
+	int min(String q, boolean exact) {
+		q = normalize(q);
+		int min = -1;
+
+		for (int i = lowerBound(q); i < keys.length && keys[i].startsWith(q); i++) {
+			if (exact && keys[i].length() != q.length()) {
+				break; /* Täsmälliset osumat ovat alueen alussa. */
+			}
+
+			if (min < 0 || values[i] < min) {
+				min = values[i];
+			}
+		}
+
+		return min;
+	}
+
+	/**
+	 * Palauttaa merkkijonolla <code>q</code> alkavien avainten arvot
+	 * avainten mukaisessa järjestyksessä.
+	 *
+	 * @param q hakusana
+	 * @return arvot
+	 */
+	int[] find(String q) {
+		q = normalize(q);
+		int start = lowerBound(q);
+		int end = start;
+
+		while (end < keys.length && keys[end].startsWith(q)) {
+			end++;
+		}
+
+		return Arrays.copyOfRange(values, start, end);
+	}
+
+	private int lowerBound(String q) {
+		int low = 0;
+		int high = keys.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (keys[mid].compareTo(q) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	private static String normalize(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+}
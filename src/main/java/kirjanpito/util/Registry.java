@@ -1,9 +1,8 @@
 package kirjanpito.util;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import kirjanpito.db.Account;
 import kirjanpito.db.COAHeading;
@@ -25,7 +24,7 @@ public class Registry {
 	private List<EntryTemplate> entryTemplates;
 	private List<DocumentType> documentTypes;
 	private ChartOfAccounts coa;
-	private Map<Integer, Account> accountMap;
+	private volatile AccountLookup accountLookup = AccountLookup.EMPTY;
 	
 	public Registry() {
 		listeners = new ArrayList<RegistryListener>();
@@ -140,6 +139,17 @@ public class Registry {
 		return documentTypes;
 	}
 	
+	/**
+	 * Palauttaa tilihakemiston. Hakemisto ei muutu, joten sitä voi
+	 * käyttää myös taustasäikeessä. Tilikartan päivittäminen luo
+	 * uuden hakemiston.
+	 * 
+	 * @return tilihakemisto
+	 */
+	public AccountLookup getAccountLookup() {
+		return accountLookup;
+	}
+	
 	/**
 	 * Palauttaa tilin, jonka tunniste on <code>id</code>.
 	 * 
@@ -148,7 +158,7 @@ public class Registry {
 	 * ei löydy
 	 */
 	public Account getAccountById(int id) {
-		return accountMap.get(id);
+		return accountLookup.getById(id);
 	}
 	
 	/**
@@ -159,13 +169,7 @@ public class Registry {
 	 * ei löydy
 	 */
 	public Account getAccountByNumber(String number) {
-		for (Account a : accounts) {
-			if (a.getNumber().equals(number)) {
-				return a;
-			}
-		}
-		
-		return null;
+		return accountLookup.getByNumber(number);
 	}
 	
 	public void clear() {
@@ -175,7 +179,8 @@ public class Registry {
 		coaHeadings = null;
 		entryTemplates = null;
 		documentTypes = null;
-		accountMap = null;
+		accountLookup = new AccountLookup(Collections.<Account>emptyList(),
+				accountLookup.getVersion() + 1);
 	}
 	
 	public boolean fetchPeriod(Session sess) throws DataAccessException {
@@ -208,13 +213,10 @@ public class Registry {
 	public void updateChartOfAccounts() {
 		coa.set(accounts, coaHeadings);
 		
-		/* Luodaan tileille hajautustaulu, jotta tilit
-		 * löytyvät nopeasti tunnisteen perusteella. */
-		accountMap = new HashMap<Integer, Account>();
-		
-		for (Account account : accounts) {
-			accountMap.put(account.getId(), account);
-		}
+		/* Luodaan uusi hakemisto ja vaihdetaan se kerralla, jotta
+		 * muissa säikeissä nähdään aina joko vanha tai uusi hakemisto. */
+		accountLookup = new AccountLookup(accounts,
+				accountLookup.getVersion() + 1);
 	}
 	
 	public void fetchEntryTemplates() throws DataAccessException {
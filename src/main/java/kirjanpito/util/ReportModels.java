@@ -0,0 +1,125 @@
+package kirjanpito.util;
+
+import java.util.Date;
+
+import kirjanpito.db.Account;
+import kirjanpito.db.Period;
+import kirjanpito.reports.AccountStatementModel;
+import kirjanpito.reports.AccountSummaryModel;
+import kirjanpito.reports.FinancialStatementModel;
+import kirjanpito.reports.GeneralJournalModel;
+import kirjanpito.reports.GeneralLedgerModel;
+import kirjanpito.reports.PrintModel;
+import kirjanpito.reports.VATReportModel;
+
+/**
+ * Luo tulosteiden mallit koko nykyiselle tilikaudelle samoin
+ * asetuksin kuin tulosteiden esikatselu. Käytetään suorituskyvyn
+ * mittaamiseen.
+ */
+public final class ReportModels {
+	public static final String GENERAL_JOURNAL = "generalJournal";
+	public static final String GENERAL_LEDGER = "generalLedger";
+	public static final String INCOME_STATEMENT = "incomeStatement";
+	public static final String BALANCE_SHEET = "balanceSheet";
+	public static final String VAT_REPORT = "vatReport";
+	public static final String ACCOUNT_SUMMARY = "accountSummary";
+	public static final String ACCOUNT_STATEMENT = "accountStatement";
+
+	/**
+	 * Kaikkien tulosteiden nimet.
+	 */
+	public static final String[] NAMES = {
+		GENERAL_JOURNAL, GENERAL_LEDGER, INCOME_STATEMENT, BALANCE_SHEET,
+		VAT_REPORT, ACCOUNT_SUMMARY, ACCOUNT_STATEMENT
+	};
+
+	private ReportModels() {
+	}
+
+	/**
+	 * Luo tulosteen mallin rekisterin nykyiselle tilikaudelle.
+	 *
+	 * @param name tulosteen nimi, jokin <code>NAMES</code>-taulukon arvoista
+	 * @param registry rekisteri
+	 * @param account tiliote tulostetaan tästä tilistä
+	 * @return tulosteen malli
+	 */
+	public static PrintModel create(String name, Registry registry, Account account) {
+		Period period = registry.getPeriod();
+
+		switch (name) {
+		case GENERAL_JOURNAL: {
+			GeneralJournalModel model = new GeneralJournalModel();
+			model.setRegistry(registry);
+			model.setPeriod(period);
+			model.setStartDate(period.getStartDate());
+			model.setEndDate(period.getEndDate());
+			model.setOrderBy(GeneralJournalModel.ORDER_BY_NUMBER);
+			model.setTotalAmountVisible(true);
+			return model;
+		}
+
+		case GENERAL_LEDGER: {
+			GeneralLedgerModel model = new GeneralLedgerModel();
+			model.setRegistry(registry);
+			model.setPeriod(period);
+			model.setStartDate(period.getStartDate());
+			model.setEndDate(period.getEndDate());
+			model.setOrderBy(GeneralLedgerModel.ORDER_BY_NUMBER);
+			model.setTotalAmountVisible(true);
+			return model;
+		}
+
+		case INCOME_STATEMENT:
+		case BALANCE_SHEET: {
+			FinancialStatementModel model = new FinancialStatementModel(
+					name.equals(INCOME_STATEMENT) ?
+						FinancialStatementModel.TYPE_INCOME_STATEMENT_DETAILED :
+						FinancialStatementModel.TYPE_BALANCE_SHEET_DETAILED);
+			model.setDataSource(registry.getDataSource());
+			model.setSettings(registry.getSettings());
+			model.setAccounts(registry.getAccounts());
+			model.setStartDates(new Date[] { period.getStartDate() });
+			model.setEndDates(new Date[] { period.getEndDate() });
+			return model;
+		}
+
+		case VAT_REPORT: {
+			VATReportModel model = new VATReportModel();
+			model.setDataSource(registry.getDataSource());
+			model.setPeriod(period);
+			model.setSettings(registry.getSettings());
+			model.setAccounts(registry.getAccounts());
+			model.setStartDate(period.getStartDate());
+			model.setEndDate(period.getEndDate());
+			return model;
+		}
+
+		case ACCOUNT_SUMMARY: {
+			AccountSummaryModel model = new AccountSummaryModel();
+			model.setRegistry(registry);
+			model.setPeriod(period);
+			model.setStartDate(period.getStartDate());
+			model.setEndDate(period.getEndDate());
+			model.setPrintedAccounts(0);
+			return model;
+		}
+
+		case ACCOUNT_STATEMENT: {
+			AccountStatementModel model = new AccountStatementModel();
+			model.setDataSource(registry.getDataSource());
+			model.setPeriod(period);
+			model.setSettings(registry.getSettings());
+			model.setAccount(account);
+			model.setStartDate(period.getStartDate());
+			model.setEndDate(period.getEndDate());
+			model.setOrderBy(AccountStatementModel.ORDER_BY_NUMBER);
+			return model;
+		}
+
+		default:
+			throw new IllegalArgumentException("Tuntematon tuloste: " + name);
+		}
+	}
+}
@@ -1,17 +1,19 @@
 package kirjanpito.util;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import kirjanpito.db.DTOCallback;
 import kirjanpito.db.DataAccessException;
 import kirjanpito.db.DataSource;
 import kirjanpito.db.Document;
-import kirjanpito.db.Entry;
 import kirjanpito.db.Period;
 import kirjanpito.db.Session;
 
 public class SearchRecordSet extends DocumentRecordSet {
 	private String q;
+	private List<Document> firstPage;
+	private int firstPageLimit;
 	
 	public SearchRecordSet(DataSource dataSource,
 			Period period, String q, AutoCompleteSupport autoCompleteSupport) {
@@ -20,27 +22,67 @@ public class SearchRecordSet extends DocumentRecordSet {
 		this.q = q;
 	}
 	
+	/**
+	 * Hakee tositetiedot tietokannasta. Hakutulokset ovat
+	 * paremmuusjärjestyksessä, joten siirrytään ensimmäiseen tulokseen.
+	 * 
+	 * @throws DataAccessException jos tietojen hakeminen epäonnistuu
+	 */
+	public void open(Session sess) throws DataAccessException {
+		fetchCount(sess);
+		
+		if (getCount() > 0) {
+			first(sess);
+		}
+		else {
+			updateDocuments(new ArrayList<Document>());
+			clearEntries();
+		}
+	}
+	
 	protected void fetchCount(Session sess) throws DataAccessException {
-		setCount(getDataSource().getDocumentDAO(
-				sess).getCountByPeriodIdAndPhrase(getPeriod().getId(), q));
+		/* Ensimmäinen sivu ja tulosten lukumäärä haetaan samalla kyselyllä. */
+		final List<Document> documents = new ArrayList<Document>();
+		final int limit = getPageSize();
+		setCount(getDataSource().getDocumentDAO(sess).searchByPeriodIdAndPhrase(
+				getPeriod().getId(), q, 0, limit, new DTOCallback<Document>() {
+					public void process(Document obj) {
+						documents.add(obj);
+					}
+				}));
+		setFirstPage(documents, limit);
 	}
 	
-	protected void fetchDocuments(Session sess, int offset, int limit)
+	protected List<Document> fetchDocuments(Session sess, int offset, int limit)
 		throws DataAccessException {
 		
-		DataSource dataSource = getDataSource();
-		List<Document> documents = dataSource.getDocumentDAO(
-				sess).getByPeriodIdAndPhrase(getPeriod().getId(), q, offset, limit);
+		List<Document> documents = takeFirstPage(offset, limit);
+		
+		if (documents == null) {
+			documents = getDataSource().getDocumentDAO(
+					sess).getByPeriodIdAndPhrase(getPeriod().getId(), q, offset, limit);
+		}
 		
-		updateDocuments(documents);
-		clearEntries();
+		return documents;
+	}
+	
+	private synchronized void setFirstPage(List<Document> documents, int limit) {
+		firstPage = documents;
+		firstPageLimit = limit;
+	}
+	
+	/**
+	 * Palauttaa tulosten ensimmäisen sivun, jos se on haettu
+	 * lukumäärän yhteydessä ja kysytty väli vastaa sitä.
+	 */
+	private synchronized List<Document> takeFirstPage(int offset, int limit) {
+		List<Document> documents = null;
 		
-		if (documents.size() > 0) {
-			dataSource.getEntryDAO(sess).getByDocuments(documents, new DTOCallback<Entry>() {
-				public void process(Entry obj) {
-					addEntry(obj);
-				}
-			});
+		if (offset == 0 && firstPage != null && limit == firstPageLimit) {
+			documents = firstPage;
+			firstPage = null;
 		}
+		
+		return documents;
 	}
 }
@@ -1,14 +1,53 @@
 package kirjanpito.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
 public class XMLWriter {
 	private StringBuilder buffer;
 	private boolean elementOpen;
+	private Writer out;
 	
 	public XMLWriter() {
 		this.buffer = new StringBuilder();
 		buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
 	}
 	
+	/**
+	 * Luo XMLWriterin, joka kirjoittaa XML:n <code>out</code>-virtaan
+	 * aina <code>flush</code>-metodia kutsuttaessa. Näin koko dokumenttia
+	 * ei tarvitse pitää muistissa.
+	 * 
+	 * @param out kohde
+	 */
+	public XMLWriter(Writer out) {
+		this();
+		this.out = out;
+	}
+	
+	/**
+	 * Kirjoittaa puskuroidun XML:n kohdevirtaan ja tyhjentää puskurin.
+	 * Avoimen elementin alkua ei kirjoiteta ennen kuin elementti on
+	 * suljettu. Jos kohdevirtaa ei ole annettu, metodi ei tee mitään.
+	 * 
+	 * @throws UncheckedIOException jos kirjoittaminen epäonnistuu
+	 */
+	public void flush() {
+		if (out == null || elementOpen || buffer.length() == 0) {
+			return;
+		}
+		
+		try {
+			out.append(buffer);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		buffer.setLength(0);
+	}
+	
 	public void startElement(String name) {
 		closeElement();
 		openElement();
@@ -94,6 +133,11 @@ public class XMLWriter {
 		}
 	}
 	
+	/**
+	 * Palauttaa puskuroidun XML:n. Jos XML kirjoitetaan kohdevirtaan,
+	 * palautetaan vain viimeisen <code>flush</code>-kutsun jälkeen
+	 * kirjoitettu osa.
+	 */
 	public String toString() {
 		return buffer.toString();
 	}
@@ -2,15 +2,23 @@ package kirjanpito.util.csv
 
 import kirjanpito.db.*
 import kirjanpito.util.Registry
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
 import java.math.BigDecimal
 import java.time.LocalDate
 import java.time.ZoneId
 import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import kotlin.concurrent.thread
 
 /**
  * Handles importing CSV data into accounting entries.
  * 
  * Creates documents and entries from parsed CSV data based on column mappings.
+ * Large files are imported with [importFile], which streams the rows
+ * through a bounded queue and commits them in batches.
  */
 class CsvImporter(
     private val registry: Registry
@@ -58,22 +66,9 @@ class CsvImporter(
         var documentsCreated = 0
         var entriesCreated = 0
         
-        // Find mapped columns
-        val dateColumn = columns.find { it.mapping == MappingType.DATE }
-        val descriptionColumn = columns.find { it.mapping == MappingType.DESCRIPTION }
-        val debitColumn = columns.find { it.mapping == MappingType.DEBIT }
-        val creditColumn = columns.find { it.mapping == MappingType.CREDIT }
-        val amountColumn = columns.find { it.mapping == MappingType.AMOUNT }
-        val accountColumn = columns.find { it.mapping == MappingType.ACCOUNT_NUMBER }
-        val referenceColumn = columns.find { it.mapping == MappingType.REFERENCE }
-        val payeeColumn = columns.find { it.mapping == MappingType.PAYEE_PAYER }
-        
-        if (dateColumn == null) {
-            return ImportResult(false, 0, 0, listOf("Päivämäärä-sarake puuttuu"), emptyList())
-        }
-        
-        if (debitColumn == null && creditColumn == null && amountColumn == null) {
-            return ImportResult(false, 0, 0, listOf("Rahasumma-sarake puuttuu"), emptyList())
+        val mapped = MappedColumns(columns)
+        mapped.validate()?.let {
+            return ImportResult(false, 0, 0, listOf(it), emptyList())
         }
         
         // Parse all rows first
@@ -81,18 +76,7 @@ class CsvImporter(
         
         for ((rowIndex, row) in csvData.dataRows.withIndex()) {
             try {
-                val parsed = parseRow(
-                    row = row,
-                    rowIndex = rowIndex,
-                    dateColumn = dateColumn,
-                    descriptionColumn = descriptionColumn,
-                    debitColumn = debitColumn,
-                    creditColumn = creditColumn,
-                    amountColumn = amountColumn,
-                    accountColumn = accountColumn,
-                    referenceColumn = referenceColumn,
-                    payeeColumn = payeeColumn
-                )
+                val parsed = parseRow(row, rowIndex, mapped)
                 
                 if (parsed != null) {
                     parsedRows.add(parsed)
@@ -124,57 +108,38 @@ class CsvImporter(
             // Group rows by date for creating documents
             val rowsByDate = sortedRows.groupBy { it.date }
             
-            for ((date, rows) in rowsByDate) {
-                // Create document for this date
-                val document = documentDAO.create(period.id, 1, Int.MAX_VALUE)
-                document.date = localDateToDate(date)
-                
-                // Save document FIRST to get the ID
-                documentDAO.save(document)
-                documentsCreated++
-                
-                // Now document.id is set - create entries
+            // Create one document per date. Numbers are allocated locally
+            // after the first one so that all documents can be saved in one batch.
+            val firstNumber = documentDAO.create(period.id, 1, Int.MAX_VALUE).number
+            val documents = rowsByDate.keys.mapIndexed { index, date ->
+                Document().apply {
+                    periodId = period.id
+                    number = firstNumber + index
+                    this.date = localDateToDate(date)
+                }
+            }
+            
+            // Save documents FIRST to get the IDs
+            documentDAO.saveAll(documents)
+            documentsCreated = documents.size
+            
+            val entries = ArrayList<Entry>()
+            
+            for ((document, rows) in documents.zip(rowsByDate.values)) {
                 var rowNumber = 0
                 
                 for (parsedRow in rows) {
-                    // Find account by number if provided
-                    val accountId = if (parsedRow.accountNumber != null) {
-                        findAccountByNumber(parsedRow.accountNumber) ?: defaultAccountId
-                    } else {
-                        defaultAccountId
-                    }
-                    
-                    // Build description with payee if available
-                    val fullDescription = buildDescription(parsedRow)
-                    
-                    // Create main entry - set documentId AFTER document is saved
-                    val entry = Entry()
-                    entry.setDocumentId(document.id)  // Use setter explicitly
-                    entry.setAccountId(accountId)
-                    entry.setDebit(parsedRow.isDebit)
-                    entry.setAmount(parsedRow.amount.abs())
-                    entry.setDescription(fullDescription)
-                    entry.setRowNumber(rowNumber++)
-                    
-                    entryDAO.save(entry)
-                    entriesCreated++
-                    
-                    // Create counter entry on default account if different
-                    if (accountId != defaultAccountId) {
-                        val counterEntry = Entry()
-                        counterEntry.setDocumentId(document.id)
-                        counterEntry.setAccountId(defaultAccountId)
-                        counterEntry.setDebit(!parsedRow.isDebit)
-                        counterEntry.setAmount(parsedRow.amount.abs())
-                        counterEntry.setDescription(fullDescription)
-                        counterEntry.setRowNumber(rowNumber++)
-                        
-                        entryDAO.save(counterEntry)
-                        entriesCreated++
+                    for (entry in createEntries(parsedRow, defaultAccountId)) {
+                        entry.setDocumentId(document.id)
+                        entry.setRowNumber(rowNumber++)
+                        entries.add(entry)
                     }
                 }
             }
             
+            entryDAO.saveAll(entries)
+            entriesCreated = entries.size
+            
             sess.commit()
             
         } catch (e: DataAccessException) {
@@ -193,18 +158,269 @@ class CsvImporter(
         )
     }
     
-    private fun parseRow(
-        row: List<String>,
-        rowIndex: Int,
-        dateColumn: ColumnInfo,
-        descriptionColumn: ColumnInfo?,
-        debitColumn: ColumnInfo?,
-        creditColumn: ColumnInfo?,
-        amountColumn: ColumnInfo?,
-        accountColumn: ColumnInfo?,
-        referenceColumn: ColumnInfo?,
-        payeeColumn: ColumnInfo?
-    ): ParsedRow? {
+    /**
+     * Import a CSV file as a stream without loading it into memory.
+     *
+     * Rows are parsed in a reader thread and handed to the calling thread
+     * through a bounded queue in batches. Each batch is written with batch
+     * inserts, and the transaction is committed about every
+     * [COMMIT_ROWS] rows at a date boundary. The number of rows committed is
+     * saved in the settings in the same transaction, so importing the same
+     * file again with the same mappings continues where an interrupted
+     * import stopped.
+     *
+     * Unlike [import], rows are not sorted: a new document is started
+     * whenever the date changes, so the file should be sorted by date.
+     *
+     * @param file CSV file
+     * @param columns Column mapping information
+     * @param defaultAccountId Account ID to use when no account mapping exists
+     * @param progress Called with the percentage of the file read after each batch
+     * @return ImportResult with statistics and any errors
+     */
+    fun importFile(
+        file: File,
+        columns: List<ColumnInfo>,
+        defaultAccountId: Int,
+        progress: ((Int) -> Unit)? = null
+    ): ImportResult {
+        val mapped = MappedColumns(columns)
+        mapped.validate()?.let {
+            return ImportResult(false, 0, 0, listOf(it), emptyList())
+        }
+        
+        val errors = MessageList()
+        val warnings = MessageList()
+        val dataSource = registry.dataSource
+        val period = registry.period
+        val key = checkpointKey(file, columns, period.id, defaultAccountId)
+        var committed = Checkpoint(key, 0, 0, 0)
+        var sess: Session? = null
+        var reader: Thread? = null
+        
+        try {
+            val session = dataSource.openSession()
+            sess = session
+            val documentDAO = dataSource.getDocumentDAO(session)
+            val entryDAO = dataSource.getEntryDAO(session)
+            val settingsDAO = dataSource.getSettingsDAO(session)
+            
+            Checkpoint.parse(settingsDAO.get().getProperty(CHECKPOINT_PROPERTY, null))
+                ?.takeIf { it.key == key && it.rowsDone > 0 }
+                ?.let {
+                    committed = it
+                    warnings.add("Jatketaan keskeytynyttä tuontia riviltä ${it.rowsDone + 2}")
+                }
+            
+            val input = FileInputStream(file)
+            val queue = ArrayBlockingQueue<RowBatch>(QUEUE_CAPACITY)
+            val skipRows = committed.rowsDone
+            reader = thread(name = "csv-import-reader", isDaemon = true) {
+                readRows(input, file.length(), mapped, skipRows, queue)
+            }
+            
+            var nextNumber = documentDAO.create(period.id, 1, Int.MAX_VALUE).number
+            var documentsCreated = committed.documentsCreated
+            var entriesCreated = committed.entriesCreated
+            var rowsSinceCommit = 0
+            var document: Document? = null
+            var documentDate: LocalDate? = null
+            var rowNumber = 0
+            val documents = ArrayList<Document>()
+            val entries = ArrayList<Entry>()
+            val entryDocuments = ArrayList<Document>()
+            
+            // Documents are saved first so that entries get their IDs
+            fun flush() {
+                if (documents.isEmpty() && entries.isEmpty()) {
+                    return
+                }
+                
+                documentDAO.saveAll(documents)
+                
+                for (i in entries.indices) {
+                    entries[i].setDocumentId(entryDocuments[i].id)
+                }
+                
+                entryDAO.saveAll(entries)
+                documentsCreated += documents.size
+                entriesCreated += entries.size
+                documents.clear()
+                entries.clear()
+                entryDocuments.clear()
+            }
+            
+            fun commit(checkpoint: Checkpoint?) {
+                flush()
+                val settings = settingsDAO.get()
+                settings.setProperty(CHECKPOINT_PROPERTY, checkpoint?.format())
+                settingsDAO.save(settings)
+                session.commit()
+                committed = checkpoint ?: Checkpoint(key, 0, documentsCreated, entriesCreated)
+                rowsSinceCommit = 0
+            }
+            
+            while (true) {
+                val batch = queue.take()
+                
+                if (batch === RowBatch.END) {
+                    break
+                }
+                
+                batch.failure?.let { throw it }
+                batch.errors.forEach { errors.add(it) }
+                batch.warnings.forEach { warnings.add(it) }
+                
+                for (parsedRow in batch.rows) {
+                    if (document == null || parsedRow.date != documentDate) {
+                        if (rowsSinceCommit >= COMMIT_ROWS) {
+                            commit(Checkpoint(key, parsedRow.originalRowIndex,
+                                documentsCreated + documents.size, entriesCreated + entries.size))
+                        }
+                        
+                        document = Document().apply {
+                            periodId = period.id
+                            number = nextNumber++
+                            date = localDateToDate(parsedRow.date)
+                        }
+                        documents.add(document)
+                        documentDate = parsedRow.date
+                        rowNumber = 0
+                    }
+                    
+                    for (entry in createEntries(parsedRow, defaultAccountId)) {
+                        entry.setRowNumber(rowNumber++)
+                        entries.add(entry)
+                        entryDocuments.add(document)
+                    }
+                    
+                    rowsSinceCommit++
+                }
+                
+                flush()
+                progress?.invoke(batch.percent)
+            }
+            
+            commit(null)
+            
+            if (documentsCreated == 0) {
+                errors.add("Ei tuotavia rivejä")
+            }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            sess?.let { rollback(it, errors) }
+            errors.add("Tuonti keskeytettiin. Tuo sama tiedosto uudelleen jatkaaksesi.")
+        } catch (e: IOException) {
+            sess?.let { rollback(it, errors) }
+            errors.add("Tiedoston lukeminen epäonnistui: ${e.message}")
+        } catch (e: DataAccessException) {
+            sess?.let { rollback(it, errors) }
+            errors.add("Tietokantavirhe: ${e.message}")
+        } catch (e: RuntimeException) {
+            sess?.let { rollback(it, errors) }
+            throw e
+        } finally {
+            reader?.interrupt()
+            sess?.close()
+        }
+        
+        return ImportResult(
+            success = errors.isEmpty(),
+            documentsCreated = committed.documentsCreated,
+            entriesCreated = committed.entriesCreated,
+            errors = errors.toList(),
+            warnings = warnings.toList()
+        )
+    }
+    
+    /**
+     * Rolls back rows written after the last commit. Closing the session
+     * is not enough: the SQLite writer connection is shared, so the next
+     * unrelated commit would save them and a resumed import would add
+     * them again.
+     */
+    private fun rollback(session: Session, errors: MessageList) {
+        try {
+            session.rollback()
+        } catch (e: DataAccessException) {
+            errors.add("Tietokantavirhe: ${e.message}")
+        }
+    }
+    
+    /**
+     * Reads and parses rows in the reader thread. Rows before
+     * [skipRows] have already been imported and are not parsed.
+     */
+    private fun readRows(
+        input: FileInputStream,
+        totalBytes: Long,
+        mapped: MappedColumns,
+        skipRows: Int,
+        queue: BlockingQueue<RowBatch>
+    ) {
+        try {
+            CsvParser.open(input).use { reader ->
+                reader.readRecord() // Header
+                var rowIndex = 0
+                var batch = RowBatch()
+                
+                fun send() {
+                    val read = input.channel.position()
+                    batch.percent = if (totalBytes > 0) (read * 100 / totalBytes).toInt().coerceIn(0, 100) else 100
+                    queue.put(batch)
+                    batch = RowBatch()
+                }
+                
+                while (true) {
+                    val row = reader.readRecord() ?: break
+                    val index = rowIndex++
+                    
+                    if (index < skipRows) {
+                        continue
+                    }
+                    
+                    try {
+                        val parsed = parseRow(row, index, mapped)
+                        
+                        if (parsed != null) {
+                            batch.rows.add(parsed)
+                        } else {
+                            batch.warnings.add("Rivi ${index + 2}: Ohitettu (tyhjä tai virheellinen data)")
+                        }
+                    } catch (e: Exception) {
+                        batch.errors.add("Rivi ${index + 2}: ${e.message}")
+                    }
+                    
+                    if (++batch.size >= BATCH_ROWS) {
+                        send()
+                    }
+                }
+                
+                send()
+            }
+            
+            queue.put(RowBatch.END)
+        } catch (e: InterruptedException) {
+            // Import was stopped by the writer
+        } catch (e: Exception) {
+            try {
+                queue.put(RowBatch(failure = e))
+            } catch (ie: InterruptedException) {
+                // Writer has already stopped
+            }
+        }
+    }
+    
+    private fun parseRow(row: List<String>, rowIndex: Int, mapped: MappedColumns): ParsedRow? {
+        val dateColumn = mapped.date ?: return null
+        val amountColumn = mapped.amount
+        val debitColumn = mapped.debit
+        val creditColumn = mapped.credit
+        val descriptionColumn = mapped.description
+        val accountColumn = mapped.account
+        val referenceColumn = mapped.reference
+        val payeeColumn = mapped.payee
+        
         // Parse date
         val dateStr = row.getOrNull(dateColumn.index)?.trim() ?: return null
         val date = CsvColumnAnalyzer.parseDate(dateStr, dateColumn.type) ?: return null
@@ -268,18 +484,45 @@ class CsvImporter(
         )
     }
     
-    private fun findAccountByNumber(accountNumber: String): Int? {
-        val number = accountNumber.trim()
+    /**
+     * Create the entries for one row: the main entry and a counter entry
+     * on the default account if the row has an account of its own.
+     * Document ID and row number are set by the caller.
+     */
+    private fun createEntries(parsedRow: ParsedRow, defaultAccountId: Int): List<Entry> {
+        // Find account by number if provided
+        val accountId = if (parsedRow.accountNumber != null) {
+            findAccountByNumber(parsedRow.accountNumber) ?: defaultAccountId
+        } else {
+            defaultAccountId
+        }
         
-        for (account in registry.accounts) {
-            if (account.number == number) {
-                return account.id
-            }
+        // Build description with payee if available
+        val fullDescription = buildDescription(parsedRow)
+        
+        // Create main entry
+        val entry = Entry()
+        entry.setAccountId(accountId)
+        entry.setDebit(parsedRow.isDebit)
+        entry.setAmount(parsedRow.amount.abs())
+        entry.setDescription(fullDescription)
+        
+        if (accountId == defaultAccountId) {
+            return listOf(entry)
         }
         
-        return null
+        // Create counter entry on default account
+        val counterEntry = Entry()
+        counterEntry.setAccountId(defaultAccountId)
+        counterEntry.setDebit(!parsedRow.isDebit)
+        counterEntry.setAmount(parsedRow.amount.abs())
+        counterEntry.setDescription(fullDescription)
+        return listOf(entry, counterEntry)
     }
     
+    private fun findAccountByNumber(accountNumber: String): Int? =
+        registry.accountLookup.getByNumber(accountNumber.trim())?.id
+    
     private fun buildDescription(row: ParsedRow): String {
         val parts = mutableListOf<String>()
         
@@ -301,4 +544,109 @@ class CsvImporter(
     private fun localDateToDate(localDate: LocalDate): Date {
         return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant())
     }
+    
+    private fun checkpointKey(file: File, columns: List<ColumnInfo>, periodId: Int, defaultAccountId: Int): String {
+        val mappings = columns.filter { it.mapping != MappingType.DO_NOT_IMPORT }
+            .joinToString(",") { "${it.index}:${it.mapping}:${it.type}" }
+        val source = "${file.name}|${file.length()}|${file.lastModified()}|$periodId|$defaultAccountId|$mappings"
+        return "%08x".format(source.hashCode())
+    }
+    
+    /**
+     * Columns selected for each import field.
+     */
+    private class MappedColumns(columns: List<ColumnInfo>) {
+        val date = columns.find { it.mapping == MappingType.DATE }
+        val description = columns.find { it.mapping == MappingType.DESCRIPTION }
+        val debit = columns.find { it.mapping == MappingType.DEBIT }
+        val credit = columns.find { it.mapping == MappingType.CREDIT }
+        val amount = columns.find { it.mapping == MappingType.AMOUNT }
+        val account = columns.find { it.mapping == MappingType.ACCOUNT_NUMBER }
+        val reference = columns.find { it.mapping == MappingType.REFERENCE }
+        val payee = columns.find { it.mapping == MappingType.PAYEE_PAYER }
+        
+        /**
+         * Returns an error message if a required column is missing.
+         */
+        fun validate(): String? = when {
+            date == null -> "Päivämäärä-sarake puuttuu"
+            debit == null && credit == null && amount == null -> "Rahasumma-sarake puuttuu"
+            else -> null
+        }
+    }
+    
+    /**
+     * Rows passed from the reader thread to the writer.
+     */
+    private class RowBatch(val failure: Exception? = null) {
+        val rows = ArrayList<ParsedRow>()
+        val errors = ArrayList<String>()
+        val warnings = ArrayList<String>()
+        var size = 0
+        var percent = 0
+        
+        companion object {
+            val END = RowBatch()
+        }
+    }
+    
+    /**
+     * Progress of a streaming import, saved in the settings with each commit.
+     */
+    private data class Checkpoint(
+        val key: String,
+        val rowsDone: Int,
+        val documentsCreated: Int,
+        val entriesCreated: Int
+    ) {
+        fun format() = "$key;$rowsDone;$documentsCreated;$entriesCreated"
+        
+        companion object {
+            fun parse(value: String?): Checkpoint? {
+                val parts = value?.split(';') ?: return null
+                if (parts.size != 4) return null
+                return Checkpoint(
+                    parts[0],
+                    parts[1].toIntOrNull() ?: return null,
+                    parts[2].toIntOrNull() ?: return null,
+                    parts[3].toIntOrNull() ?: return null
+                )
+            }
+        }
+    }
+    
+    /**
+     * Error or warning messages. Only the first [MAX_MESSAGES] are kept
+     * so that a large file full of bad rows does not fill the memory.
+     */
+    private class MessageList {
+        private val messages = ArrayList<String>()
+        private var dropped = 0
+        
+        fun add(message: String) {
+            if (messages.size < MAX_MESSAGES) messages.add(message) else dropped++
+        }
+        
+        fun isEmpty() = messages.isEmpty()
+        
+        fun toList(): List<String> =
+            if (dropped == 0) messages.toList() else messages + "...ja $dropped muuta"
+    }
+    
+    companion object {
+        /** Property in the settings that holds the streaming import checkpoint. */
+        const val CHECKPOINT_PROPERTY = "csvImport.checkpoint"
+        
+        /** Rows parsed per batch in the reader thread. */
+        private const val BATCH_ROWS = 1000
+        
+        /** Batches that may wait in the queue before the reader blocks. */
+        private const val QUEUE_CAPACITY = 4
+        
+        /** Rows written between commits. */
+        private const val COMMIT_ROWS = 10_000
+        
+        /** Errors and warnings kept in the result. */
+        private const val MAX_MESSAGES = 200
+    }
 }
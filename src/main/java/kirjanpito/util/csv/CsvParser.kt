@@ -1,5 +1,11 @@
 package kirjanpito.util.csv
 
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
 
@@ -11,6 +17,9 @@ import java.nio.charset.StandardCharsets
  */
 object CsvParser {
 
+    /** Bytes read from the beginning of a stream to detect encoding and delimiter. */
+    private const val SAMPLE_SIZE = 256 * 1024
+
     /**
      * Detect character encoding from byte data.
      * Checks for UTF-8 BOM first, then tries to detect Finnish characters.
@@ -90,66 +99,38 @@ object CsvParser {
      * Parse CSV data to CsvData object.
      */
     fun parse(data: ByteArray): CsvData {
-        val charset = detectEncoding(data)
-        var text = String(data, charset)
-        
-        // Remove BOM if present
-        if (text.startsWith("\uFEFF")) {
-            text = text.substring(1)
-        }
-        
-        val lines = text.lines().filter { it.isNotBlank() }
-
-        if (lines.isEmpty()) {
-            return CsvData(emptyList(), ',', charset)
+        open(ByteArrayInputStream(data)).use { reader ->
+            return CsvData(reader.records().toList(), reader.delimiter, reader.encoding)
         }
-
-        val delimiter = detectDelimiter(lines.first())
-        val rows = lines.map { parseLine(it, delimiter) }
-
-        return CsvData(rows, delimiter, charset)
     }
 
     /**
-     * Parse a single CSV line respecting quotes.
+     * Open a CSV file for streaming.
      */
-    private fun parseLine(line: String, delimiter: Char): List<String> {
-        val fields = mutableListOf<String>()
-        val currentField = StringBuilder()
-        var inQuotes = false
-        var i = 0
-
-        while (i < line.length) {
-            val c = line[i]
-
-            when {
-                c == '"' -> {
-                    if (inQuotes && i + 1 < line.length && line[i + 1] == '"') {
-                        // Escaped quote
-                        currentField.append('"')
-                        i++
-                    } else {
-                        // Toggle quote mode
-                        inQuotes = !inQuotes
-                    }
-                }
-                c == delimiter && !inQuotes -> {
-                    // Field separator
-                    fields.add(currentField.toString())
-                    currentField.clear()
-                }
-                c != '\r' -> {
-                    currentField.append(c)
-                }
-            }
-
-            i++
-        }
+    fun open(file: File): CsvReader = open(file.inputStream())
 
-        // Add the last field
-        fields.add(currentField.toString())
+    /**
+     * Open a CSV stream for reading record by record.
+     * Encoding and delimiter are detected from the beginning of the stream.
+     * The returned reader closes the stream.
+     */
+    fun open(input: InputStream): CsvReader {
+        val stream = BufferedInputStream(input, SAMPLE_SIZE)
 
-        return fields
+        try {
+            stream.mark(SAMPLE_SIZE)
+            val sample = stream.readNBytes(SAMPLE_SIZE)
+            stream.reset()
+
+            val charset = detectEncoding(sample)
+            val firstLine = String(sample, charset).removePrefix("\uFEFF")
+                .lineSequence().firstOrNull { it.isNotBlank() } ?: ""
+
+            return CsvReader(InputStreamReader(stream, charset), detectDelimiter(firstLine), charset)
+        } catch (e: IOException) {
+            stream.close()
+            throw e
+        }
     }
 
     /**
@@ -0,0 +1,128 @@
+package kirjanpito.util.csv
+
+import java.io.Closeable
+import java.io.Reader
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+
+/**
+ * Streaming CSV reader.
+ *
+ * Reads one record at a time through a fixed-size buffer, so the whole
+ * file is never held in memory. Quoted fields may contain delimiters,
+ * line breaks and escaped quotes (""). Blank lines are skipped and a
+ * leading byte order mark is removed.
+ */
+class CsvReader(
+    private val reader: Reader,
+    val delimiter: Char,
+    val encoding: Charset = StandardCharsets.UTF_8
+) : Closeable {
+
+    private val buffer = CharArray(BUFFER_SIZE)
+    private var length = 0
+    private var position = 0
+    private var started = false
+
+    /**
+     * Read the next non-blank record, or null at end of input.
+     */
+    fun readRecord(): List<String>? {
+        while (true) {
+            val record = readRawRecord() ?: return null
+
+            if (record.size > 1 || record[0].isNotBlank()) {
+                return record
+            }
+        }
+    }
+
+    /**
+     * Iterate over the remaining records.
+     */
+    fun records(): Sequence<List<String>> = generateSequence { readRecord() }
+
+    override fun close() {
+        reader.close()
+    }
+
+    private fun readRawRecord(): List<String>? {
+        var c = read()
+        if (c < 0) return null
+
+        val fields = mutableListOf<String>()
+        val field = StringBuilder()
+        var inQuotes = false
+
+        while (c >= 0) {
+            val ch = c.toChar()
+
+            if (inQuotes) {
+                when (ch) {
+                    '"' -> if (peek() == '"'.code) {
+                        // Escaped quote
+                        field.append('"')
+                        read()
+                    } else {
+                        inQuotes = false
+                    }
+                    '\r' -> {}
+                    else -> field.append(ch)
+                }
+            } else {
+                when (ch) {
+                    '"' -> inQuotes = true
+                    delimiter -> {
+                        fields.add(field.toString())
+                        field.setLength(0)
+                    }
+                    '\n' -> break
+                    '\r' -> {
+                        if (peek() == '\n'.code) read()
+                        break
+                    }
+                    else -> field.append(ch)
+                }
+            }
+
+            c = read()
+        }
+
+        fields.add(field.toString())
+        return fields
+    }
+
+    private fun read(): Int {
+        val c = peek()
+        if (c >= 0) position++
+        return c
+    }
+
+    private fun peek(): Int {
+        if (position >= length && !fill()) {
+            return -1
+        }
+
+        return buffer[position].code
+    }
+
+    private fun fill(): Boolean {
+        length = reader.read(buffer)
+        position = 0
+
+        if (!started && length > 0) {
+            started = true
+
+            if (buffer[0] == '\uFEFF') {
+                position = 1
+                return length > 1 || fill()
+            }
+        }
+
+        return length > 0
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 16 * 1024
+    }
+}
@@ -0,0 +1,367 @@
+package kirjanpito.db
+
+import kirjanpito.util.AppSettings
+import java.sql.Connection
+import java.sql.SQLException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Tietokantayhteysallas.
+ *
+ * Palvelintietokantojen tietolähteet varaavat jokaiselle istunnolle oman
+ * yhteyden, joten taustasäikeiden kyselyt eivät jonota yhden yhteyden
+ * takana. Istunnon päättyessä yhteyden keskeneräinen transaktio perutaan
+ * ja yhteys palautetaan altaaseen.
+ *
+ * Altaassa on vähintään [Config.minSize] ja enintään [Config.maxSize]
+ * yhteyttä. Yli [Config.idleTimeoutMillis] käyttämättä olleet yhteydet
+ * suljetaan vähimmäismäärään asti aina yhteyttä varattaessa tai
+ * palautettaessa. Pidempään kuin [Config.validationIntervalMillis]
+ * käyttämättä ollut yhteys tarkistetaan ennen kuin se annetaan käyttöön.
+ *
+ * Vain luku -istunnot saavat enintään maxSize - 1 yhteyttä, jotta
+ * pitkät raportit eivät estä tositteiden tallentamista.
+ */
+class ConnectionPool @JvmOverloads constructor(
+    private val factory: ConnectionFactory,
+    val config: Config = Config()
+) : AutoCloseable {
+
+    companion object {
+        private val logger = Logger.getLogger("kirjanpito.db")
+    }
+
+    /**
+     * Avaa uuden tietokantayhteyden altaan käyttöön.
+     */
+    fun interface ConnectionFactory {
+        @Throws(SQLException::class)
+        fun connect(): Connection
+    }
+
+    /**
+     * Altaan asetukset.
+     *
+     * @property minSize yhteyksien vähimmäismäärä
+     * @property maxSize yhteyksien enimmäismäärä
+     * @property idleTimeoutMillis aika, jonka jälkeen käyttämätön yhteys suljetaan
+     * @property validationIntervalMillis aika, jonka jälkeen yhteys tarkistetaan
+     * @property validationTimeoutSeconds yhteyden tarkistuksen aikaraja
+     * @property borrowTimeoutMillis kuinka kauan vapaata yhteyttä odotetaan
+     */
+    data class Config @JvmOverloads constructor(
+        val minSize: Int = 1,
+        val maxSize: Int = 8,
+        val idleTimeoutMillis: Long = 300_000,
+        val validationIntervalMillis: Long = 30_000,
+        val validationTimeoutSeconds: Int = 2,
+        val borrowTimeoutMillis: Long = 30_000
+    ) {
+        init {
+            require(maxSize >= 1) { "maxSize must be at least 1" }
+            require(minSize in 0..maxSize) { "minSize must be between 0 and maxSize" }
+        }
+
+        companion object {
+            /**
+             * Lukee altaan asetukset ohjelman asetuksista. Ajat
+             * annetaan sekunteina.
+             */
+            @JvmStatic
+            fun fromSettings(settings: AppSettings): Config {
+                val defaults = Config()
+                val maxSize = settings.getInt("database.pool.max-size", defaults.maxSize).coerceAtLeast(1)
+
+                return Config(
+                    minSize = settings.getInt("database.pool.min-size", defaults.minSize).coerceIn(0, maxSize),
+                    maxSize = maxSize,
+                    idleTimeoutMillis = settings.getInt("database.pool.idle-timeout",
+                        (defaults.idleTimeoutMillis / 1000).toInt()) * 1000L,
+                    validationIntervalMillis = settings.getInt("database.pool.validation-interval",
+                        (defaults.validationIntervalMillis / 1000).toInt()) * 1000L,
+                    validationTimeoutSeconds = settings.getInt("database.pool.validation-timeout",
+                        defaults.validationTimeoutSeconds),
+                    borrowTimeoutMillis = settings.getInt("database.pool.borrow-timeout",
+                        (defaults.borrowTimeoutMillis / 1000).toInt()) * 1000L
+                )
+            }
+        }
+    }
+
+    /**
+     * Altaan yhteys. Jokaisella yhteydellä on oma kyselyvälimuisti,
+     * koska valmistellut kyselyt kuuluvat yhteydelle.
+     */
+    class PooledConnection internal constructor(
+        val connection: Connection,
+        val statementCache: StatementCache
+    ) {
+        internal var lastUsed = System.currentTimeMillis()
+        internal var readOnly = false
+        internal var readOnlyFlag = false
+    }
+
+    private val lock = ReentrantLock()
+    private val available = lock.newCondition()
+
+    /* Viimeksi palautettu yhteys on jonon lopussa, joten pisimpään
+     * käyttämättä olleet yhteydet ovat alussa. */
+    private val idle = ArrayDeque<PooledConnection>()
+    private var total = 0
+    private var readOnlyCount = 0
+    private var created = 0L
+    private var evictions = 0L
+    private var closed = false
+
+    private val readOnlyLimit = if (config.maxSize > 1) config.maxSize - 1 else 1
+
+    init {
+        try {
+            repeat(config.minSize) {
+                idle.addLast(open())
+                total++
+            }
+        } catch (e: SQLException) {
+            close()
+            throw e
+        }
+    }
+
+    /**
+     * Yhteyksien määrä, käytössä olevat mukaan lukien.
+     */
+    val size: Int
+        get() = withLock { total }
+
+    /**
+     * Käyttämättömien yhteyksien määrä.
+     */
+    val idleCount: Int
+        get() = withLock { idle.size }
+
+    /**
+     * Kuinka monta yhteyttä on avattu altaan luomisen jälkeen.
+     */
+    val createdCount: Long
+        get() = withLock { created }
+
+    /**
+     * Kuinka monta yhteyttä on suljettu käyttämättömänä tai
+     * epäkelpona.
+     */
+    val evictionCount: Long
+        get() = withLock { evictions }
+
+    /**
+     * Varaa yhteyden altaasta. Jos kaikki yhteydet ovat käytössä,
+     * odotetaan enintään [Config.borrowTimeoutMillis] millisekuntia.
+     *
+     * @param readOnly onko yhteys vain lukemista varten
+     * @throws SQLException jos yhteyttä ei saada
+     */
+    @JvmOverloads
+    @Throws(SQLException::class)
+    fun borrow(readOnly: Boolean = false): PooledConnection {
+        var remaining = TimeUnit.MILLISECONDS.toNanos(config.borrowTimeoutMillis)
+
+        while (true) {
+            var candidate: PooledConnection? = null
+            lock.lock()
+            try {
+                while (true) {
+                    if (closed) {
+                        throw SQLException("Yhteysallas on suljettu")
+                    }
+
+                    evictIdle()
+
+                    if (!readOnly || readOnlyCount < readOnlyLimit) {
+                        candidate = idle.removeLastOrNull()
+                        if (candidate != null || total < config.maxSize) break
+                    }
+
+                    if (remaining <= 0L) {
+                        throw SQLException("Tietokantayhteyttä ei saatu ${config.borrowTimeoutMillis} ms kuluessa")
+                    }
+
+                    remaining = available.awaitNanos(remaining)
+                }
+
+                if (candidate == null) total++
+                if (readOnly) readOnlyCount++
+            } finally {
+                lock.unlock()
+            }
+
+            val pooled = if (candidate != null) {
+                candidate.takeIf { isValid(it) }
+            } else {
+                try {
+                    open()
+                } catch (e: SQLException) {
+                    discard(null, readOnly)
+                    throw e
+                }
+            }
+
+            if (pooled == null) {
+                discard(candidate, readOnly)
+                continue
+            }
+
+            /* Vain luku -tila on ajurille annettava vihje. Esimerkiksi
+             * SQLite-ajuri ei salli tilan vaihtamista avatulle yhteydelle. */
+            if (readOnly) {
+                pooled.readOnlyFlag = try {
+                    pooled.connection.isReadOnly = true
+                    true
+                } catch (e: SQLException) {
+                    logger.log(Level.FINE, "Yhteyttä ei voitu asettaa vain luku -tilaan", e)
+                    false
+                }
+            }
+
+            pooled.readOnly = readOnly
+            return pooled
+        }
+    }
+
+    /**
+     * Palauttaa yhteyden altaaseen. Keskeneräinen transaktio perutaan,
+     * jottei seuraava käyttäjä hyväksy sitä vahingossa.
+     */
+    fun release(pooled: PooledConnection) {
+        var reusable = try {
+            pooled.connection.rollback()
+            if (pooled.readOnlyFlag) {
+                pooled.connection.isReadOnly = false
+                pooled.readOnlyFlag = false
+            }
+            !pooled.connection.isClosed
+        } catch (e: SQLException) {
+            logger.log(Level.FINE, "Yhteyden palauttaminen altaaseen epäonnistui", e)
+            false
+        }
+
+        lock.lock()
+        try {
+            if (pooled.readOnly) readOnlyCount--
+            pooled.readOnly = false
+            reusable = reusable && !closed
+
+            if (reusable) {
+                pooled.lastUsed = System.currentTimeMillis()
+                idle.addLast(pooled)
+                evictIdle()
+            } else {
+                total--
+            }
+
+            available.signalAll()
+        } finally {
+            lock.unlock()
+        }
+
+        if (!reusable) {
+            closeQuietly(pooled)
+        }
+    }
+
+    /**
+     * Sulkee käyttämättömät yhteydet. Käytössä olevat yhteydet
+     * suljetaan, kun ne palautetaan.
+     */
+    override fun close() {
+        val connections = withLock {
+            closed = true
+            total -= idle.size
+            available.signalAll()
+            idle.toList().also { idle.clear() }
+        }
+
+        connections.forEach { closeQuietly(it) }
+        logger.log(Level.FINE, "Yhteysallas: $created yhteyttä avattu, $evictions suljettu")
+    }
+
+    @Throws(SQLException::class)
+    private fun open(): PooledConnection {
+        val conn = factory.connect()
+
+        try {
+            conn.autoCommit = false
+        } catch (e: SQLException) {
+            conn.close()
+            throw e
+        }
+
+        withLock { created++ }
+        return PooledConnection(conn, StatementCache(conn))
+    }
+
+    private fun isValid(pooled: PooledConnection): Boolean {
+        if (System.currentTimeMillis() - pooled.lastUsed < config.validationIntervalMillis) {
+            return true
+        }
+
+        return try {
+            pooled.connection.isValid(config.validationTimeoutSeconds)
+        } catch (e: SQLException) {
+            false
+        }
+    }
+
+    /**
+     * Vapauttaa varatun paikan, kun yhteyden avaaminen tai
+     * tarkistaminen epäonnistui.
+     */
+    private fun discard(pooled: PooledConnection?, readOnly: Boolean) {
+        withLock {
+            total--
+            if (readOnly) readOnlyCount--
+            if (pooled != null) evictions++
+            available.signalAll()
+        }
+
+        pooled?.let { closeQuietly(it) }
+    }
+
+    /**
+     * Sulkee liian kauan käyttämättä olleet yhteydet. Kutsutaan
+     * lukituksen ollessa voimassa.
+     */
+    private fun evictIdle() {
+        val now = System.currentTimeMillis()
+
+        while (total > config.minSize) {
+            val eldest = idle.firstOrNull() ?: break
+            if (now - eldest.lastUsed < config.idleTimeoutMillis) break
+
+            idle.removeFirst()
+            total--
+            evictions++
+            closeQuietly(eldest)
+        }
+    }
+
+    private fun closeQuietly(pooled: PooledConnection) {
+        pooled.statementCache.close()
+
+        try {
+            pooled.connection.close()
+        } catch (e: SQLException) {
+            logger.log(Level.FINE, "Tietokantayhteyden sulkeminen epäonnistui", e)
+        }
+    }
+
+    private inline fun <T> withLock(block: () -> T): T {
+        lock.lock()
+        try {
+            return block()
+        } finally {
+            lock.unlock()
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package kirjanpito.db
+
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Valmisteltujen kyselyjen välimuisti.
+ *
+ * Välimuisti luodaan tietokantayhteyden avaamisen yhteydessä ja annetaan
+ * jokaiselle yhteyttä käyttävälle istunnolle. [ConnectionPool] luo oman
+ * välimuistin jokaiselle yhteydelleen. [prepareStatement] palauttaa kyselyn, jonka
+ * close() palauttaa kyselyn välimuistiin sulkemisen sijaan. DAO-luokkien
+ * ei siis tarvitse tietää välimuistista.
+ *
+ * Välimuistissa on enintään [capacity] käyttämätöntä kyselyä SQL-tekstin
+ * mukaan. Pisimpään käyttämättä ollut kysely suljetaan, kun raja ylittyy.
+ * Käytössä olevaa kyselyä ei anneta toiselle käyttäjälle, vaan samalle
+ * SQL-tekstille valmistellaan tarvittaessa uusi kysely.
+ *
+ * Kyselyä, jonka asetuksia (esim. setFetchSize tai setQueryTimeout) on
+ * muutettu, ei palauteta välimuistiin vaan se suljetaan, jotta asetukset
+ * eivät siirry saman SQL-tekstin seuraavalle käyttäjälle.
+ */
+class StatementCache @JvmOverloads constructor(
+    private val conn: Connection,
+    private val capacity: Int = DEFAULT_CAPACITY
+) : AutoCloseable {
+
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+
+        private val logger = Logger.getLogger("kirjanpito.db")
+
+        /**
+         * Statement-rajapinnan metodit, jotka muuttavat kyselyn asetuksia.
+         */
+        private val SETTING_METHODS = setOf(
+            "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows",
+            "setMaxFieldSize", "setQueryTimeout", "setEscapeProcessing",
+            "setCursorName", "setPoolable", "closeOnCompletion"
+        )
+    }
+
+    private val idle = object : LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, PreparedStatement>): Boolean {
+            if (size <= capacity) {
+                return false
+            }
+
+            evictions++
+            closeQuietly(eldest.value)
+            return true
+        }
+    }
+
+    private var hits = 0L
+    private var misses = 0L
+    private var evictions = 0L
+    private var closed = false
+
+    /**
+     * Kuinka monta kertaa kysely löytyi välimuistista.
+     */
+    val hitCount: Long
+        @Synchronized get() = hits
+
+    /**
+     * Kuinka monta kertaa kysely jouduttiin valmistelemaan.
+     */
+    val missCount: Long
+        @Synchronized get() = misses
+
+    /**
+     * Kuinka monta kyselyä on suljettu välimuistin täyttyessä.
+     */
+    val evictionCount: Long
+        @Synchronized get() = evictions
+
+    /**
+     * Käyttämättömien kyselyjen määrä.
+     */
+    val size: Int
+        @Synchronized get() = idle.size
+
+    /**
+     * Palauttaa valmistellun kyselyn. Kysely otetaan välimuistista, jos
+     * samalle SQL-tekstille on käyttämätön kysely.
+     */
+    @Synchronized
+    @Throws(SQLException::class)
+    fun prepareStatement(sql: String): PreparedStatement {
+        if (closed) {
+            throw SQLException("Statement cache is closed")
+        }
+
+        val cached = idle.remove(sql)?.takeUnless { it.isClosed }
+        val stmt = if (cached != null) {
+            hits++
+            cached
+        } else {
+            misses++
+            conn.prepareStatement(sql)
+        }
+
+        return wrap(sql, stmt)
+    }
+
+    /**
+     * Sulkee kaikki välimuistissa olevat kyselyt. Käytössä olevat
+     * kyselyt suljetaan, kun ne palautetaan.
+     */
+    @Synchronized
+    override fun close() {
+        if (closed) return
+
+        closed = true
+        idle.values.forEach { closeQuietly(it) }
+        idle.clear()
+
+        logger.log(Level.FINE, "Kyselyvälimuisti: $hits osumaa, $misses ohitusta, $evictions poistettu")
+    }
+
+    @Synchronized
+    private fun release(sql: String, stmt: PreparedStatement, reusable: Boolean) {
+        if (closed || !reusable || idle.containsKey(sql)) {
+            closeQuietly(stmt)
+            return
+        }
+
+        try {
+            stmt.clearParameters()
+            stmt.clearBatch()
+        } catch (e: SQLException) {
+            closeQuietly(stmt)
+            return
+        }
+
+        idle[sql] = stmt
+    }
+
+    /**
+     * Palauttaa kyselyn, jonka close() sulkee kyselyn avaaman tulosjoukon
+     * ja palauttaa kyselyn välimuistiin, ellei sen asetuksia ole muutettu.
+     */
+    private fun wrap(sql: String, stmt: PreparedStatement): PreparedStatement {
+        var resultSet: ResultSet? = null
+        var released = false
+        var settingsChanged = false
+
+        val handler = InvocationHandler { _, method, args ->
+            when (method.name) {
+                "close" -> {
+                    if (!released) {
+                        released = true
+                        resultSet?.let { closeQuietly(it) }
+                        release(sql, stmt, !settingsChanged)
+                    }
+                    null
+                }
+                "isClosed" -> released || stmt.isClosed
+                else -> {
+                    if (released && method.declaringClass != Any::class.java) {
+                        throw SQLException("Statement is closed")
+                    }
+
+                    if (method.name in SETTING_METHODS) {
+                        settingsChanged = true
+                    }
+
+                    val result = try {
+                        if (args == null) method.invoke(stmt) else method.invoke(stmt, *args)
+                    } catch (e: InvocationTargetException) {
+                        throw e.targetException
+                    }
+
+                    /* Kyselyn suorittaminen uudelleen sulkee edellisen
+                     * tulosjoukon, joten vain viimeisin on pidettävä tallessa. */
+                    if (result is ResultSet) {
+                        resultSet = result
+                    }
+
+                    result
+                }
+            }
+        }
+
+        return Proxy.newProxyInstance(
+            PreparedStatement::class.java.classLoader,
+            arrayOf(PreparedStatement::class.java),
+            handler
+        ) as PreparedStatement
+    }
+
+    private fun closeQuietly(resource: AutoCloseable) {
+        try {
+            resource.close()
+        } catch (e: Exception) {
+            logger.log(Level.FINE, "Kyselyn sulkeminen epäonnistui", e)
+        }
+    }
+}
@@ -2,6 +2,8 @@ package kirjanpito.db.mysql
 
 import kirjanpito.db.*
 import kirjanpito.models.Attachment
+import java.io.IOException
+import java.io.OutputStream
 import java.sql.PreparedStatement
 import java.sql.ResultSet
 import java.sql.SQLException
@@ -15,6 +17,13 @@ import java.time.ZoneId
  * @since 2.2.0
  */
 class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
+    companion object {
+        private const val INSERT_QUERY =
+            "INSERT INTO attachments (document_id, filename, content_type, data, " +
+                "file_size, page_count, created_date, description) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)"
+    }
+
 
     override fun findById(id: Int): Attachment? {
         return try {
@@ -57,9 +66,55 @@ class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
         }
     }
 
+    override fun findMetadataByDocumentId(documentId: Int): List<Attachment> {
+        return try {
+            // data-sarakkeen tilalla NULL, jotta sarakkeiden järjestys säilyy
+            session.prepareStatement(
+                "SELECT id, document_id, filename, content_type, NULL, file_size, " +
+                "page_count, created_date, description FROM attachments " +
+                "WHERE document_id = ? ORDER BY created_date ASC"
+            ).use { stmt ->
+                stmt.setInt(1, documentId)
+                stmt.executeQuery().use { rs ->
+                    buildList {
+                        while (rs.next()) {
+                            add(createAttachment(rs))
+                        }
+                    }
+                }
+            }
+        } catch (e: SQLException) {
+            throw DataAccessException("Failed to find attachments by document id: ${e.message}", e)
+        }
+    }
+
+    override fun writeContent(id: Int, out: OutputStream): Long {
+        return try {
+            session.prepareStatement(
+                "SELECT data FROM attachments WHERE id = ?"
+            ).use { stmt ->
+                stmt.setInt(1, id)
+                stmt.executeQuery().use { rs ->
+                    if (rs.next()) {
+                        rs.getBinaryStream(1)?.use { it.transferTo(out) } ?: 0L
+                    } else {
+                        -1L
+                    }
+                }
+            }
+        } catch (e: SQLException) {
+            throw DataAccessException("Failed to read attachment content: ${e.message}", e)
+        } catch (e: IOException) {
+            throw DataAccessException("Failed to write attachment content: ${e.message}", e)
+        }
+    }
+
     override fun save(attachment: Attachment): Int {
         return try {
             if (attachment.isNew) {
+                if (!attachment.isContentLoaded) {
+                    throw DataAccessException("Attachment without content cannot be inserted")
+                }
                 insertAttachment(attachment)
             } else {
                 updateAttachment(attachment)
@@ -70,6 +125,35 @@ class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
         }
     }
 
+    /**
+     * Tallentaa useamman liitteen. Uudet liitteet lisätään samalla
+     * valmistellulla kyselyllä yhtenä eräajona.
+     */
+    override fun saveAll(attachments: List<Attachment>) {
+        val (inserted, updated) = attachments.partition { it.isNew }
+        updated.forEach { save(it) }
+
+        if (inserted.isEmpty()) {
+            return
+        }
+
+        if (inserted.any { !it.isContentLoaded }) {
+            throw DataAccessException("Attachment without content cannot be inserted")
+        }
+
+        try {
+            session.prepareStatement(INSERT_QUERY).use { stmt ->
+                for (attachment in inserted) {
+                    setAttachmentParameters(stmt, attachment)
+                    stmt.addBatch()
+                }
+                stmt.executeBatch()
+            }
+        } catch (e: SQLException) {
+            throw DataAccessException("Failed to save attachments: ${e.message}", e)
+        }
+    }
+
     override fun delete(id: Int): Boolean {
         return try {
             session.prepareStatement("DELETE FROM attachments WHERE id = ?").use { stmt ->
@@ -125,11 +209,7 @@ class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
     // ========================================================================
 
     private fun insertAttachment(attachment: Attachment): Int {
-        session.prepareStatement(
-            "INSERT INTO attachments (document_id, filename, content_type, data, " +
-            "file_size, page_count, created_date, description) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)"
-        ).use { stmt ->
+        session.prepareStatement(INSERT_QUERY).use { stmt ->
             setAttachmentParameters(stmt, attachment)
             stmt.executeUpdate()
         }
@@ -143,6 +223,11 @@ class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
     }
 
     private fun updateAttachment(attachment: Attachment) {
+        if (!attachment.isContentLoaded) {
+            updateAttachmentMetadata(attachment)
+            return
+        }
+
         session.prepareStatement(
             "UPDATE attachments SET document_id = ?, filename = ?, content_type = ?, " +
             "data = ?, file_size = ?, page_count = ?, created_date = ?, description = ? " +
@@ -154,6 +239,38 @@ class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
         }
     }
 
+    /**
+     * Päivittää ilman PDF-dataa haetun liitteen tiedot. Tallennettua
+     * sisältöä ja tiedostokokoa ei muuteta.
+     */
+    private fun updateAttachmentMetadata(attachment: Attachment) {
+        session.prepareStatement(
+            "UPDATE attachments SET document_id = ?, filename = ?, content_type = ?, " +
+            "page_count = ?, created_date = ?, description = ? WHERE id = ?"
+        ).use { stmt ->
+            stmt.setInt(1, attachment.documentId)
+            stmt.setString(2, attachment.filename)
+            stmt.setString(3, attachment.contentType)
+
+            if (attachment.pageCount != null) {
+                stmt.setInt(4, attachment.pageCount)
+            } else {
+                stmt.setNull(4, java.sql.Types.INTEGER)
+            }
+
+            stmt.setTimestamp(5, Timestamp.valueOf(attachment.createdDate))
+
+            if (attachment.description != null) {
+                stmt.setString(6, attachment.description)
+            } else {
+                stmt.setNull(6, java.sql.Types.VARCHAR)
+            }
+
+            stmt.setInt(7, attachment.id)
+            stmt.executeUpdate()
+        }
+    }
+
     private fun setAttachmentParameters(stmt: PreparedStatement, attachment: Attachment) {
         stmt.setInt(1, attachment.documentId)
         stmt.setString(2, attachment.filename)
@@ -190,7 +307,7 @@ class MySQLAttachmentDAO(private val session: MySQLSession) : AttachmentDAO {
             documentId = rs.getInt(2),
             filename = rs.getString(3),
             contentType = rs.getString(4) ?: "application/pdf",
-            data = rs.getBytes(5),
+            data = rs.getBytes(5) ?: Attachment.NO_DATA,
             fileSize = rs.getInt(6),
             pageCount = rs.getIntOrNull(7),
             createdDate = createdDate,
@@ -0,0 +1,15 @@
+package kirjanpito.db.mysql
+
+import kirjanpito.db.sql.SQLBalanceDAOKt
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * MySQL-toteutus BalanceDAO-rajapinnasta.
+ */
+class MySQLBalanceDAO(private val session: MySQLSession) : SQLBalanceDAOKt() {
+
+    @Throws(SQLException::class)
+    override fun prepareStatement(sql: String): PreparedStatement =
+        session.prepareStatement(sql)
+}
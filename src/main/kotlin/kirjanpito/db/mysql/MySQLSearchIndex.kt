@@ -0,0 +1,47 @@
+package kirjanpito.db.mysql
+
+import kirjanpito.db.sql.SQLSearchIndexKt
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * MySQL-toteutus tositteiden hakuhakemistosta. Hakuteksti on
+ * FULLTEXT-indeksoitu, ja haku tehdään BOOLEAN MODE -kyselyllä.
+ */
+class MySQLSearchIndex(private val session: MySQLSession) : SQLSearchIndexKt() {
+
+    companion object {
+        /** innodb_ft_min_token_size-asetuksen oletusarvo. */
+        private const val MIN_WORD_LENGTH = 3
+
+        /** InnoDB:n FULLTEXT-indeksin oletusarvoiset ohitettavat sanat. */
+        private val STOPWORDS = setOf(
+            "a", "about", "an", "are", "as", "at", "be", "by", "com", "de",
+            "en", "for", "from", "how", "i", "in", "is", "it", "la", "of",
+            "on", "or", "that", "the", "this", "to", "was", "what", "when",
+            "where", "who", "will", "with", "und", "www"
+        )
+    }
+
+    @Throws(SQLException::class)
+    override fun prepareStatement(sql: String): PreparedStatement =
+        session.prepareStatement(sql)
+
+    override fun getInsertSql(): String =
+        "INSERT INTO document_search (document_id, period_id, search_text) VALUES (?, ?, ?)"
+
+    override fun getDeleteSql(): String =
+        "DELETE FROM document_search WHERE document_id = ?"
+
+    override fun createMatchQuery(words: List<String>): String =
+        words.joinToString(" ") { "+$it*" }
+
+    override fun getDocumentIdColumn(): String = "document_id"
+
+    /**
+     * FULLTEXT-indeksi ohittaa lyhyet sanat ja ohitettavat sanat, joten
+     * niitä ei etsitä hakemistosta.
+     */
+    override fun isIndexedWord(word: String): Boolean =
+        word.length >= MIN_WORD_LENGTH && word.lowercase() !in STOPWORDS
+}
@@ -0,0 +1,15 @@
+package kirjanpito.db.postgresql
+
+import kirjanpito.db.sql.SQLBalanceDAOKt
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * PostgreSQL-toteutus BalanceDAO-rajapinnasta.
+ */
+class PSQLBalanceDAO(private val session: PSQLSession) : SQLBalanceDAOKt() {
+
+    @Throws(SQLException::class)
+    override fun prepareStatement(sql: String): PreparedStatement =
+        session.prepareStatement(sql)
+}
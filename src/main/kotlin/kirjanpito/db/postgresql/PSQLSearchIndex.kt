@@ -0,0 +1,30 @@
+package kirjanpito.db.postgresql
+
+import kirjanpito.db.sql.SQLSearchIndexKt
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * PostgreSQL-toteutus tositteiden hakuhakemistosta. Hakutekstistä
+ * on GIN-indeksi to_tsvector('simple', ...) -lausekkeelle.
+ */
+class PSQLSearchIndex(private val session: PSQLSession) : SQLSearchIndexKt() {
+
+    @Throws(SQLException::class)
+    override fun prepareStatement(sql: String): PreparedStatement =
+        session.prepareStatement(sql)
+
+    override fun getInsertSql(): String =
+        "INSERT INTO document_search (document_id, period_id, search_text) VALUES (?, ?, ?)"
+
+    override fun getDeleteSql(): String =
+        "DELETE FROM document_search WHERE document_id = ?"
+
+    override fun createMatchQuery(words: List<String>): String =
+        words.joinToString(" & ") { "$it:*" }
+
+    override fun getDocumentIdColumn(): String = "document_id"
+
+    /** LIKE erottaa PostgreSQL:ssä isot ja pienet kirjaimet. */
+    override fun getLikeOperator(): String = "ILIKE"
+}
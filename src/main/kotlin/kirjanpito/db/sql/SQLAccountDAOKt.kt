@@ -17,6 +17,7 @@ import java.sql.SQLException
  * - getUpdateQuery()
  * - getDeleteQuery()
  * - getGeneratedKey()
+ * - getSearchIndex()
  * 
  * @author Tommi Helineva (original Java)
  * @author Kotlin migration by Claude
@@ -51,7 +52,14 @@ abstract class SQLAccountDAOKt : AccountDAO {
         if (account.id == 0) {
             executeInsertQuery(account)
         } else {
+            /* Tilin numero ja nimi ovat mukana tositteiden hakuteksteissä. */
+            val searchIndex = getSearchIndex()
+            val renamed = searchIndex.isRenamed(account)
             executeUpdateQuery(account)
+
+            if (renamed) {
+                searchIndex.updateByAccountId(account.id)
+            }
         }
     }
     
@@ -102,6 +110,12 @@ abstract class SQLAccountDAOKt : AccountDAO {
     @Throws(SQLException::class)
     protected abstract fun getGeneratedKey(): Int
     
+    /**
+     * Palauttaa hakuhakemiston, jota päivitetään tilin numeron tai
+     * nimen muuttuessa.
+     */
+    protected abstract fun getSearchIndex(): SQLSearchIndexKt
+    
     // ========================================================================
     // Protected Methods - Can be overridden for database-specific behavior
     // ========================================================================
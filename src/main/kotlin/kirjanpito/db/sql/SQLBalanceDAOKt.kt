@@ -0,0 +1,513 @@
+package kirjanpito.db.sql
+
+import kirjanpito.db.*
+import java.math.BigDecimal
+import java.math.RoundingMode
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Timestamp
+import java.util.Date
+
+/**
+ * Abstract base class for database-specific Balance DAO implementations.
+ *
+ * The account_balance table holds debit and credit totals per
+ * (period, account, date) in cents, so the same SQL works for SQLite,
+ * MySQL and PostgreSQL. Subclasses only provide the session.
+ */
+abstract class SQLBalanceDAOKt : BalanceDAO {
+
+    companion object {
+        private const val SELECT_BY_PERIOD_ID = """
+            SELECT account_id, SUM(debit_cents), SUM(credit_cents), SUM(entry_count)
+            FROM account_balance
+            WHERE period_id = ?
+            GROUP BY account_id
+            HAVING SUM(entry_count) > 0
+        """
+
+        private const val SELECT_BY_PERIOD_ID_AND_DATE = """
+            SELECT account_id, SUM(debit_cents), SUM(credit_cents), SUM(entry_count)
+            FROM account_balance
+            WHERE period_id = ? AND date >= ? AND date <= ?
+            GROUP BY account_id
+            HAVING SUM(entry_count) > 0
+        """
+
+        private const val SELECT_BY_DATE = """
+            SELECT account_id, SUM(debit_cents), SUM(credit_cents), SUM(entry_count)
+            FROM account_balance
+            WHERE date >= ? AND date <= ?
+            GROUP BY account_id
+            HAVING SUM(entry_count) > 0
+        """
+
+        private const val SELECT_BY_ACCOUNT_ID_AND_DATE = """
+            SELECT SUM(debit_cents), SUM(credit_cents), SUM(entry_count)
+            FROM account_balance
+            WHERE account_id = ? AND date >= ? AND date <= ?
+        """
+
+        /** Aikavälikohtaiset sarakkeet getByDateRanges-kyselyssä. */
+        private val WINDOW_COLUMNS = arrayOf("debit_cents", "credit_cents", "entry_count")
+
+        private const val SELECT_ENTRY = """
+            SELECT document_id, account_id, debit, amount
+            FROM entry
+            WHERE id = ?
+        """
+
+        private const val SELECT_ENTRIES_BY_DOCUMENT_ID = """
+            SELECT document_id, account_id, debit, amount
+            FROM entry
+            WHERE document_id = ?
+        """
+
+        private const val SELECT_DOCUMENT = """
+            SELECT period_id, date
+            FROM document
+            WHERE id = ?
+        """
+
+        private const val UPDATE = """
+            UPDATE account_balance
+            SET debit_cents = debit_cents + ?, credit_cents = credit_cents + ?, entry_count = entry_count + ?
+            WHERE account_id = ?
+            AND period_id = (SELECT period_id FROM document WHERE id = ?)
+            AND date = (SELECT date FROM document WHERE id = ?)
+        """
+
+        private const val INSERT = """
+            INSERT INTO account_balance (period_id, account_id, date, debit_cents, credit_cents, entry_count)
+            SELECT period_id, ?, date, ?, ?, ?
+            FROM document
+            WHERE id = ?
+        """
+
+        /** Lisää puuttuvan nollarivin, jota UPDATE voi sen jälkeen kasvattaa. */
+        private const val INSERT_MISSING = """
+            INSERT INTO account_balance (period_id, account_id, date, debit_cents, credit_cents, entry_count)
+            SELECT d.period_id, ?, d.date, 0, 0, 0
+            FROM document d
+            WHERE d.id = ?
+            AND NOT EXISTS (SELECT 1 FROM account_balance b
+                WHERE b.account_id = ? AND b.period_id = d.period_id AND b.date = d.date)
+        """
+
+        private const val DELETE_EMPTY = """
+            DELETE FROM account_balance
+            WHERE account_id = ? AND entry_count <= 0
+        """
+
+        private const val DELETE_BY_PERIOD_ID = "DELETE FROM account_balance WHERE period_id = ?"
+
+        private const val DELETE_ALL = "DELETE FROM account_balance"
+
+        private const val REBUILD = """
+            INSERT INTO account_balance (period_id, account_id, date, debit_cents, credit_cents, entry_count)
+            SELECT d.period_id, e.account_id, d.date,
+            SUM(CASE WHEN e.debit THEN ROUND(e.amount * 100) ELSE 0 END),
+            SUM(CASE WHEN e.debit THEN 0 ELSE ROUND(e.amount * 100) END),
+            COUNT(*)
+            FROM entry e
+            INNER JOIN document d ON d.id = e.document_id
+            GROUP BY d.period_id, e.account_id, d.date
+        """
+    }
+
+    /**
+     * Hakee tilien summat tietyn tilikauden ajalta.
+     */
+    override fun getByPeriodId(
+        periodId: Int,
+        callback: DTOCallback<AccountTotal>
+    ): Unit = withDataAccess {
+        prepareStatement(SELECT_BY_PERIOD_ID).use { stmt ->
+            stmt.setInt(1, periodId)
+            processTotals(stmt, callback)
+        }
+    }
+
+    /**
+     * Hakee tilien summat tietyltä aikaväliltä.
+     */
+    override fun getByPeriodIdAndDate(
+        periodId: Int,
+        startDate: Date,
+        endDate: Date,
+        callback: DTOCallback<AccountTotal>
+    ): Unit = withDataAccess {
+        val stmt = if (periodId > 0) {
+            prepareStatement(SELECT_BY_PERIOD_ID_AND_DATE).apply {
+                setInt(1, periodId)
+                setTimestamp(2, Timestamp(startDate.time))
+                setTimestamp(3, Timestamp(endDate.time))
+            }
+        } else {
+            prepareStatement(SELECT_BY_DATE).apply {
+                setTimestamp(1, Timestamp(startDate.time))
+                setTimestamp(2, Timestamp(endDate.time))
+            }
+        }
+
+        stmt.use { s -> processTotals(s, callback) }
+    }
+
+    /**
+     * Hakee yksittäisen tilin summat tietyltä aikaväliltä.
+     */
+    override fun getByAccountIdAndDate(
+        accountId: Int,
+        startDate: Date,
+        endDate: Date
+    ): AccountTotal? = withDataAccess {
+        prepareStatement(SELECT_BY_ACCOUNT_ID_AND_DATE).use { stmt ->
+            stmt.setInt(1, accountId)
+            stmt.setTimestamp(2, Timestamp(startDate.time))
+            stmt.setTimestamp(3, Timestamp(endDate.time))
+            stmt.executeQuery().use { rs ->
+                if (rs.next() && rs.getInt(3) > 0) {
+                    AccountTotal(accountId, fromCents(rs.getLong(1)),
+                        fromCents(rs.getLong(2)), rs.getInt(3))
+                } else {
+                    null
+                }
+            }
+        }
+    }
+
+    /**
+     * Hakee tilien summat usealta aikaväliltä. Kysely käy läpi
+     * aikavälien kattaman osan taulusta kerran ja laskee jokaisen
+     * aikavälin summat omiin sarakkeisiinsa CASE-lausekkeilla.
+     */
+    override fun getByDateRanges(
+        periodIds: IntArray,
+        startDates: Array<Date>,
+        endDates: Array<Date>,
+        callback: DTOCallback<Array<AccountTotal?>>
+    ): Unit = withDataAccess {
+        val count = startDates.size
+
+        if (count > 0) {
+            val sql = StringBuilder("SELECT account_id")
+
+            for (i in 0 until count) {
+                val condition = if (periodIds[i] > 0) {
+                    "period_id = ? AND date >= ? AND date <= ?"
+                } else {
+                    "date >= ? AND date <= ?"
+                }
+
+                for (column in WINDOW_COLUMNS) {
+                    sql.append(", SUM(CASE WHEN ").append(condition)
+                        .append(" THEN ").append(column).append(" ELSE 0 END)")
+                }
+            }
+
+            sql.append(" FROM account_balance WHERE date >= ? AND date <= ? GROUP BY account_id")
+
+            prepareStatement(sql.toString()).use { stmt ->
+                var index = 1
+
+                for (i in 0 until count) {
+                    repeat(WINDOW_COLUMNS.size) {
+                        if (periodIds[i] > 0) {
+                            stmt.setInt(index++, periodIds[i])
+                        }
+
+                        stmt.setTimestamp(index++, Timestamp(startDates[i].time))
+                        stmt.setTimestamp(index++, Timestamp(endDates[i].time))
+                    }
+                }
+
+                stmt.setTimestamp(index++, Timestamp(startDates.minOf { it.time }))
+                stmt.setTimestamp(index, Timestamp(endDates.maxOf { it.time }))
+
+                stmt.executeQuery().use { rs ->
+                    while (rs.next()) {
+                        val accountId = rs.getInt(1)
+                        val totals = arrayOfNulls<AccountTotal>(count)
+
+                        for (i in 0 until count) {
+                            val column = 2 + i * WINDOW_COLUMNS.size
+                            val entryCount = rs.getInt(column + 2)
+
+                            if (entryCount > 0) {
+                                totals[i] = AccountTotal(accountId, fromCents(rs.getLong(column)),
+                                    fromCents(rs.getLong(column + 1)), entryCount)
+                            }
+                        }
+
+                        // Aikavälien väliin jäävät rivit eivät kuulu yhteenkään aikaväliin.
+                        if (totals.any { it != null }) {
+                            callback.process(totals)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lisää viennin summiin.
+     */
+    override fun addEntry(entry: Entry): Unit = withDataAccess {
+        update(entry.documentId, entry.accountId, entry.isDebit(),
+            toCents(entry.amount ?: BigDecimal.ZERO), 1)
+    }
+
+    /**
+     * Vähentää tietokantaan tallennetun viennin summista.
+     */
+    override fun removeEntry(entryId: Int): Unit = withDataAccess {
+        prepareStatement(SELECT_ENTRY).use { stmt ->
+            stmt.setInt(1, entryId)
+            stmt.executeQuery().use { rs ->
+                if (rs.next()) {
+                    subtract(rs)
+                }
+            }
+        }
+    }
+
+    /**
+     * Päivittää summat usean viennin muutoksilla. Muutokset lasketaan
+     * yhteen tositteittain ja tileittäin, minkä jälkeen puuttuvat rivit
+     * lisätään, summat päivitetään ja tyhjiksi jääneet rivit poistetaan
+     * kukin yhdellä eräajolla.
+     */
+    override fun updateEntries(removed: List<Entry>, added: List<Entry>): Unit = withDataAccess {
+        val deltas = LinkedHashMap<Pair<Int, Int>, BalanceDelta>()
+
+        for (entry in removed) {
+            addDelta(deltas, entry, -1)
+        }
+
+        for (entry in added) {
+            addDelta(deltas, entry, 1)
+        }
+
+        deltas.values.removeIf { it.isEmpty }
+
+        if (deltas.isNotEmpty()) {
+            applyDeltas(deltas)
+        }
+    }
+
+    /**
+     * Lisää tositteen kaikki viennit summiin.
+     */
+    override fun addDocument(documentId: Int): Unit = withDataAccess {
+        prepareStatement(SELECT_ENTRIES_BY_DOCUMENT_ID).use { stmt ->
+            stmt.setInt(1, documentId)
+            stmt.executeQuery().use { rs ->
+                while (rs.next()) {
+                    update(rs.getInt(1), rs.getInt(2), rs.getBoolean(3),
+                        toCents(BigDecimal(rs.getString(4))), 1)
+                }
+            }
+        }
+    }
+
+    /**
+     * Vähentää tositteen kaikki viennit summista.
+     */
+    override fun removeDocument(documentId: Int): Unit = withDataAccess {
+        prepareStatement(SELECT_ENTRIES_BY_DOCUMENT_ID).use { stmt ->
+            stmt.setInt(1, documentId)
+            stmt.executeQuery().use { rs ->
+                while (rs.next()) {
+                    subtract(rs)
+                }
+            }
+        }
+    }
+
+    /**
+     * Tarkistaa, onko tositteen päivämäärä tai tilikausi muuttunut.
+     */
+    override fun isMoved(document: Document): Boolean = withDataAccess {
+        prepareStatement(SELECT_DOCUMENT).use { stmt ->
+            stmt.setInt(1, document.id)
+            stmt.executeQuery().use { rs ->
+                if (!rs.next()) {
+                    false
+                } else {
+                    rs.getInt(1) != document.periodId ||
+                        rs.getDate(2)?.time != document.date?.time
+                }
+            }
+        }
+    }
+
+    /**
+     * Poistaa tietyn tilikauden summat.
+     */
+    override fun deleteByPeriodId(periodId: Int): Unit = withDataAccess {
+        prepareStatement(DELETE_BY_PERIOD_ID).use { stmt ->
+            stmt.setInt(1, periodId)
+            stmt.executeUpdate()
+        }
+    }
+
+    /**
+     * Laskee kaikki summat uudelleen entry-taulusta.
+     */
+    override fun rebuild(): Unit = withDataAccess {
+        prepareStatement(DELETE_ALL).use { it.executeUpdate() }
+        prepareStatement(REBUILD).use { it.executeUpdate() }
+    }
+
+    // ========================================================================
+    // Protected Abstract Methods - Must be implemented by subclasses
+    // ========================================================================
+
+    @Throws(SQLException::class)
+    protected abstract fun prepareStatement(sql: String): PreparedStatement
+
+    // ========================================================================
+    // Private Helper Methods
+    // ========================================================================
+
+    @Throws(SQLException::class)
+    private fun processTotals(stmt: PreparedStatement, callback: DTOCallback<AccountTotal>) {
+        stmt.executeQuery().use { rs ->
+            while (rs.next()) {
+                callback.process(AccountTotal(rs.getInt(1), fromCents(rs.getLong(2)),
+                    fromCents(rs.getLong(3)), rs.getInt(4)))
+            }
+        }
+    }
+
+    /**
+     * Vähentää rivin (document_id, account_id, debit, amount) summista.
+     */
+    @Throws(SQLException::class)
+    private fun subtract(rs: ResultSet) {
+        update(rs.getInt(1), rs.getInt(2), rs.getBoolean(3),
+            -toCents(BigDecimal(rs.getString(4))), -1)
+    }
+
+    /**
+     * Päivittää tositteen päivämäärää ja tiliä vastaavan rivin summia.
+     * Rivi lisätään, jos sitä ei vielä ole, ja poistetaan, kun siihen
+     * ei enää kuulu yhtään vientiä.
+     */
+    @Throws(SQLException::class)
+    private fun update(documentId: Int, accountId: Int, debit: Boolean, cents: Long, count: Int) {
+        val debitCents = if (debit) cents else 0L
+        val creditCents = if (debit) 0L else cents
+
+        val updated = prepareStatement(UPDATE).use { stmt ->
+            stmt.setLong(1, debitCents)
+            stmt.setLong(2, creditCents)
+            stmt.setInt(3, count)
+            stmt.setInt(4, accountId)
+            stmt.setInt(5, documentId)
+            stmt.setInt(6, documentId)
+            stmt.executeUpdate()
+        }
+
+        if (updated == 0) {
+            if (count > 0) {
+                prepareStatement(INSERT).use { stmt ->
+                    stmt.setInt(1, accountId)
+                    stmt.setLong(2, debitCents)
+                    stmt.setLong(3, creditCents)
+                    stmt.setInt(4, count)
+                    stmt.setInt(5, documentId)
+                    stmt.executeUpdate()
+                }
+            }
+        } else if (count < 0) {
+            prepareStatement(DELETE_EMPTY).use { stmt ->
+                stmt.setInt(1, accountId)
+                stmt.executeUpdate()
+            }
+        }
+    }
+
+    /**
+     * Lisää viennin summan tositteen ja tilin muutokseen. Etumerkki on
+     * -1, kun vienti vähennetään summista.
+     */
+    private fun addDelta(deltas: MutableMap<Pair<Int, Int>, BalanceDelta>, entry: Entry, sign: Int) {
+        val delta = deltas.getOrPut(entry.documentId to entry.accountId) { BalanceDelta() }
+        val cents = sign * toCents(entry.amount ?: BigDecimal.ZERO)
+
+        if (entry.isDebit()) {
+            delta.debitCents += cents
+        } else {
+            delta.creditCents += cents
+        }
+
+        delta.count += sign
+    }
+
+    /**
+     * Päivittää muutokset tauluun. Puuttuvat rivit lisätään ensin
+     * nollasummilla, joten UPDATE-eräajon ei tarvitse tarkistaa
+     * päivitettyjen rivien määrää, jota kaikki ajurit eivät palauta
+     * eräajoista.
+     */
+    @Throws(SQLException::class)
+    private fun applyDeltas(deltas: Map<Pair<Int, Int>, BalanceDelta>) {
+        val additions = deltas.filterValues { it.count > 0 }
+
+        if (additions.isNotEmpty()) {
+            prepareStatement(INSERT_MISSING).use { stmt ->
+                for ((documentId, accountId) in additions.keys) {
+                    stmt.setInt(1, accountId)
+                    stmt.setInt(2, documentId)
+                    stmt.setInt(3, accountId)
+                    stmt.addBatch()
+                }
+                stmt.executeBatch()
+            }
+        }
+
+        prepareStatement(UPDATE).use { stmt ->
+            for ((key, delta) in deltas) {
+                stmt.setLong(1, delta.debitCents)
+                stmt.setLong(2, delta.creditCents)
+                stmt.setInt(3, delta.count)
+                stmt.setInt(4, key.second)
+                stmt.setInt(5, key.first)
+                stmt.setInt(6, key.first)
+                stmt.addBatch()
+            }
+            stmt.executeBatch()
+        }
+
+        val emptiedAccountIds = deltas.filterValues { it.count < 0 }.keys.mapTo(LinkedHashSet()) { it.second }
+
+        if (emptiedAccountIds.isNotEmpty()) {
+            prepareStatement(DELETE_EMPTY).use { stmt ->
+                for (accountId in emptiedAccountIds) {
+                    stmt.setInt(1, accountId)
+                    stmt.addBatch()
+                }
+                stmt.executeBatch()
+            }
+        }
+    }
+
+    private fun toCents(amount: BigDecimal): Long =
+        amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact()
+
+    private fun fromCents(cents: Long): BigDecimal = BigDecimal.valueOf(cents, 2)
+}
+
+/**
+ * Yhden tositteen ja tilin yhteenlaskettu muutos summiin.
+ */
+private class BalanceDelta {
+    var debitCents = 0L
+    var creditCents = 0L
+    var count = 0
+
+    val isEmpty: Boolean
+        get() = debitCents == 0L && creditCents == 0L && count == 0
+}
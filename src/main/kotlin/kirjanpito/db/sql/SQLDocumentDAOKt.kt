@@ -24,10 +24,13 @@ import java.util.Date
  * - getSelectByPeriodIdAndPhraseQuery()
  * - getSelectByPeriodIdAndDateQuery()
  * - getInsertQuery()
+ * - getBatchInsertQuery()
  * - getUpdateQuery()
  * - getDeleteQuery()
  * - getDeleteByPeriodIdQuery()
  * - getNumberShiftQuery()
+ * - getBalanceDAO()
+ * - getSearchIndex()
  * - getGeneratedKey()
  * 
  * @author Tommi Helineva (original Java)
@@ -177,41 +180,116 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
         }
     }
     
+    /**
+     * Hakee tietokannasta numerovälin viimeiset tositteet numerojärjestyksessä.
+     */
+    override fun getLastByPeriodIdAndNumber(
+        periodId: Int,
+        startNumber: Int,
+        endNumber: Int,
+        limit: Int
+    ): List<Document> = withDataAccess {
+        getSelectLastByPeriodIdAndNumberQuery().use { stmt ->
+            stmt.setInt(1, periodId)
+            stmt.setInt(2, startNumber)
+            stmt.setInt(3, endNumber)
+            stmt.setInt(4, limit)
+            stmt.executeQuery().use { rs ->
+                buildList {
+                    while (rs.next()) {
+                        add(createObject(rs))
+                    }
+                }.asReversed()
+            }
+        }
+    }
+    
     /**
      * Etsii tositteita hakusanalla ja palauttaa tulosten lukumäärän.
+     * Jos hakemistosta ei löydy mitään, tositteita etsitään hakutekstin
+     * alimerkkijonona.
      */
     override fun getCountByPeriodIdAndPhrase(periodId: Int, q: String): Int = withDataAccess {
+        val searchIndex = getSearchIndex()
+        val query = searchIndex.createMatchQuery(q) ?: return@withDataAccess 0
+
+        if (searchIndex.isIndexed(q)) {
+            val count = getIndexCount(periodId, query)
+            if (count > 0) return@withDataAccess count
+        }
+
+        searchIndex.getCountBySubstring(periodId, q)
+    }
+    
+    /**
+     * Laskee tositteet, jotka löytyvät hakemistosta hakukyselyllä query.
+     */
+    private fun getIndexCount(periodId: Int, query: String): Int =
         getSelectCountByPeriodIdAndPhraseQuery().use { stmt ->
             stmt.setInt(1, periodId)
-            stmt.setString(2, escapePhrase(q))
+            stmt.setString(2, query)
             stmt.executeQuery().use { rs ->
                 if (rs.next()) rs.getInt(1) else 0
             }
         }
-    }
     
     /**
-     * Etsii tositteita hakusanalla ja palauttaa löytyneet tositteet.
+     * Etsii tositteita hakusanalla ja palauttaa löytyneet tositteet
+     * hakusanaa parhaiten vastaavat ensin.
      */
     override fun getByPeriodIdAndPhrase(
         periodId: Int,
         q: String,
         offset: Int,
         limit: Int
-    ): List<Document> = withDataAccess {
-        getSelectByPeriodIdAndPhraseQuery().use { stmt ->
-            stmt.setInt(1, periodId)
-            stmt.setString(2, escapePhrase(q))
-            stmt.setInt(3, limit)
-            stmt.setInt(4, offset)
-            stmt.executeQuery().use { rs ->
-                buildList {
+    ): List<Document> {
+        val list = ArrayList<Document>()
+        searchByPeriodIdAndPhrase(periodId, q, offset, limit) { list.add(it) }
+        return list
+    }
+    
+    /**
+     * Etsii tositteita hakusanalla ja palauttaa sivullisen tuloksia
+     * sekä tulosten kokonaismäärän yhdellä kyselyllä. Jos hakemistosta
+     * ei löydy mitään, tositteita etsitään hakutekstin alimerkkijonona
+     * tositenumeron mukaan järjestettynä.
+     */
+    override fun searchByPeriodIdAndPhrase(
+        periodId: Int,
+        q: String,
+        offset: Int,
+        limit: Int,
+        callback: DTOCallback<Document>
+    ): Int = withDataAccess {
+        val searchIndex = getSearchIndex()
+        val query = searchIndex.createMatchQuery(q) ?: return@withDataAccess 0
+
+        if (searchIndex.isIndexed(q)) {
+            val count = getSelectByPeriodIdAndPhraseQuery().use { stmt ->
+                stmt.setInt(1, periodId)
+                stmt.setString(2, query)
+                stmt.setInt(3, limit)
+                stmt.setInt(4, offset)
+                stmt.executeQuery().use { rs ->
+                    var count = 0
+
                     while (rs.next()) {
-                        add(createObject(rs))
+                        callback.process(createObject(rs))
+                        count = rs.getInt(5)
                     }
+
+                    count
                 }
             }
+
+            // Tyhjä sivu voi olla myös tulosten lopun jälkeen,
+            // jolloin alimerkkijonohakuun ei siirrytä
+            if (count > 0 || (offset > 0 && getIndexCount(periodId, query) > 0)) {
+                return@withDataAccess count
+            }
         }
+
+        searchIndex.searchBySubstring(periodId, q, offset, limit, callback)
     }
     
     /**
@@ -245,12 +323,32 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
         } else {
             executeUpdateQuery(document)
         }
+
+        getSearchIndex().update(document.id)
+    }
+    
+    /**
+     * Tallentaa useamman tositteen tiedot tietokantaan. Uudet tositteet
+     * lisätään samalla valmistellulla kyselyllä.
+     */
+    override fun saveAll(documents: List<Document>): Unit = withDataAccess {
+        val (inserted, updated) = documents.partition { it.id == 0 }
+        updated.forEach { executeUpdateQuery(it) }
+
+        if (inserted.isNotEmpty()) {
+            executeBatchInsertQuery(inserted)
+        }
+
+        val searchIndex = getSearchIndex()
+        documents.forEach { searchIndex.update(it.id) }
     }
     
     /**
      * Poistaa tositteen tiedot tietokannasta.
      */
     override fun delete(documentId: Int): Unit = withDataAccess {
+        getSearchIndex().delete(documentId)
+
         getDeleteQuery().use { stmt ->
             stmt.setInt(1, documentId)
             stmt.executeUpdate()
@@ -261,6 +359,8 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
      * Poistaa tietyn tilikauden kaikki tositteet tietokannasta.
      */
     override fun deleteByPeriodId(periodId: Int): Unit = withDataAccess {
+        getSearchIndex().deleteByPeriodId(periodId)
+
         getDeleteByPeriodIdQuery().use { stmt ->
             stmt.setInt(1, periodId)
             stmt.executeUpdate()
@@ -283,6 +383,9 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
             stmt.setInt(4, endNumber)
             stmt.executeUpdate()
         }
+
+        getSearchIndex().updateByPeriodIdAndNumber(periodId,
+            startNumber + shift, endNumber + shift)
     }
     
     // ========================================================================
@@ -301,6 +404,9 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
     @Throws(SQLException::class)
     protected abstract fun getSelectByPeriodIdAndNumberQuery(): PreparedStatement
     
+    @Throws(SQLException::class)
+    protected abstract fun getSelectLastByPeriodIdAndNumberQuery(): PreparedStatement
+    
     @Throws(SQLException::class)
     protected abstract fun getSelectCountByPeriodIdAndNumberQuery(): PreparedStatement
     
@@ -319,6 +425,13 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
     @Throws(SQLException::class)
     protected abstract fun getInsertQuery(): PreparedStatement
     
+    /**
+     * INSERT-kysely, joka palauttaa lisätyn rivin tunnisteen
+     * tulosjoukkona (INSERT ... RETURNING id).
+     */
+    @Throws(SQLException::class)
+    protected abstract fun getBatchInsertQuery(): PreparedStatement
+    
     @Throws(SQLException::class)
     protected abstract fun getUpdateQuery(): PreparedStatement
     
@@ -334,6 +447,18 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
     @Throws(SQLException::class)
     protected abstract fun getGeneratedKey(): Int
     
+    /**
+     * Palauttaa BalanceDAO-olion, jonka saldot siirretään tositteen
+     * päivämäärän muuttuessa.
+     */
+    protected abstract fun getBalanceDAO(): BalanceDAO
+    
+    /**
+     * Palauttaa hakuhakemiston, jota päivitetään tositteiden
+     * tallentamisen ja poistamisen yhteydessä.
+     */
+    protected abstract fun getSearchIndex(): SQLSearchIndexKt
+    
     // ========================================================================
     // Protected Methods - Can be overridden for database-specific behavior
     // ========================================================================
@@ -370,27 +495,48 @@ abstract class SQLDocumentDAOKt : DocumentDAO {
         obj.id = getGeneratedKey()
     }
     
+    /**
+     * Lisää tositteet tietokantaan. Kysely valmistellaan vain kerran,
+     * ja tunnisteet luetaan RETURNING-lauseen tuloksesta.
+     */
+    @Throws(SQLException::class)
+    private fun executeBatchInsertQuery(objs: List<Document>) {
+        getBatchInsertQuery().use { stmt ->
+            for (obj in objs) {
+                setValuesToStatement(stmt, obj)
+                stmt.executeQuery().use { rs ->
+                    if (!rs.next()) {
+                        throw SQLException("INSERT did not return a generated key")
+                    }
+                    obj.id = rs.getInt(1)
+                }
+            }
+        }
+    }
+    
     /**
      * Päivittää tositteen tiedot tietokantaan.
      */
     @Throws(SQLException::class)
     private fun executeUpdateQuery(obj: Document) {
+        /* Jos päivämäärä tai tilikausi muuttuu, tositteen viennit
+         * siirretään saldotaulussa uudelle päivälle. */
+        val balanceDAO = getBalanceDAO()
+        val moved = balanceDAO.isMoved(obj)
+
+        if (moved) {
+            balanceDAO.removeDocument(obj.id)
+        }
+
         getUpdateQuery().use { stmt ->
             setValuesToStatement(stmt, obj)
             stmt.setInt(4, obj.id)
             stmt.executeUpdate()
         }
-    }
-    
-    /**
-     * Escapes search phrase for SQL LIKE queries.
-     */
-    private fun escapePhrase(q: String): String {
-        var escaped = q.replace("%", "\\%").replace("_", "\\_").replace("*", "%")
-        if (!escaped.endsWith("%")) {
-            escaped += "%"
+
+        if (moved) {
+            balanceDAO.addDocument(obj.id)
         }
-        return escaped
     }
 }
 
@@ -1,6 +1,7 @@
 package kirjanpito.db.sql
 
 import kirjanpito.db.*
+import java.math.BigDecimal
 import java.sql.PreparedStatement
 import java.sql.ResultSet
 import java.sql.SQLException
@@ -16,10 +17,12 @@ import java.util.Date
  * Subclasses must implement:
  * - getSelectByDocumentIdQuery()
  * - getSelectByDocumentIdsQuery()
+ * - getSelectByIdsQuery()
  * - getSelectByPeriodIdOrderByNumberQuery()
  * - getSelectByPeriodIdOrderByDateQuery()
  * - getSelectByPeriodIdOrderByAccountAndNumberQuery()
  * - getSelectByPeriodIdOrderByAccountAndDateQuery()
+ * - getSelectWithDocumentsQuery()
  * - getSelectByAccountIdQuery()
  * - getSelectByPeriodIdAndAccountIdOrderByDateQuery()
  * - getSelectByPeriodIdAndAccountIdOrderByNumberQuery()
@@ -27,17 +30,27 @@ import java.util.Date
  * - getSelectByPeriodIdAndDateQuery()
  * - getSelectByPeriodIdAndDateAndNumberQuery()
  * - getSelectByPeriodIdAndNumberQuery()
+ * - getSumByDateQuery()
+ * - getSumByPeriodIdAndDateQuery()
  * - getInsertQuery()
+ * - getBatchInsertQuery()
  * - getUpdateQuery()
  * - getDeleteQuery()
  * - getDeleteByPeriodIdQuery()
  * - getGeneratedKey()
+ * - getBalanceDAO()
+ * - getSearchIndex()
  * 
  * @author Tommi Helineva (original Java)
  * @author Kotlin migration by Claude
  */
 abstract class SQLEntryDAOKt : EntryDAO {
     
+    companion object {
+        /** Yhdellä kyselyllä haettavien tositteiden enimmäismäärä. */
+        private const val MAX_DOCUMENT_IDS = 512
+    }
+    
     /**
      * Hakee tietokannasta tiettyyn tositteeseen kuuluvat viennit.
      */
@@ -56,17 +69,31 @@ abstract class SQLEntryDAOKt : EntryDAO {
     
     /**
      * Hakee tietokannasta tiettyihin tositteisiin kuuluvat viennit.
+     * Tunnisteet annetaan kyselylle parametreina. Parametrien määrä
+     * pyöristetään kahden potenssiin, jotta valmisteltuja kyselyjä
+     * voidaan käyttää uudelleen.
      */
     override fun getByDocuments(
         documents: List<Document>,
         callback: DTOCallback<Entry>
     ): Unit = withDataAccess {
-        val documentIds = documents.joinToString(",") { it.id.toString() }
-        
-        getSelectByDocumentIdsQuery(documentIds).use { stmt ->
-            stmt.executeQuery().use { rs ->
-                while (rs.next()) {
-                    callback.process(createObject(rs))
+        for (part in documents.chunked(MAX_DOCUMENT_IDS)) {
+            var parameterCount = 8
+            while (parameterCount < part.size) {
+                parameterCount *= 2
+            }
+            
+            val placeholders = List(parameterCount) { "?" }.joinToString(",")
+            
+            getSelectByDocumentIdsQuery(placeholders).use { stmt ->
+                // Ylimääräisiin parametreihin asetetaan viimeinen tunniste
+                for (i in 0 until parameterCount) {
+                    stmt.setInt(i + 1, part[minOf(i, part.size - 1)].id)
+                }
+                stmt.executeQuery().use { rs ->
+                    while (rs.next()) {
+                        callback.process(createObject(rs))
+                    }
                 }
             }
         }
@@ -98,6 +125,103 @@ abstract class SQLEntryDAOKt : EntryDAO {
         }
     }
     
+    /**
+     * Hakee tietokannasta kaikki tietyn tilikauden viennit ja niiden
+     * tositteiden numerot ja päivämäärät samalla kyselyllä.
+     */
+    override fun getByPeriodIdWithDocuments(
+        periodId: Int,
+        orderBy: Int,
+        callback: DocumentEntryCallback
+    ): Unit = withDataAccess {
+        getSelectWithDocumentsQuery("d.period_id = ?", getOrderByClause(orderBy)).use { stmt ->
+            stmt.setInt(1, periodId)
+            processWithDocuments(stmt, periodId, callback)
+        }
+    }
+    
+    /**
+     * Hakee tietokannasta tietyn tilikauden aikavälin viennit ja niiden
+     * tositteiden numerot ja päivämäärät samalla kyselyllä.
+     */
+    override fun getByPeriodIdAndDateWithDocuments(
+        periodId: Int,
+        startDate: Date,
+        endDate: Date,
+        orderBy: Int,
+        callback: DocumentEntryCallback
+    ): Unit = withDataAccess {
+        getSelectWithDocumentsQuery(
+            "d.period_id = ? AND d.date >= ? AND d.date <= ?",
+            getOrderByClause(orderBy)
+        ).use { stmt ->
+            stmt.setInt(1, periodId)
+            stmt.setTimestamp(2, Timestamp(startDate.time))
+            stmt.setTimestamp(3, Timestamp(endDate.time))
+            processWithDocuments(stmt, periodId, callback)
+        }
+    }
+    
+    /**
+     * Hakee tietokannasta tietyn tilikauden viennit, jotka kohdistuvat
+     * tiettyyn tiliin, ja niiden tositteiden numerot ja päivämäärät
+     * samalla kyselyllä.
+     */
+    override fun getByPeriodIdAndAccountIdWithDocuments(
+        periodId: Int,
+        accountId: Int,
+        orderBy: Int,
+        callback: DocumentEntryCallback
+    ): Unit = withDataAccess {
+        getSelectWithDocumentsQuery(
+            "d.period_id = ? AND e.account_id = ?",
+            getOrderByClause(orderBy)
+        ).use { stmt ->
+            stmt.setInt(1, periodId)
+            stmt.setInt(2, accountId)
+            processWithDocuments(stmt, periodId, callback)
+        }
+    }
+    
+    /**
+     * Palauttaa ORDER BY -lausekkeen, joka vastaa järjestystä orderBy
+     * getSelectWithDocumentsQuery-kyselyssä.
+     */
+    private fun getOrderByClause(orderBy: Int): String = when (orderBy) {
+        EntryDAO.ORDER_BY_DOCUMENT_NUMBER -> "d.number, e.row_number"
+        EntryDAO.ORDER_BY_DOCUMENT_DATE -> "d.date, d.number, e.row_number"
+        EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER -> "a.number, d.number, e.row_number"
+        EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_DATE -> "a.number, d.date, d.number, e.row_number"
+        else -> throw IllegalArgumentException("Invalid orderBy: $orderBy")
+    }
+    
+    /**
+     * Suorittaa getSelectWithDocumentsQuery-kyselyn ja antaa viennit
+     * callbackille. Saman tositteen peräkkäisille vienneille annetaan
+     * sama Document-olio.
+     */
+    private fun processWithDocuments(
+        stmt: PreparedStatement,
+        periodId: Int,
+        callback: DocumentEntryCallback
+    ) {
+        stmt.executeQuery().use { rs ->
+            var document: Document? = null
+            while (rs.next()) {
+                val entry = createObject(rs)
+                if (document == null || document.id != entry.documentId) {
+                    document = Document().apply {
+                        id = entry.documentId
+                        number = rs.getInt(9)
+                        this.periodId = periodId
+                        date = rs.getDate(10)
+                    }
+                }
+                callback.process(document, entry)
+            }
+        }
+    }
+    
     /**
      * Hakee tietokannasta tietyn tilikauden viennit, jotka kohdistuvat tiettyyn tiliin.
      */
@@ -179,6 +303,40 @@ abstract class SQLEntryDAOKt : EntryDAO {
         }
     }
     
+    /**
+     * Laskee tietokannassa vientien summat tileittäin tietyltä aikaväliltä.
+     */
+    override fun sumByAccount(
+        periodId: Int,
+        startDate: Date,
+        endDate: Date,
+        startNumber: Int,
+        excludedFlags: Int,
+        callback: DTOCallback<AccountTotal>
+    ): Unit = withDataAccess {
+        val stmt = if (periodId > 0) {
+            getSumByPeriodIdAndDateQuery().apply { setInt(1, periodId) }
+        } else {
+            getSumByDateQuery()
+        }
+
+        stmt.use { s ->
+            var index = if (periodId > 0) 2 else 1
+            s.setTimestamp(index++, Timestamp(startDate.time))
+            s.setTimestamp(index++, Timestamp(endDate.time))
+            s.setInt(index++, startNumber)
+            s.setInt(index, excludedFlags)
+
+            s.executeQuery().use { rs ->
+                while (rs.next()) {
+                    callback.process(AccountTotal(rs.getInt(1),
+                        BigDecimal.valueOf(rs.getLong(2), 2),
+                        BigDecimal.valueOf(rs.getLong(3), 2), rs.getInt(4)))
+                }
+            }
+        }
+    }
+    
     /**
      * Hakee tietokannasta viennit tositenumeroväliltä tietyltä tilikaudelta.
      */
@@ -204,27 +362,75 @@ abstract class SQLEntryDAOKt : EntryDAO {
      * Tallentaa viennin tiedot tietokantaan.
      */
     override fun save(entry: Entry): Unit = withDataAccess {
+        val balanceDAO = getBalanceDAO()
+        val searchIndex = getSearchIndex()
+
         if (entry.id == 0) {
             executeInsertQuery(entry)
         } else {
+            val prevDocumentId = searchIndex.getDocumentIdByEntryId(entry.id)
+            balanceDAO.removeEntry(entry.id)
             executeUpdateQuery(entry)
+
+            if (prevDocumentId != 0 && prevDocumentId != entry.documentId) {
+                searchIndex.update(prevDocumentId)
+            }
+        }
+
+        balanceDAO.addEntry(entry)
+        searchIndex.update(entry.documentId)
+    }
+    
+    /**
+     * Tallentaa useamman viennin tiedot tietokantaan. Uudet viennit
+     * lisätään samalla valmistellulla kyselyllä ja muutetut päivitetään
+     * eräajona. Tilien summat päivitetään yhteenlaskettuina, ja
+     * tositteiden hakutekstit päivitetään vasta lopuksi kerran
+     * tositetta kohden.
+     */
+    override fun saveAll(entries: List<Entry>): Unit = withDataAccess {
+        val searchIndex = getSearchIndex()
+        val (inserted, updated) = entries.partition { it.id == 0 }
+        val stored = getStoredEntries(updated)
+        val documentIds = stored.mapTo(LinkedHashSet()) { it.documentId }
+
+        if (updated.isNotEmpty()) {
+            executeBatchUpdateQuery(updated)
         }
+
+        if (inserted.isNotEmpty()) {
+            executeBatchInsertQuery(inserted)
+        }
+
+        getBalanceDAO().updateEntries(stored, entries)
+        entries.mapTo(documentIds) { it.documentId }
+        documentIds.forEach { searchIndex.update(it) }
     }
     
     /**
      * Poistaa viennin tiedot tietokannasta.
      */
     override fun delete(entryId: Int): Unit = withDataAccess {
+        val searchIndex = getSearchIndex()
+        val documentId = searchIndex.getDocumentIdByEntryId(entryId)
+        getBalanceDAO().removeEntry(entryId)
+
         getDeleteQuery().use { stmt ->
             stmt.setInt(1, entryId)
             stmt.executeUpdate()
         }
+
+        if (documentId != 0) {
+            searchIndex.update(documentId)
+        }
     }
     
     /**
      * Poistaa tietyn tilikauden kaikki viennit tietokannasta.
      */
     override fun deleteByPeriodId(periodId: Int): Unit = withDataAccess {
+        getBalanceDAO().deleteByPeriodId(periodId)
+
         getDeleteByPeriodIdQuery().use { stmt ->
             stmt.setInt(1, periodId)
             stmt.executeUpdate()
@@ -239,7 +445,14 @@ abstract class SQLEntryDAOKt : EntryDAO {
     protected abstract fun getSelectByDocumentIdQuery(): PreparedStatement
     
     @Throws(SQLException::class)
-    protected abstract fun getSelectByDocumentIdsQuery(documentIds: String): PreparedStatement
+    protected abstract fun getSelectByDocumentIdsQuery(placeholders: String): PreparedStatement
+    
+    /**
+     * SELECT-kysely, joka hakee viennit tunnisteiden perusteella.
+     * IN-listaan sijoitetaan placeholders.
+     */
+    @Throws(SQLException::class)
+    protected abstract fun getSelectByIdsQuery(placeholders: String): PreparedStatement
     
     @Throws(SQLException::class)
     protected abstract fun getSelectByPeriodIdOrderByNumberQuery(): PreparedStatement
@@ -253,6 +466,15 @@ abstract class SQLEntryDAOKt : EntryDAO {
     @Throws(SQLException::class)
     protected abstract fun getSelectByPeriodIdOrderByAccountAndDateQuery(): PreparedStatement
     
+    /**
+     * Hakee ehdon condition täyttävät viennit. Viennin sarakkeiden jälkeen
+     * ovat tositenumero ja päivämäärä. Viennit (e), tilit (a) ja
+     * tositteet (d) yhdistetään, ja rivit järjestetään lausekkeen orderBy
+     * mukaan.
+     */
+    @Throws(SQLException::class)
+    protected abstract fun getSelectWithDocumentsQuery(condition: String, orderBy: String): PreparedStatement
+    
     @Throws(SQLException::class)
     protected abstract fun getSelectByAccountIdQuery(): PreparedStatement
     
@@ -274,9 +496,32 @@ abstract class SQLEntryDAOKt : EntryDAO {
     @Throws(SQLException::class)
     protected abstract fun getSelectByPeriodIdAndNumberQuery(): PreparedStatement
     
+    /**
+     * SELECT-kysely, joka laskee vientien summat tileittäin. Parametrit:
+     * alkamispäivämäärä, päättymispäivämäärä, tositenumerovälin alku ja
+     * pois jätettävät liput. Sarakkeet: tilin tunniste, debet- ja
+     * kredit-summa sentteinä sekä vientien lukumäärä.
+     */
+    @Throws(SQLException::class)
+    protected abstract fun getSumByDateQuery(): PreparedStatement
+    
+    /**
+     * Kuten getSumByDateQuery, mutta ensimmäisenä parametrina on
+     * tilikauden tunniste.
+     */
+    @Throws(SQLException::class)
+    protected abstract fun getSumByPeriodIdAndDateQuery(): PreparedStatement
+    
     @Throws(SQLException::class)
     protected abstract fun getInsertQuery(): PreparedStatement
     
+    /**
+     * INSERT-kysely, joka palauttaa lisätyn rivin tunnisteen
+     * tulosjoukkona (INSERT ... RETURNING id).
+     */
+    @Throws(SQLException::class)
+    protected abstract fun getBatchInsertQuery(): PreparedStatement
+    
     @Throws(SQLException::class)
     protected abstract fun getUpdateQuery(): PreparedStatement
     
@@ -289,6 +534,18 @@ abstract class SQLEntryDAOKt : EntryDAO {
     @Throws(SQLException::class)
     protected abstract fun getGeneratedKey(): Int
     
+    /**
+     * Palauttaa BalanceDAO-olion, jonka saldoja päivitetään
+     * vientien tallentamisen ja poistamisen yhteydessä.
+     */
+    protected abstract fun getBalanceDAO(): BalanceDAO
+    
+    /**
+     * Palauttaa hakuhakemiston, johon viennin tositteen hakuteksti
+     * päivitetään.
+     */
+    protected abstract fun getSearchIndex(): SQLSearchIndexKt
+    
     // ========================================================================
     // Protected Methods - Can be overridden for database-specific behavior
     // ========================================================================
@@ -331,6 +588,69 @@ abstract class SQLEntryDAOKt : EntryDAO {
         obj.id = getGeneratedKey()
     }
     
+    /**
+     * Lisää viennit tietokantaan. Kysely valmistellaan vain kerran,
+     * ja tunnisteet luetaan RETURNING-lauseen tuloksesta, joten
+     * erillistä tunnisteen hakukyselyä ei tarvita.
+     */
+    @Throws(SQLException::class)
+    private fun executeBatchInsertQuery(objs: List<Entry>) {
+        getBatchInsertQuery().use { stmt ->
+            for (obj in objs) {
+                setValuesToStatement(stmt, obj)
+                stmt.executeQuery().use { rs ->
+                    if (!rs.next()) {
+                        throw SQLException("INSERT did not return a generated key")
+                    }
+                    obj.id = rs.getInt(1)
+                }
+            }
+        }
+    }
+    
+    /**
+     * Hakee vientien tietokantaan tallennetut tiedot, jotta niiden
+     * vanhat summat voidaan vähentää ennen päivittämistä.
+     */
+    @Throws(SQLException::class)
+    private fun getStoredEntries(entries: List<Entry>): List<Entry> = buildList {
+        for (part in entries.chunked(MAX_DOCUMENT_IDS)) {
+            var parameterCount = 8
+            while (parameterCount < part.size) {
+                parameterCount *= 2
+            }
+            
+            val placeholders = List(parameterCount) { "?" }.joinToString(",")
+            
+            getSelectByIdsQuery(placeholders).use { stmt ->
+                // Ylimääräisiin parametreihin asetetaan viimeinen tunniste
+                for (i in 0 until parameterCount) {
+                    stmt.setInt(i + 1, part[minOf(i, part.size - 1)].id)
+                }
+                stmt.executeQuery().use { rs ->
+                    while (rs.next()) {
+                        add(createObject(rs))
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Päivittää vientien tiedot tietokantaan yhdellä eräajolla.
+     */
+    @Throws(SQLException::class)
+    private fun executeBatchUpdateQuery(objs: List<Entry>) {
+        getUpdateQuery().use { stmt ->
+            for (obj in objs) {
+                setValuesToStatement(stmt, obj)
+                stmt.setInt(8, obj.id)
+                stmt.addBatch()
+            }
+            stmt.executeBatch()
+        }
+    }
+    
     /**
      * Päivittää viennin tiedot tietokantaan.
      */
@@ -0,0 +1,329 @@
+package kirjanpito.db.sql
+
+import kirjanpito.db.Account
+import kirjanpito.db.DTOCallback
+import kirjanpito.db.Document
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * Tositteiden hakuhakemiston yhteinen toteutus.
+ *
+ * document_search-taulussa on yksi rivi tositetta kohden. Hakutekstissä
+ * on tositenumero sekä jokaisen viennin selite, tilinumero ja tilin nimi.
+ * DocumentDAO, EntryDAO ja AccountDAO päivittävät rivin, kun tosite tai
+ * sen viennit muuttuvat.
+ *
+ * Aliluokat antavat istunnon ja tietokantakohtaiset osat: SQLitessä
+ * FTS5, MySQL:ssä FULLTEXT ja PostgreSQL:ssä tsvector + GIN.
+ *
+ * Hakemisto löytää sanat alkuosan perusteella. Jos hakemistosta ei löydy
+ * mitään tai hakusanaa ei ole indeksoitu, tilikauden hakutekstit käydään
+ * läpi LIKE-ehdolla, jotta myös yhdyssanan loppuosa löytyy.
+ */
+abstract class SQLSearchIndexKt {
+
+    companion object {
+        private const val SELECT_DOCUMENT = """
+            SELECT number, period_id
+            FROM document
+            WHERE id = ?
+        """
+
+        private const val SELECT_ENTRIES = """
+            SELECT e.description, a.number, a.name
+            FROM entry e
+            LEFT JOIN account a ON a.id = e.account_id
+            WHERE e.document_id = ?
+            ORDER BY e.row_number
+        """
+
+        private const val SELECT_DOCUMENT_ID_BY_ENTRY_ID = "SELECT document_id FROM entry WHERE id = ?"
+
+        private const val SELECT_DOCUMENT_IDS_BY_ACCOUNT_ID = "SELECT DISTINCT document_id FROM entry WHERE account_id = ?"
+
+        private const val SELECT_DOCUMENT_IDS_BY_NUMBER = """
+            SELECT id
+            FROM document
+            WHERE period_id = ? AND number BETWEEN ? AND ?
+        """
+
+        private const val SELECT_ALL_DOCUMENT_IDS = "SELECT id FROM document"
+
+        private const val SELECT_ACCOUNT = "SELECT number, name FROM account WHERE id = ?"
+
+        private val WORD_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+    }
+
+    /**
+     * Päivittää tositteen hakutekstin.
+     */
+    @Throws(SQLException::class)
+    fun update(documentId: Int) {
+        val (number, periodId) = prepareStatement(SELECT_DOCUMENT).use { stmt ->
+            stmt.setInt(1, documentId)
+            stmt.executeQuery().use { rs ->
+                if (rs.next()) Pair(rs.getInt(1), rs.getInt(2)) else null
+            }
+        } ?: return
+
+        val text = StringBuilder().append(number)
+
+        prepareStatement(SELECT_ENTRIES).use { stmt ->
+            stmt.setInt(1, documentId)
+            stmt.executeQuery().use { rs ->
+                while (rs.next()) {
+                    for (i in 1..3) {
+                        rs.getString(i)?.let { text.append(' ').append(it) }
+                    }
+                }
+            }
+        }
+
+        delete(documentId)
+
+        prepareStatement(getInsertSql()).use { stmt ->
+            stmt.setInt(1, documentId)
+            stmt.setInt(2, periodId)
+            stmt.setString(3, text.toString().lowercase())
+            stmt.executeUpdate()
+        }
+    }
+
+    /**
+     * Päivittää tositteiden hakutekstit, kun tositenumeroita on muutettu.
+     */
+    @Throws(SQLException::class)
+    fun updateByPeriodIdAndNumber(periodId: Int, startNumber: Int, endNumber: Int) {
+        val ids = prepareStatement(SELECT_DOCUMENT_IDS_BY_NUMBER).use { stmt ->
+            stmt.setInt(1, periodId)
+            stmt.setInt(2, startNumber)
+            stmt.setInt(3, endNumber)
+            fetchIds(stmt)
+        }
+
+        ids.forEach { update(it) }
+    }
+
+    /**
+     * Päivittää niiden tositteiden hakutekstit, joissa on vientejä tilille.
+     */
+    @Throws(SQLException::class)
+    fun updateByAccountId(accountId: Int) {
+        val ids = prepareStatement(SELECT_DOCUMENT_IDS_BY_ACCOUNT_ID).use { stmt ->
+            stmt.setInt(1, accountId)
+            fetchIds(stmt)
+        }
+
+        ids.forEach { update(it) }
+    }
+
+    /**
+     * Tarkistaa, onko tilin numero tai nimi muuttunut tietokantaan
+     * tallennetuista tiedoista.
+     */
+    @Throws(SQLException::class)
+    fun isRenamed(account: Account): Boolean =
+        prepareStatement(SELECT_ACCOUNT).use { stmt ->
+            stmt.setInt(1, account.id)
+            stmt.executeQuery().use { rs ->
+                rs.next() && (rs.getString(1) != account.number || rs.getString(2) != account.name)
+            }
+        }
+
+    /**
+     * Palauttaa viennin tositteen tunnisteen tai 0, jos vientiä ei löydy.
+     */
+    @Throws(SQLException::class)
+    fun getDocumentIdByEntryId(entryId: Int): Int =
+        prepareStatement(SELECT_DOCUMENT_ID_BY_ENTRY_ID).use { stmt ->
+            stmt.setInt(1, entryId)
+            stmt.executeQuery().use { rs ->
+                if (rs.next()) rs.getInt(1) else 0
+            }
+        }
+
+    /**
+     * Poistaa tositteen hakutekstin.
+     */
+    @Throws(SQLException::class)
+    fun delete(documentId: Int) {
+        prepareStatement(getDeleteSql()).use { stmt ->
+            stmt.setInt(1, documentId)
+            stmt.executeUpdate()
+        }
+    }
+
+    /**
+     * Poistaa tietyn tilikauden tositteiden hakutekstit.
+     */
+    @Throws(SQLException::class)
+    fun deleteByPeriodId(periodId: Int) {
+        prepareStatement("DELETE FROM document_search WHERE period_id = ?").use { stmt ->
+            stmt.setInt(1, periodId)
+            stmt.executeUpdate()
+        }
+    }
+
+    /**
+     * Muodostaa kaikkien tositteiden hakutekstit uudelleen.
+     */
+    @Throws(SQLException::class)
+    fun rebuild() {
+        prepareStatement("DELETE FROM document_search").use { it.executeUpdate() }
+        val ids = prepareStatement(SELECT_ALL_DOCUMENT_IDS).use { fetchIds(it) }
+        ids.forEach { update(it) }
+    }
+
+    /**
+     * Muuntaa käyttäjän kirjoittaman hakusanan tietokannan
+     * hakukyselyksi. Jokaisen sanan on löydyttävä tositteesta, ja
+     * sanat täydennetään loppuosaltaan. Palauttaa null, jos hakusanassa
+     * ei ole yhtään sanaa.
+     */
+    fun createMatchQuery(q: String): String? {
+        val words = splitWords(q)
+        return if (words.isEmpty()) null else createMatchQuery(words)
+    }
+
+    /**
+     * Tarkistaa, voidaanko hakusanan kaikki sanat etsiä hakemistosta.
+     */
+    fun isIndexed(q: String): Boolean =
+        splitWords(q).all { isIndexedWord(it) }
+
+    /**
+     * Laskee tositteet, joiden hakutekstissä on jokainen hakusanan sana
+     * missä kohtaa tahansa.
+     */
+    @Throws(SQLException::class)
+    fun getCountBySubstring(periodId: Int, q: String): Int {
+        val words = splitWords(q)
+        if (words.isEmpty()) return 0
+
+        val sql = "SELECT count(*) FROM document_search s WHERE s.period_id = ? AND " +
+            createLikeCondition(words.size)
+
+        return prepareStatement(sql).use { stmt ->
+            stmt.setInt(1, periodId)
+            setLikePatterns(stmt, 2, words)
+            stmt.executeQuery().use { rs ->
+                if (rs.next()) rs.getInt(1) else 0
+            }
+        }
+    }
+
+    /**
+     * Etsii tositteet, joiden hakutekstissä on jokainen hakusanan sana
+     * missä kohtaa tahansa, tositenumeron mukaan järjestettynä.
+     * Palauttaa tulosten kokonaismäärän tai 0, jos sivulla ei ole tuloksia.
+     */
+    @Throws(SQLException::class)
+    fun searchBySubstring(
+        periodId: Int,
+        q: String,
+        offset: Int,
+        limit: Int,
+        callback: DTOCallback<Document>
+    ): Int {
+        val words = splitWords(q)
+        if (words.isEmpty()) return 0
+
+        val sql = "SELECT d.id, d.number, d.period_id, d.date, count(*) OVER () " +
+            "FROM document_search s INNER JOIN document d ON d.id = s.${getDocumentIdColumn()} " +
+            "WHERE s.period_id = ? AND ${createLikeCondition(words.size)} " +
+            "ORDER BY d.number LIMIT ? OFFSET ?"
+
+        return prepareStatement(sql).use { stmt ->
+            stmt.setInt(1, periodId)
+            setLikePatterns(stmt, 2, words)
+            stmt.setInt(words.size + 2, limit)
+            stmt.setInt(words.size + 3, offset)
+            stmt.executeQuery().use { rs ->
+                var count = 0
+
+                while (rs.next()) {
+                    callback.process(Document().apply {
+                        id = rs.getInt(1)
+                        number = rs.getInt(2)
+                        this.periodId = rs.getInt(3)
+                        date = rs.getDate(4)
+                    })
+                    count = rs.getInt(5)
+                }
+
+                count
+            }
+        }
+    }
+
+    // ========================================================================
+    // Protected Abstract Methods - Must be implemented by subclasses
+    // ========================================================================
+
+    @Throws(SQLException::class)
+    protected abstract fun prepareStatement(sql: String): PreparedStatement
+
+    /**
+     * INSERT-kysely, jonka parametrit ovat tositteen tunniste,
+     * tilikauden tunniste ja hakuteksti.
+     */
+    protected abstract fun getInsertSql(): String
+
+    /**
+     * DELETE-kysely, jonka parametri on tositteen tunniste.
+     */
+    protected abstract fun getDeleteSql(): String
+
+    /**
+     * Muodostaa hakukyselyn sanoista, jotka sisältävät vain kirjaimia
+     * ja numeroita.
+     */
+    protected abstract fun createMatchQuery(words: List<String>): String
+
+    /**
+     * document_search-taulun sarake, jossa on tositteen tunniste.
+     */
+    protected abstract fun getDocumentIdColumn(): String
+
+    /**
+     * Tarkistaa, löytyykö sana hakemistosta. Oletuksena kaikki sanat
+     * on indeksoitu.
+     */
+    protected open fun isIndexedWord(word: String): Boolean = true
+
+    /**
+     * Operaattori, jolla hakutekstistä etsitään alimerkkijonoa.
+     */
+    protected open fun getLikeOperator(): String = "LIKE"
+
+    // ========================================================================
+    // Private Helper Methods
+    // ========================================================================
+
+    private fun splitWords(q: String): List<String> =
+        q.split(WORD_SEPARATOR).filter { it.isNotEmpty() }
+
+    private fun createLikeCondition(count: Int): String =
+        List(count) { "s.search_text ${getLikeOperator()} ?" }.joinToString(" AND ")
+
+    /**
+     * Hakusanat sisältävät vain kirjaimia ja numeroita, joten niissä
+     * ei ole LIKE-ehdon erikoismerkkejä.
+     */
+    private fun setLikePatterns(stmt: PreparedStatement, index: Int, words: List<String>) {
+        words.forEachIndexed { i, word ->
+            stmt.setString(index + i, "%" + word.lowercase() + "%")
+        }
+    }
+
+    @Throws(SQLException::class)
+    private fun fetchIds(stmt: PreparedStatement): List<Int> =
+        stmt.executeQuery().use { rs ->
+            buildList {
+                while (rs.next()) {
+                    add(rs.getInt(1))
+                }
+            }
+        }
+}
@@ -2,6 +2,7 @@ package kirjanpito.db.sqlite
 
 import kirjanpito.db.*
 import kirjanpito.db.sql.SQLAccountDAOKt
+import kirjanpito.db.sql.SQLSearchIndexKt
 import java.sql.PreparedStatement
 import java.sql.ResultSet
 import java.sql.SQLException
@@ -63,6 +64,8 @@ class SQLiteAccountDAOKt(session: Session) : SQLAccountDAOKt() {
     @Throws(SQLException::class)
     override fun getGeneratedKey(): Int = session.insertId
     
+    override fun getSearchIndex(): SQLSearchIndexKt = SQLiteSearchIndexKt(session)
+    
     /**
      * SQLite stores vatRate as TEXT, not DECIMAL.
      */
@@ -0,0 +1,95 @@
+package kirjanpito.db.sqlite
+
+import org.sqlite.SQLiteConnection
+import org.sqlite.SQLiteErrorCode
+import java.io.File
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.sql.DriverManager
+import java.sql.SQLException
+
+/**
+ * Kopioi SQLite-tietokannan SQLiten varmuuskopiointirajapinnalla
+ * tietokannan ollessa käytössä.
+ *
+ * Kopiointi tehdään omalla yhteydellä [pagesPerStep] sivua kerrallaan.
+ * Lukitus vapautetaan askelten välillä, joten muut yhteydet voivat
+ * jatkaa kirjoittamista. Jos toinen yhteys muuttaa tietokantaa kesken
+ * kopioinnin, SQLite aloittaa kopioinnin alusta, joten kopio on aina
+ * eheä tilannekuva vahvistetuista muutoksista. Kopio kirjoitetaan
+ * ensin väliaikaiseen tiedostoon, joten keskeneräistä kopiota ei
+ * koskaan näy kohdetiedostona.
+ */
+class SQLiteBackup @JvmOverloads constructor(
+    private val source: File,
+    private val pagesPerStep: Int = DEFAULT_PAGES_PER_STEP,
+    private val stepDelayMillis: Long = DEFAULT_STEP_DELAY
+) {
+    companion object {
+        /** Oletuksena kopioidaan 1 Mt kerrallaan 4 kt:n sivuilla. */
+        const val DEFAULT_PAGES_PER_STEP = 256
+
+        /** Tauko askelten välillä millisekunteina. */
+        const val DEFAULT_STEP_DELAY = 5L
+
+        /* Kuinka monta kertaa ja kuinka pitkin väliajoin lukittua
+         * tietokantaa yritetään uudelleen. */
+        private const val BUSY_SLEEP = 100
+        private const val BUSY_RETRIES = 50
+    }
+
+    /**
+     * Ilmoittaa kopioinnin edistymisestä jokaisen askeleen jälkeen.
+     */
+    fun interface ProgressListener {
+        /**
+         * @param remaining kopioimatta olevien sivujen määrä
+         * @param pageCount sivujen kokonaismäärä
+         */
+        fun progress(remaining: Int, pageCount: Int)
+    }
+
+    /**
+     * Kopioi tietokannan tiedostoon [destination].
+     *
+     * @param destination kohdetiedosto, joka korvataan
+     * @param listener edistymisen kuuntelija tai `null`
+     * @throws SQLException jos kopiointi epäonnistuu
+     * @throws IOException jos kopion siirtäminen paikalleen epäonnistuu
+     */
+    @JvmOverloads
+    @Throws(SQLException::class, IOException::class)
+    fun copyTo(destination: File, listener: ProgressListener? = null) {
+        val temp = File(destination.absoluteFile.parentFile, destination.name + ".tmp")
+        Files.deleteIfExists(temp.toPath())
+
+        try {
+            DriverManager.getConnection("jdbc:sqlite:" + source.absolutePath).use { conn ->
+                val db = conn.unwrap(SQLiteConnection::class.java).database
+                val rc = db.backup("main", temp.absolutePath, { remaining, pageCount ->
+                    listener?.progress(remaining, pageCount)
+
+                    /* Tauko antaa kirjoittajalle vuoron askelten välillä. */
+                    if (remaining > 0 && stepDelayMillis > 0) {
+                        Thread.sleep(stepDelayMillis)
+                    }
+                }, BUSY_SLEEP, BUSY_RETRIES, pagesPerStep)
+
+                if (rc != SQLiteErrorCode.SQLITE_OK.code) {
+                    throw SQLException("Tietokannan kopiointi epäonnistui (virhekoodi $rc)")
+                }
+            }
+
+            try {
+                Files.move(temp.toPath(), destination.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(temp.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath())
+        }
+    }
+}
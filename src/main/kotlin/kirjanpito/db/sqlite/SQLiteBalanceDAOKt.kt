@@ -0,0 +1,17 @@
+package kirjanpito.db.sqlite
+
+import kirjanpito.db.*
+import kirjanpito.db.sql.SQLBalanceDAOKt
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * SQLite-specific implementation of Balance DAO.
+ */
+class SQLiteBalanceDAOKt(session: Session) : SQLBalanceDAOKt() {
+    private val session: Session = session
+
+    @Throws(SQLException::class)
+    override fun prepareStatement(sql: String): PreparedStatement =
+        session.prepareStatement(sql)
+}
@@ -1,9 +1,8 @@
 package kirjanpito.db.sqlite
 
 import kirjanpito.db.*
+import kirjanpito.util.AppSettings
 import java.io.File
-import java.io.FileInputStream
-import java.io.FileOutputStream
 import java.io.IOException
 import java.sql.Connection
 import java.sql.DriverManager
@@ -25,6 +24,8 @@ class SQLiteDataSourceKt : DataSource {
     private var url: String? = null
     private var file: File? = null
     private var conn: Connection? = null
+    private var statementCache: StatementCache? = null
+    private var readerPool: ConnectionPool? = null
 
     companion object {
         private const val JDBC_DRIVER_CLASS = "org.sqlite.JDBC"
@@ -48,20 +49,31 @@ class SQLiteDataSourceKt : DataSource {
         val tablesExist = file!!.exists()
 
         try {
+            val options = SQLiteTuning.Options.fromSettings(AppSettings.getInstance())
             conn = DriverManager.getConnection(url)
+            SQLiteTuning.configureWriter(conn!!, options)
             conn!!.autoCommit = false
+            statementCache = StatementCache(conn!!)
 
             if (tablesExist) {
                 upgradeDatabase(conn!!, file!!)
             } else {
                 createTables(conn!!)
             }
+
+            readerPool = SQLiteTuning.createReaderPool(url, options)
         } catch (e: SQLException) {
             throw DataAccessException(e.message ?: "SQL error", e)
         }
     }
 
     override fun close() {
+        readerPool?.close()
+        readerPool = null
+
+        statementCache?.close()
+        statementCache = null
+
         try {
             conn?.close()
         } catch (e: SQLException) {
@@ -69,11 +81,12 @@ class SQLiteDataSourceKt : DataSource {
         }
     }
 
+    /**
+     * Varmuuskopioi tietokannan sulkematta tietokantayhteyttä.
+     */
     @Throws(DataAccessException::class)
     override fun backup() {
-        close()
         backupDatabase(file!!)
-        open(url!!, null, null)
     }
 
     override fun getAccountDAO(session: Session): AccountDAO =
@@ -88,6 +101,9 @@ class SQLiteDataSourceKt : DataSource {
     override fun getEntryDAO(session: Session): EntryDAO =
         SQLiteEntryDAOKt(session)
 
+    override fun getBalanceDAO(session: Session): BalanceDAO =
+        SQLiteBalanceDAOKt(session)
+
     override fun getPeriodDAO(session: Session): PeriodDAO =
         SQLitePeriodDAOKt(session)
 
@@ -108,9 +124,27 @@ class SQLiteDataSourceKt : DataSource {
 
     @Throws(DataAccessException::class)
     override fun openSession(): Session {
-        return SQLiteSessionKt(conn!!)
+        return SQLiteSessionKt(conn!!, statementCache)
+    }
+
+    /**
+     * Avaa istunnon lukijayhteydellä. Lukijayhteydet ovat käytössä
+     * sekä WAL-tilassa että rollback-journalin kanssa.
+     */
+    @Throws(DataAccessException::class)
+    override fun openReadOnlySession(): Session {
+        val pool = readerPool ?: return openSession()
+
+        // Lukijayhteydet ovat valmiiksi vain luku -tilassa (query_only)
+        return try {
+            SQLiteSessionKt(pool, pool.borrow())
+        } catch (e: SQLException) {
+            throw DataAccessException(e.message ?: "SQL error", e)
+        }
     }
 
+    override fun hasReaderConnections(): Boolean = readerPool != null
+
     @Throws(DataAccessException::class)
     private fun createTables(conn: Connection) {
         try {
@@ -215,7 +249,30 @@ class SQLiteDataSourceKt : DataSource {
                 version = 14
             }
 
-            // upgrade14to15 - POISTETTU: PDF-liitteet tiedostoina, ei tietokantaan
+            if (version == 14) {
+                // upgrade14to15 - POISTETTU: PDF-liitteet tiedostoina, ei tietokantaan
+                version = 15
+            }
+
+            if (version == 15) {
+                backupDatabase(file)
+                DatabaseUpgradeUtil.upgrade15to16(conn, stmt)
+                version = 16
+            }
+
+            if (version == 16) {
+                backupDatabase(file)
+                DatabaseUpgradeUtil.upgrade16to17(conn, stmt)
+                version = 17
+            }
+
+            if (version == 17) {
+                backupDatabase(file)
+                upgrade17to18(conn, stmt)
+                version = 18
+            }
+
+            DatabaseUpgradeUtil.createMissingIndexes(conn)
 
             stmt.close()
         } catch (e: Exception) {
@@ -261,6 +318,17 @@ class SQLiteDataSourceKt : DataSource {
         logger.info("Tietokannan päivittäminen versioon 3 onnistui")
     }
 
+    @Throws(SQLException::class)
+    private fun upgrade17to18(conn: Connection, stmt: Statement) {
+        stmt.execute("CREATE VIRTUAL TABLE document_search USING fts5(search_text, period_id UNINDEXED)")
+        SQLiteSearchIndexKt(SQLiteSessionKt(conn)).rebuild()
+        stmt.executeUpdate("UPDATE settings SET version=18")
+        conn.commit()
+
+        val logger = Logger.getLogger("kirjanpito.db.sqlite")
+        logger.info("Tietokannan päivittäminen versioon 18 onnistui")
+    }
+
     private fun backupDatabase(file: File) {
         val dir = file.parentFile
         val dateFormat = SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss")
@@ -274,23 +342,12 @@ class SQLiteDataSourceKt : DataSource {
         logger.severe("Varmuuskopioidaan tietokanta, $file -> $destination")
 
         try {
-            copyFile(file, destination)
+            SQLiteBackup(file).copyTo(destination)
+        } catch (e: SQLException) {
+            logger.log(Level.SEVERE, "Tietokannan varmuuskopiointi epäonnistui", e)
         } catch (e: IOException) {
             logger.log(Level.SEVERE, "Tietokannan varmuuskopiointi epäonnistui", e)
         }
     }
-
-    @Throws(IOException::class)
-    private fun copyFile(src: File, dst: File) {
-        FileInputStream(src).use { input ->
-            FileOutputStream(dst).use { output ->
-                val buf = ByteArray(1024)
-                var len: Int
-                while (input.read(buf).also { len = it } > 0) {
-                    output.write(buf, 0, len)
-                }
-            }
-        }
-    }
 }
 
@@ -2,6 +2,7 @@ package kirjanpito.db.sqlite
 
 import kirjanpito.db.*
 import kirjanpito.db.sql.SQLDocumentDAOKt
+import kirjanpito.db.sql.SQLSearchIndexKt
 import java.sql.PreparedStatement
 import java.sql.SQLException
 
@@ -44,6 +45,14 @@ class SQLiteDocumentDAOKt(session: Session) : SQLDocumentDAOKt() {
             LIMIT ? OFFSET ?
         """
         
+        private const val SELECT_LAST_BY_PERIOD_ID_AND_NUMBER = """
+            SELECT id, number, period_id, date 
+            FROM document 
+            WHERE period_id = ? AND number BETWEEN ? AND ? 
+            ORDER BY number DESC 
+            LIMIT ?
+        """
+        
         private const val SELECT_COUNT_BY_PERIOD_ID_AND_NUMBER = """
             SELECT count(*) 
             FROM document 
@@ -59,17 +68,16 @@ class SQLiteDocumentDAOKt(session: Session) : SQLDocumentDAOKt() {
         
         private const val SELECT_COUNT_BY_PERIOD_ID_AND_PHRASE = """
             SELECT count(*) 
-            FROM document d 
-            WHERE d.period_id = ? 
-            AND (SELECT count(*) FROM entry e WHERE e.document_id = d.id AND e.description LIKE ?) > 0
+            FROM document_search s 
+            WHERE s.period_id = ? AND document_search MATCH ?
         """
         
         private const val SELECT_BY_PERIOD_ID_AND_PHRASE = """
-            SELECT d.id, d.number, d.period_id, d.date 
-            FROM document d 
-            WHERE d.period_id = ? 
-            AND (SELECT count(*) FROM entry e WHERE e.document_id = d.id AND e.description LIKE ?) > 0 
-            ORDER BY d.number 
+            SELECT d.id, d.number, d.period_id, d.date, count(*) OVER () 
+            FROM document_search s 
+            INNER JOIN document d ON d.id = s.rowid 
+            WHERE s.period_id = ? AND document_search MATCH ? 
+            ORDER BY s.rank, d.number 
             LIMIT ? OFFSET ?
         """
         
@@ -85,6 +93,12 @@ class SQLiteDocumentDAOKt(session: Session) : SQLDocumentDAOKt() {
             VALUES (?, ?, ?)
         """
         
+        private const val BATCH_INSERT = """
+            INSERT INTO document (number, period_id, date) 
+            VALUES (?, ?, ?) 
+            RETURNING id
+        """
+        
         private const val UPDATE = """
             UPDATE document 
             SET number=?, period_id=?, date=? 
@@ -118,6 +132,10 @@ class SQLiteDocumentDAOKt(session: Session) : SQLDocumentDAOKt() {
     override fun getSelectByPeriodIdAndNumberQuery(): PreparedStatement = 
         session.prepareStatement(SELECT_BY_PERIOD_ID_AND_NUMBER)
     
+    @Throws(SQLException::class)
+    override fun getSelectLastByPeriodIdAndNumberQuery(): PreparedStatement = 
+        session.prepareStatement(SELECT_LAST_BY_PERIOD_ID_AND_NUMBER)
+    
     @Throws(SQLException::class)
     override fun getSelectCountByPeriodIdAndNumberQuery(): PreparedStatement = 
         session.prepareStatement(SELECT_COUNT_BY_PERIOD_ID_AND_NUMBER)
@@ -142,6 +160,10 @@ class SQLiteDocumentDAOKt(session: Session) : SQLDocumentDAOKt() {
     override fun getInsertQuery(): PreparedStatement = 
         session.prepareStatement(INSERT)
     
+    @Throws(SQLException::class)
+    override fun getBatchInsertQuery(): PreparedStatement = 
+        session.prepareStatement(BATCH_INSERT)
+    
     @Throws(SQLException::class)
     override fun getUpdateQuery(): PreparedStatement = 
         session.prepareStatement(UPDATE)
@@ -160,5 +182,9 @@ class SQLiteDocumentDAOKt(session: Session) : SQLDocumentDAOKt() {
     
     @Throws(SQLException::class)
     override fun getGeneratedKey(): Int = session.insertId
+    
+    override fun getBalanceDAO(): BalanceDAO = SQLiteBalanceDAOKt(session)
+    
+    override fun getSearchIndex(): SQLSearchIndexKt = SQLiteSearchIndexKt(session)
 }
 
@@ -2,6 +2,7 @@ package kirjanpito.db.sqlite
 
 import kirjanpito.db.*
 import kirjanpito.db.sql.SQLEntryDAOKt
+import kirjanpito.db.sql.SQLSearchIndexKt
 import java.math.BigDecimal
 import java.sql.PreparedStatement
 import java.sql.ResultSet
@@ -13,6 +14,7 @@ import java.sql.SQLException
  * Key differences from MySQL/PostgreSQL:
  * - amount stored as TEXT (not DECIMAL)
  * - Uses last_insert_rowid() for generated keys
+ * - saveAll() reads generated keys with INSERT ... RETURNING
  * 
  * @author Tommi Helineva (original Java)
  * @author Kotlin migration by Claude
@@ -35,6 +37,12 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
             ORDER BY row_number
         """
         
+        private const val SELECT_BY_IDS = """
+            SELECT id, document_id, account_id, debit, amount, description, row_number, flags 
+            FROM entry 
+            WHERE id IN (%s)
+        """
+        
         private const val SELECT_BY_PERIOD_ID_ORDER_BY_NUMBER = """
             SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags 
             FROM entry e 
@@ -69,6 +77,15 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
             ORDER BY a.number, d.date, d.number, e.row_number
         """
         
+        private const val SELECT_WITH_DOCUMENTS = """
+            SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags, d.number, d.date 
+            FROM entry e 
+            INNER JOIN account a ON a.id = e.account_id 
+            INNER JOIN document d ON d.id = e.document_id 
+            WHERE %c 
+            ORDER BY %s
+        """
+        
         private const val SELECT_BY_ACCOUNT_ID = """
             SELECT e.id, e.document_id, e.account_id, e.debit, e.amount, e.description, e.row_number, e.flags 
             FROM entry e 
@@ -125,11 +142,39 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
             ORDER BY e.document_id, e.row_number
         """
         
+        private const val SUM_BY_DATE = """
+            SELECT e.account_id,
+            SUM(CASE WHEN e.debit THEN ROUND(e.amount * 100) ELSE 0 END),
+            SUM(CASE WHEN e.debit THEN 0 ELSE ROUND(e.amount * 100) END),
+            COUNT(*)
+            FROM entry e
+            INNER JOIN document d ON d.id = e.document_id
+            WHERE d.date >= ? AND d.date <= ? AND d.number >= ? AND (e.flags & ?) = 0
+            GROUP BY e.account_id
+        """
+        
+        private const val SUM_BY_PERIOD_ID_AND_DATE = """
+            SELECT e.account_id,
+            SUM(CASE WHEN e.debit THEN ROUND(e.amount * 100) ELSE 0 END),
+            SUM(CASE WHEN e.debit THEN 0 ELSE ROUND(e.amount * 100) END),
+            COUNT(*)
+            FROM entry e
+            INNER JOIN document d ON d.id = e.document_id
+            WHERE d.period_id = ? AND d.date >= ? AND d.date <= ? AND d.number >= ? AND (e.flags & ?) = 0
+            GROUP BY e.account_id
+        """
+        
         private const val INSERT = """
             INSERT INTO entry (document_id, account_id, debit, amount, description, row_number, flags) 
             VALUES (?, ?, ?, ?, ?, ?, ?)
         """
         
+        private const val BATCH_INSERT = """
+            INSERT INTO entry (document_id, account_id, debit, amount, description, row_number, flags) 
+            VALUES (?, ?, ?, ?, ?, ?, ?) 
+            RETURNING id
+        """
+        
         private const val UPDATE = """
             UPDATE entry 
             SET document_id=?, account_id=?, debit=?, amount=?, description=?, row_number=?, flags=? 
@@ -149,8 +194,12 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
         session.prepareStatement(SELECT_BY_DOCUMENT_ID)
     
     @Throws(SQLException::class)
-    override fun getSelectByDocumentIdsQuery(documentIds: String): PreparedStatement = 
-        session.prepareStatement(SELECT_BY_DOCUMENT_IDS.replace("%s", documentIds))
+    override fun getSelectByDocumentIdsQuery(placeholders: String): PreparedStatement = 
+        session.prepareStatement(SELECT_BY_DOCUMENT_IDS.replace("%s", placeholders))
+    
+    @Throws(SQLException::class)
+    override fun getSelectByIdsQuery(placeholders: String): PreparedStatement = 
+        session.prepareStatement(SELECT_BY_IDS.replace("%s", placeholders))
     
     @Throws(SQLException::class)
     override fun getSelectByPeriodIdOrderByNumberQuery(): PreparedStatement = 
@@ -168,6 +217,10 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
     override fun getSelectByPeriodIdOrderByAccountAndDateQuery(): PreparedStatement = 
         session.prepareStatement(SELECT_BY_PERIOD_ID_ORDER_BY_ACCOUNT_AND_DATE)
     
+    @Throws(SQLException::class)
+    override fun getSelectWithDocumentsQuery(condition: String, orderBy: String): PreparedStatement = 
+        session.prepareStatement(SELECT_WITH_DOCUMENTS.replace("%c", condition).replace("%s", orderBy))
+    
     @Throws(SQLException::class)
     override fun getSelectByAccountIdQuery(): PreparedStatement = 
         session.prepareStatement(SELECT_BY_ACCOUNT_ID)
@@ -196,10 +249,22 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
     override fun getSelectByPeriodIdAndNumberQuery(): PreparedStatement = 
         session.prepareStatement(SELECT_BY_PERIOD_ID_AND_NUMBER)
     
+    @Throws(SQLException::class)
+    override fun getSumByDateQuery(): PreparedStatement = 
+        session.prepareStatement(SUM_BY_DATE)
+    
+    @Throws(SQLException::class)
+    override fun getSumByPeriodIdAndDateQuery(): PreparedStatement = 
+        session.prepareStatement(SUM_BY_PERIOD_ID_AND_DATE)
+    
     @Throws(SQLException::class)
     override fun getInsertQuery(): PreparedStatement = 
         session.prepareStatement(INSERT)
     
+    @Throws(SQLException::class)
+    override fun getBatchInsertQuery(): PreparedStatement = 
+        session.prepareStatement(BATCH_INSERT)
+    
     @Throws(SQLException::class)
     override fun getUpdateQuery(): PreparedStatement = 
         session.prepareStatement(UPDATE)
@@ -215,6 +280,10 @@ class SQLiteEntryDAOKt(session: Session) : SQLEntryDAOKt() {
     @Throws(SQLException::class)
     override fun getGeneratedKey(): Int = session.insertId
     
+    override fun getBalanceDAO(): BalanceDAO = SQLiteBalanceDAOKt(session)
+    
+    override fun getSearchIndex(): SQLSearchIndexKt = SQLiteSearchIndexKt(session)
+    
     /**
      * SQLite stores amount as TEXT, not DECIMAL.
      */
@@ -0,0 +1,29 @@
+package kirjanpito.db.sqlite
+
+import kirjanpito.db.*
+import kirjanpito.db.sql.SQLSearchIndexKt
+import java.sql.PreparedStatement
+import java.sql.SQLException
+
+/**
+ * SQLite-toteutus tositteiden hakuhakemistosta. Hakemisto on
+ * FTS5-virtuaalitaulu, jonka rowid on tositteen tunniste.
+ */
+class SQLiteSearchIndexKt(session: Session) : SQLSearchIndexKt() {
+    private val session: Session = session
+
+    @Throws(SQLException::class)
+    override fun prepareStatement(sql: String): PreparedStatement =
+        session.prepareStatement(sql)
+
+    override fun getInsertSql(): String =
+        "INSERT INTO document_search (rowid, period_id, search_text) VALUES (?, ?, ?)"
+
+    override fun getDeleteSql(): String =
+        "DELETE FROM document_search WHERE rowid = ?"
+
+    override fun createMatchQuery(words: List<String>): String =
+        words.joinToString(" ") { "\"$it\"*" }
+
+    override fun getDocumentIdColumn(): String = "rowid"
+}
@@ -14,17 +14,39 @@ import java.util.logging.Logger
  * @author Tommi Helineva (original Java)
  * @author Kotlin migration by Claude
  */
-class SQLiteSessionKt(private val conn: Connection) : Session {
+class SQLiteSessionKt @JvmOverloads constructor(
+    private val conn: Connection,
+    private val statementCache: StatementCache? = null
+) : Session {
     
     companion object {
         private val logger = Logger.getLogger("kirjanpito.db.sqlite")
     }
     
+    private var pool: ConnectionPool? = null
+    private var pooled: ConnectionPool.PooledConnection? = null
+    
+    /**
+     * Luo istunnon altaasta varatulle yhteydelle. Yhteys palautetaan
+     * altaaseen, kun istunto päätetään.
+     */
+    constructor(pool: ConnectionPool, pooled: ConnectionPool.PooledConnection) :
+        this(pooled.connection, pooled.statementCache) {
+        this.pool = pool
+        this.pooled = pooled
+    }
+    
     /**
      * Palauttaa tietokantayhteyden.
      */
     fun getConnection(): Connection = conn
     
+    /**
+     * Palauttaa kyselyvälimuistin, jonka osuma- ja ohituslaskureista
+     * näkee välimuistin hyödyn.
+     */
+    fun getStatementCache(): StatementCache? = statementCache
+    
     @Throws(DataAccessException::class)
     override fun commit() {
         try {
@@ -44,13 +66,15 @@ class SQLiteSessionKt(private val conn: Connection) : Session {
     }
     
     override fun close() {
-        // SQLiteSession doesn't close connection (managed by DataSource)
+        // Kirjoitusyhteyttä hallinnoi DataSource, lukijayhteydet palautetaan altaaseen
+        pooled?.let { pool?.release(it) }
+        pooled = null
     }
     
     @Throws(SQLException::class)
     fun prepareStatement(sql: String): PreparedStatement {
         logger.log(Level.FINER, "Suoritetaan tietokantakysely: $sql")
-        return conn.prepareStatement(sql)
+        return statementCache?.prepareStatement(sql) ?: conn.prepareStatement(sql)
     }
     
     /**
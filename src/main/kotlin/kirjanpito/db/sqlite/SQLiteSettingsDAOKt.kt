@@ -22,7 +22,7 @@ class SQLiteSettingsDAOKt(session: Session) : SQLSettingsDAOKt() {
         
         private const val INSERT = """
             INSERT INTO settings (version, name, business_id, current_period_id, document_type_id, properties) 
-            VALUES (15, ?, ?, ?, ?, ?)
+            VALUES (18, ?, ?, ?, ?, ?)
         """
         
         private const val UPDATE = """
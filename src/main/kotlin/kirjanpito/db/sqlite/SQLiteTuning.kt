@@ -0,0 +1,179 @@
+package kirjanpito.db.sqlite
+
+import kirjanpito.db.ConnectionPool
+import kirjanpito.util.AppSettings
+import java.io.File
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * SQLite-yhteyksien asetukset.
+ *
+ * Tietolähde käyttää yhtä kirjoitusyhteyttä ja raporteille sekä
+ * taustalla tehtävälle esihaulle erillistä lukijayhteyksien allasta.
+ * WAL-tilassa (write-ahead log) lukijat eivät estä kirjoittajaa eikä
+ * kirjoittaja lukijoita. Oletuksena käytetään tavallista rollback-journalia,
+ * koska WAL-tila ei toimi verkkolevyillä ja tiedoston kopioijan on ensin
+ * siirrettävä loki tietokantaan ([checkpoint]). Rollback-journalin kanssa
+ * lukija pitää jaettua lukkoa vain kyselyn ajan, ja tallennus odottaa
+ * keskeneräisen kyselyn päättymistä enintään [BUSY_TIMEOUT] millisekuntia.
+ */
+object SQLiteTuning {
+    private val logger = Logger.getLogger("kirjanpito.db.sqlite")
+
+    /**
+     * Kuinka kauan lukittua tietokantaa odotetaan millisekunteina.
+     */
+    private const val BUSY_TIMEOUT = 5000
+
+    /**
+     * Yhteyksien asetukset.
+     *
+     * @property wal käytetäänkö WAL-tilaa
+     * @property cacheSizeKiB sivuvälimuistin koko kilotavuina
+     * @property mmapSizeMiB muistiin kuvattavan alueen koko megatavuina
+     * @property readers lukijayhteyksien enimmäismäärä; vähintään yksi
+     */
+    data class Options @JvmOverloads constructor(
+        val wal: Boolean = false,
+        val cacheSizeKiB: Int = 16384,
+        val mmapSizeMiB: Int = 64,
+        val readers: Int = 2
+    ) {
+        companion object {
+            /**
+             * Lukee asetukset ohjelman asetuksista.
+             */
+            @JvmStatic
+            fun fromSettings(settings: AppSettings): Options {
+                val defaults = Options()
+
+                return Options(
+                    wal = settings.getBoolean("database.sqlite.wal", defaults.wal),
+                    cacheSizeKiB = settings.getInt("database.sqlite.cache-size", defaults.cacheSizeKiB),
+                    mmapSizeMiB = settings.getInt("database.sqlite.mmap-size", defaults.mmapSizeMiB),
+                    readers = settings.getInt("database.sqlite.readers", defaults.readers)
+                )
+            }
+        }
+    }
+
+    /**
+     * Asettaa kirjoitusyhteyden journal-tilan ja välimuistit. Journal-tilaa
+     * ei voi vaihtaa transaktion aikana, joten metodia on kutsuttava ennen
+     * kuin automaattinen vahvistus poistetaan käytöstä.
+     */
+    @JvmStatic
+    @Throws(SQLException::class)
+    fun configureWriter(conn: Connection, options: Options) {
+        conn.createStatement().use { stmt ->
+            stmt.execute("PRAGMA busy_timeout = $BUSY_TIMEOUT")
+
+            if (options.wal) {
+                stmt.execute("PRAGMA journal_mode = WAL")
+                /* WAL-tilassa NORMAL ei voi rikkoa tietokantaa, vaikka
+                 * virta katkeaisi; vain viimeisin transaktio voi kadota. */
+                stmt.execute("PRAGMA synchronous = NORMAL")
+            } else {
+                stmt.execute("PRAGMA journal_mode = DELETE")
+            }
+
+            configureCache(stmt, options)
+        }
+    }
+
+    /**
+     * Asettaa lukijayhteyden välimuistit ja estää kirjoittamisen.
+     */
+    @JvmStatic
+    @Throws(SQLException::class)
+    fun configureReader(conn: Connection, options: Options) {
+        conn.createStatement().use { stmt ->
+            stmt.execute("PRAGMA busy_timeout = $BUSY_TIMEOUT")
+            stmt.execute("PRAGMA query_only = ON")
+            configureCache(stmt, options)
+        }
+    }
+
+    private fun configureCache(stmt: Statement, options: Options) {
+        /* Negatiivinen cache_size tarkoittaa kokoa kilotavuina. */
+        stmt.execute("PRAGMA cache_size = -${options.cacheSizeKiB}")
+        stmt.execute("PRAGMA mmap_size = ${options.mmapSizeMiB.toLong() * 1024 * 1024}")
+        stmt.execute("PRAGMA temp_store = MEMORY")
+    }
+
+    /**
+     * Luo lukijayhteyksien altaan. Allas luodaan myös rollback-journalin
+     * kanssa, jotta raportteja ja esihakua ei tarvitse lukea
+     * kirjoitusyhteydellä, jonka transaktio voi olla kesken.
+     *
+     * @return yhteysallas
+     */
+    @JvmStatic
+    @Throws(SQLException::class)
+    fun createReaderPool(url: String, options: Options): ConnectionPool {
+        val config = ConnectionPool.Config(
+            minSize = 0,
+            maxSize = maxOf(1, options.readers),
+            idleTimeoutMillis = 60_000,
+            validationIntervalMillis = Long.MAX_VALUE
+        )
+
+        return ConnectionPool({
+            val conn = DriverManager.getConnection(url)
+
+            try {
+                configureReader(conn, options)
+            } catch (e: SQLException) {
+                conn.close()
+                throw e
+            }
+
+            conn
+        }, config)
+    }
+
+    /**
+     * Siirtää WAL-lokin sisällön tietokantatiedostoon ja tyhjentää lokin.
+     *
+     * @return `true`, jos koko loki siirrettiin
+     */
+    @JvmStatic
+    @Throws(SQLException::class)
+    fun checkpoint(conn: Connection): Boolean {
+        conn.createStatement().use { stmt ->
+            stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)").use { rs ->
+                /* Ensimmäinen sarake on 1, jos lukija tai kirjoittaja
+                 * esti siirron. */
+                return !rs.next() || rs.getInt(1) == 0
+            }
+        }
+    }
+
+    /**
+     * Siirtää tietokantatiedoston WAL-lokin tietokantaan ennen kuin
+     * tiedosto kopioidaan. Jos lokia ei ole, mitään ei tehdä.
+     *
+     * @return `true`, jos tiedoston voi kopioida sellaisenaan
+     */
+    @JvmStatic
+    fun checkpoint(file: File): Boolean {
+        if (!File(file.path + "-wal").exists()) {
+            return true
+        }
+
+        return try {
+            DriverManager.getConnection("jdbc:sqlite:" + file.absolutePath).use { conn ->
+                conn.createStatement().use { it.execute("PRAGMA busy_timeout = $BUSY_TIMEOUT") }
+                checkpoint(conn)
+            }
+        } catch (e: SQLException) {
+            logger.log(Level.WARNING, "WAL-lokin siirtäminen tietokantaan epäonnistui", e)
+            false
+        }
+    }
+}
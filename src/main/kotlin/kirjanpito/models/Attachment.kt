@@ -12,7 +12,7 @@ import java.time.LocalDateTime
  * @property documentId Viittaus tositteeseen
  * @property filename Alkuperäinen tiedostonimi
  * @property contentType MIME-tyyppi (oletus: "application/pdf")
- * @property data PDF-data tavuina
+ * @property data PDF-data tavuina (tyhjä, jos liite on haettu ilman sisältöä)
  * @property fileSize Tiedoston koko tavuina
  * @property pageCount Sivumäärä (lasketaan tallennuksen yhteydessä)
  * @property createdDate Lisäyspäivämäärä
@@ -36,6 +36,12 @@ data class Attachment(
      */
     val isNew: Boolean get() = id == 0
 
+    /**
+     * Tarkistaa onko PDF-data luettu muistiin. Liitelistoja varten
+     * haetaan vain liitteiden tiedot, ks. [kirjanpito.db.AttachmentDAO.findMetadataByDocumentId].
+     */
+    val isContentLoaded: Boolean get() = data.size == fileSize
+
     /**
      * Tarkistaa onko liite liian suuri.
      */
@@ -109,6 +115,12 @@ data class Attachment(
          */
         const val WARNING_FILE_SIZE = 5 * 1024 * 1024
 
+        /**
+         * Ilman sisältöä haettujen liitteiden data.
+         */
+        @JvmField
+        val NO_DATA = ByteArray(0)
+
         /**
          * Luo Attachment-olion tiedostosta.
          * 
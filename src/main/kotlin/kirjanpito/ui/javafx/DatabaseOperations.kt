@@ -166,6 +166,7 @@ object DatabaseOperations {
             try {
                 val documentDAO = dataSource.getDocumentDAO(session)
                 documentDAO.saveAsync(document)
+                session.commit()
                 
                 withUI {
                     onSuccess()
@@ -194,6 +195,7 @@ object DatabaseOperations {
             try {
                 val entryDAO = dataSource.getEntryDAO(session)
                 entryDAO.saveAsync(entry)
+                session.commit()
                 
                 withUI {
                     onSuccess()
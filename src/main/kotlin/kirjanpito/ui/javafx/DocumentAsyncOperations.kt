@@ -97,10 +97,9 @@ object DocumentAsyncOperations {
                         entryDAO.delete(entry.id)
                     }
                     
-                    // Save/update entries
-                    entriesToSave.forEach { entry ->
-                        entryDAO.save(entry)
-                    }
+                    // Save/update entries in one batch so that the search
+                    // index is updated once per document, not once per entry
+                    entryDAO.saveAll(entriesToSave)
                     
                     // Commit transaction
                     session.commit()
@@ -1,5 +1,7 @@
 package kirjanpito.ui.javafx.dialogs
 
+import javafx.application.Platform
+import javafx.concurrent.Worker
 import javafx.geometry.Insets
 import javafx.geometry.Pos
 import javafx.print.PrinterJob
@@ -8,12 +10,18 @@ import javafx.scene.control.*
 import javafx.scene.layout.*
 import javafx.scene.paint.Color
 import javafx.scene.shape.SVGPath
+import javafx.scene.web.WebEngine
 import javafx.scene.web.WebView
 import javafx.stage.FileChooser
 import javafx.stage.Modality
 import javafx.stage.Stage
 import javafx.stage.Window
 import kirjanpito.db.*
+import kirjanpito.util.CoroutineUtils.launchDB
+import kirjanpito.util.CoroutineUtils.withUI
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.isActive
 import org.apache.pdfbox.pdmodel.PDDocument
 import org.apache.pdfbox.pdmodel.PDPage
 import org.apache.pdfbox.pdmodel.PDPageContentStream
@@ -21,7 +29,8 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle
 import org.apache.pdfbox.pdmodel.font.PDType1Font
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts
 import java.io.File
-import java.io.PrintWriter
+import java.io.StringWriter
+import java.io.Writer
 import java.math.BigDecimal
 import java.text.DecimalFormat
 import java.text.SimpleDateFormat
@@ -29,6 +38,10 @@ import java.util.*
 
 /**
  * Moderni JavaFX raporttidialogi WebView + HTML/CSS -pohjaisena.
+ *
+ * Raportti luodaan taustasäikeessä sivuina ([ReportHtmlGenerator]), ja
+ * WebView'hun ladataan kerrallaan vain yksi sivu. Raportin tai tilikauden
+ * vaihtaminen peruu keskeneräisen raportin luonnin.
  */
 class ReportDialog private constructor(
     owner: Window?,
@@ -48,8 +61,21 @@ class ReportDialog private constructor(
 
     private val dialog = Stage()
     private val webView = WebView()
-    private var htmlContent = ""
+    private var currentHtml = ""
     private lateinit var periodCombo: ComboBox<Period>
+    private lateinit var typeCombo: ComboBox<ReportType>
+    private lateinit var prevPageBtn: Button
+    private lateinit var nextPageBtn: Button
+    private lateinit var pageLabel: Label
+    private lateinit var progressIndicator: ProgressIndicator
+
+    // Luotavan raportin sivut ja taustatyö
+    private var pages: ReportPages? = null
+    private var generation: Job? = null
+    private var pageIndex = 0
+
+    // Tulostukseen käytettävä WebEngine pidetään tallessa latauksen ajan
+    private var printEngine: WebEngine? = null
 
     // Reference to period for report generation
     private val period: Period get() = currentPeriod
@@ -67,6 +93,11 @@ class ReportDialog private constructor(
         createContent()
         generateReport()
         setupAccountLinkHandler()
+
+        dialog.setOnHidden {
+            generation?.cancel()
+            pages?.close()
+        }
     }
     
     private fun loadAppIcon() {
@@ -102,7 +133,7 @@ class ReportDialog private constructor(
                     onOpenLedger.invoke(account)
                 }
                 // Prevent navigation
-                webView.engine.loadContent(htmlContent)
+                webView.engine.loadContent(currentHtml)
             }
         }
     }
@@ -139,6 +170,27 @@ class ReportDialog private constructor(
             setOnAction { exportToHtml() }
         }
 
+        // Report type selection
+        val typeLabel = Label("Raportti:").apply {
+            style = "-fx-text-fill: #495057; -fx-padding: 0 0 0 20;"
+        }
+
+        typeCombo = ComboBox<ReportType>().apply {
+            items.addAll(ReportType.values())
+
+            converter = object : javafx.util.StringConverter<ReportType>() {
+                override fun toString(type: ReportType?): String = type?.displayName ?: ""
+                override fun fromString(string: String?): ReportType? = null
+            }
+
+            value = reportType
+
+            setOnAction {
+                reportType = value
+                generateReport()
+            }
+        }
+
         // Period selection
         val periodLabel = Label("Tilikausi:").apply {
             style = "-fx-text-fill: #495057; -fx-padding: 0 0 0 20;"
@@ -177,416 +229,188 @@ class ReportDialog private constructor(
             setOnAction { dialog.close() }
         }
 
-        toolbar.children.addAll(printBtn, exportPdfBtn, exportHtmlBtn, periodLabel, periodCombo, spacer, closeBtn)
-
-        // WebView for HTML report
-        VBox.setVgrow(webView, Priority.ALWAYS)
-
-        root.children.addAll(toolbar, webView)
+        toolbar.children.addAll(printBtn, exportPdfBtn, exportHtmlBtn, typeLabel, typeCombo,
+            periodLabel, periodCombo, spacer, closeBtn)
 
-        dialog.scene = Scene(root, 950.0, 750.0)
-    }
-
-    private fun generateReport() {
-        htmlContent = buildString {
-            append(HTML_HEAD)
-            append("<body>")
-            append(generateHeader())
-
-            try {
-                when (reportType) {
-                    ReportType.JOURNAL -> append(generateJournal())
-                    ReportType.LEDGER -> append(generateLedger())
-                    ReportType.INCOME_STATEMENT -> append(generateIncomeStatement())
-                    ReportType.BALANCE_SHEET -> append(generateBalanceSheet())
-                }
-            } catch (e: Exception) {
-                append("<div class='error'>Virhe raportin generoinnissa: ${e.message}</div>")
-            }
-
-            append("</body></html>")
+        // Page navigation
+        prevPageBtn = Button("◀ Edellinen").apply {
+            style = BUTTON_STYLE_SECONDARY
+            setOnAction { showPage(pageIndex - 1) }
         }
 
-        webView.engine.loadContent(htmlContent)
-    }
-
-    private fun generateHeader(): String = """
-        <div class="header">
-            <h1>${reportType.displayName}</h1>
-            <div class="meta">
-                <span>Tilikausi: ${DATE_FORMAT.format(period.startDate)} – ${DATE_FORMAT.format(period.endDate)}</span>
-                <span>Tulostettu: ${DATE_FORMAT.format(Date())}</span>
-            </div>
-        </div>
-    """.trimIndent()
-
-    private fun generateJournal(): String = buildString {
-        val session = dataSource.openSession()
-        try {
-            val docDao = dataSource.getDocumentDAO(session)
-            val entryDao = dataSource.getEntryDAO(session)
-            
-            // DEBUG: Tulostetaan tilikauden tiedot
-            println("📊 generateJournal - period.id=${period.id}")
-            println("📊 period.startDate=${period.startDate}, period.endDate=${period.endDate}")
-            
-            val docs = docDao.getByPeriodId(period.id, 1)
-            
-            // DEBUG: Tulostetaan haettujen tositteiden tiedot
-            println("📊 Haettiin ${docs.size} tositetta period_id=${period.id}")
-            if (docs.isNotEmpty()) {
-                val firstDoc = docs.first()
-                val lastDoc = docs.last()
-                println("📊 Ensimmäinen tosite: nro=${firstDoc.number}, pvm=${firstDoc.date}")
-                println("📊 Viimeinen tosite: nro=${lastDoc.number}, pvm=${lastDoc.date}")
-            }
+        nextPageBtn = Button("Seuraava ▶").apply {
+            style = BUTTON_STYLE_SECONDARY
+            setOnAction { showPage(pageIndex + 1) }
+        }
 
-            append("""
-                <table class="report-table">
-                    <thead>
-                        <tr>
-                            <th class="num">Nro</th>
-                            <th class="date">Pvm</th>
-                            <th class="account">Tili / Selite</th>
-                            <th class="amount">Debet</th>
-                            <th class="amount">Kredit</th>
-                        </tr>
-                    </thead>
-                    <tbody>
-            """.trimIndent())
+        pageLabel = Label().apply {
+            style = "-fx-text-fill: #495057;"
+        }
 
-            var totalDebit = BigDecimal.ZERO
-            var totalCredit = BigDecimal.ZERO
+        progressIndicator = ProgressIndicator().apply {
+            setPrefSize(18.0, 18.0)
+        }
 
-            for (doc in docs) {
-                val entries = entryDao.getByDocumentId(doc.id)
-                var first = true
+        val pageBar = HBox(10.0).apply {
+            alignment = Pos.CENTER
+            children.addAll(prevPageBtn, pageLabel, nextPageBtn, progressIndicator)
+        }
 
-                for (entry in entries) {
-                    val acc = accounts.find { it.id == entry.accountId }
-                    val accLink = acc?.let { 
-                        "<a href='account:${it.number}' class='account-link'>${it.number} ${it.name.escapeHtml()}</a>" 
-                    } ?: ""
+        // WebView for HTML report
+        VBox.setVgrow(webView, Priority.ALWAYS)
 
-                    val (debitStr, creditStr) = if (entry.isDebit) {
-                        totalDebit = totalDebit.add(entry.amount)
-                        MONEY_FORMAT.format(entry.amount) to ""
-                    } else {
-                        totalCredit = totalCredit.add(entry.amount)
-                        "" to MONEY_FORMAT.format(entry.amount)
-                    }
+        root.children.addAll(toolbar, webView, pageBar)
 
-                    if (first) {
-                        append("""
-                            <tr class="entry-row">
-                                <td class="num">${doc.number}</td>
-                                <td class="date">${DATE_FORMAT.format(doc.date)}</td>
-                                <td class="account">$accLink</td>
-                                <td class="amount debit">$debitStr</td>
-                                <td class="amount credit">$creditStr</td>
-                            </tr>
-                        """.trimIndent())
-                        first = false
-                    } else {
-                        append("""
-                            <tr class="entry-row continuation">
-                                <td></td>
-                                <td></td>
-                                <td class="account">$accLink</td>
-                                <td class="amount debit">$debitStr</td>
-                                <td class="amount credit">$creditStr</td>
-                            </tr>
-                        """.trimIndent())
-                    }
+        dialog.scene = Scene(root, 950.0, 750.0)
+    }
 
-                    if (!entry.description.isNullOrBlank()) {
-                        append("""
-                            <tr class="description-row">
-                                <td colspan="2"></td>
-                                <td class="description" colspan="3">${entry.description.escapeHtml()}</td>
-                            </tr>
-                        """.trimIndent())
+    /**
+     * Aloittaa raportin luonnin taustasäikeessä. Raportti luetaan
+     * lukijayhteydellä, joten se ei estä tositteiden tallentamista.
+     * Edellinen, mahdollisesti keskeneräinen raportti perutaan ja sen
+     * sivut poistetaan.
+     */
+    private fun generateReport() {
+        generation?.cancel()
+        pages?.close()
+
+        val type = reportType
+        val store = ReportPages()
+        val generator = ReportHtmlGenerator(dataSource, currentPeriod, accounts)
+        pages = store
+        pageIndex = 0
+        dialog.title = type.displayName
+        showMessage("<div class='warning'>Luodaan raporttia…</div>")
+        updatePageControls()
+
+        generation = launchDB {
+            try {
+                generator.generate(type, store, { !isActive }) { index ->
+                    Platform.runLater {
+                        if (pages === store) onPageReady(index)
                     }
                 }
-            }
-
-            append("""
-                    </tbody>
-                    <tfoot>
-                        <tr class="total-row">
-                            <td colspan="3">YHTEENSÄ</td>
-                            <td class="amount debit">${MONEY_FORMAT.format(totalDebit)}</td>
-                            <td class="amount credit">${MONEY_FORMAT.format(totalCredit)}</td>
-                        </tr>
-                    </tfoot>
-                </table>
-            """.trimIndent())
-
-        } finally {
-            session.close()
-        }
-    }
-
-    private fun generateLedger(): String = buildString {
-        val session = dataSource.openSession()
-        try {
-            val entryDao = dataSource.getEntryDAO(session)
-            val docDao = dataSource.getDocumentDAO(session)
-
-            val byAccount = mutableMapOf<Int, MutableList<Entry>>()
-            entryDao.getByPeriodId(period.id, EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER) { entry ->
-                byAccount.getOrPut(entry.accountId) { mutableListOf() }.add(entry)
-            }
-
-            val docsById = docDao.getByPeriodId(period.id, 1).associateBy { it.id }
-
-            for (acc in accounts) {
-                val entries = byAccount[acc.id] ?: continue
-                if (entries.isEmpty()) continue
 
-                append("""
-                    <div class="account-section">
-                        <h3 class="account-header">${acc.number} ${acc.name.escapeHtml()}</h3>
-                        <table class="report-table ledger-table">
-                            <thead>
-                                <tr>
-                                    <th class="num">Nro</th>
-                                    <th class="date">Pvm</th>
-                                    <th class="description-col">Selite</th>
-                                    <th class="amount">Debet</th>
-                                    <th class="amount">Kredit</th>
-                                </tr>
-                            </thead>
-                            <tbody>
-                """.trimIndent())
-
-                var balance = BigDecimal.ZERO
-
-                for (entry in entries) {
-                    val doc = docsById[entry.documentId]
-                    val date = doc?.let { DATE_FORMAT.format(it.date) } ?: ""
-                    val docNum = doc?.number ?: 0
-
-                    val (debitStr, creditStr) = if (entry.isDebit) {
-                        balance = balance.add(entry.amount)
-                        MONEY_FORMAT.format(entry.amount) to ""
-                    } else {
-                        balance = balance.subtract(entry.amount)
-                        "" to MONEY_FORMAT.format(entry.amount)
+                withUI {
+                    if (pages === store) updatePageControls()
+                }
+            } catch (e: CancellationException) {
+                // Uusi raportti on jo aloitettu tai dialogi suljettu
+            } catch (e: Exception) {
+                withUI {
+                    if (pages === store) {
+                        showMessage("<div class='error'>Virhe raportin generoinnissa: ${e.message}</div>")
+                        progressIndicator.isVisible = false
                     }
-
-                    append("""
-                        <tr>
-                            <td class="num">$docNum</td>
-                            <td class="date">$date</td>
-                            <td class="description-col">${(entry.description ?: "").escapeHtml()}</td>
-                            <td class="amount debit">$debitStr</td>
-                            <td class="amount credit">$creditStr</td>
-                        </tr>
-                    """.trimIndent())
                 }
-
-                val balanceClass = if (balance >= BigDecimal.ZERO) "positive" else "negative"
-                append("""
-                            </tbody>
-                            <tfoot>
-                                <tr class="balance-row">
-                                    <td colspan="3">Saldo:</td>
-                                    <td colspan="2" class="balance $balanceClass">${MONEY_FORMAT.format(balance)}</td>
-                                </tr>
-                            </tfoot>
-                        </table>
-                    </div>
-                """.trimIndent())
             }
-
-        } finally {
-            session.close()
         }
     }
 
-    private fun generateIncomeStatement(): String = buildString {
-        val balances = calculateBalances()
-
-        // Income section
-        append("""
-            <div class="statement-section">
-                <h3 class="section-header income">TULOT</h3>
-                <table class="statement-table">
-        """.trimIndent())
-
-        var totalIncome = BigDecimal.ZERO
-        for (acc in accounts) {
-            if (acc.type == 3 && acc.number.startsWith("3")) {
-                val bal = (balances[acc.id] ?: BigDecimal.ZERO).negate()
-                if (bal.compareTo(BigDecimal.ZERO) != 0) {
-                    append("""
-                        <tr>
-                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
-                            <td class="amount">${MONEY_FORMAT.format(bal)}</td>
-                        </tr>
-                    """.trimIndent())
-                    totalIncome = totalIncome.add(bal)
-                }
-            }
+    private fun onPageReady(index: Int) {
+        if (index == 0) {
+            showPage(0)
+        } else {
+            updatePageControls()
         }
-
-        append("""
-                    <tr class="subtotal">
-                        <td>TULOT YHTEENSÄ</td>
-                        <td class="amount">${MONEY_FORMAT.format(totalIncome)}</td>
-                    </tr>
-                </table>
-            </div>
-        """.trimIndent())
-
-        // Expenses section
-        append("""
-            <div class="statement-section">
-                <h3 class="section-header expense">MENOT</h3>
-                <table class="statement-table">
-        """.trimIndent())
-
-        var totalExpenses = BigDecimal.ZERO
-        for (acc in accounts) {
-            if (acc.type == 3 && !acc.number.startsWith("3")) {
-                val bal = balances[acc.id] ?: BigDecimal.ZERO
-                if (bal.compareTo(BigDecimal.ZERO) != 0) {
-                    append("""
-                        <tr>
-                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
-                            <td class="amount">${MONEY_FORMAT.format(bal)}</td>
-                        </tr>
-                    """.trimIndent())
-                    totalExpenses = totalExpenses.add(bal)
-                }
-            }
-        }
-
-        append("""
-                    <tr class="subtotal">
-                        <td>MENOT YHTEENSÄ</td>
-                        <td class="amount">${MONEY_FORMAT.format(totalExpenses)}</td>
-                    </tr>
-                </table>
-            </div>
-        """.trimIndent())
-
-        // Result
-        val result = totalIncome.subtract(totalExpenses)
-        val resultClass = if (result >= BigDecimal.ZERO) "profit" else "loss"
-        val resultLabel = if (result >= BigDecimal.ZERO) "TILIKAUDEN VOITTO" else "TILIKAUDEN TAPPIO"
-
-        append("""
-            <div class="result-section $resultClass">
-                <span class="result-label">$resultLabel</span>
-                <span class="result-amount">${MONEY_FORMAT.format(result.abs())}</span>
-            </div>
-        """.trimIndent())
     }
 
-    private fun generateBalanceSheet(): String = buildString {
-        val balances = calculateBalances()
-
-        // Assets
-        append("""
-            <div class="balance-sheet-section">
-                <h3 class="section-header assets">VASTAAVAA (Aktiva)</h3>
-                <table class="statement-table">
-        """.trimIndent())
+    private fun showPage(index: Int) {
+        val store = pages ?: return
+        if (index < 0 || index >= store.size) return
 
-        var totalAssets = BigDecimal.ZERO
-        for (acc in accounts) {
-            if (acc.type == 1) {
-                val bal = balances[acc.id] ?: BigDecimal.ZERO
-                if (bal.compareTo(BigDecimal.ZERO) != 0) {
-                    append("""
-                        <tr>
-                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
-                            <td class="amount">${MONEY_FORMAT.format(bal)}</td>
-                        </tr>
-                    """.trimIndent())
-                    totalAssets = totalAssets.add(bal)
-                }
-            }
+        pageIndex = index
+        currentHtml = buildString {
+            append(HTML_HEAD)
+            append("<body>")
+            append(generateHeader())
+            append(store.get(index))
+            append("</body></html>")
         }
+        webView.engine.loadContent(currentHtml)
+        updatePageControls()
+    }
 
-        append("""
-                    <tr class="subtotal">
-                        <td>VASTAAVAA YHTEENSÄ</td>
-                        <td class="amount">${MONEY_FORMAT.format(totalAssets)}</td>
-                    </tr>
-                </table>
-            </div>
-        """.trimIndent())
+    private fun showMessage(html: String) {
+        currentHtml = "$HTML_HEAD<body>${generateHeader()}$html</body></html>"
+        webView.engine.loadContent(currentHtml)
+    }
 
-        // Liabilities & Equity
-        append("""
-            <div class="balance-sheet-section">
-                <h3 class="section-header liabilities">VASTATTAVAA (Passiva)</h3>
-                <table class="statement-table">
-        """.trimIndent())
+    private fun updatePageControls() {
+        val store = pages
+        val count = store?.size ?: 0
+        val complete = store?.isComplete ?: false
 
-        var totalLiabilities = BigDecimal.ZERO
-        for (acc in accounts) {
-            if (acc.type == 2 || acc.type == 4) {
-                val bal = (balances[acc.id] ?: BigDecimal.ZERO).negate()
-                if (bal.compareTo(BigDecimal.ZERO) != 0) {
-                    append("""
-                        <tr>
-                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
-                            <td class="amount">${MONEY_FORMAT.format(bal)}</td>
-                        </tr>
-                    """.trimIndent())
-                    totalLiabilities = totalLiabilities.add(bal)
-                }
-            }
+        pageLabel.text = when {
+            count == 0 -> ""
+            complete -> "Sivu ${pageIndex + 1} / $count"
+            else -> "Sivu ${pageIndex + 1} / $count…"
         }
+        prevPageBtn.isDisable = pageIndex <= 0
+        nextPageBtn.isDisable = pageIndex >= count - 1
+        progressIndicator.isVisible = store != null && !complete
+    }
 
-        append("""
-                    <tr class="subtotal">
-                        <td>VASTATTAVAA YHTEENSÄ</td>
-                        <td class="amount">${MONEY_FORMAT.format(totalLiabilities)}</td>
-                    </tr>
-                </table>
-            </div>
-        """.trimIndent())
-
-        // Balance check
-        val diff = totalAssets.subtract(totalLiabilities)
-        if (diff.abs().compareTo(BigDecimal("0.01")) > 0) {
-            append("""
-                <div class="warning">
-                    ⚠️ Tase ei täsmää! Erotus: ${MONEY_FORMAT.format(diff)}
-                </div>
-            """.trimIndent())
-        }
+    /**
+     * Kirjoittaa koko raportin HTML-dokumenttina. Sivut luetaan
+     * yksi kerrallaan.
+     */
+    private fun writeDocument(out: Writer, store: ReportPages) {
+        out.write(HTML_HEAD)
+        out.write("<body>")
+        out.write(generateHeader())
+        store.writeTo(out)
+        out.write("</body></html>")
     }
 
-    private fun calculateBalances(): Map<Int, BigDecimal> {
-        val balances = mutableMapOf<Int, BigDecimal>()
-        val session = dataSource.openSession()
-        try {
-            val entryDao = dataSource.getEntryDAO(session)
-            entryDao.getByPeriodId(period.id, EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER) { entry ->
-                val current = balances.getOrDefault(entry.accountId, BigDecimal.ZERO)
-                balances[entry.accountId] = if (entry.isDebit) {
-                    current.add(entry.amount)
-                } else {
-                    current.subtract(entry.amount)
-                }
-            }
-        } finally {
-            session.close()
+    /**
+     * Palauttaa valmiin raportin sivut tai ilmoittaa, että raportti
+     * on vielä kesken.
+     */
+    private fun completedPages(): ReportPages? {
+        val store = pages
+        if (store == null || !store.isComplete) {
+            showAlert(Alert.AlertType.INFORMATION, "Raportti on vielä kesken",
+                "Odota, kunnes raportin kaikki sivut on luotu.")
+            return null
         }
-        return balances
+        return store
     }
 
+    private fun generateHeader(): String = """
+        <div class="header">
+            <h1>${reportType.displayName}</h1>
+            <div class="meta">
+                <span>Tilikausi: ${DATE_FORMAT.format(period.startDate)} – ${DATE_FORMAT.format(period.endDate)}</span>
+                <span>Tulostettu: ${DATE_FORMAT.format(Date())}</span>
+            </div>
+        </div>
+    """.trimIndent()
+
     private fun print() {
+        val store = completedPages() ?: return
         val job = PrinterJob.createPrinterJob()
         if (job != null && job.showPrintDialog(dialog)) {
-            webView.engine.print(job)
-            job.endJob()
+            // Koko raportti ladataan näkymättömään WebEngineen vain tulostusta varten
+            val engine = WebEngine()
+            printEngine = engine
+            engine.loadWorker.stateProperty().addListener { _, _, state ->
+                when (state) {
+                    Worker.State.SUCCEEDED -> {
+                        engine.print(job)
+                        job.endJob()
+                        printEngine = null
+                    }
+                    Worker.State.FAILED, Worker.State.CANCELLED -> {
+                        job.cancelJob()
+                        printEngine = null
+                    }
+                    else -> {}
+                }
+            }
+            val html = StringWriter()
+            writeDocument(html, store)
+            engine.loadContent(html.toString())
         }
     }
 
@@ -684,7 +508,7 @@ class ReportDialog private constructor(
         lineHeight: Float,
         newPage: () -> Unit
     ) {
-        val session = dataSource.openSession()
+        val session = dataSource.openReadOnlySession()
         try {
             val docDao = dataSource.getDocumentDAO(session)
             val entryDao = dataSource.getEntryDAO(session)
@@ -826,6 +650,7 @@ class ReportDialog private constructor(
     }
 
     private fun exportToHtml() {
+        val store = completedPages() ?: return
         val fc = FileChooser().apply {
             title = "Vie HTML"
             extensionFilters.add(FileChooser.ExtensionFilter("HTML-tiedosto", "*.html"))
@@ -834,7 +659,7 @@ class ReportDialog private constructor(
 
         fc.showSaveDialog(dialog)?.let { file ->
             try {
-                file.writeText(htmlContent, Charsets.UTF_8)
+                file.bufferedWriter(Charsets.UTF_8).use { writeDocument(it, store) }
                 showAlert(Alert.AlertType.INFORMATION, "HTML-raportti tallennettu", file.name)
             } catch (e: Exception) {
                 showAlert(Alert.AlertType.ERROR, "Virhe HTML:n tallennuksessa", e.message ?: "Tuntematon virhe")
@@ -846,12 +671,6 @@ class ReportDialog private constructor(
         dialog.showAndWait()
     }
 
-    private fun String.escapeHtml(): String = this
-        .replace("&", "&amp;")
-        .replace("<", "&lt;")
-        .replace(">", "&gt;")
-        .replace("\"", "&quot;")
-
     companion object {
         private val MONEY_FORMAT = DecimalFormat("#,##0.00")
         private val DATE_FORMAT = SimpleDateFormat("dd.MM.yyyy")
@@ -0,0 +1,498 @@
+package kirjanpito.ui.javafx.dialogs
+
+import kirjanpito.db.*
+import kirjanpito.ui.javafx.dialogs.ReportDialog.ReportType
+import java.math.BigDecimal
+import java.text.DecimalFormat
+import java.text.SimpleDateFormat
+import java.util.concurrent.CancellationException
+
+/**
+ * Luo raportin HTML-sisällön sivu kerrallaan taustasäikeessä.
+ *
+ * Päiväkirjan tositteet haetaan ikkunoittain ja kunkin ikkunan viennit
+ * yhdellä kyselyllä. Pääkirjan viennit käsitellään sitä mukaa kuin ne
+ * luetaan tietokannasta. Sivu tallennetaan, kun siinä on vähintään
+ * [pageRows] riviä, joten dialogi voi näyttää ensimmäisen sivun ennen
+ * kuin koko raportti on valmis.
+ */
+class ReportHtmlGenerator(
+    private val dataSource: DataSource,
+    private val period: Period,
+    private val accounts: List<Account>,
+    private val pageRows: Int = PAGE_ROWS
+) {
+    // Muotoilijat eivät ole säieturvallisia, joten generaattorilla on omansa
+    private val moneyFormat = DecimalFormat("#,##0.00")
+    private val dateFormat = SimpleDateFormat("dd.MM.yyyy")
+    private val accountsById = accounts.associateBy { it.id }
+
+    /**
+     * Luo raportin sivut. [onPage] kutsutaan taustasäikeessä jokaisen
+     * valmistuneen sivun indeksillä.
+     *
+     * @throws CancellationException jos [isCancelled] palauttaa true
+     * tai sivut suljetaan kesken raportin luonnin
+     */
+    fun generate(
+        type: ReportType,
+        pages: ReportPages,
+        isCancelled: () -> Boolean,
+        onPage: (Int) -> Unit
+    ) {
+        val page = PageWriter(pages, isCancelled, onPage)
+
+        when (type) {
+            ReportType.JOURNAL -> generateJournal(page)
+            ReportType.LEDGER -> generateLedger(page)
+            ReportType.INCOME_STATEMENT -> page.append(generateIncomeStatement())
+            ReportType.BALANCE_SHEET -> page.append(generateBalanceSheet())
+        }
+
+        page.flush()
+
+        if (pages.size == 0) {
+            page.append("<div class='warning'>Valitulla tilikaudella ei ole vientejä.</div>")
+            page.flush()
+        }
+
+        pages.complete()
+    }
+
+    /**
+     * Kerää sivun HTML:n ja rivimäärän.
+     */
+    private inner class PageWriter(
+        private val pages: ReportPages,
+        private val isCancelled: () -> Boolean,
+        private val onPage: (Int) -> Unit
+    ) {
+        private val html = StringBuilder()
+        private var rows = 0
+
+        val isFull: Boolean get() = rows >= pageRows
+
+        fun append(s: String) {
+            html.append(s)
+        }
+
+        fun row(s: String) {
+            checkCancelled()
+            html.append(s)
+            rows++
+        }
+
+        fun checkCancelled() {
+            if (isCancelled()) throw CancellationException("Raportin luonti peruttiin")
+        }
+
+        fun flush() {
+            checkCancelled()
+            if (html.isEmpty()) return
+
+            val index = pages.add(html.toString())
+            html.setLength(0)
+            rows = 0
+            onPage(index)
+        }
+    }
+
+    private fun generateJournal(page: PageWriter) {
+        val session = dataSource.openReadOnlySession()
+        try {
+            val docDao = dataSource.getDocumentDAO(session)
+            val entryDao = dataSource.getEntryDAO(session)
+
+            var totalDebit = BigDecimal.ZERO
+            var totalCredit = BigDecimal.ZERO
+            // Tosite 0 sisältää alkusaldot
+            var startNumber = 0
+            page.append(JOURNAL_TABLE_START)
+
+            while (true) {
+                val docs = docDao.getByPeriodIdAndNumber(period.id, startNumber, Int.MAX_VALUE, 0, DOCUMENT_WINDOW)
+                if (docs.isEmpty()) break
+
+                val entriesByDocument = HashMap<Int, MutableList<Entry>>()
+                entryDao.getByDocuments(docs) { entry ->
+                    entriesByDocument.getOrPut(entry.documentId) { mutableListOf() }.add(entry)
+                }
+
+                for (doc in docs) {
+                    val entries = entriesByDocument[doc.id] ?: continue
+
+                    // Sivu vaihtuu vain tositteiden välissä
+                    if (page.isFull) {
+                        page.append(TABLE_END)
+                        page.flush()
+                        page.append(JOURNAL_TABLE_START)
+                    }
+
+                    var first = true
+                    for (entry in entries.sortedBy { it.rowNumber }) {
+                        val accLink = accountsById[entry.accountId]?.let {
+                            "<a href='account:${it.number}' class='account-link'>${it.number} ${it.name.escapeHtml()}</a>"
+                        } ?: ""
+
+                        val (debitStr, creditStr) = if (entry.isDebit) {
+                            totalDebit = totalDebit.add(entry.amount)
+                            moneyFormat.format(entry.amount) to ""
+                        } else {
+                            totalCredit = totalCredit.add(entry.amount)
+                            "" to moneyFormat.format(entry.amount)
+                        }
+
+                        if (first) {
+                            page.row("""
+                                <tr class="entry-row">
+                                    <td class="num">${doc.number}</td>
+                                    <td class="date">${dateFormat.format(doc.date)}</td>
+                                    <td class="account">$accLink</td>
+                                    <td class="amount debit">$debitStr</td>
+                                    <td class="amount credit">$creditStr</td>
+                                </tr>
+                            """.trimIndent())
+                            first = false
+                        } else {
+                            page.row("""
+                                <tr class="entry-row continuation">
+                                    <td></td>
+                                    <td></td>
+                                    <td class="account">$accLink</td>
+                                    <td class="amount debit">$debitStr</td>
+                                    <td class="amount credit">$creditStr</td>
+                                </tr>
+                            """.trimIndent())
+                        }
+
+                        if (!entry.description.isNullOrBlank()) {
+                            page.row("""
+                                <tr class="description-row">
+                                    <td colspan="2"></td>
+                                    <td class="description" colspan="3">${entry.description.escapeHtml()}</td>
+                                </tr>
+                            """.trimIndent())
+                        }
+                    }
+                }
+
+                if (docs.size < DOCUMENT_WINDOW) break
+                startNumber = docs.last().number + 1
+            }
+
+            page.append("""
+                    </tbody>
+                    <tfoot>
+                        <tr class="total-row">
+                            <td colspan="3">YHTEENSÄ</td>
+                            <td class="amount debit">${moneyFormat.format(totalDebit)}</td>
+                            <td class="amount credit">${moneyFormat.format(totalCredit)}</td>
+                        </tr>
+                    </tfoot>
+                </table>
+            """.trimIndent())
+        } finally {
+            session.close()
+        }
+    }
+
+    private fun generateLedger(page: PageWriter) {
+        val session = dataSource.openReadOnlySession()
+        try {
+            val entryDao = dataSource.getEntryDAO(session)
+
+            var current: Account? = null
+            var balance = BigDecimal.ZERO
+
+            // Tositteen numero ja päivämäärä luetaan samalla kyselyllä
+            // vientien kanssa, joten tositteita ei ladata muistiin
+            entryDao.getByPeriodIdWithDocuments(period.id,
+                EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER) { doc, entry ->
+                val acc = accountsById[entry.accountId] ?: return@getByPeriodIdWithDocuments
+
+                if (acc !== current) {
+                    current?.let { page.append(ledgerAccountEnd("Saldo:", balance)) }
+                    if (page.isFull) page.flush()
+                    page.append(ledgerAccountStart(acc, false))
+                    current = acc
+                    balance = BigDecimal.ZERO
+                } else if (page.isFull) {
+                    // Pitkä tili jatkuu seuraavalla sivulla
+                    page.append(ledgerAccountEnd("Siirto:", balance))
+                    page.flush()
+                    page.append(ledgerAccountStart(acc, true))
+                }
+
+                // Alkusaldoilla ei näytetä päivämäärää
+                val date = if (doc.number > 0) dateFormat.format(doc.date) else ""
+                val docNum = doc.number
+
+                val (debitStr, creditStr) = if (entry.isDebit) {
+                    balance = balance.add(entry.amount)
+                    moneyFormat.format(entry.amount) to ""
+                } else {
+                    balance = balance.subtract(entry.amount)
+                    "" to moneyFormat.format(entry.amount)
+                }
+
+                page.row("""
+                    <tr>
+                        <td class="num">$docNum</td>
+                        <td class="date">$date</td>
+                        <td class="description-col">${(entry.description ?: "").escapeHtml()}</td>
+                        <td class="amount debit">$debitStr</td>
+                        <td class="amount credit">$creditStr</td>
+                    </tr>
+                """.trimIndent())
+            }
+
+            current?.let { page.append(ledgerAccountEnd("Saldo:", balance)) }
+        } finally {
+            session.close()
+        }
+    }
+
+    private fun ledgerAccountStart(acc: Account, continued: Boolean): String {
+        val suffix = if (continued) " (jatkuu)" else ""
+        return """
+            <div class="account-section">
+                <h3 class="account-header">${acc.number} ${acc.name.escapeHtml()}$suffix</h3>
+                <table class="report-table ledger-table">
+                    <thead>
+                        <tr>
+                            <th class="num">Nro</th>
+                            <th class="date">Pvm</th>
+                            <th class="description-col">Selite</th>
+                            <th class="amount">Debet</th>
+                            <th class="amount">Kredit</th>
+                        </tr>
+                    </thead>
+                    <tbody>
+        """.trimIndent()
+    }
+
+    private fun ledgerAccountEnd(label: String, balance: BigDecimal): String {
+        val balanceClass = if (balance >= BigDecimal.ZERO) "positive" else "negative"
+        return """
+                    </tbody>
+                    <tfoot>
+                        <tr class="balance-row">
+                            <td colspan="3">$label</td>
+                            <td colspan="2" class="balance $balanceClass">${moneyFormat.format(balance)}</td>
+                        </tr>
+                    </tfoot>
+                </table>
+            </div>
+        """.trimIndent()
+    }
+
+    private fun generateIncomeStatement(): String = buildString {
+        val balances = calculateBalances()
+
+        // Income section
+        append("""
+            <div class="statement-section">
+                <h3 class="section-header income">TULOT</h3>
+                <table class="statement-table">
+        """.trimIndent())
+
+        var totalIncome = BigDecimal.ZERO
+        for (acc in accounts) {
+            if (acc.type == 3 && acc.number.startsWith("3")) {
+                val bal = (balances[acc.id] ?: BigDecimal.ZERO).negate()
+                if (bal.compareTo(BigDecimal.ZERO) != 0) {
+                    append("""
+                        <tr>
+                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
+                            <td class="amount">${moneyFormat.format(bal)}</td>
+                        </tr>
+                    """.trimIndent())
+                    totalIncome = totalIncome.add(bal)
+                }
+            }
+        }
+
+        append("""
+                    <tr class="subtotal">
+                        <td>TULOT YHTEENSÄ</td>
+                        <td class="amount">${moneyFormat.format(totalIncome)}</td>
+                    </tr>
+                </table>
+            </div>
+        """.trimIndent())
+
+        // Expenses section
+        append("""
+            <div class="statement-section">
+                <h3 class="section-header expense">MENOT</h3>
+                <table class="statement-table">
+        """.trimIndent())
+
+        var totalExpenses = BigDecimal.ZERO
+        for (acc in accounts) {
+            if (acc.type == 3 && !acc.number.startsWith("3")) {
+                val bal = balances[acc.id] ?: BigDecimal.ZERO
+                if (bal.compareTo(BigDecimal.ZERO) != 0) {
+                    append("""
+                        <tr>
+                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
+                            <td class="amount">${moneyFormat.format(bal)}</td>
+                        </tr>
+                    """.trimIndent())
+                    totalExpenses = totalExpenses.add(bal)
+                }
+            }
+        }
+
+        append("""
+                    <tr class="subtotal">
+                        <td>MENOT YHTEENSÄ</td>
+                        <td class="amount">${moneyFormat.format(totalExpenses)}</td>
+                    </tr>
+                </table>
+            </div>
+        """.trimIndent())
+
+        // Result
+        val result = totalIncome.subtract(totalExpenses)
+        val resultClass = if (result >= BigDecimal.ZERO) "profit" else "loss"
+        val resultLabel = if (result >= BigDecimal.ZERO) "TILIKAUDEN VOITTO" else "TILIKAUDEN TAPPIO"
+
+        append("""
+            <div class="result-section $resultClass">
+                <span class="result-label">$resultLabel</span>
+                <span class="result-amount">${moneyFormat.format(result.abs())}</span>
+            </div>
+        """.trimIndent())
+    }
+
+    private fun generateBalanceSheet(): String = buildString {
+        val balances = calculateBalances()
+
+        // Assets
+        append("""
+            <div class="balance-sheet-section">
+                <h3 class="section-header assets">VASTAAVAA (Aktiva)</h3>
+                <table class="statement-table">
+        """.trimIndent())
+
+        var totalAssets = BigDecimal.ZERO
+        for (acc in accounts) {
+            if (acc.type == 1) {
+                val bal = balances[acc.id] ?: BigDecimal.ZERO
+                if (bal.compareTo(BigDecimal.ZERO) != 0) {
+                    append("""
+                        <tr>
+                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
+                            <td class="amount">${moneyFormat.format(bal)}</td>
+                        </tr>
+                    """.trimIndent())
+                    totalAssets = totalAssets.add(bal)
+                }
+            }
+        }
+
+        append("""
+                    <tr class="subtotal">
+                        <td>VASTAAVAA YHTEENSÄ</td>
+                        <td class="amount">${moneyFormat.format(totalAssets)}</td>
+                    </tr>
+                </table>
+            </div>
+        """.trimIndent())
+
+        // Liabilities & Equity
+        append("""
+            <div class="balance-sheet-section">
+                <h3 class="section-header liabilities">VASTATTAVAA (Passiva)</h3>
+                <table class="statement-table">
+        """.trimIndent())
+
+        var totalLiabilities = BigDecimal.ZERO
+        for (acc in accounts) {
+            if (acc.type == 2 || acc.type == 4) {
+                val bal = (balances[acc.id] ?: BigDecimal.ZERO).negate()
+                if (bal.compareTo(BigDecimal.ZERO) != 0) {
+                    append("""
+                        <tr>
+                            <td class="account-name">${acc.number} ${acc.name.escapeHtml()}</td>
+                            <td class="amount">${moneyFormat.format(bal)}</td>
+                        </tr>
+                    """.trimIndent())
+                    totalLiabilities = totalLiabilities.add(bal)
+                }
+            }
+        }
+
+        append("""
+                    <tr class="subtotal">
+                        <td>VASTATTAVAA YHTEENSÄ</td>
+                        <td class="amount">${moneyFormat.format(totalLiabilities)}</td>
+                    </tr>
+                </table>
+            </div>
+        """.trimIndent())
+
+        // Balance check
+        val diff = totalAssets.subtract(totalLiabilities)
+        if (diff.abs().compareTo(BigDecimal("0.01")) > 0) {
+            append("""
+                <div class="warning">
+                    ⚠️ Tase ei täsmää! Erotus: ${moneyFormat.format(diff)}
+                </div>
+            """.trimIndent())
+        }
+    }
+
+    private fun calculateBalances(): Map<Int, BigDecimal> {
+        val balances = mutableMapOf<Int, BigDecimal>()
+        val session = dataSource.openReadOnlySession()
+        try {
+            val entryDao = dataSource.getEntryDAO(session)
+            entryDao.getByPeriodId(period.id, EntryDAO.ORDER_BY_ACCOUNT_NUMBER_AND_DOCUMENT_NUMBER) { entry ->
+                val current = balances.getOrDefault(entry.accountId, BigDecimal.ZERO)
+                balances[entry.accountId] = if (entry.isDebit) {
+                    current.add(entry.amount)
+                } else {
+                    current.subtract(entry.amount)
+                }
+            }
+        } finally {
+            session.close()
+        }
+        return balances
+    }
+
+    private fun String.escapeHtml(): String = this
+        .replace("&", "&amp;")
+        .replace("<", "&lt;")
+        .replace(">", "&gt;")
+        .replace("\"", "&quot;")
+
+    companion object {
+        /** Sivun rivimäärä, jonka jälkeen sivu vaihtuu. */
+        const val PAGE_ROWS = 500
+
+        /** Kerralla haettavien tositteiden määrä. */
+        private const val DOCUMENT_WINDOW = 500
+
+        private val JOURNAL_TABLE_START = """
+            <table class="report-table">
+                <thead>
+                    <tr>
+                        <th class="num">Nro</th>
+                        <th class="date">Pvm</th>
+                        <th class="account">Tili / Selite</th>
+                        <th class="amount">Debet</th>
+                        <th class="amount">Kredit</th>
+                    </tr>
+                </thead>
+                <tbody>
+        """.trimIndent()
+
+        private val TABLE_END = """
+                </tbody>
+            </table>
+        """.trimIndent()
+    }
+}
@@ -0,0 +1,94 @@
+package kirjanpito.ui.javafx.dialogs
+
+import java.io.Closeable
+import java.io.File
+import java.io.RandomAccessFile
+import java.io.Writer
+import java.util.concurrent.CancellationException
+
+/**
+ * Raportin HTML-sivut väliaikaistiedostossa.
+ *
+ * Generaattori lisää sivut taustasäikeessä sitä mukaa kuin ne valmistuvat,
+ * ja dialogi lukee tiedostosta vain näytettävän sivun. Koko raporttia ei
+ * tarvitse pitää muistissa merkkijonona eikä WebView'ssa.
+ */
+class ReportPages : Closeable {
+    private val file = File.createTempFile("tilitin-report-", ".html").apply { deleteOnExit() }
+    private val raf = RandomAccessFile(file, "rw")
+    private val offsets = ArrayList<Long>()
+    private val lengths = ArrayList<Int>()
+    private var closed = false
+
+    /**
+     * Onko raportin viimeinen sivu lisätty.
+     */
+    @Volatile
+    var isComplete = false
+        private set
+
+    /**
+     * Valmiiden sivujen lukumäärä.
+     */
+    val size: Int
+        @Synchronized get() = offsets.size
+
+    /**
+     * Lisää sivun ja palauttaa sen indeksin.
+     *
+     * @throws CancellationException jos sivut on jo suljettu, eli
+     * raportin luonti on peruttu
+     */
+    @Synchronized
+    fun add(html: String): Int {
+        if (closed) throw CancellationException("Raportin luonti peruttiin")
+
+        val bytes = html.toByteArray(Charsets.UTF_8)
+        val offset = raf.length()
+        raf.seek(offset)
+        raf.write(bytes)
+        offsets.add(offset)
+        lengths.add(bytes.size)
+        return offsets.size - 1
+    }
+
+    /**
+     * Merkitsee raportin valmiiksi.
+     */
+    fun complete() {
+        isComplete = true
+    }
+
+    /**
+     * Lukee sivun <code>index</code> tiedostosta.
+     */
+    @Synchronized
+    fun get(index: Int): String {
+        check(!closed) { "Raportin sivut on suljettu" }
+
+        val bytes = ByteArray(lengths[index])
+        raf.seek(offsets[index])
+        raf.readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    /**
+     * Kirjoittaa kaikki sivut peräkkäin. Sivuja luetaan muistiin
+     * yksi kerrallaan.
+     */
+    @Synchronized
+    fun writeTo(out: Writer) {
+        for (i in offsets.indices) {
+            out.write(get(i))
+        }
+    }
+
+    @Synchronized
+    override fun close() {
+        if (closed) return
+
+        closed = true
+        raf.close()
+        file.delete()
+    }
+}
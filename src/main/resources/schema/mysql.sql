@@ -96,6 +96,18 @@ CREATE INDEX document_number_idx ON document (
 	period_id, number
 );
 
+CREATE INDEX document_date_idx ON document (
+	period_id, date, number
+);
+
+CREATE INDEX entry_document_idx ON entry (
+	document_id, row_number
+);
+
+CREATE INDEX entry_account_idx ON entry (
+	account_id, document_id
+);
+
 CREATE TABLE attachments (
 	id INT AUTO_INCREMENT NOT NULL,
 	document_id INT NOT NULL,
@@ -110,4 +122,26 @@ CREATE TABLE attachments (
 	FOREIGN KEY (document_id) REFERENCES document(id) ON DELETE CASCADE
 ) ENGINE=InnoDB;
 
-CREATE INDEX idx_attachments_document_id ON attachments(document_id);
\ No newline at end of file
+CREATE INDEX idx_attachments_document_id ON attachments(document_id);
+
+CREATE TABLE account_balance (
+	period_id int NOT NULL,
+	account_id int NOT NULL,
+	date date NOT NULL,
+	debit_cents bigint NOT NULL,
+	credit_cents bigint NOT NULL,
+	entry_count int NOT NULL,
+	PRIMARY KEY (account_id, date, period_id)
+) ENGINE=InnoDB;
+
+CREATE INDEX account_balance_date_idx ON account_balance (date);
+
+CREATE TABLE document_search (
+	document_id int NOT NULL,
+	period_id int NOT NULL,
+	search_text text NOT NULL,
+	PRIMARY KEY (document_id),
+	FULLTEXT (search_text)
+) ENGINE=InnoDB;
+
+CREATE INDEX document_search_period_idx ON document_search (period_id);
\ No newline at end of file
@@ -88,6 +88,18 @@ CREATE INDEX document_number_idx ON document (
 	period_id, number
 );
 
+CREATE INDEX document_date_idx ON document (
+	period_id, date, number
+);
+
+CREATE INDEX entry_document_idx ON entry (
+	document_id, row_number
+);
+
+CREATE INDEX entry_account_idx ON entry (
+	account_id, document_id
+);
+
 CREATE TABLE attachments (
 	id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
 	document_id INTEGER NOT NULL,
@@ -101,4 +113,18 @@ CREATE TABLE attachments (
 	FOREIGN KEY (document_id) REFERENCES document(id) ON DELETE CASCADE
 );
 
-CREATE INDEX idx_attachments_document_id ON attachments(document_id);
\ No newline at end of file
+CREATE INDEX idx_attachments_document_id ON attachments(document_id);
+
+CREATE TABLE account_balance (
+	period_id integer NOT NULL,
+	account_id integer NOT NULL,
+	date date NOT NULL,
+	debit_cents bigint NOT NULL,
+	credit_cents bigint NOT NULL,
+	entry_count integer NOT NULL,
+	PRIMARY KEY (account_id, date, period_id)
+);
+
+CREATE INDEX account_balance_date_idx ON account_balance (date);
+
+CREATE VIRTUAL TABLE document_search USING fts5(search_text, period_id UNINDEXED);
\ No newline at end of file
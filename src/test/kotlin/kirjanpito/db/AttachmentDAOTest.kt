@@ -4,6 +4,7 @@ import kirjanpito.db.sqlite.SQLiteDataSource
 import kirjanpito.models.Attachment
 import org.junit.jupiter.api.*
 import org.junit.jupiter.api.Assertions.*
+import java.io.ByteArrayOutputStream
 import java.io.File
 import java.sql.Date
 
@@ -230,4 +231,81 @@ class AttachmentDAOTest {
             session.close()
         }
     }
+
+    @Test
+    fun `test find metadata does not load content`() {
+        val session = dataSource.openSession()
+        try {
+            val attachmentDAO = dataSource.getAttachmentDAO(session)
+
+            val data = ByteArray(2048) { (it % 251).toByte() }
+            val attachmentId = attachmentDAO.save(Attachment(
+                documentId = testDocument.id,
+                filename = "metadata.pdf",
+                data = data,
+                pageCount = 3
+            ))
+            session.commit()
+
+            val attachment = attachmentDAO.findMetadataByDocumentId(testDocument.id)
+                .first { it.id == attachmentId }
+            assertEquals("metadata.pdf", attachment.filename)
+            assertEquals(2048, attachment.fileSize)
+            assertEquals(3, attachment.pageCount)
+            assertEquals(0, attachment.data.size)
+            assertFalse(attachment.isContentLoaded)
+
+            val out = ByteArrayOutputStream()
+            assertEquals(2048L, attachmentDAO.writeContent(attachmentId, out))
+            assertArrayEquals(data, out.toByteArray())
+        } finally {
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test saving metadata keeps stored content`() {
+        val session = dataSource.openSession()
+        try {
+            val attachmentDAO = dataSource.getAttachmentDAO(session)
+
+            val data = ByteArray(4096) { (it % 241).toByte() }
+            val attachmentId = attachmentDAO.save(Attachment(
+                documentId = testDocument.id,
+                filename = "keep.pdf",
+                data = data
+            ))
+            session.commit()
+
+            val metadata = attachmentDAO.findMetadataByDocumentId(testDocument.id)
+                .first { it.id == attachmentId }
+            attachmentDAO.save(metadata.copy(description = "Kuitti"))
+            session.commit()
+
+            val saved = attachmentDAO.findById(attachmentId)!!
+            assertEquals("Kuitti", saved.description)
+            assertEquals(4096, saved.fileSize)
+            assertArrayEquals(data, saved.data)
+
+            assertThrows(DataAccessException::class.java) {
+                attachmentDAO.save(metadata.copy(id = 0))
+            }
+        } finally {
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test write content of non-existent attachment`() {
+        val session = dataSource.openSession()
+        try {
+            val attachmentDAO = dataSource.getAttachmentDAO(session)
+            val out = ByteArrayOutputStream()
+
+            assertEquals(-1L, attachmentDAO.writeContent(99999, out))
+            assertEquals(0, out.size())
+        } finally {
+            session.close()
+        }
+    }
 }
@@ -0,0 +1,297 @@
+package kirjanpito.db
+
+import kirjanpito.db.sqlite.SQLiteDataSource
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.math.BigDecimal
+import java.sql.Date
+
+/**
+ * Tests for BalanceDAO.
+ * The account_balance table is maintained by EntryDAO and DocumentDAO,
+ * so these tests modify entries and documents and check the totals.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BalanceDAOTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var testPeriod: Period
+    private var accountNumber = 3000
+
+    private val day = 24L * 60 * 60 * 1000
+    private lateinit var startDate: Date
+    private lateinit var endDate: Date
+
+    @BeforeAll
+    fun setupDatabase() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete() // Delete so SQLiteDataSource creates fresh DB
+
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+
+        val now = System.currentTimeMillis()
+        startDate = Date(now - 365L * day)
+        endDate = Date(now)
+
+        val session = dataSource.openSession()
+        try {
+            testPeriod = Period().apply {
+                setStartDate(startDate)
+                setEndDate(endDate)
+            }
+            dataSource.getPeriodDAO(session).save(testPeriod)
+            session.commit()
+        } finally {
+            session.close()
+        }
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun createAccount(session: Session): Account {
+        val account = Account().apply {
+            setNumber((accountNumber++).toString())
+            setName("Testitili")
+            setType(Account.TYPE_EXPENSE)
+        }
+        dataSource.getAccountDAO(session).save(account)
+        return account
+    }
+
+    private fun createDocument(session: Session, date: Date): Document {
+        val document = Document().apply {
+            setPeriodId(testPeriod.id)
+            setNumber(accountNumber)
+            setDate(date)
+        }
+        dataSource.getDocumentDAO(session).save(document)
+        return document
+    }
+
+    private fun createEntry(session: Session, document: Document, account: Account,
+                            debit: Boolean, amount: String): Entry {
+        val entry = Entry().apply {
+            setDocumentId(document.id)
+            setAccountId(account.id)
+            setDescription("Test entry")
+            setDebit(debit)
+            setAmount(BigDecimal(amount))
+        }
+        dataSource.getEntryDAO(session).save(entry)
+        return entry
+    }
+
+    private fun totals(session: Session, periodId: Int, start: Date, end: Date): Map<Int, AccountTotal> {
+        val result = HashMap<Int, AccountTotal>()
+        dataSource.getBalanceDAO(session).getByPeriodIdAndDate(periodId, start, end) { total ->
+            result[total.accountId] = total
+        }
+        return result
+    }
+
+    @Test
+    fun `test totals follow saved entries`() {
+        val session = dataSource.openSession()
+        try {
+            val account = createAccount(session)
+            val document = createDocument(session, Date(endDate.time - 10 * day))
+            createEntry(session, document, account, true, "100.50")
+            createEntry(session, document, account, true, "20.25")
+            createEntry(session, document, account, false, "5.00")
+
+            val total = dataSource.getBalanceDAO(session)
+                .getByAccountIdAndDate(account.id, startDate, endDate)
+
+            assertNotNull(total)
+            assertEquals(0, BigDecimal("120.75").compareTo(total!!.debitTotal))
+            assertEquals(0, BigDecimal("5.00").compareTo(total.creditTotal))
+            assertEquals(3, total.entryCount)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test totals follow updated and deleted entries`() {
+        val session = dataSource.openSession()
+        try {
+            val account = createAccount(session)
+            val otherAccount = createAccount(session)
+            val document = createDocument(session, Date(endDate.time - 20 * day))
+            val entry = createEntry(session, document, account, true, "40.00")
+            val deleted = createEntry(session, document, account, false, "15.00")
+
+            entry.amount = BigDecimal("60.00")
+            entry.accountId = otherAccount.id
+            dataSource.getEntryDAO(session).save(entry)
+            dataSource.getEntryDAO(session).delete(deleted.id)
+
+            val balanceDAO = dataSource.getBalanceDAO(session)
+            assertNull(balanceDAO.getByAccountIdAndDate(account.id, startDate, endDate))
+
+            val total = balanceDAO.getByAccountIdAndDate(otherAccount.id, startDate, endDate)
+            assertNotNull(total)
+            assertEquals(0, BigDecimal("60.00").compareTo(total!!.debitTotal))
+            assertEquals(0, BigDecimal.ZERO.compareTo(total.creditTotal))
+            assertEquals(1, total.entryCount)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test totals follow entries saved in a batch`() {
+        val session = dataSource.openSession()
+        try {
+            val account = createAccount(session)
+            val otherAccount = createAccount(session)
+            val document = createDocument(session, Date(endDate.time - 40 * day))
+            val moved = createEntry(session, document, account, true, "40.00")
+            val changed = createEntry(session, document, account, false, "15.00")
+            val entryDAO = dataSource.getEntryDAO(session)
+
+            moved.amount = BigDecimal("60.00")
+            moved.accountId = otherAccount.id
+            changed.amount = BigDecimal("25.00")
+            val added = (1..3).map { i ->
+                Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(otherAccount.id)
+                    setDescription("Batch entry $i")
+                    setDebit(false)
+                    setAmount(BigDecimal("1.50"))
+                }
+            }
+            entryDAO.saveAll(listOf(moved, changed) + added)
+
+            val balanceDAO = dataSource.getBalanceDAO(session)
+            val total = balanceDAO.getByAccountIdAndDate(account.id, startDate, endDate)
+            assertNotNull(total)
+            assertEquals(0, BigDecimal.ZERO.compareTo(total!!.debitTotal))
+            assertEquals(0, BigDecimal("25.00").compareTo(total.creditTotal))
+            assertEquals(1, total.entryCount)
+
+            val otherTotal = balanceDAO.getByAccountIdAndDate(otherAccount.id, startDate, endDate)
+            assertNotNull(otherTotal)
+            assertEquals(0, BigDecimal("60.00").compareTo(otherTotal!!.debitTotal))
+            assertEquals(0, BigDecimal("4.50").compareTo(otherTotal.creditTotal))
+            assertEquals(4, otherTotal.entryCount)
+
+            val before = totals(session, testPeriod.id, startDate, endDate)
+            balanceDAO.rebuild()
+            assertEquals(before.keys, totals(session, testPeriod.id, startDate, endDate).keys)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test totals move with document date`() {
+        val session = dataSource.openSession()
+        try {
+            val account = createAccount(session)
+            val document = createDocument(session, Date(endDate.time - 100 * day))
+            createEntry(session, document, account, true, "10.00")
+
+            val middle = Date(endDate.time - 50 * day)
+            assertTrue(totals(session, testPeriod.id, startDate, middle).containsKey(account.id))
+
+            document.date = Date(endDate.time - 5 * day)
+            dataSource.getDocumentDAO(session).save(document)
+
+            assertFalse(totals(session, testPeriod.id, startDate, middle).containsKey(account.id))
+            assertTrue(totals(session, -1, middle, endDate).containsKey(account.id))
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test rebuild gives same totals`() {
+        val session = dataSource.openSession()
+        try {
+            val account = createAccount(session)
+            val document = createDocument(session, Date(endDate.time - 30 * day))
+            createEntry(session, document, account, true, "12.34")
+            createEntry(session, document, account, false, "0.01")
+            val other = createDocument(session, Date(endDate.time - 31 * day))
+            createEntry(session, other, account, true, "1000.00")
+
+            val before = totals(session, testPeriod.id, startDate, endDate)
+            dataSource.getBalanceDAO(session).rebuild()
+            val after = totals(session, testPeriod.id, startDate, endDate)
+
+            assertEquals(before.keys, after.keys)
+            for ((accountId, total) in before) {
+                val rebuilt = after[accountId]!!
+                assertEquals(0, total.debitTotal.compareTo(rebuilt.debitTotal))
+                assertEquals(0, total.creditTotal.compareTo(rebuilt.creditTotal))
+                assertEquals(total.entryCount, rebuilt.entryCount)
+            }
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test date ranges match separate queries`() {
+        val session = dataSource.openSession()
+        try {
+            val account = createAccount(session)
+            val other = createAccount(session)
+            val early = createDocument(session, Date(endDate.time - 200 * day))
+            createEntry(session, early, account, true, "50.00")
+            createEntry(session, early, other, false, "7.50")
+            val late = createDocument(session, Date(endDate.time - 10 * day))
+            createEntry(session, late, account, false, "20.00")
+
+            val middle = Date(endDate.time - 100 * day)
+            val periodIds = intArrayOf(testPeriod.id, -1, testPeriod.id)
+            val starts = arrayOf(startDate, middle, startDate)
+            val ends = arrayOf(middle, endDate, endDate)
+
+            val ranges = HashMap<Int, Array<AccountTotal?>>()
+            dataSource.getBalanceDAO(session).getByDateRanges(periodIds, starts, ends) { totals ->
+                ranges[totals.first { it != null }!!.accountId] = totals
+            }
+
+            for (i in periodIds.indices) {
+                val expected = totals(session, periodIds[i], starts[i], ends[i])
+                for (accountId in listOf(account.id, other.id)) {
+                    val total = ranges[accountId]?.get(i)
+                    val single = expected[accountId]
+                    if (single == null) {
+                        assertNull(total)
+                    } else {
+                        assertNotNull(total)
+                        assertEquals(0, single.debitTotal.compareTo(total!!.debitTotal))
+                        assertEquals(0, single.creditTotal.compareTo(total.creditTotal))
+                        assertEquals(single.entryCount, total.entryCount)
+                    }
+                }
+            }
+
+            assertNull(ranges[other.id]!![1])
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package kirjanpito.db
+
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.sql.DriverManager
+import java.sql.SQLException
+
+/**
+ * Tests for ConnectionPool.
+ */
+class ConnectionPoolTest {
+
+    private lateinit var testDbFile: File
+    private lateinit var url: String
+
+    @BeforeEach
+    fun setup() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        url = "jdbc:sqlite:${testDbFile.absolutePath}"
+        DriverManager.getConnection(url).use { conn ->
+            conn.createStatement().use { it.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)") }
+        }
+    }
+
+    @AfterEach
+    fun cleanup() {
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun createPool(config: ConnectionPool.Config) =
+        ConnectionPool({ DriverManager.getConnection(url) }, config)
+
+    @Test
+    fun `test released connection is reused`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 1, maxSize = 4))
+
+        val first = pool.borrow()
+        pool.release(first)
+        val second = pool.borrow()
+
+        assertSame(first, second)
+        assertFalse(second.connection.autoCommit)
+        assertEquals(1L, pool.createdCount)
+        pool.release(second)
+        pool.close()
+    }
+
+    @Test
+    fun `test concurrent borrowers get their own connections`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 0, maxSize = 4))
+
+        val first = pool.borrow()
+        val second = pool.borrow()
+
+        assertNotSame(first.connection, second.connection)
+        assertNotSame(first.statementCache, second.statementCache)
+        assertEquals(2, pool.size)
+        pool.release(first)
+        pool.release(second)
+        assertEquals(2, pool.idleCount)
+        pool.close()
+    }
+
+    @Test
+    fun `test borrow times out when pool is exhausted`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 0, maxSize = 1, borrowTimeoutMillis = 50))
+
+        val first = pool.borrow()
+        assertThrows(SQLException::class.java) { pool.borrow() }
+
+        pool.release(first)
+        pool.release(pool.borrow())
+        pool.close()
+    }
+
+    @Test
+    fun `test read-only sessions leave a connection for writes`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 0, maxSize = 2, borrowTimeoutMillis = 50))
+
+        val report = pool.borrow(readOnly = true)
+        assertThrows(SQLException::class.java) { pool.borrow(readOnly = true) }
+
+        val write = pool.borrow()
+        assertEquals(2, pool.size)
+        pool.release(write)
+        pool.release(report)
+        pool.close()
+    }
+
+    @Test
+    fun `test uncommitted work is rolled back on release`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 1, maxSize = 1))
+
+        val pooled = pool.borrow()
+        pooled.connection.createStatement().use { it.executeUpdate("INSERT INTO t (name) VALUES ('a')") }
+        pool.release(pooled)
+
+        val next = pool.borrow()
+        next.connection.createStatement().use { stmt ->
+            stmt.executeQuery("SELECT COUNT(*) FROM t").use { rs ->
+                assertTrue(rs.next())
+                assertEquals(0, rs.getInt(1))
+            }
+        }
+        pool.release(next)
+        pool.close()
+    }
+
+    @Test
+    fun `test idle connections are evicted down to minimum size`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 1, maxSize = 4, idleTimeoutMillis = 0))
+
+        val first = pool.borrow()
+        val second = pool.borrow()
+        pool.release(first)
+        pool.release(second)
+
+        assertEquals(1, pool.size)
+        assertEquals(1L, pool.evictionCount)
+        pool.close()
+    }
+
+    @Test
+    fun `test invalid connection is replaced`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 1, maxSize = 1, validationIntervalMillis = 0))
+
+        val first = pool.borrow()
+        pool.release(first)
+        first.connection.close()
+
+        val second = pool.borrow()
+        assertNotSame(first, second)
+        assertFalse(second.connection.isClosed)
+        assertEquals(2L, pool.createdCount)
+        pool.release(second)
+        pool.close()
+    }
+
+    @Test
+    fun `test closed pool refuses to lend connections`() {
+        val pool = createPool(ConnectionPool.Config(minSize = 1, maxSize = 2))
+        val pooled = pool.borrow()
+
+        pool.close()
+        pool.release(pooled)
+
+        assertTrue(pooled.connection.isClosed)
+        assertEquals(0, pool.size)
+        assertThrows(SQLException::class.java) { pool.borrow() }
+    }
+}
@@ -0,0 +1,77 @@
+package kirjanpito.db
+
+import kirjanpito.db.sqlite.SQLiteDataSource
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.sql.Connection
+import java.sql.DriverManager
+
+/**
+ * Tests for the index check run when an existing database is opened.
+ */
+class DatabaseUpgradeUtilTest {
+
+    private lateinit var testDbFile: File
+
+    @BeforeEach
+    fun setup() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete() // Delete so SQLiteDataSource creates fresh DB
+    }
+
+    @AfterEach
+    fun cleanup() {
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun indexNames(conn: Connection, table: String): Set<String> {
+        val names = HashSet<String>()
+        conn.metaData.getIndexInfo(null, null, table, false, true).use { rs ->
+            while (rs.next()) {
+                rs.getString("INDEX_NAME")?.let { names.add(it.lowercase()) }
+            }
+        }
+        return names
+    }
+
+    @Test
+    fun `test new database has query indexes`() {
+        val dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+        dataSource.close()
+
+        DriverManager.getConnection("jdbc:sqlite:${testDbFile.absolutePath}").use { conn ->
+            assertTrue(indexNames(conn, "entry").containsAll(listOf("entry_document_idx", "entry_account_idx")))
+            assertTrue(indexNames(conn, "document").contains("document_date_idx"))
+        }
+    }
+
+    @Test
+    fun `test missing indexes are created when database is opened`() {
+        val url = "jdbc:sqlite:${testDbFile.absolutePath}"
+        var dataSource = SQLiteDataSource()
+        dataSource.open(url, "", "")
+        dataSource.close()
+
+        DriverManager.getConnection(url).use { conn ->
+            conn.createStatement().use { stmt ->
+                stmt.executeUpdate("DROP INDEX entry_account_idx")
+                stmt.executeUpdate("DROP INDEX document_date_idx")
+            }
+            assertFalse(indexNames(conn, "entry").contains("entry_account_idx"))
+        }
+
+        dataSource = SQLiteDataSource()
+        dataSource.open(url, "", "")
+        dataSource.close()
+
+        DriverManager.getConnection(url).use { conn ->
+            assertTrue(indexNames(conn, "entry").contains("entry_account_idx"))
+            assertTrue(indexNames(conn, "document").contains("document_date_idx"))
+        }
+    }
+}
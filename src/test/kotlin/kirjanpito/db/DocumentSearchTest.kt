@@ -0,0 +1,152 @@
+package kirjanpito.db
+
+import kirjanpito.db.sqlite.SQLiteDataSource
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.math.BigDecimal
+import java.sql.Date
+
+/**
+ * Tests for the document full-text search.
+ * The search index is maintained by DocumentDAO, EntryDAO and AccountDAO.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DocumentSearchTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var testPeriod: Period
+    private lateinit var testAccount: Account
+    private var documentNumber = 100
+
+    @BeforeAll
+    fun setupDatabase() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete() // Delete so SQLiteDataSource creates fresh DB
+
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+
+        val session = dataSource.openSession()
+        try {
+            testPeriod = Period().apply {
+                setStartDate(Date(System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000))
+                setEndDate(Date(System.currentTimeMillis()))
+            }
+            dataSource.getPeriodDAO(session).save(testPeriod)
+
+            testAccount = Account().apply {
+                setNumber("1910")
+                setName("Pankkitili")
+                setType(Account.TYPE_ASSET)
+            }
+            dataSource.getAccountDAO(session).save(testAccount)
+            session.commit()
+        } finally {
+            session.close()
+        }
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun createDocument(session: Session, description: String): Pair<Document, Entry> {
+        val document = Document().apply {
+            setPeriodId(testPeriod.id)
+            setNumber(documentNumber++)
+            setDate(Date(System.currentTimeMillis()))
+        }
+        dataSource.getDocumentDAO(session).save(document)
+
+        val entry = Entry().apply {
+            setDocumentId(document.id)
+            setAccountId(testAccount.id)
+            setDescription(description)
+            setDebit(true)
+            setAmount(BigDecimal("10.00"))
+        }
+        dataSource.getEntryDAO(session).save(entry)
+        return Pair(document, entry)
+    }
+
+    private fun search(session: Session, q: String): List<Int> =
+        dataSource.getDocumentDAO(session).getByPeriodIdAndPhrase(testPeriod.id, q, 0, 100).map { it.id }
+
+    @Test
+    fun `test search finds entry description and account`() {
+        val session = dataSource.openSession()
+        try {
+            val (document, _) = createDocument(session, "Toimistotarvikkeet Oy")
+            val documentDAO = dataSource.getDocumentDAO(session)
+
+            assertTrue(search(session, "toimisto").contains(document.id))
+            assertTrue(search(session, "pankki").contains(document.id))
+            assertTrue(search(session, "1910 tarvikkeet").contains(document.id))
+            assertTrue(search(session, "1910 kalusteet").isEmpty())
+            assertTrue(search(session, document.number.toString()).contains(document.id))
+            assertEquals(0, documentDAO.getCountByPeriodIdAndPhrase(testPeriod.id, " %* "))
+
+            val found = ArrayList<Document>()
+            val count = documentDAO.searchByPeriodIdAndPhrase(testPeriod.id, "toimisto", 0, 10) { found.add(it) }
+            assertEquals(documentDAO.getCountByPeriodIdAndPhrase(testPeriod.id, "toimisto"), count)
+            assertEquals(count, found.size)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test search index follows entry and document changes`() {
+        val session = dataSource.openSession()
+        try {
+            val (document, entry) = createDocument(session, "Vuokra tammikuu")
+            assertTrue(search(session, "vuokra").contains(document.id))
+
+            entry.description = "Sähkölasku"
+            dataSource.getEntryDAO(session).save(entry)
+            assertFalse(search(session, "vuokra").contains(document.id))
+            assertTrue(search(session, "sähkö").contains(document.id))
+
+            dataSource.getEntryDAO(session).delete(entry.id)
+            dataSource.getDocumentDAO(session).delete(document.id)
+            assertFalse(search(session, "sähkö").contains(document.id))
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test search finds end of compound word`() {
+        val session = dataSource.openSession()
+        try {
+            val (document, _) = createDocument(session, "AUTOVAKUUTUS Lähivakuutus Oy")
+            val documentDAO = dataSource.getDocumentDAO(session)
+
+            assertTrue(search(session, "vakuutus").contains(document.id))
+            assertTrue(search(session, "pankki lähivakuutus").contains(document.id))
+            assertTrue(search(session, "auto").contains(document.id))
+            assertTrue(search(session, "henkivakuutus").isEmpty())
+
+            val found = ArrayList<Document>()
+            val count = documentDAO.searchByPeriodIdAndPhrase(testPeriod.id, "vakuutus", 0, 10) { found.add(it) }
+            assertEquals(1, count)
+            assertEquals(count, documentDAO.getCountByPeriodIdAndPhrase(testPeriod.id, "vakuutus"))
+            assertEquals(listOf(document.id), found.map { it.id })
+            assertEquals(0, documentDAO.searchByPeriodIdAndPhrase(testPeriod.id, "vakuutus", 10, 10) { })
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+}
@@ -221,6 +221,105 @@ class EntryDAOTest {
         }
     }
 
+    @Test
+    fun `test get entries by many documents`() {
+        val session = dataSource.openSession()
+        try {
+            val entryDAO = dataSource.getEntryDAO(session)
+            val documentDAO = dataSource.getDocumentDAO(session)
+
+            // More documents than fit in one IN list
+            val documents = (1..600).map { i ->
+                Document().apply {
+                    setPeriodId(testPeriod.id)
+                    setNumber(1000 + i)
+                    setDate(Date(System.currentTimeMillis()))
+                }.also { documentDAO.save(it) }
+            }
+            for (document in documents) {
+                entryDAO.save(Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(testAccount.id)
+                    setDescription("Tosite ${document.number}")
+                    setDebit(true)
+                    setAmount(BigDecimal("1.00"))
+                })
+            }
+
+            val counts = HashMap<Int, Int>()
+            entryDAO.getByDocuments(documents) { counts.merge(it.documentId, 1, Int::plus) }
+            assertEquals(600, counts.size)
+            assertTrue(counts.values.all { it == 1 })
+
+            // Odd-sized list is padded without returning duplicates
+            counts.clear()
+            entryDAO.getByDocuments(documents.take(3)) { counts.merge(it.documentId, 1, Int::plus) }
+            assertEquals(mapOf(documents[0].id to 1, documents[1].id to 1, documents[2].id to 1), counts)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test save all entries in one batch`() {
+        val session = dataSource.openSession()
+        try {
+            val entryDAO = dataSource.getEntryDAO(session)
+            val documentDAO = dataSource.getDocumentDAO(session)
+
+            val documents = (10..11).map { number ->
+                Document().apply {
+                    setPeriodId(testPeriod.id)
+                    setNumber(number)
+                    setDate(Date(System.currentTimeMillis()))
+                }
+            }
+            documentDAO.saveAll(documents)
+            assertTrue(documents.all { it.id > 0 })
+            assertEquals(2, documents.map { it.id }.toSet().size)
+
+            val entries = documents.flatMap { document ->
+                (0..2).map { row ->
+                    Entry().apply {
+                        setDocumentId(document.id)
+                        setAccountId(testAccount.id)
+                        setDescription("Batch entry $row")
+                        setDebit(row % 2 == 0)
+                        setAmount(BigDecimal("1${row}.50"))
+                        setRowNumber(row)
+                    }
+                }
+            }
+            entryDAO.saveAll(entries)
+            session.commit()
+
+            assertTrue(entries.all { it.id > 0 })
+            assertEquals(entries.size, entries.map { it.id }.toSet().size)
+
+            // Existing and new entries can be mixed
+            val updated = entries[0].apply { setDescription("Updated batch entry") }
+            val added = Entry().apply {
+                setDocumentId(documents[0].id)
+                setAccountId(testAccount.id)
+                setDescription("Added batch entry")
+                setDebit(false)
+                setAmount(BigDecimal("5.00"))
+                setRowNumber(3)
+            }
+            entryDAO.saveAll(listOf(updated, added))
+            session.commit()
+
+            val retrieved = entryDAO.getByDocumentId(documents[0].id)
+            assertEquals(4, retrieved.size)
+            assertEquals("Updated batch entry", retrieved.find { it.id == updated.id }?.description)
+            assertEquals(0, BigDecimal("12.50").compareTo(retrieved.find { it.rowNumber == 2 }!!.amount))
+            assertEquals(3, entryDAO.getByDocumentId(documents[1].id).size)
+        } finally {
+            session.close()
+        }
+    }
+
     @Test
     fun `test entry with debit and credit sides`() {
         val session = dataSource.openSession()
@@ -303,4 +402,170 @@ class EntryDAOTest {
             session.close()
         }
     }
+
+    @Test
+    fun `test sum by account matches entries`() {
+        val session = dataSource.openSession()
+        try {
+            val account = Account().apply {
+                setNumber("4000")
+                setName("Ostot")
+                setType(Account.TYPE_EXPENSE)
+            }
+            dataSource.getAccountDAO(session).save(account)
+
+            val opening = Document().apply {
+                setPeriodId(testPeriod.id)
+                setNumber(0)
+                setDate(Date(System.currentTimeMillis()))
+            }
+            dataSource.getDocumentDAO(session).save(opening)
+
+            val entryDAO = dataSource.getEntryDAO(session)
+            fun save(document: Document, debit: Boolean, amount: String, flags: Int = 0) {
+                entryDAO.save(Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(account.id)
+                    setDescription("Sum test")
+                    setDebit(debit)
+                    setAmount(BigDecimal(amount))
+                    setFlags(flags)
+                })
+            }
+
+            save(testDocument, true, "100.10")
+            save(testDocument, true, "0.20")
+            save(testDocument, false, "30.05")
+            save(testDocument, true, "999.00", flags = 1)
+            save(opening, true, "500.00")
+
+            val start = Date(0)
+            val end = Date(System.currentTimeMillis() + 24L * 60 * 60 * 1000)
+            val totals = HashMap<Int, AccountTotal>()
+            entryDAO.sumByAccount(testPeriod.id, start, end, 1, 1) { totals[it.accountId] = it }
+
+            val total = totals[account.id]
+            assertNotNull(total)
+            assertEquals(0, BigDecimal("100.30").compareTo(total!!.debitTotal))
+            assertEquals(0, BigDecimal("30.05").compareTo(total.creditTotal))
+            assertEquals(3, total.entryCount)
+
+            val all = HashMap<Int, AccountTotal>()
+            entryDAO.sumByAccount(-1, start, end, -1, 0) { all[it.accountId] = it }
+            assertEquals(0, BigDecimal("1599.30").compareTo(all[account.id]!!.debitTotal))
+            assertEquals(5, all[account.id]!!.entryCount)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test get entries with documents by period id`() {
+        val session = dataSource.openSession()
+        try {
+            val entryDAO = dataSource.getEntryDAO(session)
+            val documentDAO = dataSource.getDocumentDAO(session)
+
+            val documents = (1..3).map { i ->
+                Document().apply {
+                    setPeriodId(testPeriod.id)
+                    setNumber(2000 + i)
+                    setDate(Date(System.currentTimeMillis() - i * 24L * 60 * 60 * 1000))
+                }.also { documentDAO.save(it) }
+            }
+            for (document in documents) {
+                for (row in 1..2) {
+                    entryDAO.save(Entry().apply {
+                        setDocumentId(document.id)
+                        setAccountId(testAccount.id)
+                        setDescription("Rivi $row")
+                        setDebit(row == 1)
+                        setAmount(BigDecimal("2.00"))
+                        setRowNumber(row)
+                    })
+                }
+            }
+
+            val expected = ArrayList<Int>()
+            entryDAO.getByPeriodId(testPeriod.id, EntryDAO.ORDER_BY_DOCUMENT_DATE) { expected.add(it.id) }
+
+            val actual = ArrayList<Int>()
+            val byId = documents.associate { it.id to documentDAO.getByPeriodIdAndNumber(testPeriod.id, it.number) }
+            var previous: Document? = null
+            entryDAO.getByPeriodIdWithDocuments(testPeriod.id, EntryDAO.ORDER_BY_DOCUMENT_DATE) { document, entry ->
+                assertEquals(entry.documentId, document.id)
+                assertEquals(testPeriod.id, document.periodId)
+                val saved = byId[document.id]
+                if (saved != null) {
+                    assertEquals(saved.number, document.number)
+                    assertEquals(saved.date, document.date)
+                    if (previous?.id == document.id) {
+                        assertSame(previous, document)
+                    }
+                }
+                previous = document
+                actual.add(entry.id)
+            }
+            assertEquals(expected, actual)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test entries with documents by date range and account`() {
+        val session = dataSource.openSession()
+        try {
+            val entryDAO = dataSource.getEntryDAO(session)
+            val documentDAO = dataSource.getDocumentDAO(session)
+            val day = 24L * 60 * 60 * 1000
+            val now = System.currentTimeMillis()
+            val otherAccount = Account().apply {
+                setNumber("1911")
+                setName("Toinen pankkitili")
+                setType(Account.TYPE_ASSET)
+            }.also { dataSource.getAccountDAO(session).save(it) }
+
+            val documents = (1..3).map { i ->
+                Document().apply {
+                    setPeriodId(testPeriod.id)
+                    setNumber(3000 + i)
+                    setDate(Date(now - i * 10 * day))
+                }.also { documentDAO.save(it) }
+            }
+            for (document in documents) {
+                for (account in listOf(testAccount, otherAccount)) {
+                    entryDAO.save(Entry().apply {
+                        setDocumentId(document.id)
+                        setAccountId(account.id)
+                        setDescription("Vienti")
+                        setDebit(account == testAccount)
+                        setAmount(BigDecimal("3.00"))
+                    })
+                }
+            }
+
+            val inRange = HashSet<Int>()
+            entryDAO.getByPeriodIdAndDateWithDocuments(testPeriod.id,
+                Date(now - 25 * day), Date(now - 5 * day),
+                EntryDAO.ORDER_BY_DOCUMENT_NUMBER) { document, entry ->
+                assertEquals(entry.documentId, document.id)
+                inRange.add(document.id)
+            }
+            assertEquals(setOf(documents[0].id, documents[1].id), inRange)
+
+            val accountDocuments = ArrayList<Int>()
+            entryDAO.getByPeriodIdAndAccountIdWithDocuments(testPeriod.id, otherAccount.id,
+                EntryDAO.ORDER_BY_DOCUMENT_NUMBER) { document, entry ->
+                assertEquals(otherAccount.id, entry.accountId)
+                accountDocuments.add(document.number)
+            }
+            assertEquals(listOf(3001, 3002, 3003), accountDocuments)
+        } finally {
+            session.rollback()
+            session.close()
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package kirjanpito.db
+
+import kirjanpito.db.sqlite.SQLiteBackup
+import kirjanpito.db.sqlite.SQLiteDataSource
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.nio.file.Files
+import java.sql.Connection
+import java.sql.DriverManager
+
+/**
+ * Tests for SQLiteBackup.
+ */
+class SQLiteBackupTest {
+
+    private lateinit var testDbFile: File
+    private lateinit var backupFile: File
+    private lateinit var conn: Connection
+
+    @BeforeEach
+    fun setup() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        backupFile = File(testDbFile.path + ".bak")
+        backupFile.deleteOnExit()
+
+        conn = DriverManager.getConnection("jdbc:sqlite:${testDbFile.absolutePath}")
+        conn.autoCommit = false
+        conn.createStatement().use { stmt ->
+            stmt.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)")
+            for (i in 1..500) {
+                stmt.executeUpdate("INSERT INTO t (name) VALUES ('row $i')")
+            }
+        }
+        conn.commit()
+    }
+
+    @AfterEach
+    fun cleanup() {
+        conn.close()
+        backupFile.delete()
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun count(file: File): Int =
+        DriverManager.getConnection("jdbc:sqlite:${file.absolutePath}").use { c ->
+            c.createStatement().use { stmt ->
+                stmt.executeQuery("SELECT COUNT(*) FROM t").use { rs ->
+                    rs.next()
+                    rs.getInt(1)
+                }
+            }
+        }
+
+    @Test
+    fun `test backup copies database in steps`() {
+        var steps = 0
+        var lastRemaining = -1
+
+        SQLiteBackup(testDbFile, 1, 0).copyTo(backupFile) { remaining, _ ->
+            steps++
+            lastRemaining = remaining
+        }
+
+        assertTrue(steps > 1)
+        assertEquals(0, lastRemaining)
+        assertEquals(500, count(backupFile))
+        assertFalse(File(backupFile.path + ".tmp").exists())
+    }
+
+    @Test
+    fun `test backup leaves out uncommitted changes`() {
+        conn.createStatement().use { it.executeUpdate("INSERT INTO t (name) VALUES ('pending')") }
+
+        SQLiteBackup(testDbFile).copyTo(backupFile)
+        conn.rollback()
+
+        assertEquals(500, count(backupFile))
+    }
+
+    @Test
+    fun `test data source backup keeps sessions usable`() {
+        // Backups are written next to the database file
+        val dir = Files.createTempDirectory("tilitin-test-").toFile()
+        val dbFile = File(dir, "test.db")
+
+        val dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${dbFile.absolutePath}", "", "")
+
+        try {
+            val session = dataSource.openSession()
+            try {
+                dataSource.backup()
+                assertNotNull(dataSource.getSettingsDAO(session).get())
+            } finally {
+                session.close()
+            }
+        } finally {
+            dataSource.close()
+            dir.deleteRecursively()
+        }
+    }
+}
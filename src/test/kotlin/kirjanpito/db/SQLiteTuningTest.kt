@@ -0,0 +1,138 @@
+package kirjanpito.db
+
+import kirjanpito.db.sqlite.SQLiteTuning
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.SQLException
+
+/**
+ * Tests for SQLite WAL mode and reader connections.
+ * Reader connections are created in WAL mode and with the rollback journal.
+ */
+class SQLiteTuningTest {
+
+    private lateinit var testDbFile: File
+    private lateinit var url: String
+    private lateinit var writer: Connection
+    private val options = SQLiteTuning.Options(wal = true, readers = 2)
+
+    @BeforeEach
+    fun setup() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        url = "jdbc:sqlite:${testDbFile.absolutePath}"
+
+        writer = DriverManager.getConnection(url)
+        SQLiteTuning.configureWriter(writer, options)
+        writer.autoCommit = false
+        writer.createStatement().use { it.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)") }
+        writer.commit()
+    }
+
+    @AfterEach
+    fun cleanup() {
+        writer.close()
+        File(testDbFile.path + "-wal").delete()
+        File(testDbFile.path + "-shm").delete()
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun count(conn: Connection): Int =
+        conn.createStatement().use { stmt ->
+            stmt.executeQuery("SELECT COUNT(*) FROM t").use { rs ->
+                rs.next()
+                rs.getInt(1)
+            }
+        }
+
+    @Test
+    fun `test writer uses WAL journal mode`() {
+        writer.commit()
+        val mode = writer.createStatement().use { stmt ->
+            stmt.executeQuery("PRAGMA journal_mode").use { rs ->
+                rs.next()
+                rs.getString(1)
+            }
+        }
+
+        assertEquals("wal", mode.lowercase())
+    }
+
+    @Test
+    fun `test reader is not blocked by uncommitted write`() {
+        val pool = SQLiteTuning.createReaderPool(url, options)
+
+        writer.createStatement().use { it.executeUpdate("INSERT INTO t (name) VALUES ('a')") }
+
+        val reader = pool.borrow()
+        assertEquals(0, count(reader.connection))
+        pool.release(reader)
+
+        writer.commit()
+
+        val next = pool.borrow()
+        assertEquals(1, count(next.connection))
+        pool.release(next)
+        pool.close()
+    }
+
+    @Test
+    fun `test reader connection refuses writes`() {
+        val pool = SQLiteTuning.createReaderPool(url, options)
+        val reader = pool.borrow()
+
+        assertThrows(SQLException::class.java) {
+            reader.connection.createStatement().use { it.executeUpdate("INSERT INTO t (name) VALUES ('a')") }
+        }
+
+        pool.release(reader)
+        pool.close()
+    }
+
+    @Test
+    fun `test reader pool with rollback journal`() {
+        val dbFile = File.createTempFile("tilitin-test-", ".db")
+        dbFile.deleteOnExit()
+        val dbUrl = "jdbc:sqlite:${dbFile.absolutePath}"
+        val rollbackOptions = SQLiteTuning.Options(wal = false, readers = 0)
+
+        DriverManager.getConnection(dbUrl).use { conn ->
+            SQLiteTuning.configureWriter(conn, rollbackOptions)
+            conn.autoCommit = false
+            conn.createStatement().use { it.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)") }
+            conn.commit()
+
+            val pool = SQLiteTuning.createReaderPool(dbUrl, rollbackOptions)
+            val reader = pool.borrow()
+            assertEquals(0, count(reader.connection))
+            pool.release(reader)
+
+            // The reader holds no lock between queries, so the writer can commit
+            conn.createStatement().use { it.executeUpdate("INSERT INTO t (name) VALUES ('a')") }
+            conn.commit()
+
+            val next = pool.borrow()
+            assertEquals(1, count(next.connection))
+            pool.release(next)
+            pool.close()
+        }
+        dbFile.delete()
+    }
+
+    @Test
+    fun `test checkpoint moves log into database file`() {
+        writer.createStatement().use { it.executeUpdate("INSERT INTO t (name) VALUES ('a')") }
+        writer.commit()
+
+        val wal = File(testDbFile.path + "-wal")
+        assertTrue(wal.length() > 0)
+
+        assertTrue(SQLiteTuning.checkpoint(testDbFile))
+        assertEquals(0L, wal.length())
+    }
+}
@@ -0,0 +1,140 @@
+package kirjanpito.db
+
+import kirjanpito.db.sqlite.SQLiteDataSource
+import kirjanpito.db.sqlite.SQLiteSession
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.sql.Connection
+import java.sql.DriverManager
+
+/**
+ * Tests for StatementCache.
+ */
+class StatementCacheTest {
+
+    private lateinit var testDbFile: File
+    private lateinit var conn: Connection
+
+    @BeforeEach
+    fun setup() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        conn = DriverManager.getConnection("jdbc:sqlite:${testDbFile.absolutePath}")
+        conn.createStatement().use { it.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)") }
+    }
+
+    @AfterEach
+    fun cleanup() {
+        conn.close()
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    @Test
+    fun `test closed statement is reused`() {
+        val cache = StatementCache(conn)
+
+        cache.prepareStatement("SELECT name FROM t WHERE id = ?").use { stmt ->
+            stmt.setInt(1, 1)
+            stmt.executeQuery().use { rs -> assertFalse(rs.next()) }
+        }
+        cache.prepareStatement("SELECT name FROM t WHERE id = ?").use { stmt ->
+            stmt.setInt(1, 2)
+            stmt.executeQuery().use { rs -> assertFalse(rs.next()) }
+        }
+
+        assertEquals(1, cache.hitCount)
+        assertEquals(1, cache.missCount)
+        assertEquals(1, cache.size)
+        cache.close()
+    }
+
+    @Test
+    fun `test statement in use is not shared`() {
+        val cache = StatementCache(conn)
+        val sql = "INSERT INTO t (name) VALUES (?)"
+
+        val first = cache.prepareStatement(sql)
+        val second = cache.prepareStatement(sql)
+        first.setString(1, "a")
+        second.setString(1, "b")
+        first.executeUpdate()
+        second.executeUpdate()
+        first.close()
+        second.close()
+
+        assertEquals(0, cache.hitCount)
+        assertEquals(1, cache.size)
+        assertTrue(first.isClosed)
+        assertThrows(java.sql.SQLException::class.java) { first.executeUpdate() }
+        cache.close()
+    }
+
+    @Test
+    fun `test statement with changed settings is not reused`() {
+        val cache = StatementCache(conn)
+        val sql = "SELECT name FROM t"
+
+        cache.prepareStatement(sql).use { stmt ->
+            stmt.maxRows = 1
+            stmt.queryTimeout = 5
+            stmt.executeQuery().use { rs -> assertFalse(rs.next()) }
+        }
+        assertEquals(0, cache.size)
+
+        cache.prepareStatement(sql).use { stmt ->
+            assertEquals(0, stmt.maxRows)
+            assertEquals(0, stmt.queryTimeout)
+        }
+        assertEquals(0, cache.hitCount)
+        assertEquals(1, cache.size)
+        cache.close()
+    }
+
+    @Test
+    fun `test least recently used statement is evicted`() {
+        val cache = StatementCache(conn, 2)
+
+        for (i in 1..3) {
+            cache.prepareStatement("SELECT $i FROM t").close()
+        }
+        cache.prepareStatement("SELECT 1 FROM t").close()
+
+        assertEquals(2, cache.size)
+        assertEquals(2, cache.evictionCount)
+        assertEquals(0, cache.hitCount)
+        cache.close()
+    }
+
+    @Test
+    fun `test sessions of a data source share the cache`() {
+        val dbFile = File.createTempFile("tilitin-test-", ".db")
+        dbFile.deleteOnExit()
+        dbFile.delete() // Delete so SQLiteDataSource creates fresh DB
+
+        val dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${dbFile.absolutePath}", "", "")
+
+        try {
+            repeat(2) {
+                val session = dataSource.openSession()
+                try {
+                    dataSource.getAccountDAO(session).getAll()
+                } finally {
+                    session.close()
+                }
+            }
+
+            val session = dataSource.openSession() as SQLiteSession
+            val cache = session.statementCache
+            assertNotNull(cache)
+            assertTrue(cache.hitCount > 0)
+            session.close()
+        } finally {
+            dataSource.close()
+            dbFile.delete()
+        }
+    }
+}
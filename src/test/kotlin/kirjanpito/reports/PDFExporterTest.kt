@@ -0,0 +1,111 @@
+package kirjanpito.reports
+
+import kirjanpito.db.Settings
+import org.apache.pdfbox.Loader
+import org.apache.pdfbox.pdmodel.common.PDRectangle
+import org.apache.pdfbox.text.PDFTextStripper
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.io.InterruptedIOException
+
+/**
+ * Tests for PDFExporter.
+ * Pages are rendered in parallel, so the tests check page order and
+ * that the output matches a single-threaded export.
+ */
+class PDFExporterTest {
+
+    private class TestPrint(private val pages: Int) : Print() {
+        init {
+            setPrintId("chartOfAccounts")
+            setSettings(Settings().apply {
+                setName("Testi Oy")
+                setBusinessId("1234567-8")
+            })
+        }
+
+        override fun getTitle() = "Testituloste"
+
+        override fun getPageCount() = pages
+
+        override fun printContent() {
+            setNormalStyle()
+            for (i in 0 until 40) {
+                drawText("Sivu ${getPageIndex() + 1} rivi $i")
+                setY(getY() + 12)
+            }
+            drawHorizontalLine(1.0f)
+        }
+    }
+
+    private fun export(print: Print, threads: Int): File {
+        val file = File.createTempFile("tilitin-test-", ".pdf")
+        file.deleteOnExit()
+        val exporter = PDFExporter(print, PDRectangle.A4)
+        exporter.setThreadCount(threads)
+        exporter.export(file, null)
+        return file
+    }
+
+    private fun pageTexts(file: File): List<String> {
+        Loader.loadPDF(file).use { document ->
+            val stripper = PDFTextStripper()
+            return (1..document.numberOfPages).map { page ->
+                stripper.startPage = page
+                stripper.endPage = page
+                stripper.getText(document)
+            }
+        }
+    }
+
+    @Test
+    fun `test pages are assembled in order`() {
+        val texts = pageTexts(export(TestPrint(60), 4))
+        assertEquals(60, texts.size)
+        for ((index, text) in texts.withIndex()) {
+            assertTrue(text.contains("Sivu ${index + 1} rivi 0"), "page ${index + 1}")
+        }
+    }
+
+    @Test
+    fun `test parallel output matches single thread`() {
+        assertEquals(pageTexts(export(TestPrint(25), 1)),
+            pageTexts(export(TestPrint(25), 3)))
+    }
+
+    @Test
+    fun `test progress is reported for every page`() {
+        val file = File.createTempFile("tilitin-test-", ".pdf")
+        file.deleteOnExit()
+        val progress = ArrayList<Int>()
+        val exporter = PDFExporter(TestPrint(30), PDRectangle.A4)
+        exporter.setThreadCount(2)
+        exporter.export(file) { pagesDone, pageCount ->
+            assertEquals(30, pageCount)
+            progress.add(pagesDone)
+        }
+        assertEquals((1..30).toList(), progress)
+    }
+
+    @Test
+    fun `test cancelled export does not write file`() {
+        val file = File.createTempFile("tilitin-test-", ".pdf")
+        file.delete()
+        val exporter = PDFExporter(TestPrint(10), PDRectangle.A4)
+        exporter.cancel()
+        assertThrows(InterruptedIOException::class.java) {
+            exporter.export(file, null)
+        }
+        assertFalse(file.exists())
+    }
+
+    @Test
+    fun `test previous canvas is restored`() {
+        val print = TestPrint(5)
+        val canvas = RecordingCanvas(595, 842)
+        print.setCanvas(canvas)
+        export(print, 2)
+        assertSame(canvas, print.getCanvas())
+    }
+}
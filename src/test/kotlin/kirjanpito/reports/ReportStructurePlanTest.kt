@@ -0,0 +1,90 @@
+package kirjanpito.reports
+
+import kirjanpito.db.Account
+import kirjanpito.db.Entry
+import kirjanpito.util.AccountBalances
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.math.BigDecimal
+
+/**
+ * Tests for ReportStructurePlan.
+ */
+class ReportStructurePlanTest {
+
+    private fun account(id: Int, number: String, type: Int) = Account().apply {
+        this.id = id
+        this.number = number
+        this.type = type
+    }
+
+    private fun entry(accountId: Int, amount: String) = Entry().apply {
+        this.accountId = accountId
+        this.isDebit = true
+        this.amount = BigDecimal(amount)
+    }
+
+    private val accounts = listOf(
+        account(1, "4000", Account.TYPE_EXPENSE),
+        account(2, "1910", Account.TYPE_ASSET),
+        account(3, "3000", Account.TYPE_REVENUE),
+        account(4, "4010", Account.TYPE_EXPENSE),
+        account(5, "1700", Account.TYPE_ASSET)
+    )
+
+    private val data = """
+        HB0;Otsikko
+        SP1;1000;2000;Vastaavaa
+        TP1;4000;4010;Kulut
+        SP1;4010;4010;Yksi tili
+        --
+        DP2;1000;5000;Erittely
+    """.trimIndent()
+
+    @Test
+    fun `test ranges sum balances like linear scan`() {
+        val balances = AccountBalances(accounts)
+        balances.addEntry(entry(1, "10.00"))
+        balances.addEntry(entry(2, "5.50"))
+        balances.addEntry(entry(4, "2.25"))
+
+        val plan = ReportStructurePlan(data, accounts)
+        val sums = plan.createSums(balances, accounts)
+        val lines = plan.lines
+
+        assertEquals(6, lines.size)
+        assertEquals(ReportStructurePlan.TYPE_PAGE_BREAK, lines[4].type)
+
+        val assets = lines[1].spans
+        assertEquals(0, BigDecimal("5.50").compareTo(sums.sum(assets[0], assets[1])))
+
+        val expenses = lines[2].spans
+        assertEquals(0, BigDecimal("-10.00").compareTo(sums.sum(expenses[0], expenses[1])))
+
+        val single = lines[3].spans
+        assertEquals(0, BigDecimal("-2.25").compareTo(sums.sum(single[0], single[1])))
+
+        val details = lines[5].spans
+        assertArrayEquals(intArrayOf(0, 1, 2, 3, 4), plan.getAccountIndices(details[0], details[1]))
+    }
+
+    @Test
+    fun `test range without balances is null`() {
+        val plan = ReportStructurePlan(data, accounts)
+        val sums = plan.createSums(AccountBalances(accounts), accounts)
+        val spans = plan.lines[1].spans
+        assertNull(sums.sum(spans[0], spans[1]))
+    }
+
+    @Test
+    fun `test cached plan is rebuilt when chart changes`() {
+        val first = ReportStructurePlan.get("test-report", data, accounts)
+        assertSame(first, ReportStructurePlan.get("test-report", data, accounts))
+
+        val changed = accounts + account(6, "1800", Account.TYPE_ASSET)
+        val second = ReportStructurePlan.get("test-report", data, changed)
+        assertNotSame(first, second)
+        assertTrue(second.matches(data, changed))
+        assertFalse(second.matches(data + "\nSP0;1;2;X", changed))
+    }
+}
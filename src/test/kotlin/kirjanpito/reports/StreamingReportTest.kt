@@ -0,0 +1,185 @@
+package kirjanpito.reports
+
+import kirjanpito.db.*
+import kirjanpito.db.sqlite.SQLiteDataSource
+import kirjanpito.util.CSVWriter
+import kirjanpito.util.Registry
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.io.StringWriter
+import java.math.BigDecimal
+import java.sql.Date
+
+/**
+ * Tests for streaming CSV export of the general ledger and journal.
+ * The streamed output must be identical to run() followed by writeCSV().
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StreamingReportTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var registry: Registry
+    private lateinit var testPeriod: Period
+
+    private val day = 24L * 60 * 60 * 1000
+
+    @BeforeAll
+    fun setupDatabase() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete() // Delete so SQLiteDataSource creates fresh DB
+
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+
+        val now = System.currentTimeMillis()
+        val session = dataSource.openSession()
+        try {
+            testPeriod = Period().apply {
+                setStartDate(Date(now - 365L * day))
+                setEndDate(Date(now))
+            }
+            dataSource.getPeriodDAO(session).save(testPeriod)
+
+            val accountDAO = dataSource.getAccountDAO(session)
+            val accounts = listOf(
+                account("1910", "Pankkitili", Account.TYPE_ASSET),
+                account("2250", "Edellisten tilikausien voitto", Account.TYPE_PROFIT_PREV),
+                account("2370", "Tilikauden voitto", Account.TYPE_PROFIT),
+                account("3000", "Myynti", Account.TYPE_REVENUE),
+                account("4000", "Ostot", Account.TYPE_EXPENSE)
+            )
+            accounts.forEach { accountDAO.save(it) }
+
+            val settings = Settings().apply {
+                setName("Test Company")
+                setBusinessId("1234567-8")
+                setCurrentPeriodId(testPeriod.id)
+            }
+            dataSource.getSettingsDAO(session).save(settings)
+
+            val (bank, profitPrev, _, sales, purchases) = accounts
+            for (i in 0 until 20) {
+                val document = Document().apply {
+                    setPeriodId(testPeriod.id)
+                    setNumber(i)
+                    setDate(Date(now - (300L - i * 10) * day))
+                }
+                dataSource.getDocumentDAO(session).save(document)
+
+                val other = when {
+                    i == 0 -> profitPrev
+                    i % 3 == 0 -> purchases
+                    else -> sales
+                }
+                val amount = BigDecimal("${100 + i}.${i % 10}5")
+                saveEntry(session, document, bank, other.type != Account.TYPE_EXPENSE, amount)
+                saveEntry(session, document, other, other.type == Account.TYPE_EXPENSE, amount)
+            }
+
+            session.commit()
+        } finally {
+            session.close()
+        }
+
+        registry = Registry()
+        registry.setDataSource(dataSource)
+        registry.setPeriod(testPeriod)
+
+        val readSession = dataSource.openSession()
+        try {
+            registry.fetchSettings(readSession)
+            registry.fetchChartOfAccounts(readSession)
+        } finally {
+            readSession.close()
+        }
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun account(number: String, name: String, type: Int): Account {
+        return Account().apply {
+            setNumber(number)
+            setName(name)
+            setType(type)
+        }
+    }
+
+    private fun saveEntry(session: Session, document: Document, account: Account,
+                          debit: Boolean, amount: BigDecimal) {
+        val entry = Entry().apply {
+            setDocumentId(document.id)
+            setAccountId(account.id)
+            setDescription("Vienti ${document.number}")
+            setDebit(debit)
+            setAmount(amount)
+        }
+        dataSource.getEntryDAO(session).save(entry)
+    }
+
+    private fun materialized(model: PrintModel): String {
+        val out = StringWriter()
+        model.run()
+        model.writeCSV(CSVWriter(out))
+        return out.toString()
+    }
+
+    private fun streamed(model: PrintModel): String {
+        val out = StringWriter()
+        model.streamCSV(CSVWriter(out))
+        return out.toString()
+    }
+
+    private fun ledger(): GeneralLedgerModel {
+        return GeneralLedgerModel().apply {
+            setRegistry(registry)
+            setPeriod(testPeriod)
+            setStartDate(testPeriod.startDate)
+            setEndDate(testPeriod.endDate)
+            setOrderBy(GeneralLedgerModel.ORDER_BY_NUMBER)
+            setTotalAmountVisible(true)
+        }
+    }
+
+    private fun journal(): GeneralJournalModel {
+        return GeneralJournalModel().apply {
+            setRegistry(registry)
+            setPeriod(testPeriod)
+            setStartDate(testPeriod.startDate)
+            setEndDate(testPeriod.endDate)
+            setOrderBy(GeneralJournalModel.ORDER_BY_NUMBER)
+            setTotalAmountVisible(true)
+        }
+    }
+
+    @Test
+    fun `test streamed general ledger matches materialized rows`() {
+        val expected = materialized(ledger())
+        assertTrue(expected.contains("Tilikauden voitto"))
+        assertEquals(expected, streamed(ledger()))
+    }
+
+    @Test
+    fun `test streamed general journal matches materialized rows`() {
+        assertEquals(materialized(journal()), streamed(journal()))
+    }
+
+    @Test
+    fun `test streamed ledger by date range matches materialized rows`() {
+        val model = ledger()
+        model.startDate = Date(testPeriod.startDate.time + 150 * day)
+        val other = ledger()
+        other.startDate = model.startDate
+        assertEquals(materialized(model), streamed(other))
+    }
+}
@@ -0,0 +1,104 @@
+package kirjanpito.ui.javafx
+
+import javafx.scene.image.Image
+import javafx.stage.Stage
+import kirjanpito.db.Settings
+import kirjanpito.reports.Print
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.testfx.api.FxRobot
+import org.testfx.framework.junit5.ApplicationExtension
+import org.testfx.framework.junit5.Start
+import java.awt.print.PageFormat
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * TestFX tests for PageRenderService.
+ *
+ * Tests progressive rendering, caching and that stale requests are not delivered.
+ */
+@ExtendWith(ApplicationExtension::class)
+class PageRenderServiceTest : FxRobot() {
+
+    private class TestPrint(private val pages: Int) : Print() {
+        init {
+            setPrintId("chartOfAccounts")
+            setSettings(Settings().apply {
+                setName("Testi Oy")
+                setBusinessId("1234567-8")
+            })
+        }
+
+        override fun getTitle() = "Testituloste"
+
+        override fun getPageCount() = pages
+
+        override fun printContent() {
+            setNormalStyle()
+            for (i in 0 until 20) {
+                drawText("Sivu ${getPageIndex() + 1} rivi $i")
+                setY(getY() + 12)
+            }
+        }
+    }
+
+    private val service = PageRenderService(TestPrint(10), PageFormat())
+
+    @Start
+    fun start(stage: Stage) {
+        stage.show()
+    }
+
+    @AfterEach
+    fun shutdown() {
+        service.shutdown()
+    }
+
+    @Test
+    fun `test low resolution image is delivered before full image`() {
+        val images = Collections.synchronizedList(ArrayList<Image>())
+        val latch = CountDownLatch(2)
+        interact {
+            service.request(0, 1.0) {
+                images.add(it)
+                latch.countDown()
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS))
+        assertTrue(images[0].width < images[1].width)
+    }
+
+    @Test
+    fun `test cached page is delivered immediately`() {
+        val latch = CountDownLatch(2)
+        interact {
+            service.request(1, 1.0) { latch.countDown() }
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS))
+
+        interact {
+            var delivered: Image? = null
+            service.request(1, 1.0) { delivered = it }
+            assertNotNull(delivered)
+        }
+    }
+
+    @Test
+    fun `test stale request is not delivered`() {
+        val stale = Collections.synchronizedList(ArrayList<Image>())
+        val latch = CountDownLatch(2)
+        interact {
+            service.request(4, 1.0) { stale.add(it) }
+            service.request(7, 1.0) { latch.countDown() }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS))
+        interact { }
+        assertTrue(stale.isEmpty())
+    }
+}
@@ -0,0 +1,226 @@
+package kirjanpito.ui.javafx.dialogs
+
+import kirjanpito.db.*
+import kirjanpito.db.sqlite.SQLiteDataSource
+import kirjanpito.ui.javafx.dialogs.ReportDialog.ReportType
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.io.StringWriter
+import java.math.BigDecimal
+import java.sql.Date
+import java.text.DecimalFormat
+import java.util.concurrent.CancellationException
+
+/**
+ * Tests for ReportHtmlGenerator.
+ * Reports are split into pages of whole tables without losing or repeating
+ * rows, the opening balance document 0 is included, and generation stops
+ * when it is cancelled.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReportHtmlGeneratorTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var testPeriod: Period
+    private lateinit var openingPeriod: Period
+    private lateinit var accounts: List<Account>
+
+    private val documentCount = 600
+
+    @BeforeAll
+    fun setupDatabase() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete()
+
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+
+        val session = dataSource.openSession()
+        try {
+            testPeriod = Period().apply {
+                setStartDate(Date(System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000))
+                setEndDate(Date(System.currentTimeMillis()))
+            }
+            dataSource.getPeriodDAO(session).save(testPeriod)
+
+            val accountDAO = dataSource.getAccountDAO(session)
+            accounts = listOf(
+                Account().apply { setNumber("1910"); setName("Pankkitili"); setType(Account.TYPE_ASSET) },
+                Account().apply { setNumber("3000"); setName("Myynti"); setType(Account.TYPE_REVENUE) }
+            )
+            accounts.forEach { accountDAO.save(it) }
+
+            val documentDAO = dataSource.getDocumentDAO(session)
+            val entryDAO = dataSource.getEntryDAO(session)
+            for (i in 1..documentCount) {
+                val document = Document().apply {
+                    setPeriodId(testPeriod.id)
+                    setNumber(i)
+                    setDate(Date(System.currentTimeMillis()))
+                }
+                documentDAO.save(document)
+
+                entryDAO.save(Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(accounts[0].id)
+                    setDescription("Myynti $i")
+                    setDebit(true)
+                    setAmount(BigDecimal("10.00"))
+                    setRowNumber(0)
+                })
+                entryDAO.save(Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(accounts[1].id)
+                    setDebit(false)
+                    setAmount(BigDecimal("10.00"))
+                    setRowNumber(1)
+                })
+            }
+
+            // Tilikausi, jolla on alkusaldotosite 0
+            openingPeriod = Period().apply {
+                setStartDate(Date(System.currentTimeMillis() - 2 * 365L * 24 * 60 * 60 * 1000))
+                setEndDate(Date(System.currentTimeMillis() - 366L * 24 * 60 * 60 * 1000))
+            }
+            dataSource.getPeriodDAO(session).save(openingPeriod)
+
+            for (number in 0..1) {
+                val document = Document().apply {
+                    setPeriodId(openingPeriod.id)
+                    setNumber(number)
+                    setDate(openingPeriod.startDate)
+                }
+                documentDAO.save(document)
+
+                entryDAO.save(Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(accounts[0].id)
+                    setDescription(if (number == 0) "Alkusaldo" else "Myynti")
+                    setDebit(true)
+                    setAmount(BigDecimal("500.00"))
+                    setRowNumber(0)
+                })
+            }
+            session.commit()
+        } finally {
+            session.close()
+        }
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun generate(type: ReportType, pages: ReportPages): List<Int> {
+        val delivered = mutableListOf<Int>()
+        ReportHtmlGenerator(dataSource, testPeriod, accounts, 100)
+            .generate(type, pages, { false }) { delivered.add(it) }
+        return delivered
+    }
+
+    private fun count(text: String, s: String): Int {
+        var n = 0
+        var i = text.indexOf(s)
+        while (i >= 0) {
+            n++
+            i = text.indexOf(s, i + s.length)
+        }
+        return n
+    }
+
+    @Test
+    fun `test journal is split into pages of whole documents`() {
+        ReportPages().use { pages ->
+            val delivered = generate(ReportType.JOURNAL, pages)
+
+            assertTrue(pages.isComplete)
+            assertTrue(pages.size > 10)
+            assertEquals((0 until pages.size).toList(), delivered)
+
+            val numbers = mutableListOf<Int>()
+            for (i in 0 until pages.size) {
+                val page = pages.get(i)
+                assertEquals(1, count(page, "<table"))
+                assertEquals(1, count(page, "</table>"))
+                Regex("""<td class="num">(\d+)</td>""").findAll(page)
+                    .mapTo(numbers) { it.groupValues[1].toInt() }
+            }
+            assertEquals((1..documentCount).toList(), numbers)
+
+            val last = pages.get(pages.size - 1)
+            assertTrue(last.contains("YHTEENSÄ"))
+            assertTrue(last.contains(DecimalFormat("#,##0.00").format(BigDecimal("6000.00"))))
+
+            val html = StringWriter().also { pages.writeTo(it) }.toString()
+            assertEquals(documentCount, count(html, "<td class=\"description\""))
+        }
+    }
+
+    @Test
+    fun `test long ledger account continues on next page`() {
+        ReportPages().use { pages ->
+            generate(ReportType.LEDGER, pages)
+
+            val html = StringWriter().also { pages.writeTo(it) }.toString()
+            assertTrue(pages.size > 10)
+            assertEquals(2, count(html, "Saldo:"))
+            assertEquals(pages.size - 2, count(html, "Siirto:"))
+            assertEquals(pages.size - 2, count(html, "(jatkuu)"))
+            assertEquals(2 * documentCount, count(html, "<td class=\"num\">"))
+        }
+    }
+
+    @Test
+    fun `test opening balance document is included`() {
+        ReportPages().use { pages ->
+            ReportHtmlGenerator(dataSource, openingPeriod, accounts, 100)
+                .generate(ReportType.JOURNAL, pages, { false }) { }
+
+            val html = StringWriter().also { pages.writeTo(it) }.toString()
+            val numbers = Regex("""<td class="num">(\d+)</td>""").findAll(html)
+                .map { it.groupValues[1].toInt() }.toList()
+            assertEquals(listOf(0, 1), numbers)
+            assertTrue(html.contains("Alkusaldo"))
+        }
+
+        ReportPages().use { pages ->
+            ReportHtmlGenerator(dataSource, openingPeriod, accounts, 100)
+                .generate(ReportType.LEDGER, pages, { false }) { }
+
+            val html = StringWriter().also { pages.writeTo(it) }.toString()
+            assertTrue(html.contains("Alkusaldo"))
+            assertTrue(html.contains(DecimalFormat("#,##0.00").format(BigDecimal("1000.00"))))
+        }
+    }
+
+    @Test
+    fun `test cancelled generation stops after current page`() {
+        ReportPages().use { pages ->
+            var delivered = 0
+            assertThrows(CancellationException::class.java) {
+                ReportHtmlGenerator(dataSource, testPeriod, accounts, 100)
+                    .generate(ReportType.JOURNAL, pages, { delivered >= 2 }) { delivered++ }
+            }
+            assertEquals(2, pages.size)
+            assertFalse(pages.isComplete)
+        }
+    }
+
+    @Test
+    fun `test closed pages reject new pages`() {
+        val pages = ReportPages()
+        pages.close()
+        assertThrows(CancellationException::class.java) {
+            generate(ReportType.JOURNAL, pages)
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package kirjanpito.util
+
+import kirjanpito.db.Account
+import kirjanpito.db.Entry
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.math.BigDecimal
+
+/**
+ * Tests for AccountBalances and CentAccumulator.
+ */
+class AccountBalancesTest {
+
+    private fun account(id: Int, type: Int) = Account().apply {
+        this.id = id
+        this.type = type
+    }
+
+    private fun entry(accountId: Int, debit: Boolean, amount: String) = Entry().apply {
+        this.accountId = accountId
+        this.isDebit = debit
+        this.amount = BigDecimal(amount)
+    }
+
+    @Test
+    fun `test balances follow account type`() {
+        val balances = AccountBalances(listOf(
+            account(1, Account.TYPE_ASSET),
+            account(2, Account.TYPE_REVENUE),
+            account(3, Account.TYPE_EXPENSE)
+        ))
+
+        balances.addEntry(entry(1, true, "124.00"))
+        balances.addEntry(entry(2, false, "100.00"))
+        balances.addEntry(entry(3, true, "30.25"))
+        balances.addEntry(entry(3, false, "0.25"))
+        balances.addEntry(entry(99, true, "1.00"))
+
+        assertEquals(BigDecimal("124.00"), balances.getBalance(1))
+        assertEquals(BigDecimal("100.00"), balances.getBalance(2))
+        assertEquals(BigDecimal("30.00"), balances.getBalance(3))
+        assertNull(balances.getBalance(99))
+        assertEquals(BigDecimal("70.00"), balances.profit)
+        assertEquals(3, balances.count)
+
+        balances.reset()
+        assertNull(balances.getBalance(1))
+        assertEquals(0, balances.count)
+        assertEquals(0, BigDecimal.ZERO.compareTo(balances.profit))
+    }
+
+    @Test
+    fun `test accounts added later and large ids`() {
+        val balances = AccountBalances()
+
+        for (i in 1..40) {
+            balances.addAccount(account(i * 100_000, Account.TYPE_LIABILITY))
+        }
+
+        balances.addEntry(entry(4_000_000, false, "5"))
+        assertEquals(0, BigDecimal("5").compareTo(balances.getBalance(4_000_000)))
+    }
+
+    @Test
+    fun `test accumulator falls back to BigDecimal`() {
+        val sums = CentAccumulator(2)
+
+        sums.addCents(0, Long.MAX_VALUE - 1)
+        sums.add(0, BigDecimal("1.00"))
+        sums.add(1, BigDecimal("0.005"))
+        sums.add(1, BigDecimal("0.01"), -1)
+
+        assertEquals(BigDecimal("92233720368547759.06"), sums.get(0))
+        assertEquals(0, BigDecimal("-0.005").compareTo(sums.get(1)))
+    }
+}
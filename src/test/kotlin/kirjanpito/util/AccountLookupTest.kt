@@ -0,0 +1,87 @@
+package kirjanpito.util
+
+import kirjanpito.db.Account
+import kirjanpito.db.COAHeading
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+
+/**
+ * Tests for AccountLookup and the indexed ChartOfAccounts search.
+ * Prefix searches are case-insensitive and must return the same rows
+ * as the earlier linear scan.
+ */
+class AccountLookupTest {
+
+    private fun account(id: Int, number: String, name: String) = Account().apply {
+        setId(id)
+        setNumber(number)
+        setName(name)
+    }
+
+    private fun heading(number: String, text: String) = COAHeading().apply {
+        setNumber(number)
+        setText(text)
+        setLevel(1)
+    }
+
+    private val accounts = listOf(
+        account(3, "1700", "Myyntisaamiset"),
+        account(1, "1910", "Pankkitili"),
+        account(2, "1911", "Pankkitili 2"),
+        account(7, "2939", "ALV-velka"),
+        account(5, "3000", "Myynti")
+    )
+
+    @Test
+    fun `test accounts are found by id and number`() {
+        val lookup = AccountLookup(accounts, 1)
+        assertEquals(5, lookup.size())
+        assertEquals("1911", lookup.getById(2)!!.number)
+        assertEquals("Myynti", lookup.getByNumber("3000")!!.name)
+        assertNull(lookup.getById(4))
+        assertNull(lookup.getById(100))
+        assertNull(lookup.getByNumber("9999"))
+    }
+
+    @Test
+    fun `test prefix search ignores case`() {
+        val lookup = AccountLookup(accounts, 1)
+        assertEquals(listOf("1910", "1911"), lookup.searchByNumber("191").map { it.number })
+        assertEquals(listOf("Myynti", "Myyntisaamiset"), lookup.searchByName("MYYN").map { it.name })
+        assertEquals(listOf("ALV-velka"), lookup.searchByName("alv").map { it.name })
+        assertTrue(lookup.searchByName("x").isEmpty())
+    }
+
+    @Test
+    fun `test empty lookup finds nothing`() {
+        assertNull(AccountLookup.EMPTY.getById(1))
+        assertNull(AccountLookup.EMPTY.getByNumber("1910"))
+        assertTrue(AccountLookup.EMPTY.searchByName("").isEmpty())
+    }
+
+    @Test
+    fun `test chart of accounts search prefers exact match`() {
+        val coa = ChartOfAccounts()
+        coa.set(accounts, listOf(heading("1", "VASTAAVAA"), heading("2939", "Verovelat")))
+
+        // Rows: VASTAAVAA, 1700, 1910, 1911, Verovelat, 2939, 3000
+        assertEquals(6, coa.search("myynti"))
+        assertEquals(1, coa.search("myy"))
+        assertEquals(2, coa.search("pankkitili"))
+        assertEquals(3, coa.search("1911"))
+        assertEquals(4, coa.search("vero"))
+        assertEquals(-1, coa.search("xyz"))
+        assertEquals(5, coa.indexOfAccount(accounts[3]))
+    }
+
+    @Test
+    fun `test search index is rebuilt after rename`() {
+        val coa = ChartOfAccounts()
+        coa.set(accounts, emptyList())
+        assertEquals(4, coa.search("myynti"))
+
+        coa.getAccount(4).name = "Liikevaihto"
+        coa.clearSearchIndex()
+        assertEquals(4, coa.search("liike"))
+    }
+}
@@ -0,0 +1,114 @@
+package kirjanpito.util
+
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import kotlin.random.Random
+
+/**
+ * Tests for BackupChunkStore.
+ */
+class BackupChunkStoreTest {
+
+    private lateinit var dir: File
+    private lateinit var store: BackupChunkStore
+
+    private val blockSize = 4096
+
+    @BeforeEach
+    fun setup() {
+        dir = Files.createTempDirectory("tilitin-test-").toFile()
+        store = BackupChunkStore(dir, blockSize)
+    }
+
+    @AfterEach
+    fun cleanup() {
+        dir.deleteRecursively()
+    }
+
+    private fun writeSource(name: String, data: ByteArray): File {
+        val file = File(dir, name)
+        file.writeBytes(data)
+        return file
+    }
+
+    @Test
+    fun `test snapshot restores identical file`() {
+        // Viimeinen lohko jää vajaaksi
+        val data = Random(1).nextBytes(blockSize * 10 + 123)
+        val source = writeSource("source.db", data)
+        val snapshot = File(dir, "a.snapshot")
+
+        val stats = store.writeSnapshot(source, snapshot)
+        assertEquals(11, stats.blockCount)
+        assertEquals(11, stats.newChunkCount)
+
+        val restored = File(dir, "restored.db")
+        store.restoreSnapshot(snapshot, restored)
+        assertArrayEquals(data, restored.readBytes())
+    }
+
+    @Test
+    fun `test second snapshot stores only changed blocks`() {
+        val data = Random(2).nextBytes(blockSize * 10)
+        store.writeSnapshot(writeSource("source.db", data), File(dir, "a.snapshot"))
+
+        data[blockSize * 3 + 17] = (data[blockSize * 3 + 17] + 1).toByte()
+        val stats = store.writeSnapshot(writeSource("source.db", data), File(dir, "b.snapshot"))
+
+        assertEquals(10, stats.blockCount)
+        assertEquals(1, stats.newChunkCount)
+
+        val restored = File(dir, "restored.db")
+        store.restoreSnapshot(File(dir, "b.snapshot"), restored)
+        assertArrayEquals(data, restored.readBytes())
+    }
+
+    @Test
+    fun `test unused chunks are removed`() {
+        val data = Random(3).nextBytes(blockSize * 4)
+        store.writeSnapshot(writeSource("source.db", data), File(dir, "a.snapshot"))
+
+        data[0] = (data[0] + 1).toByte()
+        store.writeSnapshot(writeSource("source.db", data), File(dir, "b.snapshot"))
+
+        assertTrue(File(dir, "a.snapshot").delete())
+        assertEquals(1, store.removeUnusedChunks(dir))
+
+        val restored = File(dir, "restored.db")
+        store.restoreSnapshot(File(dir, "b.snapshot"), restored)
+        assertArrayEquals(data, restored.readBytes())
+    }
+
+    @Test
+    fun `test damaged chunk is written again`() {
+        val data = Random(4).nextBytes(blockSize * 4)
+        store.writeSnapshot(writeSource("source.db", data), File(dir, "a.snapshot"))
+
+        // Katkaistaan yksi varaston lohko
+        val chunk = File(dir, "tilitin-chunks").walk().first { it.isFile && it.name.endsWith(".z") }
+        chunk.writeBytes(chunk.readBytes().copyOf(chunk.length().toInt() / 2))
+
+        val stats = store.writeSnapshot(writeSource("source.db", data), File(dir, "b.snapshot"))
+        assertEquals(1, stats.newChunkCount)
+
+        val restored = File(dir, "restored.db")
+        store.restoreSnapshot(File(dir, "b.snapshot"), restored)
+        assertArrayEquals(data, restored.readBytes())
+        assertEquals(0, store.removeUnusedChunks(dir))
+    }
+
+    @Test
+    fun `test missing chunk fails restore`() {
+        val snapshot = File(dir, "a.snapshot")
+        snapshot.writeText("tilitin-snapshot 1\nsize 4096\nblock-size 4096\n" + "0".repeat(64) + "\n")
+
+        val restored = File(dir, "restored.db")
+        assertThrows(IOException::class.java) {
+            store.restoreSnapshot(snapshot, restored)
+        }
+        assertFalse(restored.exists())
+    }
+}
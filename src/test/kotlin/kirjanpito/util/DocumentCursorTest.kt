@@ -0,0 +1,255 @@
+package kirjanpito.util
+
+import kirjanpito.db.*
+import kirjanpito.db.sqlite.SQLiteDataSource
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.math.BigDecimal
+import java.sql.Date
+
+/**
+ * Tests for DocumentCursor.
+ * Documents are fetched in small windows, so the tests walk across
+ * window boundaries in both directions and check that far windows are evicted.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DocumentCursorTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var testPeriod: Period
+    private val documentIds = HashMap<Int, Int>()
+
+    @BeforeAll
+    fun setupDatabase() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete()
+
+        // The default rollback journal also has reader connections for prefetching
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+        assertTrue(dataSource.hasReaderConnections())
+
+        // Numbers 2, 4, ..., 200 so that keyset boundaries skip gaps
+        testPeriod = createDocuments(dataSource, 2..200 step 2, documentIds)
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized) {
+            testDbFile.delete()
+            File(testDbFile.path + "-wal").delete()
+            File(testDbFile.path + "-shm").delete()
+        }
+    }
+
+    private fun createDocuments(source: DataSource, numbers: IntProgression,
+                                ids: MutableMap<Int, Int>): Period {
+        val session = source.openSession()
+        try {
+            val period = Period().apply {
+                setStartDate(Date(System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000))
+                setEndDate(Date(System.currentTimeMillis()))
+            }
+            source.getPeriodDAO(session).save(period)
+
+            val account = Account().apply {
+                setNumber("1910")
+                setName("Pankkitili")
+                setType(Account.TYPE_ASSET)
+            }
+            source.getAccountDAO(session).save(account)
+
+            val documentDAO = source.getDocumentDAO(session)
+            val entryDAO = source.getEntryDAO(session)
+            for (number in numbers) {
+                val document = Document().apply {
+                    setPeriodId(period.id)
+                    setNumber(number)
+                    setDate(Date(System.currentTimeMillis()))
+                }
+                documentDAO.save(document)
+                ids[number] = document.id
+                entryDAO.save(Entry().apply {
+                    setDocumentId(document.id)
+                    setAccountId(account.id)
+                    setDescription("Tosite $number")
+                    setDebit(true)
+                    setAmount(BigDecimal("10.00"))
+                })
+            }
+            session.commit()
+            return period
+        } finally {
+            session.close()
+        }
+    }
+
+    private fun createCursor(): DocumentCursor {
+        val cursor = DocumentCursor(dataSource, testPeriod.id, 1, Int.MAX_VALUE)
+        cursor.setWindowSize(10)
+        cursor.setPrefetchCount(2)
+        return cursor
+    }
+
+    @Test
+    fun `test next visits every document in order`() {
+        val cursor = createCursor()
+        try {
+            assertEquals(100, cursor.count)
+            val numbers = ArrayList<Int>()
+            var document = cursor.first()
+            while (document != null) {
+                numbers.add(document.number)
+                assertEquals(numbers.size - 1, cursor.position)
+                assertTrue(cursor.loadedCount <= 40)
+                document = cursor.next()
+            }
+            assertEquals((2..200 step 2).toList(), numbers)
+        } finally {
+            cursor.close()
+        }
+    }
+
+    @Test
+    fun `test previous visits every document in reverse order`() {
+        val cursor = createCursor()
+        try {
+            val numbers = ArrayList<Int>()
+            var document = cursor.last()
+            while (document != null) {
+                numbers.add(document.number)
+                assertTrue(cursor.loadedCount <= 40)
+                document = cursor.previous()
+            }
+            assertEquals((200 downTo 2 step 2).toList(), numbers)
+            assertEquals(0, cursor.position)
+        } finally {
+            cursor.close()
+        }
+    }
+
+    @Test
+    fun `test seek loads window around document`() {
+        val cursor = createCursor()
+        try {
+            cursor.first()
+            assertEquals(120, cursor.seek(120)!!.number)
+            assertEquals(59, cursor.position)
+            assertEquals(118, cursor.previous()!!.number)
+            assertEquals(120, cursor.next()!!.number)
+            assertEquals(122, cursor.next()!!.number)
+            assertNull(cursor.seek(121))
+            assertEquals(60, cursor.position)
+        } finally {
+            cursor.close()
+        }
+    }
+
+    @Test
+    fun `test entries of neighbouring documents are prefetched`() {
+        val cursor = createCursor()
+        try {
+            cursor.seek(50)
+            var entries: List<Entry>? = null
+            for (i in 0 until 100) {
+                entries = cursor.takeEntries(documentIds[52]!!)
+                if (entries != null) break
+                Thread.sleep(20)
+            }
+            assertNotNull(entries)
+            assertEquals("Tosite 52", entries!![0].description)
+
+            // Entries are handed out only once
+            assertNull(cursor.takeEntries(documentIds[52]!!))
+        } finally {
+            cursor.close()
+        }
+    }
+
+    @Test
+    fun `test search results are browsed without database windows`() {
+        val documents = listOf(20, 8, 150).map { number ->
+            Document().apply {
+                setId(documentIds[number]!!)
+                setNumber(number)
+            }
+        }
+        val cursor = DocumentCursor(dataSource, documents)
+        try {
+            assertEquals(20, cursor.first()!!.number)
+            assertEquals(8, cursor.next()!!.number)
+            assertEquals(150, cursor.next()!!.number)
+            assertNull(cursor.next())
+            assertEquals(3, cursor.count)
+        } finally {
+            cursor.close()
+        }
+    }
+
+    @Test
+    fun `test documents are prefetched in WAL mode`() {
+        val dbFile = File.createTempFile("tilitin-test-", ".db")
+        dbFile.deleteOnExit()
+        dbFile.delete()
+
+        val settings = AppSettings.getInstance()
+        val walDataSource = SQLiteDataSource()
+        settings.set("database.sqlite.wal", true)
+        try {
+            walDataSource.open("jdbc:sqlite:${dbFile.absolutePath}", "", "")
+        } finally {
+            settings.remove("database.sqlite.wal")
+        }
+
+        try {
+            assertTrue(walDataSource.hasReaderConnections())
+            val ids = HashMap<Int, Int>()
+            val period = createDocuments(walDataSource, 1..5, ids)
+
+            val cursor = DocumentCursor(walDataSource, period.id, 1, Int.MAX_VALUE)
+            cursor.setPrefetchCount(2)
+            try {
+                assertEquals(1, cursor.first()!!.number)
+                var entries: List<Entry>? = null
+                for (i in 0 until 100) {
+                    entries = cursor.takeEntries(ids[2]!!)
+                    if (entries != null) break
+                    Thread.sleep(20)
+                }
+                assertNotNull(entries)
+                assertEquals(2, cursor.next()!!.number)
+            } finally {
+                cursor.close()
+            }
+        } finally {
+            walDataSource.close()
+            dbFile.delete()
+            File(dbFile.path + "-wal").delete()
+            File(dbFile.path + "-shm").delete()
+        }
+    }
+
+    @Test
+    fun `test added document becomes last`() {
+        val cursor = createCursor()
+        try {
+            cursor.first()
+            val document = Document().apply {
+                setPeriodId(testPeriod.id)
+                setNumber(201)
+            }
+            assertSame(document, cursor.add(document))
+            assertEquals(100, cursor.position)
+            assertEquals(101, cursor.count)
+            assertEquals(200, cursor.previous()!!.number)
+        } finally {
+            cursor.close()
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package kirjanpito.util
+
+import kirjanpito.db.*
+import kirjanpito.db.sqlite.SQLiteDataSource
+import kirjanpito.reports.VATReportModel
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.math.BigDecimal
+import java.util.Random
+
+/**
+ * Tests for LedgerGenerator.
+ * The generated ledger is initialized from a chart of accounts template,
+ * every document balances, VAT rows are paired with their base rows the
+ * way VATReportModel expects, and attachments are added at the given interval.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LedgerGeneratorTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var generator: LedgerGenerator
+    private lateinit var periods: List<Period>
+
+    private val documentCount = 120
+
+    @BeforeAll
+    fun setupDatabase() {
+        System.setProperty("java.awt.headless", "true")
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete()
+
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+
+        generator = LedgerGenerator(dataSource, Random(1))
+        generator.setBatchSize(50)
+        generator.setAttachmentInterval(10)
+        generator.initialize(LedgerGenerator.DEFAULT_MODEL)
+        periods = generator.createPeriods(2)
+
+        for (period in periods) {
+            generator.createDocuments(period, documentCount, 5, null)
+        }
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun entriesByDocument(period: Period): Map<Int, List<Entry>> {
+        val result = HashMap<Int, MutableList<Entry>>()
+        val session = dataSource.openReadOnlySession()
+        try {
+            dataSource.getEntryDAO(session).getByPeriodId(period.id,
+                EntryDAO.ORDER_BY_DOCUMENT_NUMBER) { entry ->
+                result.getOrPut(entry.documentId) { mutableListOf() }.add(entry)
+            }
+        } finally {
+            session.close()
+        }
+        return result
+    }
+
+    @Test
+    fun `test periods are created before the current period`() {
+        assertEquals(2, periods.size)
+        assertTrue(periods[0].endDate.before(periods[1].startDate))
+        assertEquals(periods[1].id, generator.registry.period.id)
+    }
+
+    @Test
+    fun `test every document balances`() {
+        for (period in periods) {
+            val documents = entriesByDocument(period)
+            assertEquals(documentCount, documents.size)
+
+            for (entries in documents.values) {
+                var balance = BigDecimal.ZERO
+                for (entry in entries) {
+                    balance = if (entry.isDebit) balance.add(entry.amount) else balance.subtract(entry.amount)
+                }
+                assertEquals(0, balance.signum())
+            }
+        }
+    }
+
+    @Test
+    fun `test VAT rows are paired with base rows`() {
+        var vatRows = 0
+        for (entries in entriesByDocument(periods[1]).values) {
+            val rows = entries.associateBy { it.rowNumber }
+            for (entry in entries.filter { it.rowNumber >= 100000 }) {
+                val base = rows[entry.rowNumber - 100000]
+                assertNotNull(base)
+                val account = generator.registry.getAccountById(base!!.accountId)
+                assertTrue(account.vatCode == 4 || account.vatCode == 5)
+                assertEquals(account.vatAccount1Id, entry.accountId)
+                assertEquals(base.isDebit, entry.isDebit)
+                vatRows++
+            }
+        }
+        assertTrue(vatRows > 0)
+
+        val model = VATReportModel().apply {
+            setDataSource(dataSource)
+            setPeriod(periods[1])
+            setSettings(generator.registry.settings)
+            setAccounts(generator.registry.accounts)
+            setStartDate(periods[1].startDate)
+            setEndDate(periods[1].endDate)
+        }
+        model.run()
+        assertTrue(model.rowCount > 0)
+    }
+
+    @Test
+    fun `test attachments are added at interval`() {
+        val session = dataSource.openReadOnlySession()
+        try {
+            val documentDAO = dataSource.getDocumentDAO(session)
+            val attachmentDAO = dataSource.getAttachmentDAO(session)
+            val withAttachment = documentDAO.getByPeriodIdAndNumber(periods[1].id, 10)
+            val withoutAttachment = documentDAO.getByPeriodIdAndNumber(periods[1].id, 11)
+            assertEquals(1, attachmentDAO.countByDocumentId(withAttachment.id))
+            assertEquals(0, attachmentDAO.countByDocumentId(withoutAttachment.id))
+        } finally {
+            session.close()
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package kirjanpito.util
+
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.math.BigDecimal
+import java.util.zip.ZipFile
+import javax.xml.parsers.DocumentBuilderFactory
+
+/**
+ * Tests for ODFSpreadsheet streaming output.
+ */
+class ODFSpreadsheetTest {
+
+    private lateinit var streamed: File
+    private lateinit var buffered: File
+
+    @BeforeEach
+    fun setup() {
+        streamed = File.createTempFile("tilitin-stream-", ".ods")
+        buffered = File.createTempFile("tilitin-buffer-", ".ods")
+    }
+
+    @AfterEach
+    fun cleanup() {
+        streamed.delete()
+        buffered.delete()
+    }
+
+    private fun fill(s: ODFSpreadsheet, rows: Int) {
+        s.title = "Pääkirja & <testi>"
+        s.defineColumn("co1", "2cm")
+        s.addTable("Pääkirja")
+        s.addColumn("co1", "Default")
+
+        for (i in 0 until rows) {
+            s.addRow()
+            s.writeTextCell("Rivi $i")
+            s.writeFloatCell(BigDecimal("12.50"), "num2")
+        }
+    }
+
+    private fun read(file: File, name: String): String = ZipFile(file).use { zip ->
+        zip.getInputStream(zip.getEntry(name)).readBytes().toString(Charsets.UTF_8)
+    }
+
+    @Test
+    fun `test streamed document matches buffered document`() {
+        val s1 = ODFSpreadsheet()
+        s1.open(streamed)
+        fill(s1, 5000)
+        s1.close()
+
+        val s2 = ODFSpreadsheet()
+        fill(s2, 5000)
+        s2.save(buffered)
+
+        for (name in listOf("content.xml", "styles.xml", "META-INF/manifest.xml", "mimetype")) {
+            assertEquals(read(buffered, name), read(streamed, name), name)
+        }
+
+        assertTrue(read(streamed, "meta.xml").contains("Pääkirja &amp; &lt;testi&gt;"))
+
+        val content = read(streamed, "content.xml").byteInputStream()
+        val doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(content)
+        assertEquals(5000, doc.getElementsByTagName("table:table-row").length)
+    }
+
+    @Test
+    fun `test flush keeps open element in buffer`() {
+        val out = java.io.StringWriter()
+        val w = XMLWriter(out)
+        w.startElement("a")
+        w.writeAttribute("b", "1")
+        w.flush()
+        assertEquals("", out.toString())
+
+        w.endElement("a")
+        w.flush()
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a b=\"1\"></a>", out.toString())
+        assertEquals("", w.toString())
+    }
+}
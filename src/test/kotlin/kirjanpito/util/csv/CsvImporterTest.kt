@@ -0,0 +1,225 @@
+package kirjanpito.util.csv
+
+import kirjanpito.db.*
+import kirjanpito.db.sqlite.SQLiteDataSource
+import kirjanpito.util.Registry
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.*
+import java.io.File
+import java.io.StringReader
+import java.sql.Date
+import java.time.LocalDate
+
+/**
+ * Tests for streaming CSV reading and import.
+ * The reader must handle quoted fields that span lines, and an interrupted
+ * streaming import must continue from its last checkpoint without
+ * duplicating rows that were written but not committed.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CsvImporterTest {
+
+    private lateinit var dataSource: DataSource
+    private lateinit var testDbFile: File
+    private lateinit var registry: Registry
+    private lateinit var testPeriod: Period
+    private lateinit var bankAccount: Account
+
+    private val columns = listOf(
+        ColumnInfo(0, "Kirjauspäivä", ColumnType.DATE_FI, emptyList(), MappingType.DATE),
+        ColumnInfo(1, "Selite", ColumnType.TEXT, emptyList(), MappingType.DESCRIPTION),
+        ColumnInfo(2, "Summa", ColumnType.MONEY, emptyList(), MappingType.AMOUNT)
+    )
+
+    @BeforeAll
+    fun setupDatabase() {
+        testDbFile = File.createTempFile("tilitin-test-", ".db")
+        testDbFile.deleteOnExit()
+        testDbFile.delete()
+
+        dataSource = SQLiteDataSource()
+        dataSource.open("jdbc:sqlite:${testDbFile.absolutePath}", "", "")
+
+        val session = dataSource.openSession()
+        try {
+            testPeriod = Period().apply {
+                setStartDate(Date(System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000))
+                setEndDate(Date(System.currentTimeMillis()))
+            }
+            dataSource.getPeriodDAO(session).save(testPeriod)
+
+            bankAccount = Account().apply {
+                setNumber("1910")
+                setName("Pankkitili")
+                setType(Account.TYPE_ASSET)
+            }
+            dataSource.getAccountDAO(session).save(bankAccount)
+
+            dataSource.getSettingsDAO(session).save(Settings().apply {
+                setName("Test Company")
+                setBusinessId("1234567-8")
+                setCurrentPeriodId(testPeriod.id)
+            })
+            session.commit()
+        } finally {
+            session.close()
+        }
+
+        registry = Registry()
+        registry.setDataSource(dataSource)
+        registry.setPeriod(testPeriod)
+
+        val readSession = dataSource.openSession()
+        try {
+            registry.fetchSettings(readSession)
+            registry.fetchChartOfAccounts(readSession)
+        } finally {
+            readSession.close()
+        }
+    }
+
+    @AfterAll
+    fun cleanupDatabase() {
+        if (::dataSource.isInitialized) {
+            dataSource.close()
+        }
+        if (::testDbFile.isInitialized && testDbFile.exists()) {
+            testDbFile.delete()
+        }
+    }
+
+    private fun documentCount(): Int {
+        val session = dataSource.openSession()
+        try {
+            return dataSource.getDocumentDAO(session)
+                .getCountByPeriodIdAndNumber(testPeriod.id, 1, Int.MAX_VALUE)
+        } finally {
+            session.close()
+        }
+    }
+
+    private fun checkpoint(): String? {
+        val session = dataSource.openSession()
+        try {
+            return dataSource.getSettingsDAO(session).get()
+                .getProperty(CsvImporter.CHECKPOINT_PROPERTY, null)
+        } finally {
+            session.close()
+        }
+    }
+
+    @Test
+    fun `test quoted fields may contain line breaks and quotes`() {
+        val text = "\uFEFFPvm;Selite;Summa\r\n" +
+            "1.2.2024;\"Vuokra\r\nhelmikuu\";-500,00\r\n" +
+            "\r\n" +
+            "2.2.2024;\"Lasku \"\"123\"\"; maksettu\";12,50\n"
+        val rows = CsvReader(StringReader(text), ';').records().toList()
+
+        assertEquals(3, rows.size)
+        assertEquals(listOf("Pvm", "Selite", "Summa"), rows[0])
+        assertEquals(listOf("1.2.2024", "Vuokra\nhelmikuu", "-500,00"), rows[1])
+        assertEquals(listOf("2.2.2024", "Lasku \"123\"; maksettu", "12,50"), rows[2])
+    }
+
+    @Test
+    fun `test parse detects delimiter from header`() {
+        val data = CsvParser.parse("Pvm,Selite,Summa\n1.2.2024,\"a,b\",1.00\n".toByteArray())
+        assertEquals(',', data.delimiter)
+        assertEquals(listOf("1.2.2024", "a,b", "1.00"), data.dataRows[0])
+    }
+
+    @Test
+    fun `test interrupted import continues from checkpoint`() {
+        // 25 000 rows, 50 rows per date
+        val file = File.createTempFile("tilitin-test-", ".csv")
+        file.deleteOnExit()
+        val start = LocalDate.of(2024, 1, 1)
+        file.bufferedWriter(Charsets.UTF_8).use { writer ->
+            writer.write("Kirjauspäivä;Selite;Summa\n")
+            for (i in 0 until 25_000) {
+                val date = start.plusDays((i / 50).toLong())
+                writer.write("${date.dayOfMonth}.${date.monthValue}.${date.year};Rivi $i;-${i % 100 + 1},00\n")
+            }
+        }
+
+        val documentsBefore = documentCount()
+        val importer = CsvImporter(registry)
+        var batches = 0
+        val interrupted = importer.importFile(file, columns, bankAccount.id) {
+            if (++batches == 15) Thread.currentThread().interrupt()
+        }
+        assertTrue(Thread.interrupted())
+
+        // The first commit happens after 10 000 rows at a date boundary
+        assertFalse(interrupted.success)
+        assertEquals(200, interrupted.documentsCreated)
+        assertEquals(documentsBefore + 200, documentCount())
+        assertNotNull(checkpoint())
+
+        val resumed = importer.importFile(file, columns, bankAccount.id)
+        assertTrue(resumed.success, resumed.errors.toString())
+        assertTrue(resumed.warnings.any { it.contains("riviltä 10002") })
+        assertEquals(500, resumed.documentsCreated)
+        assertEquals(25_000, resumed.entriesCreated)
+        assertEquals(documentsBefore + 500, documentCount())
+        assertNull(checkpoint())
+    }
+
+    @Test
+    fun `test cancelled import leaves no rows for the next commit`() {
+        // 3 000 rows, 50 rows per date; cancelled before the first commit
+        val file = File.createTempFile("tilitin-test-", ".csv")
+        file.deleteOnExit()
+        val start = LocalDate.of(2023, 6, 1)
+        file.bufferedWriter(Charsets.UTF_8).use { writer ->
+            writer.write("Kirjauspäivä;Selite;Summa\n")
+            for (i in 0 until 3_000) {
+                val date = start.plusDays((i / 50).toLong())
+                writer.write("${date.dayOfMonth}.${date.monthValue}.${date.year};Peruttu $i;-${i % 100 + 1},00\n")
+            }
+        }
+
+        val documentsBefore = documentCount()
+        val importer = CsvImporter(registry)
+        val cancelled = importer.importFile(file, columns, bankAccount.id) {
+            Thread.currentThread().interrupt()
+        }
+        assertTrue(Thread.interrupted())
+        assertFalse(cancelled.success)
+        assertEquals(0, cancelled.documentsCreated)
+        assertEquals(documentsBefore, documentCount())
+
+        // An unrelated save on the same connection commits nothing from the import
+        val session = dataSource.openSession()
+        try {
+            dataSource.getAccountDAO(session).save(Account().apply {
+                setNumber("1920")
+                setName("Toinen pankkitili")
+                setType(Account.TYPE_ASSET)
+            })
+            session.commit()
+        } finally {
+            session.close()
+        }
+        assertEquals(documentsBefore, documentCount())
+        assertNull(checkpoint())
+
+        val resumed = importer.importFile(file, columns, bankAccount.id)
+        assertTrue(resumed.success, resumed.errors.toString())
+        assertEquals(60, resumed.documentsCreated)
+        assertEquals(documentsBefore + 60, documentCount())
+
+        var entries = 0
+        val readSession = dataSource.openSession()
+        try {
+            dataSource.getEntryDAO(readSession).getByPeriodId(testPeriod.id,
+                EntryDAO.ORDER_BY_DOCUMENT_NUMBER) { entry ->
+                if (entry.description.contains("Peruttu ")) entries++
+            }
+        } finally {
+            readSession.close()
+        }
+        assertEquals(resumed.entriesCreated, entries)
+    }
+}